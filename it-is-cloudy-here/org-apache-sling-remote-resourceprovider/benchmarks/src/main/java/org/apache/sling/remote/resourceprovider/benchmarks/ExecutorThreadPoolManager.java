@@ -0,0 +1,104 @@
+/*~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ ~ Licensed to the Apache Software Foundation (ASF) under one
+ ~ or more contributor license agreements.  See the NOTICE file
+ ~ distributed with this work for additional information
+ ~ regarding copyright ownership.  The ASF licenses this file
+ ~ to you under the Apache License, Version 2.0 (the
+ ~ "License"); you may not use this file except in compliance
+ ~ with the License.  You may obtain a copy of the License at
+ ~
+ ~   http://www.apache.org/licenses/LICENSE-2.0
+ ~
+ ~ Unless required by applicable law or agreed to in writing,
+ ~ software distributed under the License is distributed on an
+ ~ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ ~ KIND, either express or implied.  See the License for the
+ ~ specific language governing permissions and limitations
+ ~ under the License.
+ ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~*/
+package org.apache.sling.remote.resourceprovider.benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.commons.threads.ThreadPoolConfig;
+import org.apache.sling.commons.threads.ThreadPoolManager;
+
+/**
+ * A {@link ThreadPoolManager} creating a fixed size {@link ExecutorService} of daemon threads for each pool, standing in for the
+ * Sling Commons Threads implementation outside of an OSGi container.
+ */
+public final class ExecutorThreadPoolManager implements ThreadPoolManager {
+
+    private final int size;
+
+    /**
+     * @param size the number of threads of each pool
+     */
+    public ExecutorThreadPoolManager(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public ThreadPool get(String name) {
+        return new ExecutorThreadPool(name, size);
+    }
+
+    @Override
+    public ThreadPool create(ThreadPoolConfig config) {
+        return create(config, null);
+    }
+
+    @Override
+    public ThreadPool create(ThreadPoolConfig config, String label) {
+        return new ExecutorThreadPool(label, size);
+    }
+
+    @Override
+    public void release(ThreadPool pool) {
+        ((ExecutorThreadPool) pool).executor.shutdownNow();
+    }
+
+    private static class ExecutorThreadPool implements ThreadPool {
+
+        private final String name;
+        private final ExecutorService executor;
+
+        ExecutorThreadPool(String name, int size) {
+            this.name = name;
+            this.executor = Executors.newFixedThreadPool(size, runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            executor.execute(runnable);
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> callable) {
+            return executor.submit(callable);
+        }
+
+        @Override
+        public Future<?> submit(Runnable runnable) {
+            return executor.submit(runnable);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public ThreadPoolConfig getConfiguration() {
+            return null;
+        }
+    }
+}
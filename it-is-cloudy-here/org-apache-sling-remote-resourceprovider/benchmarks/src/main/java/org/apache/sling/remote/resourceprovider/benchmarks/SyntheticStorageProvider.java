@@ -0,0 +1,260 @@
+/*~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ ~ Licensed to the Apache Software Foundation (ASF) under one
+ ~ or more contributor license agreements.  See the NOTICE file
+ ~ distributed with this work for additional information
+ ~ regarding copyright ownership.  The ASF licenses this file
+ ~ to you under the Apache License, Version 2.0 (the
+ ~ "License"); you may not use this file except in compliance
+ ~ with the License.  You may obtain a copy of the License at
+ ~
+ ~   http://www.apache.org/licenses/LICENSE-2.0
+ ~
+ ~ Unless required by applicable law or agreed to in writing,
+ ~ software distributed under the License is distributed on an
+ ~ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ ~ KIND, either express or implied.  See the License for the
+ ~ specific language governing permissions and limitations
+ ~ under the License.
+ ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~*/
+package org.apache.sling.remote.resourceprovider.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.remote.resourceprovider.AbstractRemoteResourceReference;
+import org.apache.sling.remote.resourceprovider.Directory;
+import org.apache.sling.remote.resourceprovider.File;
+import org.apache.sling.remote.resourceprovider.RemoteResourceEventHandler;
+import org.apache.sling.remote.resourceprovider.RemoteResourceReference;
+import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link RemoteStorageProvider} serving a synthetic tree from memory. The tree consists of folders with
+ * {@link #FILES_PER_FOLDER} text files each, plus a {@link RemoteStorageProvider#SLING_META_FILE} per folder. Each call to
+ * {@link #findResource(String, Map)}, {@link #getFile(RemoteResourceReference, Map)} and
+ * {@link #getDirectory(RemoteResourceReference, Map)} is delayed by the configured latency, simulating a round trip to a remote storage,
+ * and counted.
+ */
+public final class SyntheticStorageProvider implements RemoteStorageProvider {
+
+    public static final int FILES_PER_FOLDER = 100;
+
+    private static final byte[] META_FILE = "{\"jcr:title\": \"Synthetic folder\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final String root;
+    private final long latencyNanos;
+    private final Map<String, RemoteResourceReference> references = new HashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * @param root           the Sling path the tree is mounted at
+     * @param files          the number of text files in the tree
+     * @param latencyMicros  the number of microseconds each call takes
+     */
+    public SyntheticStorageProvider(@NotNull String root, int files, long latencyMicros) {
+        this.root = root;
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        List<RemoteResourceReference> folders = new ArrayList<>();
+        for (int folder = 0; folder * FILES_PER_FOLDER < files; folder++) {
+            String folderPath = "/" + folderName(folder);
+            List<RemoteResourceReference> children = new ArrayList<>();
+            children.add(add(new SyntheticFile(this, folderPath + "/" + SLING_META_FILE, META_FILE)));
+            for (int file = 0; file < FILES_PER_FOLDER && folder * FILES_PER_FOLDER + file < files; file++) {
+                String filePath = folderPath + "/" + fileName(file);
+                children.add(add(new SyntheticFile(this, filePath, filePath.getBytes(StandardCharsets.UTF_8))));
+            }
+            folders.add(add(new SyntheticDirectory(this, folderPath, children)));
+        }
+        add(new SyntheticDirectory(this, "/", folders));
+    }
+
+    /**
+     * Returns the Sling path of the {@code index}th text file of the tree.
+     */
+    @NotNull
+    public String filePath(int index) {
+        return root + "/" + folderName(index / FILES_PER_FOLDER) + "/" + fileName(index % FILES_PER_FOLDER);
+    }
+
+    /**
+     * Returns the Sling path of the {@code index}th folder of the tree.
+     */
+    @NotNull
+    public String folderPath(int index) {
+        return root + "/" + folderName(index);
+    }
+
+    /**
+     * Returns the number of calls made to this provider so far.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public @Nullable RemoteResourceReference findResource(@NotNull String slingPath, @NotNull Map<String, Object> authenticationInfo) {
+        simulateRoundTrip();
+        String path = storagePath(slingPath);
+        // like most remote storages, resolve paths below files and missing folders to the closest existing ancestor
+        while (path != null) {
+            RemoteResourceReference reference = references.get(path);
+            if (reference != null) {
+                return reference;
+            }
+            path = ResourceUtil.getParent(path);
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable File getFile(@NotNull RemoteResourceReference reference, @NotNull Map<String, Object> authenticationInfo) {
+        simulateRoundTrip();
+        RemoteResourceReference file = references.get(reference.getPath());
+        return file instanceof File ? (File) file : null;
+    }
+
+    @Override
+    public @Nullable Directory getDirectory(@NotNull RemoteResourceReference reference, @NotNull Map<String, Object> authenticationInfo) {
+        simulateRoundTrip();
+        RemoteResourceReference directory = references.get(reference.getPath());
+        return directory instanceof Directory ? (Directory) directory : null;
+    }
+
+    @Override
+    public String slingPath(@NotNull String storagePath) {
+        return "/".equals(storagePath) ? root : root + storagePath;
+    }
+
+    @Override
+    public String storagePath(@NotNull String slingPath) {
+        if (slingPath.equals(root)) {
+            return "/";
+        }
+        if (slingPath.startsWith(root + "/")) {
+            return slingPath.substring(root.length());
+        }
+        return null;
+    }
+
+    @Override
+    public void registerEventHandler(RemoteResourceEventHandler handler) {
+        // the synthetic tree never changes
+    }
+
+    private RemoteResourceReference add(RemoteResourceReference reference) {
+        references.put(reference.getPath(), reference);
+        return reference;
+    }
+
+    private void simulateRoundTrip() {
+        requests.incrementAndGet();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    private static String folderName(int index) {
+        return "folder-" + index;
+    }
+
+    private static String fileName(int index) {
+        return "file-" + index + ".txt";
+    }
+
+    private abstract static class SyntheticReference extends AbstractRemoteResourceReference {
+
+        private final SyntheticStorageProvider provider;
+        private final String path;
+
+        SyntheticReference(SyntheticStorageProvider provider, String path) {
+            this.provider = provider;
+            this.path = path;
+        }
+
+        @Override
+        public RemoteStorageProvider getProvider() {
+            return provider;
+        }
+
+        @Override
+        public @NotNull String getPath() {
+            return path;
+        }
+
+        @Override
+        public long getCreated() {
+            return 0;
+        }
+
+        @Override
+        public @Nullable String getRevision() {
+            return null;
+        }
+    }
+
+    private static class SyntheticFile extends SyntheticReference implements File {
+
+        private final byte[] content;
+
+        SyntheticFile(SyntheticStorageProvider provider, String path, byte[] content) {
+            super(provider, path);
+            this.content = content;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.FILE;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public @NotNull InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public @Nullable String getMimeType() {
+            return getName().endsWith(".json") ? "application/json" : "text/plain";
+        }
+    }
+
+    private static class SyntheticDirectory extends SyntheticReference implements Directory {
+
+        private final List<RemoteResourceReference> children;
+
+        SyntheticDirectory(SyntheticStorageProvider provider, String path, List<RemoteResourceReference> children) {
+            super(provider, path);
+            this.children = List.copyOf(children);
+        }
+
+        @Override
+        public Type getType() {
+            return Type.DIRECTORY;
+        }
+
+        @Override
+        public long getSize() {
+            return 0;
+        }
+
+        @Override
+        public @NotNull List<RemoteResourceReference> getChildren() {
+            return children;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ ~ Licensed to the Apache Software Foundation (ASF) under one
+ ~ or more contributor license agreements.  See the NOTICE file
+ ~ distributed with this work for additional information
+ ~ regarding copyright ownership.  The ASF licenses this file
+ ~ to you under the Apache License, Version 2.0 (the
+ ~ "License"); you may not use this file except in compliance
+ ~ with the License.  You may obtain a copy of the License at
+ ~
+ ~   http://www.apache.org/licenses/LICENSE-2.0
+ ~
+ ~ Unless required by applicable law or agreed to in writing,
+ ~ software distributed under the License is distributed on an
+ ~ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ ~ KIND, either express or implied.  See the License for the
+ ~ specific language governing permissions and limitations
+ ~ under the License.
+ ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~*/
+package org.apache.sling.remote.resourceprovider.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.contentparser.json.internal.JSONContentParser;
+import org.apache.sling.remote.resourceprovider.benchmarks.ExecutorThreadPoolManager;
+import org.apache.sling.remote.resourceprovider.benchmarks.SyntheticStorageProvider;
+import org.apache.sling.spi.resource.provider.ResolveContext;
+import org.apache.sling.spi.resource.provider.ResourceContext;
+import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Measures the lookup of resources by the {@link RemoteResourceProvider} over a {@link SyntheticStorageProvider} of different sizes,
+ * for different in-memory cache sizes and remote latencies. The paths are picked uniformly at random, so that the ratio of
+ * {@code cacheSize} to {@code files} bounds the hit ratio of the resource cache.
+ * <p>
+ * Besides the lookups per second the calls to the remote storage per second and the hits and misses of the resource cache per iteration
+ * are reported, so the hit ratio of the resource cache is {@code cacheHits / (cacheHits + cacheMisses)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 30)
+public class RemoteResourceProviderBenchmark {
+
+    private static final String ROOT = "/content/remote";
+
+    @Param({"10000", "200000"})
+    public int files;
+
+    @Param({"10000", "100000"})
+    public int cacheSize;
+
+    @Param({"0", "1000"})
+    public long latencyMicros;
+
+    private SyntheticStorageProvider storage;
+    private RemoteResourceProviderMetrics metrics;
+    private RemoteResourceProvider subject;
+    private ResolveContext<RemoteResourceProviderContext> resolveContext;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        storage = new SyntheticStorageProvider(ROOT, files, latencyMicros);
+        metrics = new RemoteResourceProviderMetrics(MetricsService.NOOP, ROOT);
+        subject = new RemoteResourceProvider(new ExecutorThreadPoolManager(8), new JSONContentParser(),
+                new InMemoryResourceCache(cacheSize, 5, metrics.resourceCacheStats()),
+                new SlingMetaFileCache(cacheSize, 5, metrics.metaFileCacheStats()),
+                new DiskResourceCache(null, 0, metrics), metrics, storage, false, 8, 1, 100000, 0, 10000);
+        resolveContext = new BenchmarkResolveContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        subject.cleanup();
+    }
+
+    @Benchmark
+    public Resource getResource(RemoteCalls remoteCalls, ResourceCacheAccesses cacheAccesses) {
+        long requests = storage.getRequests();
+        CacheStats stats = metrics.resourceCacheStats().snapshot();
+        Resource resource = subject.getResource(resolveContext, storage.filePath(ThreadLocalRandom.current().nextInt(files)),
+                ResourceContext.EMPTY_CONTEXT, null);
+        remoteCalls.remoteCalls += storage.getRequests() - requests;
+        cacheAccesses.record(stats, metrics.resourceCacheStats().snapshot());
+        return resource;
+    }
+
+    @Benchmark
+    public Resource getMissingResource(RemoteCalls remoteCalls, ResourceCacheAccesses cacheAccesses) {
+        long requests = storage.getRequests();
+        CacheStats stats = metrics.resourceCacheStats().snapshot();
+        String folder = storage.folderPath(ThreadLocalRandom.current().nextInt(folders()));
+        Resource resource = subject.getResource(resolveContext, folder + "/missing-" + ThreadLocalRandom.current().nextInt(100),
+                ResourceContext.EMPTY_CONTEXT, null);
+        remoteCalls.remoteCalls += storage.getRequests() - requests;
+        cacheAccesses.record(stats, metrics.resourceCacheStats().snapshot());
+        return resource;
+    }
+
+    @Benchmark
+    public void listChildren(RemoteCalls remoteCalls, ResourceCacheAccesses cacheAccesses, Blackhole blackhole) {
+        long requests = storage.getRequests();
+        CacheStats stats = metrics.resourceCacheStats().snapshot();
+        Resource folder = subject.getResource(resolveContext, storage.folderPath(ThreadLocalRandom.current().nextInt(folders())),
+                ResourceContext.EMPTY_CONTEXT, null);
+        if (folder == null) {
+            throw new IllegalStateException("Missing synthetic folder.");
+        }
+        Iterator<Resource> children = subject.listChildren(resolveContext, folder);
+        while (children != null && children.hasNext()) {
+            blackhole.consume(children.next());
+        }
+        remoteCalls.remoteCalls += storage.getRequests() - requests;
+        cacheAccesses.record(stats, metrics.resourceCacheStats().snapshot());
+    }
+
+    private int folders() {
+        return (files + SyntheticStorageProvider.FILES_PER_FOLDER - 1) / SyntheticStorageProvider.FILES_PER_FOLDER;
+    }
+
+    /**
+     * Counts the calls to the remote storage, so that JMH reports them per second next to the lookups.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RemoteCalls {
+
+        public long remoteCalls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            remoteCalls = 0;
+        }
+    }
+
+    /**
+     * Counts the hits and misses of the resource cache, so that JMH reports them per iteration next to the lookups.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ResourceCacheAccesses {
+
+        public long cacheHits;
+
+        public long cacheMisses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cacheHits = 0;
+            cacheMisses = 0;
+        }
+
+        void record(CacheStats before, CacheStats after) {
+            cacheHits += after.hitCount() - before.hitCount();
+            cacheMisses += after.missCount() - before.missCount();
+        }
+    }
+
+    private static class BenchmarkResolveContext implements ResolveContext<RemoteResourceProviderContext> {
+
+        private final RemoteResourceProviderContext providerState = new RemoteResourceProviderContext(Collections.emptyMap());
+
+        @Override
+        public ResourceResolver getResourceResolver() {
+            return null;
+        }
+
+        @Override
+        public RemoteResourceProviderContext getProviderState() {
+            return providerState;
+        }
+
+        @Override
+        public ResolveContext<?> getParentResolveContext() {
+            return null;
+        }
+
+        @Override
+        public ResourceProvider<?> getParentResourceProvider() {
+            return null;
+        }
+    }
+}
@@ -29,7 +29,6 @@ import org.apache.sling.api.resource.ResourceMetadata;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceWrapper;
 import org.apache.sling.api.resource.ValueMap;
-import org.apache.sling.remote.resourceprovider.File;
 import org.apache.sling.remote.resourceprovider.RemoteResourceReference;
 import org.apache.sling.spi.resource.provider.ResolveContext;
 import org.jetbrains.annotations.NotNull;
@@ -42,12 +41,15 @@ class CacheableResourceWrapper extends ResourceWrapper {
 
     private final ResolveContext<RemoteResourceProviderContext> context;
     private final CacheableResource resource;
+    private final DiskResourceCache diskCache;
     private final ResourceMetadata resourceMetadata;
 
-    CacheableResourceWrapper(@NotNull ResolveContext<RemoteResourceProviderContext> context, @NotNull CacheableResource resource) {
+    CacheableResourceWrapper(@NotNull ResolveContext<RemoteResourceProviderContext> context, @NotNull CacheableResource resource,
+                             @NotNull DiskResourceCache diskCache) {
         super(resource);
         this.context = context;
         this.resource = resource;
+        this.diskCache = diskCache;
         resourceMetadata = (ResourceMetadata) resource.getResourceMetadata().clone();
     }
 
@@ -85,13 +87,14 @@ class CacheableResourceWrapper extends ResourceWrapper {
         if (type == InputStream.class && remoteResourceReference.getType() == RemoteResourceReference.Type.FILE) {
             Map<String, Object> authenticationInfo = context.getProviderState() == null ? Collections.emptyMap() :
                     context.getProviderState().getAuthenticationInfo();
-            File file = resource.getRemoteStorageProvider().getFile(remoteResourceReference, authenticationInfo);
-            if (file != null) {
-                try {
-                    return (AdapterType) file.getInputStream();
-                } catch (IOException e) {
-                    LOGGER.error(String.format("Unable to convert resource %s to an InputStream.", getPath()), e);
+            try {
+                InputStream inputStream = diskCache.getInputStream(resource.getRemoteStorageProvider(), remoteResourceReference,
+                        authenticationInfo);
+                if (inputStream != null) {
+                    return (AdapterType) inputStream;
                 }
+            } catch (IOException e) {
+                LOGGER.error(String.format("Unable to convert resource %s to an InputStream.", getPath()), e);
             }
         }
         return super.adaptTo(type);
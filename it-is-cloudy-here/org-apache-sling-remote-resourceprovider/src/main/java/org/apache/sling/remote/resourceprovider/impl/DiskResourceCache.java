@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.sling.remote.resourceprovider.File;
+import org.apache.sling.remote.resourceprovider.RemoteResourceReference;
+import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@code DiskResourceCache} keeps the binary contents of remote files in a local directory, as a second level below the in-memory
+ * caches. This includes the {@link RemoteStorageProvider#SLING_META_FILE}s, which are the serialized form of the resource metadata.
+ * <p>
+ * Each cached file is stored together with the version of the remote file it was downloaded from (see
+ * {@link SlingMetaFileCache#version(RemoteResourceReference)}) and is only served for references of the same version. The total size of
+ * the cached files is bounded; the least recently used files are evicted first. The index is rebuilt from the directory on start-up, so
+ * the cached files survive restarts.
+ * <p>
+ * A {@code DiskResourceCache} without a directory or with a size of 0 is disabled and streams all contents from the remote storage.
+ */
+class DiskResourceCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskResourceCache.class);
+    private static final String DATA_SUFFIX = ".data";
+    private static final String INFO_SUFFIX = ".properties";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String PROPERTY_PATH = "path";
+    private static final String PROPERTY_VERSION = "version";
+    private static final String PROPERTY_SIZE = "size";
+
+    private final java.io.File directory;
+    private final long maxSize;
+    private final RemoteResourceProviderMetrics metrics;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * @param directory the directory to store the cached files in, or {@code null} to disable the cache
+     * @param maxSize   the maximum number of bytes to store; 0 or a negative value disable the cache
+     * @param metrics   the metrics to report hits, misses and evictions to
+     */
+    DiskResourceCache(@Nullable java.io.File directory, long maxSize, @NotNull RemoteResourceProviderMetrics metrics) {
+        this.metrics = metrics;
+        if (directory != null && maxSize > 0 && (directory.isDirectory() || directory.mkdirs())) {
+            this.directory = directory;
+            this.maxSize = maxSize;
+            load();
+        } else {
+            if (directory != null && maxSize > 0) {
+                LOGGER.warn("Cannot create the disk cache directory {}; the disk cache is disabled.", directory);
+            }
+            this.directory = null;
+            this.maxSize = 0;
+        }
+    }
+
+    /**
+     * Returns the contents of the file identified by {@code reference}, from the disk cache if it holds the file in the reference's version,
+     * from the remote storage otherwise. Contents read from the remote storage are stored in the disk cache.
+     *
+     * @param remoteStorageProvider the remote storage provider of the reference
+     * @param reference             the reference to a file
+     * @param authenticationInfo    the authentication info used to retrieve the file from the remote storage
+     * @return the contents, or {@code null} if the file cannot be retrieved
+     * @throws IOException if an IO error occurs while creating the stream
+     */
+    @Nullable
+    InputStream getInputStream(@NotNull RemoteStorageProvider remoteStorageProvider, @NotNull RemoteResourceReference reference,
+                               @NotNull Map<String, Object> authenticationInfo) throws IOException {
+        InputStream cached = get(reference);
+        if (cached != null) {
+            return cached;
+        }
+        File file;
+        long start = System.nanoTime();
+        try {
+            file = remoteStorageProvider.getFile(reference, authenticationInfo);
+        } finally {
+            metrics.fileRetrieved(System.nanoTime() - start);
+        }
+        if (file == null) {
+            return null;
+        }
+        return put(file, file.getInputStream());
+    }
+
+    /**
+     * Returns the cached contents of the file identified by {@code reference}, if they are cached in the reference's version.
+     */
+    @Nullable
+    InputStream get(@NotNull RemoteResourceReference reference) {
+        if (directory == null) {
+            return null;
+        }
+        String version = SlingMetaFileCache.version(reference);
+        synchronized (this) {
+            Entry entry = entries.get(reference.getPath());
+            if (entry == null) {
+                metrics.diskCacheMiss();
+                return null;
+            }
+            if (!entry.version.equals(version)) {
+                removeEntry(reference.getPath());
+                metrics.diskCacheMiss();
+                return null;
+            }
+            java.io.File data = new java.io.File(directory, entry.name + DATA_SUFFIX);
+            try {
+                InputStream inputStream = new FileInputStream(data);
+                // keeps the access order across restarts
+                data.setLastModified(System.currentTimeMillis());
+                metrics.diskCacheHit();
+                return inputStream;
+            } catch (FileNotFoundException e) {
+                LOGGER.warn("Cached file {} for {} is gone.", data, reference.getPath());
+                removeEntry(reference.getPath());
+                metrics.diskCacheMiss();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stores the {@code content} of the file identified by {@code reference} and returns a stream on the stored copy. The {@code content}
+     * stream is consumed and closed.
+     */
+    @NotNull
+    InputStream put(@NotNull RemoteResourceReference reference, @NotNull InputStream content) throws IOException {
+        if (directory == null) {
+            return content;
+        }
+        String name = name(reference.getPath());
+        Path tmp = Files.createTempFile(directory.toPath(), name, TMP_SUFFIX);
+        try {
+            try (InputStream in = content) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            long length = Files.size(tmp);
+            synchronized (this) {
+                removeEntry(reference.getPath());
+                java.io.File data = new java.io.File(directory, name + DATA_SUFFIX);
+                Files.move(tmp, data.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Entry entry = new Entry(name, SlingMetaFileCache.version(reference), length);
+                writeInfo(reference.getPath(), entry);
+                // open before evicting, the file may be evicted right away if it is larger than the cache
+                InputStream inputStream = new FileInputStream(data);
+                entries.put(reference.getPath(), entry);
+                size += length;
+                evict();
+                return inputStream;
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Removes the cached contents of the file stored at {@code storagePath}.
+     */
+    synchronized void remove(@NotNull String storagePath) {
+        if (directory != null) {
+            removeEntry(storagePath);
+        }
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    private void load() {
+        java.io.File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<java.io.File> data = new ArrayList<>();
+        for (java.io.File file : files) {
+            String fileName = file.getName();
+            if (fileName.endsWith(TMP_SUFFIX)) {
+                // left over by an interrupted download
+                delete(file);
+            } else if (fileName.endsWith(DATA_SUFFIX)) {
+                data.add(file);
+            }
+        }
+        data.sort(Comparator.comparingLong(java.io.File::lastModified));
+        for (java.io.File file : data) {
+            String name = file.getName().substring(0, file.getName().length() - DATA_SUFFIX.length());
+            java.io.File info = new java.io.File(directory, name + INFO_SUFFIX);
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(info)) {
+                properties.load(in);
+                String path = properties.getProperty(PROPERTY_PATH);
+                String version = properties.getProperty(PROPERTY_VERSION);
+                long length = Long.parseLong(properties.getProperty(PROPERTY_SIZE, "-1"));
+                if (path != null && version != null && length == file.length() && name.equals(name(path))) {
+                    entries.put(path, new Entry(name, version, length));
+                    size += length;
+                    continue;
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.debug("Cannot read {}.", info, e);
+            }
+            delete(file);
+            delete(info);
+        }
+        evict();
+        LOGGER.debug("Loaded {} files with {} bytes from disk cache {}.", entries.size(), size, directory);
+    }
+
+    private void writeInfo(@NotNull String path, @NotNull Entry entry) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(PROPERTY_PATH, path);
+        properties.setProperty(PROPERTY_VERSION, entry.version);
+        properties.setProperty(PROPERTY_SIZE, Long.toString(entry.size));
+        try (OutputStream out = Files.newOutputStream(new java.io.File(directory, entry.name + INFO_SUFFIX).toPath())) {
+            properties.store(out, null);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            deleteFiles(eldest.getValue());
+            metrics.diskCacheEviction();
+            LOGGER.debug("Evicted {} from disk cache.", eldest.getKey());
+        }
+    }
+
+    private void removeEntry(@NotNull String path) {
+        Entry entry = entries.remove(path);
+        if (entry != null) {
+            deleteFiles(entry);
+        }
+    }
+
+    private void deleteFiles(@NotNull Entry entry) {
+        size -= entry.size;
+        delete(new java.io.File(directory, entry.name + DATA_SUFFIX));
+        delete(new java.io.File(directory, entry.name + INFO_SUFFIX));
+    }
+
+    private static void delete(@NotNull java.io.File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOGGER.warn("Cannot delete {}.", file, e);
+        }
+    }
+
+    /**
+     * @return a file name that is unique for the given {@code path}
+     */
+    @NotNull
+    static String name(@NotNull String path) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(path.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static class Entry {
+        private final String name;
+        private final String version;
+        private final long size;
+
+        Entry(String name, String version, long size) {
+            this.name = name;
+            this.version = version;
+            this.size = size;
+        }
+    }
+}
@@ -20,18 +20,22 @@ package org.apache.sling.remote.resourceprovider.impl;
 
 import java.util.concurrent.TimeUnit;
 
+import org.jetbrains.annotations.NotNull;
+
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 
 
 class InMemoryResourceCache {
 
     private final Cache<String, CacheableResource> internalCache;
 
-    InMemoryResourceCache(int size, int lruMinutesExpiration) {
+    InMemoryResourceCache(int size, int lruMinutesExpiration, @NotNull StatsCounter statsCounter) {
         internalCache = Caffeine.newBuilder()
                 .maximumSize(size)
                 .expireAfterAccess(lruMinutesExpiration, TimeUnit.MINUTES)
+                .recordStats(() -> statsCounter)
                 .build();
     }
 
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.commons.threads.ThreadPool;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@code RemoteResourceEventQueue} coalesces the storage paths of {@link org.apache.sling.remote.resourceprovider.RemoteResourceEvent}s
+ * and invalidates them in batches.
+ * <p>
+ * The paths received within a time window are collected in a single batch, which is applied in path order by a worker taken from the
+ * {@link ThreadPool}. A path is invalidated only once per batch, and not at all if one of its ancestors is part of the batch, since the
+ * invalidation of a path includes all paths below it. When the batch reaches its maximum size, the thread reporting the events applies
+ * it, which slows down the producer of the events instead of queueing them without bounds.
+ * <p>
+ * Without a thread pool, or with a time window of 0, the paths are invalidated as soon as they are added.
+ */
+class RemoteResourceEventQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteResourceEventQueue.class);
+
+    private final ThreadPool threadPool;
+    private final long window;
+    private final int maxBatchSize;
+    private final Consumer<String> invalidation;
+    private final Object invalidationLock = new Object();
+
+    private TreeSet<String> pending = new TreeSet<>();
+    private boolean flushScheduled;
+    private boolean closed;
+
+    /**
+     * @param threadPool   the thread pool to apply the batches with, or {@code null} to apply them in the calling thread
+     * @param window       the number of milliseconds during which paths are collected in a batch
+     * @param maxBatchSize the number of paths after which a batch is applied by the calling thread
+     * @param invalidation invalidates a storage path and all paths below it
+     */
+    RemoteResourceEventQueue(@Nullable ThreadPool threadPool, long window, int maxBatchSize, @NotNull Consumer<String> invalidation) {
+        this.threadPool = threadPool;
+        this.window = window;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.invalidation = invalidation;
+    }
+
+    /**
+     * Adds the storage {@code paths} to the current batch.
+     */
+    void add(@NotNull Collection<String> paths) {
+        boolean flushNow;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (String path : paths) {
+                addPath(path);
+            }
+            flushNow = threadPool == null || window <= 0 || pending.size() >= maxBatchSize;
+            if (!flushNow && !flushScheduled) {
+                try {
+                    threadPool.execute(this::flushAfterWindow);
+                    flushScheduled = true;
+                } catch (RejectedExecutionException e) {
+                    LOGGER.debug("Thread pool {} rejected an event batch; applying it directly.", threadPool.getName());
+                    flushNow = true;
+                }
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Drops the pending paths and ignores the ones added afterwards.
+     */
+    synchronized void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    private void addPath(@NotNull String path) {
+        for (String ancestor = path; ancestor != null; ancestor = ResourceUtil.getParent(ancestor)) {
+            if (pending.contains(ancestor)) {
+                return;
+            }
+        }
+        if ("/".equals(path)) {
+            pending.clear();
+        } else {
+            // '0' follows '/', so the sub set holds exactly the paths below path
+            pending.subSet(path + "/", path + "0").clear();
+        }
+        pending.add(path);
+    }
+
+    private void flushAfterWindow() {
+        try {
+            Thread.sleep(window);
+        } catch (InterruptedException e) {
+            // apply the batch early instead of leaving it to the next event
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                flushScheduled = false;
+            }
+            flush();
+        }
+    }
+
+    private void flush() {
+        // batches are applied one after the other, in the order in which they were taken
+        synchronized (invalidationLock) {
+            TreeSet<String> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = new TreeSet<>();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            LOGGER.debug("Invalidating a batch of {} remote paths.", batch.size());
+            for (String path : batch) {
+                try {
+                    invalidation.accept(path);
+                } catch (RuntimeException e) {
+                    LOGGER.error(String.format("Unable to invalidate %s.", path), e);
+                }
+            }
+        }
+    }
+}
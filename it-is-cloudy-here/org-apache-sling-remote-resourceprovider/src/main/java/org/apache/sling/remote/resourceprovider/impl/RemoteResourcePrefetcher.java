@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import org.apache.sling.commons.threads.ThreadPool;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@code RemoteResourcePrefetcher} loads a list of items from a {@link org.apache.sling.remote.resourceprovider.RemoteStorageProvider}
+ * with a bounded number of parallel workers taken from a {@link ThreadPool}.
+ * <p>
+ * The calling thread always works on the list as well, so that a fetch completes even if the thread pool is saturated, e.g. by fetches
+ * started from other workers. Without a thread pool, or with a parallelism of 1, the items are loaded sequentially.
+ */
+class RemoteResourcePrefetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteResourcePrefetcher.class);
+
+    private final ThreadPool threadPool;
+    private final int parallelism;
+
+    RemoteResourcePrefetcher(@Nullable ThreadPool threadPool, int parallelism) {
+        this.threadPool = threadPool;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Loads all {@code items} and returns the results in the order of the {@code items}. Items for which the {@code loader} returns
+     * {@code null} or fails have a {@code null} result.
+     *
+     * @param items  the items to load
+     * @param loader the function loading a single item; it has to be thread-safe
+     * @param <T>    the type of the items
+     * @param <R>    the type of the results
+     * @return the results, in the order of the items
+     */
+    @NotNull
+    <T, R> List<R> fetch(@NotNull List<T> items, @NotNull Function<T, R> loader) {
+        if (items.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int workers = threadPool == null ? 0 : Math.min(parallelism, items.size()) - 1;
+        if (workers <= 0) {
+            List<R> results = new ArrayList<>(items.size());
+            for (T item : items) {
+                results.add(load(item, loader));
+            }
+            return results;
+        }
+
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(items.size());
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(items.size());
+        Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < items.size()) {
+                try {
+                    results.set(i, load(items.get(i), loader));
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        for (int i = 0; i < workers; i++) {
+            try {
+                threadPool.execute(worker);
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Thread pool {} rejected a prefetch worker.", threadPool.getName());
+                break;
+            }
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for {} items to be fetched.", done.getCount());
+        }
+
+        List<R> list = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            list.add(results.get(i));
+        }
+        return list;
+    }
+
+    /**
+     * Runs the {@code task} asynchronously, if a thread pool is available. The task is dropped otherwise.
+     *
+     * @param task the task
+     */
+    void prefetch(@NotNull Runnable task) {
+        if (threadPool != null) {
+            try {
+                threadPool.execute(task);
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Thread pool {} rejected a prefetch task.", threadPool.getName());
+            }
+        }
+    }
+
+    @Nullable
+    private static <T, R> R load(@NotNull T item, @NotNull Function<T, R> loader) {
+        try {
+            return loader.apply(item);
+        } catch (RuntimeException e) {
+            LOGGER.error(String.format("Unable to fetch %s.", item), e);
+            return null;
+        }
+    }
+}
@@ -19,15 +19,16 @@
 package org.apache.sling.remote.resourceprovider.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -45,6 +46,7 @@ import org.apache.sling.remote.resourceprovider.RemoteResourceEventHandler;
 import org.apache.sling.remote.resourceprovider.RemoteResourceEventType;
 import org.apache.sling.remote.resourceprovider.RemoteResourceReference;
 import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
+import org.apache.sling.remote.resourceprovider.impl.paths.PathTrie;
 import org.apache.sling.remote.resourceprovider.impl.paths.ShallowReference;
 import org.apache.sling.remote.resourceprovider.impl.paths.ShallowReferenceTree;
 import org.apache.sling.spi.resource.provider.ResolveContext;
@@ -63,13 +65,19 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
     private static final String ANY = "";
     private final ThreadPoolManager threadPoolManager;
     private final ThreadPool threadPool;
+    private final RemoteResourcePrefetcher prefetcher;
+    private final int prefetchDepth;
     private final ContentParser jsonParser;
     private final InMemoryResourceCache cache;
+    private final SlingMetaFileCache metaFileCache;
+    private final DiskResourceCache diskCache;
+    private final RemoteResourceProviderMetrics metrics;
     private final ShallowReferenceTree tree;
+    private final RemoteResourceEventQueue eventQueue;
     private final RemoteStorageProvider remoteStorageProvider;
     private final boolean requiresAuthentication;
-    private final Map<String, Set<String>> accessMappings;
-    private final Map<String, Set<String>> negativeHits;
+    private final PathTrie accessMappings;
+    private final PathTrie negativeHits;
 
     private static final ParserOptions JSON_PARSER_OPTIONS = new JSONParserOptions().detectCalendarValues(true).defaultPrimaryType(null);
     private static final Map<String, Object> FILE_RESOURCE_PROPERTIES = new HashMap<>();
@@ -78,16 +86,24 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
     }
 
     RemoteResourceProvider(ThreadPoolManager threadPoolManager, ContentParser jsonParser, InMemoryResourceCache cache,
-                           RemoteStorageProvider remoteStorageProvider,
-                           boolean requiresAuthentication) {
+                           SlingMetaFileCache metaFileCache, DiskResourceCache diskCache, RemoteResourceProviderMetrics metrics,
+                           RemoteStorageProvider remoteStorageProvider, boolean requiresAuthentication, int prefetchParallelism,
+                           int prefetchDepth, int negativeHitsCacheSize, long eventWindow, int eventBatchSize) {
         this.threadPoolManager = threadPoolManager;
         this.threadPool = threadPoolManager.get(remoteStorageProvider.getClass().getName() + "-" + System.currentTimeMillis());
+        this.prefetcher = new RemoteResourcePrefetcher(prefetchDepth > 0 ? threadPool : null, prefetchParallelism);
+        this.prefetchDepth = prefetchDepth;
         this.jsonParser = jsonParser;
         this.cache = cache;
-        negativeHits = new ConcurrentHashMap<>();
+        this.metaFileCache = metaFileCache;
+        this.diskCache = diskCache;
+        this.metrics = metrics;
+        negativeHits = new PathTrie(negativeHitsCacheSize);
+        accessMappings = new PathTrie(Integer.MAX_VALUE);
         tree = new ShallowReferenceTree(removed -> {
             for (String resourceRemoved : removed.getProvidedResourcePaths()) {
                 this.cache.remove(resourceRemoved);
+                accessMappings.remove(resourceRemoved);
                 if (!requiresAuthentication) {
                     this.cache.remove(ResourceUtil.getParent(resourceRemoved));
                 }
@@ -100,39 +116,38 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
                     slingPath = ResourceUtil.getParent(slingPath);
                 }
             }
-            for (String negativeHit : negativeHits.keySet()) {
-                if (negativeHit.startsWith(slingPath + "/")) {
-                    negativeHits.remove(negativeHit);
-                }
-            }
+            negativeHits.removeDescendants(slingPath);
         });
+        eventQueue = new RemoteResourceEventQueue(threadPool, eventWindow, eventBatchSize, tree::remove);
         this.remoteStorageProvider = remoteStorageProvider;
         this.remoteStorageProvider.registerEventHandler(this);
         this.requiresAuthentication = requiresAuthentication;
-        accessMappings = new ConcurrentHashMap<>();
-
     }
 
     void cleanup() {
+        eventQueue.close();
         if (threadPool != null) {
             threadPoolManager.release(threadPool);
         }
         cache.clear();
+        metaFileCache.clear();
         accessMappings.clear();
         negativeHits.clear();
     }
 
     @Override
     public void handleEvent(RemoteResourceEvent event) {
-        threadPool.submit(() -> {
-            /*
-             * we don't care if the remote resource was changed or deleted; the affected resources from the cached view have to be
-             * changed anyways, so we just remove all remote resources from the shallow tree
-             */
-            for (String referencePath : event.getPaths()) {
-                tree.remove(referencePath);
-            }
-        });
+        for (String referencePath : event.getPaths()) {
+            metaFileCache.remove(referencePath);
+            metaFileCache.remove(referencePath + "/" + SLING_META_FILE);
+            diskCache.remove(referencePath);
+            diskCache.remove(referencePath + "/" + SLING_META_FILE);
+        }
+        /*
+         * we don't care if the remote resource was changed or deleted; the affected resources from the cached view have to be
+         * changed anyways, so we just remove all remote resources from the shallow tree
+         */
+        eventQueue.add(event.getPaths());
     }
 
     @Override
@@ -148,7 +163,7 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
                 ctx.getProviderState().getAuthenticationInfo();
         CacheableResource cacheableResource = getOrBuildResource(path, authenticationInfo);
         if (cacheableResource != null) {
-            return new CacheableResourceWrapper(ctx, cacheableResource);
+            return new CacheableResourceWrapper(ctx, cacheableResource, diskCache);
         }
         return null;
     }
@@ -173,11 +188,12 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
                             String storagePath = _parent.getRemoteResourceReference().getPath();
                             String storageParentPath = ResourceUtil.getParent(storagePath);
                             if (storageParentPath != null) {
-                                File file = remoteStorageProvider.getFile(remoteResourceReference, authenticationInfo);
-                                if (file == null) {
+                                Map<String, Map<String, Object>> metaResources = readMetaFile(remoteResourceReference,
+                                        authenticationInfo);
+                                if (metaResources == null) {
                                     throw new IOException(String.format("Cannot retrieve file %s.", remoteResourceReference.getPath()));
                                 }
-                                jsonParser.parse(
+                                metaResources.forEach(
                                         (path, properties) -> {
                                             String slingParentPath = remoteStorageProvider.slingPath(storageParentPath);
                                             if (slingParentPath != null) {
@@ -194,9 +210,7 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
 
                                                 }
                                             }
-                                        },
-                                        file.getInputStream(),
-                                        JSON_PARSER_OPTIONS);
+                                        });
                             }
                         } catch (IOException e) {
                             LOGGER.error(String.format("Unable to parse file %s provided by %s.", remoteResourceReference.getPath(),
@@ -208,17 +222,20 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
                     }
                 } else if (remoteResourceReference.getType() == RemoteResourceReference.Type.DIRECTORY) {
                     LinkedHashSet<CacheableResource> children = new LinkedHashSet<>();
-                    Directory directory = remoteStorageProvider.getDirectory(remoteResourceReference, authenticationInfo);
+                    Directory directory = getDirectory(remoteResourceReference, authenticationInfo);
                     if (directory != null) {
-                        for (RemoteResourceReference child : directory.getChildren()) {
+                        List<RemoteResourceReference> references = directory.getChildren();
+                        List<CacheableResource> resources = prefetchChildren(references, authenticationInfo, user, prefetchDepth);
+                        for (int i = 0; i < references.size(); i++) {
+                            RemoteResourceReference child = references.get(i);
                             String slingPath = remoteStorageProvider.slingPath(child.getPath());
                             if (slingPath != null) {
                                 if (child.getType() == RemoteResourceReference.Type.FILE) {
                                     if (SLING_META_FILE.equals(child.getName())) {
                                         try {
-                                            File file = remoteStorageProvider.getFile(child, authenticationInfo);
-                                            if (file != null) {
-                                                jsonParser.parse((String path, Map<String, Object> properties) -> {
+                                            Map<String, Map<String, Object>> metaResources = readMetaFile(child, authenticationInfo);
+                                            if (metaResources != null) {
+                                                metaResources.forEach((String path, Map<String, Object> properties) -> {
                                                             if (path.length() > 1 && !path.substring(1).contains("/")) {
                                                                 String childSlingPath =
                                                                         ResourceUtil.normalize(ResourceUtil.getParent(slingPath) + path);
@@ -231,36 +248,16 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
                                                                 children.add(resource);
 
                                                             }
-                                                        },
-                                                        file.getInputStream(),
-                                                        JSON_PARSER_OPTIONS);
+                                                        });
                                             }
                                         } catch (IOException e) {
                                             LOGGER.error("Unable to parse file " + child.getPath(), e);
                                         }
-                                    } else {
-                                        CacheableResource resource = queryCaches(slingPath, user);
-                                        if (resource == null) {
-                                            File file = remoteStorageProvider.getFile(child, authenticationInfo);
-                                            if (file != null) {
-                                                resource = buildResource(slingPath, file);
-                                                populateCaches(resource, user);
-                                            }
-                                        }
-                                        if (resource != null) {
-                                            children.add(resource);
-                                        }
-                                    }
-                                } else if (child.getType() == RemoteResourceReference.Type.DIRECTORY) {
-                                    CacheableResource resource = queryCaches(slingPath, user);
-                                    if (resource == null) {
-                                        Directory d = remoteStorageProvider.getDirectory(child, authenticationInfo);
-                                        if (d != null) {
-                                            resource = buildResource(authenticationInfo, slingPath, child, d);
-                                            populateCaches(resource, user);
-                                        }
+                                    } else if (resources.get(i) != null) {
+                                        children.add(resources.get(i));
                                     }
-                                    children.add(resource);
+                                } else if (child.getType() == RemoteResourceReference.Type.DIRECTORY && resources.get(i) != null) {
+                                    children.add(resources.get(i));
                                 }
                             }
                         }
@@ -276,6 +273,65 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
         return null;
     }
 
+    /**
+     * Resolves the {@code references} that are not cached yet in parallel and populates the caches with them. With a {@code depth}
+     * greater than 1, the children of each resolved directory are resolved asynchronously as well, up to the given depth.
+     *
+     * @return the resources corresponding to the {@code references}, in the same order; meta-files and references that cannot be
+     * resolved have a {@code null} entry
+     */
+    @NotNull
+    private List<CacheableResource> prefetchChildren(@NotNull List<RemoteResourceReference> references,
+                                                     @NotNull Map<String, Object> authenticationInfo, @NotNull String user, int depth) {
+        List<CacheableResource> resources = new ArrayList<>(Collections.nCopies(references.size(), null));
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < references.size(); i++) {
+            RemoteResourceReference child = references.get(i);
+            String slingPath = remoteStorageProvider.slingPath(child.getPath());
+            if (slingPath == null ||
+                    (child.getType() == RemoteResourceReference.Type.FILE && SLING_META_FILE.equals(child.getName()))) {
+                continue;
+            }
+            CacheableResource resource = queryCaches(slingPath, user);
+            if (resource == null) {
+                missing.add(i);
+            } else {
+                resources.set(i, resource);
+            }
+        }
+        List<CacheableResource> loaded = prefetcher.fetch(missing, i -> loadResource(references.get(i), authenticationInfo, user, depth));
+        for (int j = 0; j < missing.size(); j++) {
+            CacheableResource resource = loaded.get(j);
+            if (resource != null) {
+                populateCaches(resource, user);
+                resources.set(missing.get(j), resource);
+            }
+        }
+        return resources;
+    }
+
+    @Nullable
+    private CacheableResource loadResource(@NotNull RemoteResourceReference reference, @NotNull Map<String, Object> authenticationInfo,
+                                           @NotNull String user, int depth) {
+        String slingPath = remoteStorageProvider.slingPath(reference.getPath());
+        if (reference.getType() == RemoteResourceReference.Type.FILE) {
+            File file = getFile(reference, authenticationInfo);
+            if (file != null) {
+                return buildResource(slingPath, file);
+            }
+        } else if (reference.getType() == RemoteResourceReference.Type.DIRECTORY) {
+            Directory directory = getDirectory(reference, authenticationInfo);
+            if (directory != null) {
+                if (depth > 1) {
+                    List<RemoteResourceReference> children = directory.getChildren();
+                    prefetcher.prefetch(() -> prefetchChildren(children, authenticationInfo, user, depth - 1));
+                }
+                return buildResource(authenticationInfo, slingPath, reference, directory);
+            }
+        }
+        return null;
+    }
+
     @Nullable
     private Iterator<Resource> getCacheableResourceWrapperIterator(@NotNull ResolveContext<RemoteResourceProviderContext> ctx,
                                                                    Set<CacheableResource> children) {
@@ -289,7 +345,7 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
 
                 @Override
                 public Resource next() {
-                    return new CacheableResourceWrapper(ctx, iterator.next());
+                    return new CacheableResourceWrapper(ctx, iterator.next(), diskCache);
                 }
             };
         }
@@ -308,40 +364,34 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
         CacheableResource cacheableResource = queryCaches(slingPath, user);
         if (cacheableResource == null) {
             String storagePath = remoteStorageProvider.storagePath(slingPath);
-            RemoteResourceReference resource = remoteStorageProvider.findResource(slingPath, authenticationInfo);
+            RemoteResourceReference resource = findResource(slingPath, authenticationInfo);
             if (resource != null) {
                 if (storagePath.equals(resource.getPath())) {
                     if (resource.getType() == RemoteResourceReference.Type.FILE) {
                         cacheableResource = buildResource(slingPath, resource);
                     } else if (resource.getType() == RemoteResourceReference.Type.DIRECTORY) {
-                        Directory directory = remoteStorageProvider.getDirectory(resource, authenticationInfo);
+                        Directory directory = getDirectory(resource, authenticationInfo);
                         if (directory != null) {
                             cacheableResource = buildResource(authenticationInfo, slingPath, resource, directory);
                         }
                     }
                 } else if (resource.getType() == RemoteResourceReference.Type.DIRECTORY) {
-                    Directory directory = remoteStorageProvider.getDirectory(resource, authenticationInfo);
+                    Directory directory = getDirectory(resource, authenticationInfo);
                     if (directory != null && storagePath.startsWith(resource.getPath())) {
                         String relativePath = storagePath.substring(resource.getPath().length());
                         for (RemoteResourceReference r : directory.getChildren()) {
                             if (SLING_META_FILE.equals(r.getName())) {
-                                File metaFile = remoteStorageProvider.getFile(r, authenticationInfo);
-                                if (metaFile != null) {
-                                    AtomicReference<CacheableResource> resourceReference = new AtomicReference<>();
-                                    try {
-                                        jsonParser.parse((String path, Map<String, Object> properties) -> {
-                                                    if (relativePath.equals(path)) {
-                                                        resourceReference
-                                                                .set(new CacheableResource(remoteStorageProvider, r, slingPath,
-                                                                        properties));
-                                                    }
-                                                },
-                                                metaFile.getInputStream(),
-                                                JSON_PARSER_OPTIONS);
-                                        cacheableResource = resourceReference.get();
-                                    } catch (IOException e) {
-                                        LOGGER.error("Unable to parse file " + metaFile.getPath(), e);
+                                try {
+                                    Map<String, Map<String, Object>> metaResources = readMetaFile(r, authenticationInfo);
+                                    if (metaResources != null) {
+                                        Map<String, Object> properties = metaResources.get(relativePath);
+                                        if (properties != null) {
+                                            cacheableResource = new CacheableResource(remoteStorageProvider, r, slingPath, properties);
+                                        }
+                                        break;
                                     }
+                                } catch (IOException e) {
+                                    LOGGER.error("Unable to parse file " + r.getPath(), e);
                                     break;
                                 }
                             }
@@ -358,8 +408,7 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
             }
         }
         if (requiresAuthentication) {
-            if (accessMappings.containsKey(slingPath) &&
-                    accessMappings.get(slingPath).contains(user)) {
+            if (accessMappings.contains(slingPath, user)) {
                 return cacheableResource;
             }
             return null;
@@ -384,17 +433,12 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
             if (remoteResourceReference.getType() == RemoteResourceReference.Type.FILE &&
                     SLING_META_FILE.equals(remoteResourceReference.getName())) {
                 try {
-                    File file = remoteStorageProvider.getFile(remoteResourceReference, authenticationInfo);
-                    if (file != null) {
-                        jsonParser.parse(
-                                (String parsedPath, Map<String, Object> propertiesMap) -> {
-                                    if ("/".equals(parsedPath)) {
-                                        propertiesMap.forEach(properties::put);
-                                    }
-                                },
-                                file.getInputStream(),
-                                JSON_PARSER_OPTIONS
-                        );
+                    Map<String, Map<String, Object>> metaResources = readMetaFile(remoteResourceReference, authenticationInfo);
+                    if (metaResources != null) {
+                        Map<String, Object> metaProperties = metaResources.get("/");
+                        if (metaProperties != null) {
+                            properties.putAll(metaProperties);
+                        }
                         // special case - a meta-file augments the directory's properties
                         ShallowReference shallowReference = tree.getReference(remoteResourceReference.getPath());
                         if (shallowReference == null) {
@@ -412,13 +456,40 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
         return new CacheableResource(remoteStorageProvider, reference, path, properties);
     }
 
+    /**
+     * Returns the resources described by the meta-file identified by {@code reference}, keyed by their path relative to the meta-file's
+     * folder. A meta-file is fetched and parsed only once per version; the parsed resources are shared by all users that got a reference
+     * to it. The meta-file itself is kept in the disk cache, so that it is parsed again after a restart instead of being fetched.
+     *
+     * @return the resources described by the meta-file, or {@code null} if the file cannot be retrieved
+     */
+    @Nullable
+    private Map<String, Map<String, Object>> readMetaFile(@NotNull RemoteResourceReference reference,
+                                                          @NotNull Map<String, Object> authenticationInfo) throws IOException {
+        String version = SlingMetaFileCache.version(reference);
+        Map<String, Map<String, Object>> metaResources = metaFileCache.get(reference.getPath(), version);
+        if (metaResources == null) {
+            InputStream metaFile = diskCache.getInputStream(remoteStorageProvider, reference, authenticationInfo);
+            if (metaFile == null) {
+                return null;
+            }
+            Map<String, Map<String, Object>> parsed = new LinkedHashMap<>();
+            try (InputStream inputStream = metaFile) {
+                jsonParser.parse((String path, Map<String, Object> properties) -> parsed.put(path, Collections.unmodifiableMap(properties)),
+                        inputStream, JSON_PARSER_OPTIONS);
+            }
+            metaResources = Collections.unmodifiableMap(parsed);
+            metaFileCache.put(reference.getPath(), version, metaResources);
+        }
+        return metaResources;
+    }
+
     private CacheableResource queryCaches(@NotNull String slingPath, @NotNull String user) {
         if (requiresAuthentication && ANY.equals(user)) {
             throw new IllegalStateException(String.format("Cannot determine user for RemoteStorageProvider %s requiring " +
                     "authentication.", remoteStorageProvider));
         }
-        Set<String> allowed = accessMappings.get(slingPath);
-        if (allowed != null && allowed.contains(user)) {
+        if (accessMappings.contains(slingPath, user)) {
             return cache.get(slingPath);
         }
         return null;
@@ -440,18 +511,49 @@ public final class RemoteResourceProvider extends ResourceProvider<RemoteResourc
             throw new IllegalStateException(String.format("Cannot determine user for RemoteStorageProvider %s requiring " +
                     "authentication.", remoteStorageProvider));
         }
-        Set<String> allowed = accessMappings.computeIfAbsent(cacheableResource.getPath(), key -> new HashSet<>());
-        allowed.add(user);
+        accessMappings.add(cacheableResource.getPath(), user);
     }
 
     private boolean isNegativeHit(@NotNull String slingPath, @NotNull String user) {
-        Set<String> negativeHitsSet = negativeHits.get(slingPath);
-        return negativeHitsSet != null && negativeHitsSet.contains(user);
+        if (negativeHits.contains(slingPath, user)) {
+            metrics.negativeHit();
+            return true;
+        }
+        return false;
     }
 
     private void markNegativeHit(@NotNull String slingPath, @NotNull String user) {
-        Set<String> negativeHitsSet = negativeHits.computeIfAbsent(slingPath, key -> new HashSet<>());
-        negativeHitsSet.add(user);
+        negativeHits.add(slingPath, user);
+    }
+
+    @Nullable
+    private RemoteResourceReference findResource(@NotNull String slingPath, @NotNull Map<String, Object> authenticationInfo) {
+        long start = System.nanoTime();
+        try {
+            return remoteStorageProvider.findResource(slingPath, authenticationInfo);
+        } finally {
+            metrics.resourceFound(System.nanoTime() - start);
+        }
+    }
+
+    @Nullable
+    private File getFile(@NotNull RemoteResourceReference reference, @NotNull Map<String, Object> authenticationInfo) {
+        long start = System.nanoTime();
+        try {
+            return remoteStorageProvider.getFile(reference, authenticationInfo);
+        } finally {
+            metrics.fileRetrieved(System.nanoTime() - start);
+        }
+    }
+
+    @Nullable
+    private Directory getDirectory(@NotNull RemoteResourceReference reference, @NotNull Map<String, Object> authenticationInfo) {
+        long start = System.nanoTime();
+        try {
+            return remoteStorageProvider.getDirectory(reference, authenticationInfo);
+        } finally {
+            metrics.directoryRetrieved(System.nanoTime() - start);
+        }
     }
 
     private String extractUser(@NotNull Map<String, Object> authenticationInfo) {
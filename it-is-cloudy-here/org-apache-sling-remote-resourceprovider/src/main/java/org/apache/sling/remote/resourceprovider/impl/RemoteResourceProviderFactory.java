@@ -24,10 +24,12 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.commons.metrics.MetricsService;
 import org.apache.sling.commons.threads.ThreadPoolManager;
 import org.apache.sling.contentparser.api.ContentParser;
 import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
 import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.jetbrains.annotations.Nullable;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
@@ -40,7 +42,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.osgi.service.component.annotations.ReferenceCardinality.MULTIPLE;
+import static org.osgi.service.component.annotations.ReferenceCardinality.OPTIONAL;
 import static org.osgi.service.component.annotations.ReferencePolicy.DYNAMIC;
+import static org.osgi.service.component.annotations.ReferencePolicyOption.GREEDY;
 
 @Component(immediate = true)
 @Designate(ocd = RemoteResourceProviderFactoryConfiguration.class)
@@ -51,6 +55,7 @@ public class RemoteResourceProviderFactory {
     private BundleContext bundleContext;
     private ConcurrentHashMap<String, RegistrationMapping> mappings = new ConcurrentHashMap<>();
     private RemoteResourceProviderFactoryConfiguration configuration;
+    private static final String DISK_CACHE_DIRECTORY = "remote-resource-cache";
     private static final Set<String> RESOURCE_PROVIDER_ACCEPTED_AUTH_VALUES =
             Set.of(ResourceProvider.AUTHENTICATE_NO, ResourceProvider.AUTHENTICATE_LAZY, ResourceProvider.AUTHENTICATE_REQUIRED);
 
@@ -60,6 +65,9 @@ public class RemoteResourceProviderFactory {
     @Reference
     private ThreadPoolManager threadPoolManager;
 
+    @Reference(cardinality = OPTIONAL, policyOption = GREEDY)
+    private MetricsService metricsService;
+
     @Reference(cardinality = MULTIPLE,
                policy = DYNAMIC)
     private synchronized void bindRemoteStorageProvider(RemoteStorageProvider remoteStorageProvider, Map<String, Object> properties) {
@@ -105,6 +113,9 @@ public class RemoteResourceProviderFactory {
     @Activate
     private void activate(RemoteResourceProviderFactoryConfiguration configuration, ComponentContext componentContext) {
         this.configuration = configuration;
+        if (metricsService == null) {
+            metricsService = MetricsService.NOOP;
+        }
         bundleContext = componentContext.getBundleContext();
         for (RegistrationMapping mapping : mappings.values()) {
             mapping.registerResourceProviderIfNeeded(bundleContext);
@@ -148,10 +159,17 @@ public class RemoteResourceProviderFactory {
                 int cacheSize = configuration.cacheSize() >= 100 ? configuration.cacheSize() : 0;
                 int lastAccessedExpirationTime = configuration.lastAccessedExpirationTime() >= 0 ?
                         configuration.lastAccessedExpirationTime() : 0;
+                RemoteResourceProviderMetrics metrics = new RemoteResourceProviderMetrics(metricsService,
+                        (String) resourceProviderRegistrationProperties.get(ResourceProvider.PROPERTY_ROOT));
+                DiskResourceCache diskCache = new DiskResourceCache(getDiskCacheDirectory(bundleContext),
+                        configuration.diskCacheSize() * 1024L * 1024L, metrics);
                 resourceProvider = new RemoteResourceProvider(threadPoolManager, jsonParser, new InMemoryResourceCache(cacheSize,
-                        lastAccessedExpirationTime),
-                        remoteStorageProvider, !ResourceProvider.AUTHENTICATE_NO
-                        .equals(resourceProviderRegistrationProperties.get(ResourceProvider.PROPERTY_AUTHENTICATE)));
+                        lastAccessedExpirationTime, metrics.resourceCacheStats()), new SlingMetaFileCache(cacheSize,
+                        lastAccessedExpirationTime, metrics.metaFileCacheStats()), diskCache, metrics, remoteStorageProvider,
+                        !ResourceProvider.AUTHENTICATE_NO
+                                .equals(resourceProviderRegistrationProperties.get(ResourceProvider.PROPERTY_AUTHENTICATE)),
+                        configuration.prefetchParallelism(), configuration.prefetchDepth(), configuration.negativeHitsCacheSize(),
+                        configuration.eventWindow(), configuration.eventBatchSize());
                 resourceProviderServiceRegistration = bundleContext.registerService(ResourceProvider.class,
                         resourceProvider,
                         resourceProviderRegistrationProperties);
@@ -161,6 +179,18 @@ public class RemoteResourceProviderFactory {
             }
         }
 
+        @Nullable
+        private java.io.File getDiskCacheDirectory(BundleContext bundleContext) {
+            java.io.File directory = StringUtils.isNotEmpty(configuration.diskCachePath()) ?
+                    new java.io.File(configuration.diskCachePath()) : bundleContext.getDataFile(DISK_CACHE_DIRECTORY);
+            if (directory == null) {
+                return null;
+            }
+            String root = (String) resourceProviderRegistrationProperties.get(ResourceProvider.PROPERTY_ROOT);
+            // a readable name of the root could be shared by another root, e.g. /content/a and /content_a
+            return new java.io.File(directory, DiskResourceCache.name(root));
+        }
+
         void unregisterResourceProvider() {
             if (resourceProviderServiceRegistration != null) {
                 try {
@@ -42,4 +42,55 @@ public @interface RemoteResourceProviderFactoryConfiguration {
     )
     int lastAccessedExpirationTime() default 5;
 
+    @AttributeDefinition(
+            name = "Negative Hits Cache Size",
+            description = "The number of paths, counted once per user, that each registered Resource Provider remembers as not " +
+                    "existing remotely. The remembered paths are forgotten all at once when the size is exceeded. 0 or a negative " +
+                    "value disable the cache."
+    )
+    int negativeHitsCacheSize() default 100000;
+
+    @AttributeDefinition(
+            name = "Prefetch Parallelism",
+            description = "The maximum number of children of a remote folder that are fetched in parallel when the folder is listed."
+    )
+    int prefetchParallelism() default 8;
+
+    @AttributeDefinition(
+            name = "Prefetch Depth",
+            description = "The number of levels below a listed remote folder that are fetched ahead of traversal. 1 fetches the folder's " +
+                    "children in parallel, 2 additionally fetches their children asynchronously. 0 or a negative value disable the " +
+                    "prefetch and fetch the children sequentially."
+    )
+    int prefetchDepth() default 1;
+
+    @AttributeDefinition(
+            name = "Event Window",
+            description = "The number of milliseconds during which remote change events are collected before the affected resources are " +
+                    "removed from the caches in a single batch. Paths reported multiple times, or below another reported path, are " +
+                    "only invalidated once. 0 or a negative value invalidate the resources of each event directly."
+    )
+    long eventWindow() default 500;
+
+    @AttributeDefinition(
+            name = "Event Batch Size",
+            description = "The maximum number of distinct paths in a batch of remote change events. When a batch is full, it is applied " +
+                    "by the thread reporting the events, which slows down the event source."
+    )
+    int eventBatchSize() default 10000;
+
+    @AttributeDefinition(
+            name = "Disk Cache Size",
+            description = "The maximum number of megabytes of remote file contents to be stored on disk by each registered Resource " +
+                    "Provider. The least recently used files are removed first. 0 or a negative value disable the disk cache."
+    )
+    int diskCacheSize() default 512;
+
+    @AttributeDefinition(
+            name = "Disk Cache Path",
+            description = "The directory in which the disk cache stores the remote file contents, in a sub-directory per Resource " +
+                    "Provider root. Defaults to the bundle's data area."
+    )
+    String diskCachePath() default "";
+
 }
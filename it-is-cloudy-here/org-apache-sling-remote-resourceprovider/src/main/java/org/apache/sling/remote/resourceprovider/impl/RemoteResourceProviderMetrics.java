@@ -0,0 +1,175 @@
+/*~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ ~ Licensed to the Apache Software Foundation (ASF) under one
+ ~ or more contributor license agreements.  See the NOTICE file
+ ~ distributed with this work for additional information
+ ~ regarding copyright ownership.  The ASF licenses this file
+ ~ to you under the Apache License, Version 2.0 (the
+ ~ "License"); you may not use this file except in compliance
+ ~ with the License.  You may obtain a copy of the License at
+ ~
+ ~   http://www.apache.org/licenses/LICENSE-2.0
+ ~
+ ~ Unless required by applicable law or agreed to in writing,
+ ~ software distributed under the License is distributed on an
+ ~ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ ~ KIND, either express or implied.  See the License for the
+ ~ specific language governing permissions and limitations
+ ~ under the License.
+ ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~*/
+package org.apache.sling.remote.resourceprovider.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.commons.metrics.Meter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
+import org.jetbrains.annotations.NotNull;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+/**
+ * Collects the metrics of a single {@link RemoteResourceProvider}: the hits, misses and evictions of its caches, the negative hits and
+ * the time spent calling the {@link org.apache.sling.remote.resourceprovider.RemoteStorageProvider}.
+ * <p>
+ * All metrics are reported to the {@link MetricsService} prefixed with {@code RemoteResourceProvider-<root>-}. The in-memory caches
+ * report through the {@link StatsCounter} returned by {@link #resourceCacheStats()} and {@link #metaFileCacheStats()}, so the hit ratio of
+ * a cache is the rate of its {@code Hits} meter divided by the sum of the rates of its {@code Hits} and {@code Misses} meters.
+ */
+class RemoteResourceProviderMetrics {
+
+    private static final String PREFIX = "RemoteResourceProvider-";
+
+    private final StatsCounter resourceCacheStats;
+    private final StatsCounter metaFileCacheStats;
+    private final Meter diskCacheHits;
+    private final Meter diskCacheMisses;
+    private final Meter diskCacheEvictions;
+    private final Meter negativeHits;
+    private final Timer findResourceTime;
+    private final Timer getFileTime;
+    private final Timer getDirectoryTime;
+
+    /**
+     * @param metricsService the metrics service to report to
+     * @param root           the root path of the resource provider
+     */
+    RemoteResourceProviderMetrics(@NotNull MetricsService metricsService, @NotNull String root) {
+        String prefix = PREFIX + root + '-';
+        resourceCacheStats = new MetricsStatsCounter(metricsService, prefix + "resourceCache");
+        metaFileCacheStats = new MetricsStatsCounter(metricsService, prefix + "metaFileCache");
+        diskCacheHits = metricsService.meter(prefix + "diskCacheHits");
+        diskCacheMisses = metricsService.meter(prefix + "diskCacheMisses");
+        diskCacheEvictions = metricsService.meter(prefix + "diskCacheEvictions");
+        negativeHits = metricsService.meter(prefix + "negativeHits");
+        findResourceTime = metricsService.timer(prefix + "findResourceTime");
+        getFileTime = metricsService.timer(prefix + "getFileTime");
+        getDirectoryTime = metricsService.timer(prefix + "getDirectoryTime");
+    }
+
+    @NotNull
+    StatsCounter resourceCacheStats() {
+        return resourceCacheStats;
+    }
+
+    @NotNull
+    StatsCounter metaFileCacheStats() {
+        return metaFileCacheStats;
+    }
+
+    void diskCacheHit() {
+        diskCacheHits.mark();
+    }
+
+    void diskCacheMiss() {
+        diskCacheMisses.mark();
+    }
+
+    void diskCacheEviction() {
+        diskCacheEvictions.mark();
+    }
+
+    void negativeHit() {
+        negativeHits.mark();
+    }
+
+    /**
+     * Records a call to {@link org.apache.sling.remote.resourceprovider.RemoteStorageProvider#findResource}.
+     */
+    void resourceFound(long nanos) {
+        findResourceTime.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a call to {@link org.apache.sling.remote.resourceprovider.RemoteStorageProvider#getFile}.
+     */
+    void fileRetrieved(long nanos) {
+        getFileTime.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a call to {@link org.apache.sling.remote.resourceprovider.RemoteStorageProvider#getDirectory}.
+     */
+    void directoryRetrieved(long nanos) {
+        getDirectoryTime.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reports the statistics of a Caffeine cache as {@code Hits}, {@code Misses} and {@code Evictions} meters, while keeping the
+     * totals for {@link com.github.benmanes.caffeine.cache.Cache#stats()}.
+     */
+    private static class MetricsStatsCounter implements StatsCounter {
+
+        private final StatsCounter delegate = new ConcurrentStatsCounter();
+        private final Meter hits;
+        private final Meter misses;
+        private final Meter evictions;
+
+        MetricsStatsCounter(MetricsService metricsService, String prefix) {
+            hits = metricsService.meter(prefix + "Hits");
+            misses = metricsService.meter(prefix + "Misses");
+            evictions = metricsService.meter(prefix + "Evictions");
+        }
+
+        @Override
+        public void recordHits(int count) {
+            delegate.recordHits(count);
+            hits.mark(count);
+        }
+
+        @Override
+        public void recordMisses(int count) {
+            delegate.recordMisses(count);
+            misses.mark(count);
+        }
+
+        @Override
+        public void recordLoadSuccess(long loadTime) {
+            delegate.recordLoadSuccess(loadTime);
+        }
+
+        @Override
+        public void recordLoadFailure(long loadTime) {
+            delegate.recordLoadFailure(loadTime);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void recordEviction() {
+            delegate.recordEviction();
+            evictions.mark();
+        }
+
+        @Override
+        public void recordEviction(int weight) {
+            delegate.recordEviction(weight);
+            evictions.mark();
+        }
+
+        @Override
+        public CacheStats snapshot() {
+            return delegate.snapshot();
+        }
+    }
+}
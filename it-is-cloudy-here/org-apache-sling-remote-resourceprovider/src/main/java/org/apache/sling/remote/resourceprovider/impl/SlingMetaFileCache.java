@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.remote.resourceprovider.RemoteResourceReference;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+/**
+ * Caches the parsed content of {@link org.apache.sling.remote.resourceprovider.RemoteStorageProvider#SLING_META_FILE}s, keyed by their
+ * storage path. Each entry is stored together with the version of the meta-file it was parsed from, so that a reference to a newer
+ * version of the same file is not answered from the cache.
+ */
+class SlingMetaFileCache {
+
+    private final Cache<String, ParsedMetaFile> internalCache;
+
+    SlingMetaFileCache(int size, int lruMinutesExpiration, @NotNull StatsCounter statsCounter) {
+        internalCache = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterAccess(lruMinutesExpiration, TimeUnit.MINUTES)
+                .recordStats(() -> statsCounter)
+                .build();
+    }
+
+    /**
+     * Returns the parsed resources of the meta-file stored at {@code storagePath}, if they were parsed from the given {@code version}.
+     *
+     * @param storagePath the storage path of the meta-file
+     * @param version     the version of the meta-file, see {@link #version(RemoteResourceReference)}
+     * @return the resource properties by the resource path relative to the meta-file's folder, or {@code null}
+     */
+    @Nullable
+    Map<String, Map<String, Object>> get(@NotNull String storagePath, @NotNull String version) {
+        ParsedMetaFile parsedMetaFile = internalCache.getIfPresent(storagePath);
+        if (parsedMetaFile != null && parsedMetaFile.version.equals(version)) {
+            return parsedMetaFile.resources;
+        }
+        return null;
+    }
+
+    void put(@NotNull String storagePath, @NotNull String version, @NotNull Map<String, Map<String, Object>> resources) {
+        internalCache.put(storagePath, new ParsedMetaFile(version, resources));
+    }
+
+    void remove(@NotNull String storagePath) {
+        internalCache.invalidate(storagePath);
+    }
+
+    void clear() {
+        internalCache.invalidateAll();
+        internalCache.cleanUp();
+    }
+
+    /**
+     * Returns the version of the file identified by the {@code reference}: its revision, if the remote storage provides one, or its
+     * last modified date and size otherwise.
+     *
+     * @param reference the reference
+     * @return the version
+     */
+    @NotNull
+    static String version(@NotNull RemoteResourceReference reference) {
+        String revision = reference.getRevision();
+        if (revision != null) {
+            return revision;
+        }
+        return reference.getLastModified() + ":" + reference.getSize();
+    }
+
+    private static class ParsedMetaFile {
+        private final String version;
+        private final Map<String, Map<String, Object>> resources;
+
+        ParsedMetaFile(String version, Map<String, Map<String, Object>> resources) {
+            this.version = version;
+            this.resources = resources;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl.filesystem;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import org.apache.sling.remote.resourceprovider.Directory;
+import org.apache.sling.remote.resourceprovider.RemoteResourceReference;
+import org.jetbrains.annotations.NotNull;
+
+public class FileSystemDirectory extends FileSystemResourceReference implements Directory {
+
+    private final List<RemoteResourceReference> children;
+
+    FileSystemDirectory(FileSystemStorageProvider remoteStorageProvider, String path, Path file, BasicFileAttributes attributes,
+                        List<RemoteResourceReference> children) {
+        super(remoteStorageProvider, path, file, attributes);
+        this.children = List.copyOf(children);
+    }
+
+    @Override
+    public @NotNull List<RemoteResourceReference> getChildren() {
+        return children;
+    }
+}
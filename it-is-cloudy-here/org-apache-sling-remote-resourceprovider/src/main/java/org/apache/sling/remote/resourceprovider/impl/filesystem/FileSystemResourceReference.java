@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl.filesystem;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.sling.remote.resourceprovider.AbstractRemoteResourceReference;
+import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class FileSystemResourceReference extends AbstractRemoteResourceReference {
+
+    private final FileSystemStorageProvider remoteStorageProvider;
+    private final String path;
+    private final Path file;
+    private final Type type;
+    private final long created;
+    private final long lastModified;
+    private final long size;
+
+    FileSystemResourceReference(FileSystemStorageProvider remoteStorageProvider, String path, Path file, BasicFileAttributes attributes) {
+        this.remoteStorageProvider = remoteStorageProvider;
+        this.path = path;
+        this.file = file;
+        type = attributes.isDirectory() ? Type.DIRECTORY : Type.FILE;
+        created = attributes.creationTime().toMillis();
+        lastModified = attributes.lastModifiedTime().toMillis();
+        size = type == Type.FILE ? attributes.size() : 0;
+    }
+
+    @Override
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public RemoteStorageProvider getProvider() {
+        return remoteStorageProvider;
+    }
+
+    @Override
+    public @NotNull String getPath() {
+        return path;
+    }
+
+    @Override
+    public long getCreated() {
+        return created;
+    }
+
+    @Override
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public @Nullable String getRevision() {
+        return null;
+    }
+
+    Path getFile() {
+        return file;
+    }
+}
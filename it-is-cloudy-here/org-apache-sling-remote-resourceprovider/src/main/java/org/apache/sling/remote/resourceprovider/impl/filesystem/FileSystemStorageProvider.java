@@ -0,0 +1,390 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl.filesystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.remote.resourceprovider.Directory;
+import org.apache.sling.remote.resourceprovider.File;
+import org.apache.sling.remote.resourceprovider.RemoteResourceEvent;
+import org.apache.sling.remote.resourceprovider.RemoteResourceEventHandler;
+import org.apache.sling.remote.resourceprovider.RemoteResourceEventType;
+import org.apache.sling.remote.resourceprovider.RemoteResourceReference;
+import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@code FileSystemStorageProvider} provides the files and directories below a local or network mounted directory. Changes to the
+ * directory are observed with a {@link WatchService} and reported to the {@link RemoteResourceEventHandler}.
+ * <p>
+ * Each lookup, listing and download can be delayed by a configurable latency and can fail with a configurable probability, so that the
+ * provider can stand in for a remote storage in load tests that have to run offline and reproducibly.
+ */
+@Component(
+        service = RemoteStorageProvider.class,
+        configurationPolicy = ConfigurationPolicy.REQUIRE
+)
+@Designate(
+        ocd = FileSystemStorageProviderConfiguration.class,
+        factory = true
+)
+public class FileSystemStorageProvider implements RemoteStorageProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemStorageProvider.class);
+
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+    private org.apache.sling.api.resource.path.Path slingMountPoint;
+    private Path root;
+    private boolean watch;
+    private long latency;
+    private long latencyJitter;
+    private double failureRate;
+
+    private RemoteResourceEventHandler eventHandler;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    @Activate
+    private void activate(FileSystemStorageProviderConfiguration configuration) {
+        root = Paths.get(configuration.remote_storage_provider_root()).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new IllegalStateException(String.format("%s is not a directory.", root));
+        }
+        slingMountPoint = new org.apache.sling.api.resource.path.Path(configuration.resource_provider_root());
+        watch = configuration.watch();
+        latency = Math.max(0, configuration.latency());
+        latencyJitter = Math.max(0, configuration.latencyJitter());
+        failureRate = configuration.failureRate();
+        LOGGER.info("Initialised file system provider for {}.", root);
+    }
+
+    @Deactivate
+    private void deactivate() {
+        synchronized (this) {
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to close the watch service of {}.", root, e);
+                }
+                watchThread.interrupt();
+                watchService = null;
+                watchThread = null;
+            }
+        }
+    }
+
+    @Override
+    public @Nullable RemoteResourceReference findResource(@NotNull String slingPath, @Nullable Map<String, Object> authenticationInfo) {
+        String storagePath = storagePath(slingPath);
+        if (storagePath == null) {
+            return null;
+        }
+        simulate("lookup", storagePath);
+        for (String path = storagePath; path != null; path = ResourceUtil.getParent(path)) {
+            Path file = resolve(path);
+            if (file == null) {
+                return null;
+            }
+            // otherwise continue with the closest existing ancestor, which may provide the resource from a meta-file
+            if (Files.exists(file)) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    return new FileSystemResourceReference(this, path, file, attributes);
+                } catch (NoSuchFileException e) {
+                    LOGGER.debug("{} was removed during the lookup of {}.", file, slingPath);
+                } catch (IOException e) {
+                    LOGGER.error(String.format("Unable to read the attributes of %s.", file), e);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable File getFile(@NotNull RemoteResourceReference reference, @Nullable Map<String, Object> authenticationInfo) {
+        if (reference instanceof FileSystemResourceReference && reference.getType() == RemoteResourceReference.Type.FILE) {
+            FileSystemResourceReference fileSystemReference = (FileSystemResourceReference) reference;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(fileSystemReference.getFile(), BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    return new FileSystemFile(this, reference.getPath(), fileSystemReference.getFile(), attributes);
+                }
+            } catch (NoSuchFileException e) {
+                LOGGER.debug("File {} was removed.", reference.getPath());
+            } catch (IOException e) {
+                LOGGER.error(String.format("Unable to read the attributes of %s.", reference.getPath()), e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable Directory getDirectory(@NotNull RemoteResourceReference reference, @Nullable Map<String, Object> authenticationInfo) {
+        if (reference instanceof FileSystemResourceReference && reference.getType() == RemoteResourceReference.Type.DIRECTORY) {
+            simulate("listing", reference.getPath());
+            Path directory = ((FileSystemResourceReference) reference).getFile();
+            List<RemoteResourceReference> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                String parentPath = "/".equals(reference.getPath()) ? "" : reference.getPath();
+                for (Path child : stream) {
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                        children.add(new FileSystemResourceReference(this, parentPath + "/" + child.getFileName(), child, attributes));
+                    } catch (NoSuchFileException e) {
+                        LOGGER.debug("{} was removed while listing {}.", child, reference.getPath());
+                    }
+                }
+                children.sort(Comparator.comparing(RemoteResourceReference::getPath));
+                return new FileSystemDirectory(this, reference.getPath(), directory, Files.readAttributes(directory,
+                        BasicFileAttributes.class), children);
+            } catch (NoSuchFileException e) {
+                LOGGER.debug("Directory {} was removed.", reference.getPath());
+            } catch (IOException e) {
+                LOGGER.error(String.format("Unable to list directory %s.", reference.getPath()), e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String slingPath(@NotNull String storagePath) {
+        if (storagePath.startsWith("/")) {
+            return ResourceUtil.normalize(slingMountPoint.getPath() + storagePath);
+        }
+        return null;
+    }
+
+    @Override
+    public String storagePath(@NotNull String slingPath) {
+        if (slingMountPoint.matches(slingPath)) {
+            return ResourceUtil.normalize("/" + slingPath.substring(slingMountPoint.getPath().length()));
+        }
+        return null;
+    }
+
+    @Override
+    public void registerEventHandler(RemoteResourceEventHandler handler) {
+        synchronized (this) {
+            if (eventHandler == null) {
+                eventHandler = handler;
+                if (watch) {
+                    try {
+                        watchService = root.getFileSystem().newWatchService();
+                        watchTree(watchService, root);
+                    } catch (IOException e) {
+                        LOGGER.error(String.format("Unable to watch %s; changes will not be reported.", root), e);
+                        return;
+                    }
+                    WatchService service = watchService;
+                    watchThread = new Thread(() -> processEvents(service, handler), getClass().getName() + "-watch");
+                    watchThread.setDaemon(true);
+                    watchThread.start();
+                }
+            }
+        }
+    }
+
+    /**
+     * Delays the current thread by the configured latency and fails with the configured probability.
+     *
+     * @param operation   the name of the simulated remote operation, used in the failure message
+     * @param storagePath the storage path the operation is executed on
+     * @throws IOException if the operation is chosen to fail
+     */
+    void simulateRemoteCall(@NotNull String operation, @NotNull String storagePath) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latency + (latencyJitter > 0 ? random.nextLong(latencyJitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(String.format("Interrupted during %s of %s.", operation, storagePath), e);
+            }
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            throw new IOException(String.format("Injected failure during %s of %s.", operation, storagePath));
+        }
+    }
+
+    private void simulate(@NotNull String operation, @NotNull String storagePath) {
+        try {
+            simulateRemoteCall(operation, storagePath);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Resolves a storage path to a file below the root directory. Paths escaping the root directory are not resolved.
+     */
+    @Nullable
+    private Path resolve(@NotNull String storagePath) {
+        Path file = root.resolve(storagePath.substring(1)).normalize();
+        return file.startsWith(root) ? file : null;
+    }
+
+    @NotNull
+    private String toStoragePath(@NotNull Path file) {
+        StringBuilder storagePath = new StringBuilder();
+        for (Path segment : root.relativize(file)) {
+            if (!segment.toString().isEmpty()) {
+                storagePath.append('/').append(segment);
+            }
+        }
+        return storagePath.length() == 0 ? "/" : storagePath.toString();
+    }
+
+    private void watchTree(@NotNull WatchService service, @NotNull Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LOGGER.debug("Unable to watch {}.", file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void processEvents(@NotNull WatchService service, @NotNull RemoteResourceEventHandler handler) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                TreeSet<String> changedPaths = new TreeSet<>();
+                TreeSet<String> deletedPaths = new TreeSet<>();
+                // drain all pending keys, so that bulk changes are reported in as few events as possible
+                WatchKey key = service.take();
+                while (key != null) {
+                    Path directory = watchedDirectories.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                            changedPaths.add("/");
+                            continue;
+                        }
+                        Path file = directory.resolve((Path) event.context());
+                        String storagePath = toStoragePath(file);
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                            deletedPaths.add(storagePath);
+                        } else {
+                            changedPaths.add(storagePath);
+                            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE &&
+                                    Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                                watchNewDirectory(service, file);
+                            }
+                        }
+                        if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                            // the listing of the parent changed as well
+                            changedPaths.add(toStoragePath(directory));
+                        }
+                    }
+                    if (!key.reset()) {
+                        watchedDirectories.remove(key);
+                    }
+                    key = service.poll();
+                }
+                if (!changedPaths.isEmpty()) {
+                    handler.handleEvent(new FileSystemChangeEvent(RemoteResourceEventType.CHANGED, changedPaths));
+                }
+                if (!deletedPaths.isEmpty()) {
+                    handler.handleEvent(new FileSystemChangeEvent(RemoteResourceEventType.DELETED, deletedPaths));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // deactivated
+        }
+        LOGGER.debug("Stopped watching {}.", root);
+    }
+
+    private void watchNewDirectory(@NotNull WatchService service, @NotNull Path directory) {
+        try {
+            watchTree(service, directory);
+        } catch (IOException | ClosedWatchServiceException e) {
+            LOGGER.debug("Unable to watch new directory {}.", directory, e);
+        }
+    }
+
+    static final class FileSystemChangeEvent implements RemoteResourceEvent {
+
+        private final RemoteResourceEventType type;
+        private final TreeSet<String> paths;
+
+        FileSystemChangeEvent(RemoteResourceEventType type, TreeSet<String> paths) {
+            this.type = type;
+            this.paths = new TreeSet<>(paths);
+        }
+
+        @Override
+        public RemoteResourceEventType getType() {
+            return type;
+        }
+
+        @Override
+        public Set<String> getPaths() {
+            return paths;
+        }
+
+        @Override
+        public String toString() {
+            return FileSystemChangeEvent.class.getName() + "{type=" + type.toString() + "; paths=" + paths + "}";
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl.filesystem;
+
+import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
+
+@ObjectClassDefinition(
+        name = "File System Remote Storage Provider Configuration",
+        description = "The File System Remote Storage Provider maps a local or network mounted directory in the Sling Resource tree. It " +
+                "can delay and fail remote calls on purpose, to test the Remote Resource Provider under the conditions of a remote storage."
+)
+@interface FileSystemStorageProviderConfiguration {
+
+    @AttributeDefinition(
+            name = "Resource Provider Root",
+            description = "The root of the Resource Provider where the directory's files will be mapped into the Sling Resource tree."
+    )
+    String resource_provider_root();
+
+    @AttributeDefinition(
+            name = "Remote Storage Provider Root",
+            description = "The absolute path of the directory from which directories and files will be used to build the Sling resource " +
+                    "tree provided at the path indicated by resource.provider.root."
+    )
+    String remote_storage_provider_root();
+
+    @AttributeDefinition(
+            description = "The file system does not authenticate users; all users have access to all files.",
+            options = {
+                    @Option(value = ResourceProvider.AUTHENTICATE_NO, label = "No"),
+            }
+    )
+    String resource_provider_authenticate() default ResourceProvider.AUTHENTICATE_NO;
+
+    @AttributeDefinition(
+            name = "Watch",
+            description = "If enabled, changes to the directory are observed and reported as remote resource events."
+    )
+    boolean watch() default true;
+
+    @AttributeDefinition(
+            name = "Latency",
+            description = "The number of milliseconds by which each lookup, listing and download is delayed."
+    )
+    long latency() default 0;
+
+    @AttributeDefinition(
+            name = "Latency Jitter",
+            description = "The maximum number of milliseconds that are randomly added to the latency of each call."
+    )
+    long latencyJitter() default 0;
+
+    @AttributeDefinition(
+            name = "Failure Rate",
+            description = "The probability, between 0 and 1, with which a lookup, listing or download fails with an I/O error."
+    )
+    double failureRate() default 0;
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl.paths;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@code PathTrie} maps absolute paths to sets of values, e.g. the users a path was resolved for, in a tree with one node per path
+ * segment. Lookups, additions and the removal of a path or of all paths below it take time proportional to the depth of the path,
+ * independently of the number of paths stored.
+ * <p>
+ * Lookups don't lock. Additions only lock out removals, which also remove the nodes that became empty. The number of stored values is
+ * bounded: when an addition exceeds the maximum, the trie is cleared.
+ */
+public class PathTrie {
+
+    private final int maxEntries;
+    private final Node root = new Node();
+    private final AtomicInteger entries = new AtomicInteger();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param maxEntries the maximum number of path-value pairs to store; 0 or a negative value disable the trie
+     */
+    public PathTrie(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Adds the {@code value} to the values of {@code path}.
+     *
+     * @return {@code true} if the value was added, {@code false} if it was already present or the trie is disabled
+     */
+    public boolean add(@NotNull String path, @NotNull String value) {
+        if (maxEntries <= 0) {
+            return false;
+        }
+        boolean added;
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int start = 1;
+            while (start < path.length()) {
+                int end = nextSeparator(path, start);
+                node = node.children.computeIfAbsent(path.substring(start, end), name -> new Node());
+                start = end + 1;
+            }
+            added = node.values.add(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (added && entries.incrementAndGet() > maxEntries) {
+            clear();
+        }
+        return added;
+    }
+
+    /**
+     * Checks if {@code value} was added for {@code path}.
+     */
+    public boolean contains(@NotNull String path, @NotNull String value) {
+        Node node = find(path);
+        return node != null && node.values.contains(value);
+    }
+
+    /**
+     * Removes all values of {@code path}. The values of the paths below {@code path} are kept.
+     */
+    public void remove(@NotNull String path) {
+        lock.writeLock().lock();
+        try {
+            Node node = find(path);
+            if (node != null) {
+                entries.addAndGet(-node.values.size());
+                node.values.clear();
+                prune(path);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the values of all paths below {@code path}. The values of {@code path} itself are kept.
+     */
+    public void removeDescendants(@NotNull String path) {
+        lock.writeLock().lock();
+        try {
+            Node node = find(path);
+            if (node != null) {
+                for (Node child : node.children.values()) {
+                    entries.addAndGet(-child.count());
+                }
+                node.children.clear();
+                prune(path);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            root.values.clear();
+            root.children.clear();
+            entries.set(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of path-value pairs stored in the trie.
+     */
+    public int size() {
+        return entries.get();
+    }
+
+    @Nullable
+    private Node find(@NotNull String path) {
+        Node node = root;
+        int start = 1;
+        while (node != null && start < path.length()) {
+            int end = nextSeparator(path, start);
+            node = node.children.get(path.substring(start, end));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Removes the empty nodes on {@code path}, starting at its last segment. Has to be called with the write lock held.
+     */
+    private void prune(@NotNull String path) {
+        int end = path.length();
+        while (end > 1) {
+            int start = path.lastIndexOf('/', end - 1);
+            Node parent = find(path.substring(0, Math.max(start, 1)));
+            String name = path.substring(start + 1, end);
+            Node node = parent == null ? null : parent.children.get(name);
+            if (node == null || !node.values.isEmpty() || !node.children.isEmpty()) {
+                return;
+            }
+            parent.children.remove(name);
+            end = start;
+        }
+    }
+
+    private static int nextSeparator(@NotNull String path, int start) {
+        int end = path.indexOf('/', start);
+        return end < 0 ? path.length() : end;
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private final Set<String> values = ConcurrentHashMap.newKeySet();
+
+        int count() {
+            int count = values.size();
+            for (Node child : children.values()) {
+                count += child.count();
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.sling.commons.metrics.Meter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
+import org.apache.sling.remote.resourceprovider.AbstractRemoteResourceReference;
+import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DiskResourceCacheTest {
+
+    private static final RemoteResourceProviderMetrics METRICS = new RemoteResourceProviderMetrics(MetricsService.NOOP, "/");
+
+    @TempDir
+    File directory;
+
+    @Test
+    void testHitForSameVersion() throws IOException {
+        DiskResourceCache cache = new DiskResourceCache(directory, 1024, METRICS);
+        assertEquals("content", read(cache.put(new Reference("/a.txt", "1"), stream("content"))));
+
+        assertEquals("content", read(cache.get(new Reference("/a.txt", "1"))));
+        assertNull(cache.get(new Reference("/b.txt", "1")));
+    }
+
+    @Test
+    void testMissForOtherVersion() throws IOException {
+        DiskResourceCache cache = new DiskResourceCache(directory, 1024, METRICS);
+        read(cache.put(new Reference("/a.txt", "1"), stream("content")));
+
+        assertNull(cache.get(new Reference("/a.txt", "2")));
+        // the outdated file was dropped
+        assertNull(cache.get(new Reference("/a.txt", "1")));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEvicted() throws IOException {
+        DiskResourceCache cache = new DiskResourceCache(directory, 10, METRICS);
+        read(cache.put(new Reference("/a.txt", "1"), stream("aaaa")));
+        read(cache.put(new Reference("/b.txt", "1"), stream("bbbb")));
+        read(cache.get(new Reference("/a.txt", "1")));
+        read(cache.put(new Reference("/c.txt", "1"), stream("cccc")));
+
+        assertNotNull(cache.get(new Reference("/a.txt", "1")));
+        assertNull(cache.get(new Reference("/b.txt", "1")));
+        assertNotNull(cache.get(new Reference("/c.txt", "1")));
+        assertEquals(8, cache.getSize());
+    }
+
+    @Test
+    void testNamesOfSimilarPathsDiffer() {
+        assertNotEquals(DiskResourceCache.name("/content/a"), DiskResourceCache.name("/content_a"));
+        assertEquals(DiskResourceCache.name("/content/a"), DiskResourceCache.name("/content/a"));
+    }
+
+    @Test
+    void testFileLargerThanCacheStreamed() throws IOException {
+        DiskResourceCache cache = new DiskResourceCache(directory, 4, METRICS);
+        assertEquals("content", read(cache.put(new Reference("/a.txt", "1"), stream("content"))));
+        assertNull(cache.get(new Reference("/a.txt", "1")));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testEntriesSurviveRestart() throws IOException {
+        DiskResourceCache cache = new DiskResourceCache(directory, 1024, METRICS);
+        read(cache.put(new Reference("/a.txt", "1"), stream("content")));
+        read(cache.put(new Reference("/b.txt", "1"), stream("other")));
+        cache.remove("/b.txt");
+
+        DiskResourceCache restarted = new DiskResourceCache(directory, 1024, METRICS);
+        assertEquals("content", read(restarted.get(new Reference("/a.txt", "1"))));
+        assertNull(restarted.get(new Reference("/b.txt", "1")));
+        assertEquals(7, restarted.getSize());
+    }
+
+    @Test
+    void testDisabled() throws IOException {
+        DiskResourceCache cache = new DiskResourceCache(null, 1024, METRICS);
+        assertEquals("content", read(cache.put(new Reference("/a.txt", "1"), stream("content"))));
+        assertNull(cache.get(new Reference("/a.txt", "1")));
+    }
+
+    @Test
+    void testMetricsReported() throws IOException {
+        MetricsService metricsService = mock(MetricsService.class);
+        Meter hits = mock(Meter.class);
+        Meter misses = mock(Meter.class);
+        Meter evictions = mock(Meter.class);
+        when(metricsService.meter(anyString())).thenReturn(mock(Meter.class));
+        when(metricsService.timer(anyString())).thenReturn(mock(Timer.class));
+        when(metricsService.meter("RemoteResourceProvider-/content-diskCacheHits")).thenReturn(hits);
+        when(metricsService.meter("RemoteResourceProvider-/content-diskCacheMisses")).thenReturn(misses);
+        when(metricsService.meter("RemoteResourceProvider-/content-diskCacheEvictions")).thenReturn(evictions);
+
+        DiskResourceCache cache = new DiskResourceCache(directory, 4, new RemoteResourceProviderMetrics(metricsService, "/content"));
+        read(cache.put(new Reference("/a.txt", "1"), stream("aaaa")));
+        read(cache.get(new Reference("/a.txt", "1")));
+        assertNull(cache.get(new Reference("/b.txt", "1")));
+        read(cache.put(new Reference("/b.txt", "1"), stream("bbbb")));
+
+        verify(hits).mark();
+        verify(misses).mark();
+        verify(evictions).mark();
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        assertNotNull(inputStream);
+        try (InputStream in = inputStream) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Reference extends AbstractRemoteResourceReference {
+
+        private final String path;
+        private final String revision;
+
+        Reference(String path, String revision) {
+            this.path = path;
+            this.revision = revision;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.FILE;
+        }
+
+        @Override
+        public RemoteStorageProvider getProvider() {
+            return null;
+        }
+
+        @Override
+        public @NotNull String getPath() {
+            return path;
+        }
+
+        @Override
+        public long getCreated() {
+            return 0;
+        }
+
+        @Override
+        public long getLastModified() {
+            return 0;
+        }
+
+        @Override
+        public long getSize() {
+            return 0;
+        }
+
+        @Override
+        public @Nullable String getRevision() {
+            return revision;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.commons.threads.ThreadPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class RemoteResourceEventQueueTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final List<String> invalidated = new CopyOnWriteArrayList<>();
+
+    @Mock
+    private ThreadPool threadPool;
+
+    @BeforeEach
+    void beforeEach() {
+        lenient().doAnswer(invocation -> {
+            executor.execute(invocation.getArgument(0));
+            return null;
+        }).when(threadPool).execute(any(Runnable.class));
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testSubtreesCollapsed() {
+        RemoteResourceEventQueue queue = new RemoteResourceEventQueue(null, 0, 100, invalidated::add);
+        queue.add(List.of("/b", "/a/b/c", "/a", "/a/b", "/ab"));
+        assertEquals(List.of("/a", "/ab", "/b"), invalidated);
+
+        invalidated.clear();
+        queue.add(List.of("/a/b", "/"));
+        assertEquals(List.of("/"), invalidated);
+    }
+
+    @Test
+    void testEventsCoalescedWithinWindow() throws InterruptedException {
+        RemoteResourceEventQueue queue = new RemoteResourceEventQueue(threadPool, 200, 100, invalidated::add);
+        queue.add(List.of("/a/x.txt"));
+        queue.add(List.of("/a/y.txt", "/b/z.txt"));
+        queue.add(List.of("/a"));
+        queue.add(List.of("/b/z.txt"));
+        assertTrue(invalidated.isEmpty());
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(List.of("/a", "/b/z.txt"), invalidated);
+        verify(threadPool, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void testInterruptedWindowFlushed() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            Runnable flush = invocation.getArgument(0);
+            executor.execute(() -> {
+                started.countDown();
+                flush.run();
+            });
+            return null;
+        }).when(threadPool).execute(any(Runnable.class));
+        RemoteResourceEventQueue queue = new RemoteResourceEventQueue(threadPool, TimeUnit.MINUTES.toMillis(1), 100, invalidated::add);
+        queue.add(List.of("/a"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(List.of("/a"), invalidated);
+
+        // the next event schedules a new window, which the stopped executor rejects, so it is applied directly
+        queue.add(List.of("/b"));
+        assertEquals(List.of("/a", "/b"), invalidated);
+        verify(threadPool, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void testFullBatchAppliedByCaller() {
+        RemoteResourceEventQueue queue = new RemoteResourceEventQueue(threadPool, TimeUnit.MINUTES.toMillis(1), 3, invalidated::add);
+        queue.add(List.of("/a", "/b"));
+        assertTrue(invalidated.isEmpty());
+
+        queue.add(List.of("/c"));
+        assertEquals(List.of("/a", "/b", "/c"), invalidated);
+    }
+
+    @Test
+    void testClosed() {
+        RemoteResourceEventQueue queue = new RemoteResourceEventQueue(null, 0, 100, invalidated::add);
+        queue.close();
+        queue.add(List.of("/a"));
+        assertTrue(invalidated.isEmpty());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl;
+
+import java.util.Hashtable;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.commons.threads.ThreadPoolManager;
+import org.apache.sling.contentparser.api.ContentParser;
+import org.apache.sling.contentparser.json.internal.JSONContentParser;
+import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
+import org.apache.sling.remote.resourceprovider.impl.mocks.MockRemoteStorageProvider;
+import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(OsgiContextExtension.class)
+@ExtendWith(MockitoExtension.class)
+class RemoteResourcePrefetchTest extends RemoteResourceProviderTestBase {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final MockRemoteStorageProvider remoteStorageProvider = new MockRemoteStorageProvider();
+
+    @Mock
+    private ThreadPoolManager threadPoolManager;
+    @Mock
+    private ThreadPool threadPool;
+
+    @BeforeEach
+    void beforeEach() {
+        when(threadPoolManager.get(anyString())).thenReturn(threadPool);
+        lenient().doAnswer(invocation -> {
+            executor.execute(invocation.getArgument(0));
+            return null;
+        }).when(threadPool).execute(any(Runnable.class));
+        context.registerService(ThreadPoolManager.class, threadPoolManager);
+        context.registerService(ContentParser.class, new JSONContentParser());
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testChildrenFetchedInParallel() {
+        registerResourceProvider(1);
+        Resource test_2 = resourceProvider.getResource(resolveContext, "/content/test-2", resourceContext, null);
+        assertNotNull(test_2);
+
+        remoteStorageProvider.setLatency(50);
+        checkChildren(test_2, Set.of("a.txt", "b.txt", "c.txt", "d.txt", "e.txt", "f.txt"));
+
+        assertTrue(remoteStorageProvider.getPeakConcurrentRequests() > 1, "Expected the children to be fetched in parallel.");
+    }
+
+    @Test
+    void testChildrenFetchedSequentiallyWhenPrefetchDisabled() {
+        registerResourceProvider(0);
+        Resource test_2 = resourceProvider.getResource(resolveContext, "/content/test-2", resourceContext, null);
+        assertNotNull(test_2);
+
+        remoteStorageProvider.setLatency(10);
+        checkChildren(test_2, Set.of("a.txt", "b.txt", "c.txt", "d.txt", "e.txt", "f.txt"));
+
+        assertEquals(1, remoteStorageProvider.getPeakConcurrentRequests());
+    }
+
+    @Test
+    void testGrandchildrenPrefetched() throws InterruptedException {
+        registerResourceProvider(2);
+        Resource content = resourceProvider.getResource(resolveContext, "/content", resourceContext, null);
+        assertNotNull(content);
+
+        checkChildren(content, Set.of("test-1", "test-2"));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        Resource test_2 = resourceProvider.getResource(resolveContext, "/content/test-2", resourceContext, null);
+        assertNotNull(test_2);
+        int requests = remoteStorageProvider.getRequests();
+        checkChildren(test_2, Set.of("a.txt", "b.txt", "c.txt", "d.txt", "e.txt", "f.txt"));
+        // only the folder itself is listed again, its children were cached ahead of traversal
+        assertEquals(requests + 1, remoteStorageProvider.getRequests());
+    }
+
+    private void registerResourceProvider(int prefetchDepth) {
+        context.registerInjectActivateService(new RemoteResourceProviderFactory(), "prefetchParallelism", 4, "prefetchDepth",
+                prefetchDepth);
+        Hashtable<String, Object> resourceProviderRegistrationProperties = new Hashtable<>();
+        resourceProviderRegistrationProperties.put(RemoteStorageProvider.PROP_RESOURCE_PROVIDER_ROOT, "/");
+        resourceProviderRegistrationProperties.put(RemoteStorageProvider.PROP_RESOURCE_PROVIDER_AUTHENTICATE, "no");
+        resourceProviderRegistrationProperties.put(ResourceProvider.PROPERTY_NAME, MockRemoteStorageProvider.class.getName());
+        context.registerService(RemoteStorageProvider.class, remoteStorageProvider, resourceProviderRegistrationProperties);
+        resourceProvider = context.getService(ResourceProvider.class);
+        assertNotNull(resourceProvider);
+    }
+}
@@ -35,6 +35,7 @@ import org.apache.sling.api.servlets.ServletResolverConstants;
 import org.apache.sling.commons.threads.ThreadPoolManager;
 import org.apache.sling.contentparser.api.ContentParser;
 import org.apache.sling.contentparser.json.internal.JSONContentParser;
+import org.apache.sling.remote.resourceprovider.RemoteResourceEventType;
 import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
 import org.apache.sling.remote.resourceprovider.impl.mocks.MockRemoteStorageProvider;
 import org.apache.sling.spi.resource.provider.ResourceProvider;
@@ -55,6 +56,8 @@ import static org.mockito.Mockito.mock;
 @ExtendWith(MockitoExtension.class)
 class UnauthenticatedRemoteResourceProviderTest extends RemoteResourceProviderTestBase {
 
+    private final MockRemoteStorageProvider remoteStorageProvider = new MockRemoteStorageProvider();
+
     @SuppressWarnings("unchecked")
     @BeforeEach
     void beforeEach() {
@@ -65,7 +68,7 @@ class UnauthenticatedRemoteResourceProviderTest extends RemoteResourceProviderTe
         resourceProviderRegistrationProperties.put(RemoteStorageProvider.PROP_RESOURCE_PROVIDER_ROOT, "/");
         resourceProviderRegistrationProperties.put(RemoteStorageProvider.PROP_RESOURCE_PROVIDER_AUTHENTICATE, "no");
         resourceProviderRegistrationProperties.put(ResourceProvider.PROPERTY_NAME, MockRemoteStorageProvider.class.getName());
-        context.registerService(RemoteStorageProvider.class, new MockRemoteStorageProvider(), resourceProviderRegistrationProperties);
+        context.registerService(RemoteStorageProvider.class, remoteStorageProvider, resourceProviderRegistrationProperties);
         resourceProvider = context.getService(ResourceProvider.class);
         assertNotNull(resourceProvider);
     }
@@ -126,6 +129,22 @@ class UnauthenticatedRemoteResourceProviderTest extends RemoteResourceProviderTe
         assertNull(joeChildren, String.format("Did not expect children resources for %s", joe.getPath()));
     }
 
+    @Test
+    void testMetaFileParsedOncePerVersion() {
+        Resource test_1 = resourceProvider.getResource(resolveContext, "/content/test-1", resourceContext, null);
+        assertNotNull(test_1, "Expected to find /content/test-1");
+        assertNotNull(resourceProvider.getResource(resolveContext, "/content/test-1/hey", resourceContext, null));
+        assertNotNull(resourceProvider.getResource(resolveContext, "/content/test-1/little", resourceContext, null));
+        checkChildren(test_1, Set.of("hey", "little", "test-1.txt"));
+        assertEquals(1, remoteStorageProvider.getFileRequests("/content/test-1/.sling.json"),
+                "Expected the meta-file to be fetched only once.");
+
+        remoteStorageProvider.fireEvent(RemoteResourceEventType.CHANGED, "/content/test-1/.sling.json");
+        assertNotNull(resourceProvider.getResource(resolveContext, "/content/test-1/hey", resourceContext, null));
+        assertEquals(2, remoteStorageProvider.getFileRequests("/content/test-1/.sling.json"),
+                "Expected the meta-file to be fetched again after it changed.");
+    }
+
     @Test
     void testFileAccess() throws IOException {
         Resource test_1_txt = resourceProvider.getResource(resolveContext, "/content/test-1/test-1.txt", resourceContext, null);
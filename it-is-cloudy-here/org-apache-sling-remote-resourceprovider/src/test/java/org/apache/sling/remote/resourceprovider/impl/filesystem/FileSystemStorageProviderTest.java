@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl.filesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.sling.remote.resourceprovider.Directory;
+import org.apache.sling.remote.resourceprovider.File;
+import org.apache.sling.remote.resourceprovider.RemoteResourceEvent;
+import org.apache.sling.remote.resourceprovider.RemoteResourceEventType;
+import org.apache.sling.remote.resourceprovider.RemoteResourceReference;
+import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(OsgiContextExtension.class)
+class FileSystemStorageProviderTest {
+
+    private final OsgiContext context = new OsgiContext();
+    private final Map<String, Object> authenticationInfo = Collections.emptyMap();
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        Files.createDirectories(root.resolve("a/b"));
+        Files.write(root.resolve("a/b/test.txt"), "test".getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("a/.sling.json"), "{}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testPathMapping() {
+        RemoteStorageProvider provider = register(false, 0, 0);
+        assertEquals("/", provider.storagePath("/content/fs"));
+        assertEquals("/a/b", provider.storagePath("/content/fs/a/b"));
+        assertNull(provider.storagePath("/content/other"));
+        assertEquals("/content/fs", provider.slingPath("/"));
+        assertEquals("/content/fs/a/b", provider.slingPath("/a/b"));
+    }
+
+    @Test
+    void testFindResource() {
+        RemoteStorageProvider provider = register(false, 0, 0);
+        RemoteResourceReference file = provider.findResource("/content/fs/a/b/test.txt", authenticationInfo);
+        assertNotNull(file);
+        assertEquals("/a/b/test.txt", file.getPath());
+        assertEquals(RemoteResourceReference.Type.FILE, file.getType());
+        assertEquals(4, file.getSize());
+
+        // resources below a file or a missing directory resolve to the closest existing ancestor
+        assertEquals("/a/b/test.txt", provider.findResource("/content/fs/a/b/test.txt/jcr:content", authenticationInfo).getPath());
+        assertEquals("/a", provider.findResource("/content/fs/a/par-1", authenticationInfo).getPath());
+        assertEquals("/", provider.findResource("/content/fs", authenticationInfo).getPath());
+
+        assertNull(provider.findResource("/content/fs/../../etc", authenticationInfo));
+        assertNull(provider.findResource("/content/other", authenticationInfo));
+    }
+
+    @Test
+    void testDirectoryAndFile() throws IOException {
+        RemoteStorageProvider provider = register(false, 0, 0);
+        Directory directory = provider.getDirectory(provider.findResource("/content/fs/a", authenticationInfo), authenticationInfo);
+        assertNotNull(directory);
+        List<String> children = directory.getChildren().stream().map(RemoteResourceReference::getPath).collect(Collectors.toList());
+        assertEquals(List.of("/a/.sling.json", "/a/b"), children);
+
+        File file = provider.getFile(provider.findResource("/content/fs/a/b/test.txt", authenticationInfo), authenticationInfo);
+        assertNotNull(file);
+        assertEquals("text/plain", file.getMimeType());
+        try (InputStream inputStream = file.getInputStream()) {
+            assertEquals("test", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testChangesReported() throws IOException, InterruptedException {
+        RemoteStorageProvider provider = register(true, 0, 0);
+        BlockingQueue<RemoteResourceEvent> events = new LinkedBlockingQueue<>();
+        provider.registerEventHandler(events::add);
+
+        Files.write(root.resolve("a/b/new.txt"), "new".getBytes(StandardCharsets.UTF_8));
+        awaitEvent(events, RemoteResourceEventType.CHANGED, "/a/b/new.txt");
+
+        Files.delete(root.resolve("a/b/test.txt"));
+        awaitEvent(events, RemoteResourceEventType.DELETED, "/a/b/test.txt");
+    }
+
+    @Test
+    void testLatencyInjected() {
+        RemoteStorageProvider provider = register(false, 50, 0);
+        long start = System.nanoTime();
+        assertNotNull(provider.findResource("/content/fs/a", authenticationInfo));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+    }
+
+    @Test
+    void testFailureInjected() {
+        RemoteStorageProvider provider = register(false, 0, 1);
+        assertThrows(UncheckedIOException.class, () -> provider.findResource("/content/fs/a", authenticationInfo));
+    }
+
+    private RemoteStorageProvider register(boolean watch, long latency, double failureRate) {
+        FileSystemStorageProvider provider = context.registerInjectActivateService(new FileSystemStorageProvider(),
+                RemoteStorageProvider.PROP_RESOURCE_PROVIDER_ROOT, "/content/fs",
+                RemoteStorageProvider.PROP_REMOTE_STORAGE_PROVIDER_ROOT, root.toString(),
+                "watch", watch,
+                "latency", latency,
+                "failureRate", failureRate);
+        assertNotNull(provider);
+        return provider;
+    }
+
+    private static void awaitEvent(BlockingQueue<RemoteResourceEvent> events, RemoteResourceEventType type, String path)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            RemoteResourceEvent event = events.poll(100, TimeUnit.MILLISECONDS);
+            if (event != null && event.getType() == type && event.getPaths().contains(path)) {
+                return;
+            }
+        }
+        throw new AssertionError(String.format("No %s event for %s.", type, path));
+    }
+}
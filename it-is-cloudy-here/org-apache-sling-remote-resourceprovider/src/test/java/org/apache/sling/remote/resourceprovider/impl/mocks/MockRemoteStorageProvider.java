@@ -26,11 +26,15 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.remote.resourceprovider.Directory;
 import org.apache.sling.remote.resourceprovider.File;
+import org.apache.sling.remote.resourceprovider.RemoteResourceEvent;
 import org.apache.sling.remote.resourceprovider.RemoteResourceEventHandler;
+import org.apache.sling.remote.resourceprovider.RemoteResourceEventType;
 import org.apache.sling.remote.resourceprovider.RemoteResourceReference;
 import org.apache.sling.remote.resourceprovider.RemoteStorageProvider;
 import org.jetbrains.annotations.NotNull;
@@ -40,6 +44,12 @@ public class MockRemoteStorageProvider implements RemoteStorageProvider {
 
     final java.io.File root;
     final Map<String, Set<String>> whitelist;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger peakConcurrentRequests = new AtomicInteger();
+    private final Map<String, AtomicInteger> fileRequests = new ConcurrentHashMap<>();
+    private volatile long latency;
+    private volatile RemoteResourceEventHandler handler;
 
     public MockRemoteStorageProvider() {
         this(Collections.emptyMap());
@@ -77,13 +87,55 @@ public class MockRemoteStorageProvider implements RemoteStorageProvider {
         return null;
     }
 
+    /**
+     * Sets the number of milliseconds each {@link #getFile(RemoteResourceReference, Map)} and
+     * {@link #getDirectory(RemoteResourceReference, Map)} call takes, simulating a round trip to a remote storage.
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getPeakConcurrentRequests() {
+        return peakConcurrentRequests.get();
+    }
+
+    public int getFileRequests(String path) {
+        AtomicInteger counter = fileRequests.get(path);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Notifies the registered {@link RemoteResourceEventHandler} of a change of the files and folders at the given storage paths.
+     */
+    public void fireEvent(RemoteResourceEventType type, String... paths) {
+        Set<String> eventPaths = Set.of(paths);
+        handler.handleEvent(new RemoteResourceEvent() {
+            @Override
+            public RemoteResourceEventType getType() {
+                return type;
+            }
+
+            @Override
+            public Set<String> getPaths() {
+                return eventPaths;
+            }
+        });
+    }
+
     @Override
     public @Nullable File getFile(@NotNull RemoteResourceReference reference, @Nullable Map<String, Object> authenticationInfo) {
+        simulateRoundTrip();
+        fileRequests.computeIfAbsent(reference.getPath(), key -> new AtomicInteger()).incrementAndGet();
         return new MockFile(this, ((MockRemoteResourceReference) reference).file);
     }
 
     @Override
     public @Nullable Directory getDirectory(@NotNull RemoteResourceReference reference, @Nullable Map<String, Object> authenticationInfo) {
+        simulateRoundTrip();
         java.io.File file = ((MockRemoteResourceReference) reference).file;
         if (!file.exists() || !file.isDirectory()) {
             return null;
@@ -124,7 +176,21 @@ public class MockRemoteStorageProvider implements RemoteStorageProvider {
 
     @Override
     public void registerEventHandler(RemoteResourceEventHandler handler) {
+        this.handler = handler;
+    }
 
+    private void simulateRoundTrip() {
+        requests.incrementAndGet();
+        peakConcurrentRequests.accumulateAndGet(concurrentRequests.incrementAndGet(), Math::max);
+        try {
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrentRequests.decrementAndGet();
+        }
     }
 
     private static class MockFile extends MockRemoteResourceReference implements File {
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.remote.resourceprovider.impl.paths;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PathTrieTest {
+
+    @Test
+    void testAddAndContains() {
+        PathTrie trie = new PathTrie(100);
+        assertTrue(trie.add("/content/demo/a", "alice"));
+        assertFalse(trie.add("/content/demo/a", "alice"));
+        assertTrue(trie.add("/content/demo/a", "bob"));
+        assertTrue(trie.add("/", "alice"));
+
+        assertTrue(trie.contains("/content/demo/a", "alice"));
+        assertTrue(trie.contains("/content/demo/a", "bob"));
+        assertTrue(trie.contains("/", "alice"));
+        assertFalse(trie.contains("/content/demo", "alice"));
+        assertFalse(trie.contains("/content/demo/a/b", "alice"));
+        assertFalse(trie.contains("/content/demo/ab", "alice"));
+        assertEquals(3, trie.size());
+    }
+
+    @Test
+    void testRemoveDescendants() {
+        PathTrie trie = new PathTrie(100);
+        trie.add("/content/demo", "alice");
+        trie.add("/content/demo/a", "alice");
+        trie.add("/content/demo/a/b", "bob");
+        trie.add("/content/demo-2/a", "alice");
+
+        trie.removeDescendants("/content/demo");
+
+        assertTrue(trie.contains("/content/demo", "alice"));
+        assertFalse(trie.contains("/content/demo/a", "alice"));
+        assertFalse(trie.contains("/content/demo/a/b", "bob"));
+        assertTrue(trie.contains("/content/demo-2/a", "alice"));
+        assertEquals(2, trie.size());
+    }
+
+    @Test
+    void testRemove() {
+        PathTrie trie = new PathTrie(100);
+        trie.add("/content/demo/a", "alice");
+        trie.add("/content/demo/a", "bob");
+        trie.add("/content/demo/a/b", "bob");
+
+        trie.remove("/content/demo/a");
+        trie.remove("/content/missing");
+
+        assertFalse(trie.contains("/content/demo/a", "alice"));
+        assertFalse(trie.contains("/content/demo/a", "bob"));
+        assertTrue(trie.contains("/content/demo/a/b", "bob"));
+        assertEquals(1, trie.size());
+
+        trie.remove("/content/demo/a/b");
+        assertEquals(0, trie.size());
+        assertTrue(trie.add("/content/demo/a/b", "bob"));
+    }
+
+    @Test
+    void testClearedWhenFull() {
+        PathTrie trie = new PathTrie(2);
+        trie.add("/a", "alice");
+        trie.add("/b", "alice");
+        assertTrue(trie.contains("/b", "alice"));
+
+        trie.add("/c", "alice");
+        assertFalse(trie.contains("/a", "alice"));
+        assertFalse(trie.contains("/c", "alice"));
+        assertEquals(0, trie.size());
+    }
+
+    @Test
+    void testDisabled() {
+        PathTrie trie = new PathTrie(0);
+        assertFalse(trie.add("/a", "alice"));
+        assertFalse(trie.contains("/a", "alice"));
+    }
+}
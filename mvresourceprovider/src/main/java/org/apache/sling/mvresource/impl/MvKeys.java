@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.mvresource.impl;
+
+/**
+ * Maps resource paths to the keys of the single, sorted resource map.
+ * <p>
+ * The key of a resource is its path with the last '/' replaced by {@link #SEPARATOR}, so {@code /a/b/c} is stored as
+ * {@code /a/b\u0001c}. Since the separator sorts before every character of a name, the children of a resource are
+ * exactly the keys between {@code childrenFrom(path)} and {@code childrenTo(path)}, and its deeper descendants are
+ * the keys between {@code path + "/"} and {@code path + "0"}.
+ */
+final class MvKeys {
+
+    static final char SEPARATOR = '\u0001';
+
+    private MvKeys() {
+    }
+
+    static String toKey(String path) {
+        if (path.indexOf(SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Invalid character in path " + path);
+        }
+        int index = path.lastIndexOf('/');
+        if (index < 0 || path.length() == 1) {
+            return path;
+        }
+        return path.substring(0, index) + SEPARATOR + path.substring(index + 1);
+    }
+
+    static String toPath(String key) {
+        return key.replace(SEPARATOR, '/');
+    }
+
+    /** @return the first key of the children of the resource at {@code path} */
+    static String childrenFrom(String path) {
+        return prefix(path) + SEPARATOR;
+    }
+
+    /** @return the key following the last child of the resource at {@code path} */
+    static String childrenTo(String path) {
+        return prefix(path) + (char) (SEPARATOR + 1);
+    }
+
+    /** @return the first key of the grandchildren and deeper descendants of the resource at {@code path} */
+    static String descendantsFrom(String path) {
+        return prefix(path) + '/';
+    }
+
+    /** @return the key following the last grandchild or deeper descendant of the resource at {@code path} */
+    static String descendantsTo(String path) {
+        return prefix(path) + '0';
+    }
+
+    private static String prefix(String path) {
+        return "/".equals(path) ? "" : path;
+    }
+}
@@ -18,27 +18,42 @@
  */
 package org.apache.sling.mvresource.impl;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.sling.api.adapter.AdapterFactory;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
 import org.apache.sling.spi.resource.provider.ProviderContext;
 import org.apache.sling.spi.resource.provider.ResolveContext;
 import org.apache.sling.spi.resource.provider.ResourceContext;
 import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.h2.mvstore.Cursor;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.StreamStore;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,21 +65,31 @@ import org.slf4j.LoggerFactory;
         "adaptables=org.apache.sling.mvresource.impl.MvResource",
         "adapters=org.apache.sling.api.resource.ModifiableValueMap",
         ResourceProvider.PROPERTY_AUTHENTICATE + "=" + ResourceProvider.AUTHENTICATE_REQUIRED })
+@Designate(ocd = MvStoreResourceProvider.Config.class, factory = true)
 public class MvStoreResourceProvider extends ResourceProvider<MvSession> implements AdapterFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(MvStoreResourceProvider.class);
 
-    private static final String CHILDREN = "_children";
+    /** the properties of all resources, keyed and ordered by {@link MvKeys} */
+    private static final String RESOURCES = "_resources";
+
+    /** the children of each resource in the layout with one map per resource */
+    private static final String LEGACY_CHILDREN = "_children";
+
+    /** the store file if none is configured, which is also the name of the store file in a configured directory */
+    private static final String DEFAULT_FILE = "dataStore";
+
+    private static final String METRICS_PREFIX = "MvStoreResourceProvider-";
 
     @ObjectClassDefinition(name = "Apache Sling Resource Provider", description = "Configure an instance of the file system "
             + "resource provider in terms of provider root and file system location")
     public @interface Config {
 
-        @AttributeDefinition(name = "DataStore File Name", description = "File system directory mapped to the virtual "
-                + "resource tree. This property must not be an empty string. If the path is "
-                + "relative it is resolved against sling.home or the current working directory. "
-                + "The path may be a file or folder. If the path does not address an existing "
-                + "file or folder, an empty folder is created.")
+        @AttributeDefinition(name = "DataStore File Name", description = "MVStore file the resources are stored in. If "
+                + "the path is relative it is resolved against sling.home or the current working directory. If the "
+                + "path addresses an existing folder, the file dataStore in that folder is used. Otherwise the path "
+                + "is the file itself, which is created together with its missing parent folders. If the property is "
+                + "empty, the file dataStore is used.")
         String provider_file();
 
         @AttributeDefinition(name = "Provider Root", description = "Location in the virtual resource tree where the "
@@ -74,59 +99,184 @@ public class MvStoreResourceProvider extends ResourceProvider<MvSession> impleme
         @AttributeDefinition(name = "Cache Size", description = "Cache size in MB")
         int provider_cache_size() default 1024;
 
+        @AttributeDefinition(name = "Auto Commit Delay", description = "Maximum number of milliseconds that changes are "
+                + "kept in memory before they are written to the file in the background. With 0 the auto commit is "
+                + "disabled and every created resource is committed immediately.")
+        int store_autocommit_delay() default 1000;
+
+        @AttributeDefinition(name = "Auto Commit Buffer Size", description = "Size in KB of the unsaved changes which are "
+                + "written to the file before the auto commit delay has passed.")
+        int store_autocommit_buffer_size() default 1024;
+
+        @AttributeDefinition(name = "Compaction Interval", description = "Number of seconds between two online compactions "
+                + "of the file. With 0 the file is not compacted.")
+        int store_compaction_interval() default 60;
+
+        @AttributeDefinition(name = "Compaction Fill Rate", description = "Percentage of live data below which the chunks "
+                + "of the file are rewritten by the compaction.")
+        int store_compaction_fill_rate() default 80;
+
+        @AttributeDefinition(name = "Compaction Write Limit", description = "Maximum number of MB rewritten by a single "
+                + "compaction, which bounds the time a compaction competes with the writes of the provider.")
+        int store_compaction_write_limit() default 16;
+
         // Internal Name hint for web console.
         String webconsole_configurationFactory_nameHint() default "{provider.fs.mode}: {"
                 + ResourceProvider.PROPERTY_ROOT + "}";
     }
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private MetricsService metricsService;
+
     MVStore store;
     private StreamStore binaryStore;
+    private MVMap<String, Map<String, Object>> resources;
+    private ScheduledExecutorService compactionExecutor;
+
+    private File storeFile;
+    private Config config;
+
+    // Latency of the explicit commits and the compactions, and the number of compactions which rewrote chunks
+    private Timer commitTime;
+    private Timer compactionTime;
+    private Counter compactions;
+
+    @Activate
+    protected void activate(BundleContext bundleContext, Config config) {
+        this.config = config;
+        storeFile = resolveStoreFile(bundleContext, config.provider_file());
+        if (metricsService == null) {
+            metricsService = MetricsService.NOOP;
+        }
+        commitTime = metricsService.timer(METRICS_PREFIX + "commitTime");
+        compactionTime = metricsService.timer(METRICS_PREFIX + "compactionTime");
+        compactions = metricsService.counter(METRICS_PREFIX + "compactions");
+    }
 
     @Override
     public void start(ProviderContext ctx) {
         LOG.info("mvprovider has started");
         super.start(ctx);
-        store = MVStore.open("dataStore");
+        LOG.info("OPEN {} with {} MB cache", storeFile, config.provider_cache_size());
+        MVStore.Builder builder = new MVStore.Builder()
+                .fileName(storeFile.getPath())
+                .cacheSize(config.provider_cache_size())
+                // compaction is run by the provider, so that it can be measured
+                .autoCompactFillRate(0)
+                .backgroundExceptionHandler((thread, e) -> LOG.error("BACKGROUND write of {} failed", storeFile, e));
+        if (config.store_autocommit_delay() > 0) {
+            builder.autoCommitBufferSize(config.store_autocommit_buffer_size());
+        } else {
+            builder.autoCommitDisabled();
+        }
+        store = builder.open();
+        if (config.store_autocommit_delay() > 0) {
+            store.setAutoCommitDelay(config.store_autocommit_delay());
+        }
         binaryStore = new StreamStore(store.openMap("_binaries"));
+        resources = store.openMap(RESOURCES);
+        if (store.hasMap(LEGACY_CHILDREN)) {
+            migrateLegacyLayout();
+        }
+        if (config.store_compaction_interval() > 0) {
+            compactionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MvStore Compaction " + storeFile.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactionExecutor.scheduleWithFixedDelay(this::compact, config.store_compaction_interval(),
+                    config.store_compaction_interval(), TimeUnit.SECONDS);
+        }
     }
 
     @Override
     public void stop() {
         super.stop();
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdownNow();
+            try {
+                compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            compactionExecutor = null;
+        }
         store.close();
     }
 
+    /**
+     * Resolves a relative store file against sling.home, or the current working directory if it is not set.
+     * In a directory the store file is named {@value #DEFAULT_FILE}.
+     */
+    private static File resolveStoreFile(BundleContext bundleContext, String providerFile) {
+        String fileName = providerFile == null || providerFile.trim().isEmpty() ? DEFAULT_FILE : providerFile.trim();
+        File file = new File(fileName);
+        if (!file.isAbsolute()) {
+            String slingHome = bundleContext.getProperty("sling.home");
+            file = slingHome != null ? new File(slingHome, fileName) : file.getAbsoluteFile();
+        }
+        if (file.isDirectory()) {
+            file = new File(file, DEFAULT_FILE);
+        }
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            LOG.warn("Unable to create the directory {}", parent);
+        }
+        return file;
+    }
+
+    private void compact() {
+        Timer.Context timer = compactionTime.time();
+        try {
+            if (store.compact(config.store_compaction_fill_rate(), config.store_compaction_write_limit() * 1024 * 1024)) {
+                compactions.increment();
+                LOG.debug("COMPACTED {} to a fill rate of {}%", storeFile, config.store_compaction_fill_rate());
+            }
+        } catch (RuntimeException e) {
+            LOG.error("COMPACTION of {} failed", storeFile, e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void commitStore() {
+        Timer.Context timer = commitTime.time();
+        try {
+            store.commit();
+        } finally {
+            timer.stop();
+        }
+    }
+
     @Override
     public Resource getResource(ResolveContext<MvSession> context, String resourcePath, ResourceContext resourceContext,
             Resource parentResource) {
         LOG.info("GET {} ", resourcePath);
-        MVMap<String, Object> properties = store.openMap(resourcePath);
         if (resourcePath.equals("/content/apache/fake")) {
             final ResourceProvider rp = context.getParentResourceProvider();
             return rp.getResource(context.getParentResolveContext(), resourcePath, resourceContext, parentResource);
         }
-        if (properties.isEmpty()) {
+        String key = MvKeys.toKey(resourcePath);
+        if (!resources.containsKey(key)) {
             return null;
         }
-        return new MvResource(context.getResourceResolver(), resourcePath, new MvValueMap(properties, binaryStore));
+        return new MvResource(context.getResourceResolver(), resourcePath, new MvValueMap(resources, key, binaryStore));
     }
 
     @Override
     public Resource create(ResolveContext<MvSession> ctx, String path, Map<String, Object> properties)
             throws PersistenceException {
         LOG.info("CREATE  {} ", path);
-        MVMap<String, Object> oldProps = store.openMap(path);
-        if (oldProps.isEmpty()) {
-            String parent = parentPath(path);
-            MVMap<String, String[]> parentResource = store.openMap(CHILDREN);
-            String[] children = parentResource.getOrDefault(parent, new String[] {});
-            String[] newChildren = Arrays.copyOf(children, children.length + 1);
-            newChildren[children.length] = path;
-            parentResource.put(parent, newChildren);
-        }
-        MvValueMap data = new MvValueMap(oldProps, binaryStore);
-        data.putAll(properties);
-        store.commit();
+        String key = MvKeys.toKey(path);
+        MvValueMap data = new MvValueMap(resources, key, binaryStore);
+        if (properties != null) {
+            data.putAll(properties);
+        } else if (!resources.containsKey(key)) {
+            resources.put(key, new HashMap<String, Object>());
+        }
+        if (config.store_autocommit_delay() <= 0) {
+            commitStore();
+        }
         return new MvResource(ctx.getResourceResolver(), path, data);
     }
 
@@ -136,15 +286,10 @@ public class MvStoreResourceProvider extends ResourceProvider<MvSession> impleme
         return path.substring(index + 1, path.length());
     }
 
-    private String parentPath(String path) {
-        int index = path.lastIndexOf('/');
-        return path.substring(0, index);
-    }
-
     @Override
     public void commit(ResolveContext<MvSession> ctx) throws PersistenceException {
         LOG.info("COMMIT  {} ", ctx.getProviderState());
-        store.commit();
+        commitStore();
     }
 
     @Override
@@ -153,48 +298,106 @@ public class MvStoreResourceProvider extends ResourceProvider<MvSession> impleme
         if (!(resource instanceof MvResource)) {
             throw new PersistenceException("can not delete resource of type" + resource.getClass());
         }
-        MVMap<String, String[]> parentResource = store.openMap(CHILDREN);
-        String parentPath = parentPath(resource.getPath());
-        String[] childNames = parentResource.get(parentPath);
-        String[] newChildren = new String[childNames.length - 1];
-        int newIndex = 0;
-        for (int index = 0; index < childNames.length; ++index) {
-            if (!childNames[index].equals(resource.getName())) {
-                newChildren[newIndex++] = childNames[index];
-            }
+        String path = resource.getPath();
+        List<String> keysToDelete = new ArrayList<>();
+        collectKeys(MvKeys.childrenFrom(path), MvKeys.childrenTo(path), keysToDelete);
+        collectKeys(MvKeys.descendantsFrom(path), MvKeys.descendantsTo(path), keysToDelete);
+        keysToDelete.add(MvKeys.toKey(path));
+        for (String key : keysToDelete) {
+            resources.remove(key);
         }
-        parentResource.put(parentPath, newChildren);
-        Deque<String> resourceToDelete = new LinkedList<>();
-        resourceToDelete.add(resource.getPath());
-        deleteDescendents(parentResource, resourceToDelete);
     }
 
-    private void deleteDescendents(MVMap<String, String[]> parentMap, Deque<String> pathsToDelete) {
-        if (pathsToDelete.isEmpty()) {
-            return;
-        }
-        String currentPath = pathsToDelete.pop();
-        String[] children = parentMap.getOrDefault(currentPath, new String[] {});
-        store.removeMap(store.openMap(currentPath));
-        for (int i = 0; i < children.length; ++i) {
-            pathsToDelete.add(children[i]);
+    private void collectKeys(String from, String to, List<String> keys) {
+        Iterator<String> range = resources.keyIterator(from);
+        while (range.hasNext()) {
+            String key = range.next();
+            if (key.compareTo(to) >= 0) {
+                break;
+            }
+            keys.add(key);
         }
-        deleteDescendents(parentMap, pathsToDelete);
     }
 
     @Override
-    public Iterator<Resource> listChildren(ResolveContext<MvSession> resolveContext, Resource resource) {
+    public Iterator<Resource> listChildren(final ResolveContext<MvSession> resolveContext, Resource resource) {
         LOG.info("LIST CHILDREN");
-        MVMap<String, String[]> parentMap = store.openMap(CHILDREN);
-        List<Resource> response = new ArrayList<>();
-        String[] childNames = parentMap.getOrDefault(resource.getPath(), new String[] {});
-        for (int i = 0; i < childNames.length; ++i) {
-            String childPath = childNames[i];
-            LOG.info("child found {}", childPath);
-            response.add(new MvResource(resolveContext.getResourceResolver(), childPath,
-                    new MvValueMap(store.openMap(childPath), binaryStore)));
-        }
-        return response.iterator();
+        final String to = MvKeys.childrenTo(resource.getPath());
+        final Cursor<String, Map<String, Object>> cursor = resources.cursor(MvKeys.childrenFrom(resource.getPath()));
+        // the children are the keys of a range of the sorted resource map, which is read while iterating
+        return new Iterator<Resource>() {
+
+            private String next = advance();
+
+            private String advance() {
+                if (cursor.hasNext()) {
+                    String key = cursor.next();
+                    if (key.compareTo(to) < 0) {
+                        return key;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Resource next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                String key = next;
+                next = advance();
+                String childPath = MvKeys.toPath(key);
+                LOG.debug("child found {}", childPath);
+                return new MvResource(resolveContext.getResourceResolver(), childPath,
+                        new MvValueMap(resources, key, binaryStore));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Moves the resources of the legacy layout, with one map per resource and the children of each resource in
+     * the {@value #LEGACY_CHILDREN} map, into the single resource map, and removes the legacy maps afterwards.
+     * A listed child is migrated if its map still exists, even if it has no properties.
+     */
+    private void migrateLegacyLayout() {
+        LOG.info("MIGRATE legacy layout of {} maps", store.getMapNames().size());
+        MVMap<String, String[]> legacyChildren = store.openMap(LEGACY_CHILDREN);
+        Set<String> paths = new TreeSet<>();
+        for (String name : store.getMapNames()) {
+            if (name.startsWith("/") && !store.<String, Object>openMap(name).isEmpty()) {
+                paths.add(name);
+            }
+        }
+        for (String[] children : legacyChildren.values()) {
+            for (String child : children) {
+                if (store.hasMap(child)) {
+                    paths.add(child);
+                }
+            }
+        }
+        for (String path : paths) {
+            MVMap<String, Object> legacyProperties = store.openMap(path);
+            resources.put(MvKeys.toKey(path), new HashMap<String, Object>(legacyProperties));
+            store.removeMap(legacyProperties);
+        }
+        for (String name : new ArrayList<>(store.getMapNames())) {
+            if (name.startsWith("/")) {
+                store.removeMap(store.openMap(name));
+            }
+        }
+        store.removeMap(legacyChildren);
+        store.commit();
+        LOG.info("MIGRATED {} resources to the path ordered layout", paths.size());
     }
 
     @SuppressWarnings("unchecked")
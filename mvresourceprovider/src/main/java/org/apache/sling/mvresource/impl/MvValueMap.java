@@ -21,6 +21,8 @@ package org.apache.sling.mvresource.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,39 +31,64 @@ import org.apache.sling.api.resource.ValueMap;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.StreamStore;
 
+/**
+ * The properties of a resource, which are stored as a single value of the resource map. The stored value is never
+ * modified in place: every modification writes a modified copy of it back to the resource map.
+ */
 public class MvValueMap implements ValueMap, ModifiableValueMap {
 
-    private MVMap<String, Object> map;
+    private MVMap<String, Map<String, Object>> resources;
+    private String resourceKey;
     private StreamStore store;
 
-    public MvValueMap(MVMap<String, Object> map, StreamStore binaryStore) {
-        this.map = map;
+    public MvValueMap(MVMap<String, Map<String, Object>> resources, String key, StreamStore binaryStore) {
+        this.resources = resources;
+        this.resourceKey = key;
         this.store = binaryStore;
     }
 
+    private Map<String, Object> map() {
+        Map<String, Object> properties = resources.get(resourceKey);
+        if (properties == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(properties);
+    }
+
+    private Object stored(Object value) {
+        if (value instanceof InputStream) {
+            try {
+                value = "{b}"+ new String(store.put((InputStream)value));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return value;
+    }
+
     @Override
     public int size() {
-        return map.size();
+        return map().size();
     }
 
     @Override
     public boolean isEmpty() {
-        return map.isEmpty();
+        return map().isEmpty();
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return map.containsKey(key);
+        return map().containsKey(key);
     }
 
     @Override
     public boolean containsValue(Object value) {
-        return map.containsValue(value);
+        return map().containsValue(value);
     }
 
     @Override
     public Object get(Object key) {
-        Object value = map.get(key);
+        Object value = map().get(key);
         if (value instanceof String) {
             String stringValue = value.toString();
             if (stringValue.startsWith("{b}")) {
@@ -73,44 +100,53 @@ public class MvValueMap implements ValueMap, ModifiableValueMap {
 
     @Override
     public Object put(String key, Object value) {
-        if (value instanceof InputStream) {
-            try {
-                value = "{b}"+ new String(store.put((InputStream)value));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        synchronized (resources) {
+            Map<String, Object> properties = new HashMap<>(map());
+            Object old = properties.put(key, stored(value));
+            resources.put(resourceKey, properties);
+            return old;
         }
-        return map.put(key, value);
     }
 
     @Override
     public Object remove(Object key) {
-        return map.remove(key);
+        synchronized (resources) {
+            Map<String, Object> properties = new HashMap<>(map());
+            Object old = properties.remove(key);
+            resources.put(resourceKey, properties);
+            return old;
+        }
     }
 
     @Override
     public void putAll(Map<? extends String, ? extends Object> m) {
-        map.putAll(map);
+        synchronized (resources) {
+            Map<String, Object> properties = new HashMap<>(map());
+            for (Entry<? extends String, ? extends Object> entry : m.entrySet()) {
+                properties.put(entry.getKey(), stored(entry.getValue()));
+            }
+            resources.put(resourceKey, properties);
+        }
     }
 
     @Override
     public void clear() {
-        map.clear();
+        resources.put(resourceKey, new HashMap<String, Object>());
     }
 
     @Override
     public Set<String> keySet() {
-        return map.keySet();
+        return map().keySet();
     }
 
     @Override
     public Collection<Object> values() {
-        return map.values();
+        return map().values();
     }
 
     @Override
     public Set<Entry<String, Object>> entrySet() {
-        return map.entrySet();
+        return map().entrySet();
     }
 
     @SuppressWarnings("unchecked")
@@ -129,7 +165,7 @@ public class MvValueMap implements ValueMap, ModifiableValueMap {
     @SuppressWarnings("unchecked")
     @Override
     public <T> T get(String name, T defaultValue) {
-        return (T) map.getOrDefault(name, defaultValue);
+        return (T) map().getOrDefault(name, defaultValue);
     }
     
 
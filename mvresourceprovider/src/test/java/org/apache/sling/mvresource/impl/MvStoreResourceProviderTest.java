@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.mvresource.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.spi.resource.provider.ResolveContext;
+import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MvStoreResourceProviderTest {
+
+    private static final String ROOT = "/content/apache/fake";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ResolveContext<MvSession> resolveContext = new ResolveContext<MvSession>() {
+
+        @Override
+        public ResourceResolver getResourceResolver() {
+            return null;
+        }
+
+        @Override
+        public MvSession getProviderState() {
+            return null;
+        }
+
+        @Override
+        public ResolveContext<?> getParentResolveContext() {
+            return null;
+        }
+
+        @Override
+        public ResourceProvider<?> getParentResourceProvider() {
+            return null;
+        }
+    };
+
+    private MvStoreResourceProvider provider;
+
+    @After
+    public void tearDown() {
+        if (provider != null) {
+            provider.stop();
+        }
+    }
+
+    @Test
+    public void testResourcesKeptInStoreFileOfConfiguredFolder() throws Exception {
+        File directory = folder.newFolder();
+        provider = start(directory.getPath());
+        provider.create(resolveContext, ROOT + "/a", Collections.<String, Object>singletonMap("title", "A"));
+        provider.commit(resolveContext);
+        provider.stop();
+
+        assertTrue(new File(directory, "dataStore").isFile());
+        provider = start(directory.getPath());
+        Resource resource = provider.getResource(resolveContext, ROOT + "/a", null, null);
+        assertNotNull(resource);
+        assertEquals("A", resource.getValueMap().get("title", String.class));
+        assertNull(provider.getResource(resolveContext, ROOT + "/b", null, null));
+    }
+
+    @Test
+    public void testMissingStoreFileCreatedWithParentFolders() throws Exception {
+        File file = new File(folder.getRoot(), "stores/site/resources.mv");
+        provider = start(file.getPath());
+        provider.create(resolveContext, ROOT + "/a", null);
+        provider.commit(resolveContext);
+        provider.stop();
+        provider = null;
+
+        assertTrue(file.isFile());
+    }
+
+    @Test
+    public void testLegacyLayoutMigrated() throws Exception {
+        File file = folder.newFile();
+        MVStore legacy = MVStore.open(file.getPath());
+        legacy.<String, Object>openMap(ROOT + "/a").put("title", "A");
+        legacy.<String, Object>openMap(ROOT + "/a/b").put("title", "B");
+        // listed as a child, but without properties
+        legacy.<String, Object>openMap(ROOT + "/c");
+        MVMap<String, String[]> children = legacy.openMap("_children");
+        children.put(ROOT, new String[] { ROOT + "/a", ROOT + "/c" });
+        children.put(ROOT + "/a", new String[] { ROOT + "/a/b" });
+        legacy.close();
+
+        provider = start(file.getPath());
+
+        assertFalse(provider.store.hasMap("_children"));
+        assertFalse(provider.store.hasMap(ROOT + "/a"));
+        assertEquals(listOf(ROOT + "/a", ROOT + "/c"), listChildren(ROOT));
+        assertEquals(listOf(ROOT + "/a/b"), listChildren(ROOT + "/a"));
+        assertEquals("B", provider.getResource(resolveContext, ROOT + "/a/b", null, null).getValueMap()
+                .get("title", String.class));
+    }
+
+    @Test
+    public void testChildrenListedInOrderOfTheirPaths() throws Exception {
+        provider = start(folder.newFile().getPath());
+        for (String name : new String[] { "c", "a", "b", "a/x", "ab" }) {
+            provider.create(resolveContext, ROOT + "/" + name, null);
+        }
+
+        assertEquals(listOf(ROOT + "/a", ROOT + "/ab", ROOT + "/b", ROOT + "/c"), listChildren(ROOT));
+        assertEquals(listOf(ROOT + "/a/x"), listChildren(ROOT + "/a"));
+
+        provider.delete(resolveContext, provider.getResource(resolveContext, ROOT + "/a", null, null));
+        assertEquals(listOf(ROOT + "/ab", ROOT + "/b", ROOT + "/c"), listChildren(ROOT));
+        assertNull(provider.getResource(resolveContext, ROOT + "/a/x", null, null));
+    }
+
+    private List<String> listChildren(String path) {
+        List<String> paths = new ArrayList<>();
+        Iterator<Resource> children = provider.listChildren(resolveContext, new SyntheticResource(null, path, null));
+        while (children.hasNext()) {
+            paths.add(children.next().getPath());
+        }
+        return paths;
+    }
+
+    private static List<String> listOf(String... paths) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, paths);
+        return list;
+    }
+
+    private static MvStoreResourceProvider start(String file) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("provider_file", file);
+        properties.put("provider_root", ROOT);
+        properties.put("provider_cache_size", 1);
+        properties.put("store_compaction_interval", 0);
+        // the annotation's defaults for everything not configured
+        MvStoreResourceProvider.Config config = (MvStoreResourceProvider.Config) Proxy.newProxyInstance(
+                MvStoreResourceProvider.Config.class.getClassLoader(),
+                new Class<?>[] { MvStoreResourceProvider.Config.class },
+                (proxy, method, args) -> properties.containsKey(method.getName())
+                        ? properties.get(method.getName())
+                        : method.getDefaultValue());
+
+        MvStoreResourceProvider provider = new MvStoreResourceProvider();
+        provider.activate(MockOsgi.newBundleContext(), config);
+        provider.start(null);
+        return provider;
+    }
+}
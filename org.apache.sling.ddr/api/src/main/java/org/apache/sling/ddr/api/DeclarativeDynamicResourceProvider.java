@@ -19,6 +19,7 @@ package org.apache.sling.ddr.api;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.osgi.framework.Bundle;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -56,4 +57,10 @@ public interface DeclarativeDynamicResourceProvider {
 
     void update(String path);
 
+    /**
+     * Updates the Resources affected by a change of any of the given paths at once
+     * @param paths Paths of the changed resources
+     */
+    void update(Collection<String> paths);
+
 }
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.ddr.benchmarks;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.sling.ddr.api.Constants.DDR_NODE_TYPE;
+import static org.apache.sling.ddr.api.Constants.DDR_TARGET_PROPERTY_NAME;
+import static org.apache.sling.ddr.api.Constants.JCR_PRIMARY_TYPE;
+
+/**
+ * An in-memory DDR Source Folder with a given number of component like children and its empty Target Folder.
+ * Every tenth child has the title 'hidden' so that a prohibited DDR filter on it removes a tenth of the children.
+ */
+public class SyntheticSourceTree {
+
+    public static final String PROVIDER_ROOT_PATH = "/conf/benchmarks/settings/dynamic";
+    public static final String TARGET_ROOT_PATH = "/apps/benchmarks/components";
+    public static final String RESOURCE_TYPE = "benchmarks/component";
+    public static final String HIDDEN_TITLE = "hidden";
+
+    private final ResourceResolver resourceResolver;
+    private final int children;
+
+    public SyntheticSourceTree(int children, int properties) throws LoginException, PersistenceException {
+        this.children = children;
+        resourceResolver = new MockResourceResolverFactory().getResourceResolver(null);
+        Map<String, Object> providerProperties = new HashMap<>();
+        providerProperties.put(JCR_PRIMARY_TYPE, DDR_NODE_TYPE);
+        providerProperties.put(DDR_TARGET_PROPERTY_NAME, TARGET_ROOT_PATH);
+        Resource provider = ResourceUtil.getOrCreateResource(resourceResolver, PROVIDER_ROOT_PATH, providerProperties, null, false);
+        ResourceUtil.getOrCreateResource(resourceResolver, TARGET_ROOT_PATH, (String) null, null, false);
+        for (int i = 0; i < children; i++) {
+            Map<String, Object> childProperties = new HashMap<>();
+            childProperties.put(JCR_PRIMARY_TYPE, "sling:Folder");
+            childProperties.put("sling:resourceType", RESOURCE_TYPE);
+            childProperties.put("sling:resourceSuperType", "benchmarks/components/base");
+            childProperties.put("jcr:title", i % 10 == 0 ? HIDDEN_TITLE : "Component " + i);
+            for (int j = 0; j < properties; j++) {
+                childProperties.put("property-" + j, (long) j);
+            }
+            resourceResolver.create(provider, childName(i), childProperties);
+        }
+        resourceResolver.commit();
+    }
+
+    public ResourceResolver getResourceResolver() {
+        return resourceResolver;
+    }
+
+    public int getChildren() {
+        return children;
+    }
+
+    public static String childName(int index) {
+        return "component-" + index;
+    }
+
+    public static String sourcePath(int index) {
+        return PROVIDER_ROOT_PATH + "/" + childName(index);
+    }
+
+    public static String targetPath(int index) {
+        return TARGET_ROOT_PATH + "/" + childName(index);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.ddr.core;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.ddr.api.DeclarativeDynamicResourceManager;
+import org.apache.sling.ddr.benchmarks.SyntheticSourceTree;
+import org.apache.sling.spi.resource.provider.ResolveContext;
+import org.apache.sling.spi.resource.provider.ResourceContext;
+import org.apache.sling.spi.resource.provider.ResourceProvider;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osgi.framework.BundleContext;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.sling.ddr.api.Constants.JCR_TITLE;
+import static org.apache.sling.ddr.benchmarks.SyntheticSourceTree.HIDDEN_TITLE;
+import static org.apache.sling.ddr.benchmarks.SyntheticSourceTree.PROVIDER_ROOT_PATH;
+import static org.apache.sling.ddr.benchmarks.SyntheticSourceTree.TARGET_ROOT_PATH;
+
+/**
+ * Measures the lookup and listing of Declarative Dynamic Resources by the {@link DeclarativeDynamicResourceProviderHandler}
+ * over a {@link SyntheticSourceTree} of different sizes, with and without a prohibited DDR filter, from one and from
+ * eight threads. The DDRs are picked uniformly at random.
+ * <p>
+ * The cost of rebuilding the mappings of the Target Folder after a change of one of its sources is measured by
+ * {@link #updateAndGetResource()}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"})
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 30)
+public class DeclarativeDynamicResourceProviderHandlerBenchmark {
+
+    private static final int PAGE_SIZE = 10;
+
+    @Param({"100", "10000"})
+    public int children;
+
+    @Param({"false", "true"})
+    public boolean filtered;
+
+    private SyntheticSourceTree tree;
+    private BundleContext bundleContext;
+    private DeclarativeDynamicResourceProviderHandler subject;
+    private ResolveContext resolveContext;
+    private Resource targetRoot;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        tree = new SyntheticSourceTree(children, 10);
+        ResourceResolver resourceResolver = tree.getResourceResolver();
+        Map<String, List<String>> prohibitedDDRFilter = new HashMap<>();
+        if (filtered) {
+            prohibitedDDRFilter.put(JCR_TITLE, Arrays.asList(HIDDEN_TITLE));
+        }
+        bundleContext = MockOsgi.newBundleContext();
+        subject = new DeclarativeDynamicResourceProviderHandler();
+        subject.setMetrics(new DeclarativeDynamicResourceMetrics(MetricsService.NOOP, TARGET_ROOT_PATH));
+        subject.registerService(
+            bundleContext.getBundle(), TARGET_ROOT_PATH, PROVIDER_ROOT_PATH, resourceResolver,
+            new NoopManager(), null, prohibitedDDRFilter, Collections.<String>emptyList()
+        );
+        resolveContext = new BenchmarkResolveContext(resourceResolver);
+        targetRoot = resourceResolver.getResource(TARGET_ROOT_PATH);
+        if (targetRoot == null) {
+            throw new IllegalStateException("Missing synthetic Target Folder.");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        subject.unregisterService();
+        MockOsgi.shutdown(bundleContext);
+        tree.getResourceResolver().close();
+    }
+
+    @Benchmark
+    public Resource getResource() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Resource getResourceContended() {
+        return lookup();
+    }
+
+    @Benchmark
+    public void listChildren(Blackhole blackhole) {
+        consume(subject.listChildren(resolveContext, targetRoot), Integer.MAX_VALUE, blackhole);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void listChildrenContended(Blackhole blackhole) {
+        consume(subject.listChildren(resolveContext, targetRoot), Integer.MAX_VALUE, blackhole);
+    }
+
+    @Benchmark
+    public void listChildrenPage(Blackhole blackhole) {
+        int offset = ThreadLocalRandom.current().nextInt(Math.max(1, children - PAGE_SIZE));
+        consume(subject.listChildren(tree.getResourceResolver(), TARGET_ROOT_PATH, offset), PAGE_SIZE, blackhole);
+    }
+
+    @Benchmark
+    public Resource updateAndGetResource() {
+        int index = ThreadLocalRandom.current().nextInt(children);
+        subject.update(SyntheticSourceTree.sourcePath(index));
+        return subject.getResource(
+            resolveContext, SyntheticSourceTree.targetPath(index), ResourceContext.EMPTY_CONTEXT, null
+        );
+    }
+
+    private Resource lookup() {
+        return subject.getResource(
+            resolveContext, SyntheticSourceTree.targetPath(ThreadLocalRandom.current().nextInt(children)),
+            ResourceContext.EMPTY_CONTEXT, null
+        );
+    }
+
+    private static void consume(Iterator<Resource> iterator, int limit, Blackhole blackhole) {
+        for (int i = 0; iterator != null && i < limit && iterator.hasNext(); i++) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    private static class NoopManager implements DeclarativeDynamicResourceManager {
+
+        @Override
+        public void update(String declarativeDynamicProviderPath) {
+        }
+
+        @Override
+        public void addReference(String sourcePath, String targetPath) {
+        }
+    }
+
+    private static class BenchmarkResolveContext implements ResolveContext {
+
+        private final ResourceResolver resourceResolver;
+
+        BenchmarkResolveContext(ResourceResolver resourceResolver) {
+            this.resourceResolver = resourceResolver;
+        }
+
+        @Override
+        public ResourceResolver getResourceResolver() {
+            return resourceResolver;
+        }
+
+        @Override
+        public Object getProviderState() {
+            return null;
+        }
+
+        @Override
+        public ResolveContext getParentResolveContext() {
+            return null;
+        }
+
+        @Override
+        public ResourceProvider getParentResourceProvider() {
+            return null;
+        }
+    }
+}
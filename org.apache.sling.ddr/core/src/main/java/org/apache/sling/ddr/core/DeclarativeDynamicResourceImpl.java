@@ -26,12 +26,13 @@ import org.apache.sling.ddr.api.DeclarativeDynamicResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import static org.apache.sling.ddr.api.Constants.DDR_INDICATOR;
 import static org.apache.sling.ddr.api.Constants.SLING_RESOURCE_SUPER_TYPE_PROPERTY;
@@ -40,7 +41,7 @@ public class DeclarativeDynamicResourceImpl
     extends SyntheticResource
     implements DeclarativeDynamicResource
 {
-    private static List<String> IGNORED_ATTRIBUTES = new ArrayList<>(Arrays.asList("jcr:created", SLING_RESOURCE_SUPER_TYPE_PROPERTY));
+    private static final Set<String> IGNORED_ATTRIBUTES = new HashSet<>(Arrays.asList("jcr:created", SLING_RESOURCE_SUPER_TYPE_PROPERTY));
 
     private static final Logger log = LoggerFactory.getLogger(DeclarativeDynamicResourceImpl.class);
 
@@ -53,19 +54,7 @@ public class DeclarativeDynamicResourceImpl
      * @return The Synthetic Resource that will provide the Dynamic Resource
      */
     public static DeclarativeDynamicResource createSyntheticFromResource(Resource source, String targetPath, boolean mark) {
-        ValueMap properties = source.getValueMap();
-        Map<String,String> parameters = new HashMap<>();
-        String resourceSuperType = source.getResourceSuperType();
-        for(Entry<String, Object> entry: properties.entrySet()) {
-            if(!IGNORED_ATTRIBUTES.contains(entry.getKey())) {
-                parameters.put(entry.getKey(), entry.getValue() + "");
-            }
-        }
-        if(mark) {
-            parameters.put(DDR_INDICATOR, "true");
-        }
         ResourceMetadata metadata = new ResourceMetadataWrapper();
-        metadata.setParameterMap(parameters);
         metadata.setResolutionPath(targetPath);
         metadata.setResolutionPathInfo(targetPath);
         metadata.setCreationTime(System.currentTimeMillis());
@@ -73,21 +62,44 @@ public class DeclarativeDynamicResourceImpl
             source.getResourceResolver(),
             metadata,
             source.getResourceType(),
-            resourceSuperType
+            source.getResourceSuperType(),
+            source.getValueMap(),
+            mark
         );
     }
 
     public DeclarativeDynamicResourceImpl(ResourceResolver resourceResolver, String path, String resourceType, String resourceSuperType) {
         super(resourceResolver, path, resourceType);
         this.resourceSuperType = resourceSuperType;
+        this.sourceProperties = null;
+        this.mark = false;
     }
 
     public DeclarativeDynamicResourceImpl(ResourceResolver resourceResolver, ResourceMetadata rm, String resourceType, String resourceSuperType) {
+        this(resourceResolver, rm, resourceType, resourceSuperType, null, false);
+    }
+
+    /**
+     * Creates a Resource whose properties are the ones of the given source properties. These are only read
+     * when the Value Map is obtained for the first time.
+     *
+     * @param sourceProperties Properties of the source resource
+     * @param mark If true the resource is marked as Declarative Dynamic Resource in its properties
+     */
+    public DeclarativeDynamicResourceImpl(
+        ResourceResolver resourceResolver, ResourceMetadata rm, String resourceType, String resourceSuperType,
+        ValueMap sourceProperties, boolean mark
+    ) {
         super(resourceResolver, rm, resourceType);
         this.resourceSuperType = resourceSuperType;
+        this.sourceProperties = sourceProperties;
+        this.mark = mark;
     }
 
     private String resourceSuperType;
+    private final Map<String, ?> sourceProperties;
+    private final boolean mark;
+    private ValueMap valueMap;
 
     @Override
     public String getResourceSuperType() {
@@ -120,18 +132,30 @@ public class DeclarativeDynamicResourceImpl
 
     @Override
     public ValueMap getValueMap() {
-        final Map<String, String> map = getResourceMetadata().getParameterMap();
-        if(map.isEmpty()) {
-            log.warn("Synthetic Resource: '{}' does not return a parameter map", getResourceMetadata().getResolutionPath());
-        }
-        Map<String,Object> parameters = new HashMap<String,Object>() {{
-            putAll(map);
-        }};
-        // Do not add a Resource Super Type when it is null or empty
-        if(resourceSuperType != null && !resourceSuperType.isEmpty()) {
-            parameters.put(SLING_RESOURCE_SUPER_TYPE_PROPERTY, resourceSuperType);
+        ValueMap answer = valueMap;
+        if(answer == null) {
+            Map<String, ?> source = sourceProperties == null ? getResourceMetadata().getParameterMap() : sourceProperties;
+            Map<String, Object> properties = new HashMap<>();
+            for(Entry<String, ?> entry: source.entrySet()) {
+                if(!IGNORED_ATTRIBUTES.contains(entry.getKey())) {
+                    properties.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if(mark) {
+                properties.put(DDR_INDICATOR, "true");
+            }
+            // Do not add a Resource Super Type when it is null or empty
+            if(resourceSuperType != null && !resourceSuperType.isEmpty()) {
+                properties.put(SLING_RESOURCE_SUPER_TYPE_PROPERTY, resourceSuperType);
+            }
+            if(properties.isEmpty()) {
+                log.warn("Synthetic Resource: '{}' does not provide any properties", getResourceMetadata().getResolutionPath());
+            }
+            log.debug("Value Map for DC: '{}': '{}'", getName(), properties);
+            answer = new ValueMapDecorator(Collections.unmodifiableMap(properties));
+            // The Value Map is immutable so concurrent initializations can only create an equal one
+            valueMap = answer;
         }
-        log.info("Value Map for DC: '{}': '{}'", getName(), parameters);
-        return new ValueMapDecorator(parameters);
+        return answer;
     }
 }
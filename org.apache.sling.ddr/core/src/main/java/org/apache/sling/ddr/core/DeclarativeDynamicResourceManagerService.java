@@ -21,6 +21,8 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
 import org.apache.sling.ddr.api.DeclarativeDynamicResourceListener;
 import org.apache.sling.ddr.api.DeclarativeDynamicResourceManager;
 import org.apache.sling.ddr.api.DeclarativeDynamicResourceProvider;
@@ -44,14 +46,32 @@ import javax.jcr.observation.Event;
 import javax.jcr.observation.EventIterator;
 import javax.jcr.observation.EventListener;
 import javax.jcr.query.Query;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.sling.ddr.api.Constants.CONFIGURATION_ROOT_PATH;
 import static org.apache.sling.ddr.api.Constants.DDR_NODE_TYPE;
@@ -84,8 +104,22 @@ public class DeclarativeDynamicResourceManagerService
             name = "Followed Link Names",
             description="Property Names of links to be followed")
         String[] followed_link_names() default DDR_REF_PROPERTY_NAME;
+        @AttributeDefinition(
+            name = "Event Debounce Delay",
+            description="Milliseconds during which resource events are collected before the affected DDRs are updated at once, 0 updates them right away")
+        long event_debounce_delay() default 500;
+        @AttributeDefinition(
+            name = "Lazy Startup",
+            description="If true the DDRs registered during the last run are registered right away and the lookup of all DDRs is done in the background")
+        boolean lazy_startup() default true;
     }
 
+    /** Prefix of the metrics of the manager, the metrics of each DDR are prefixed with 'DeclarativeDynamicResource-<target>-' **/
+    public static final String METRICS_PREFIX = "DeclarativeDynamicResourceManager-";
+
+    /** Name of the file in the bundle data area which keeps the registered DDRs in between runs **/
+    public static final String SNAPSHOT_FILE_NAME = "ddr-registrations.properties";
+
     public static final int EVENT_TYPES =
         Event.NODE_ADDED |
         Event.NODE_REMOVED |
@@ -102,6 +136,9 @@ public class DeclarativeDynamicResourceManagerService
     @Reference(cardinality = ReferenceCardinality.OPTIONAL)
     DeclarativeDynamicResourceListener dynamicComponentFilterNotifier;
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    MetricsService metricsService;
+
     // Make sure that the Service User Mapping is available before obtaining the Service Resource Resolver
     @Reference(policyOption= ReferencePolicyOption.GREEDY, target="(" + ServiceUserMapped.SUBSERVICENAME + EQUALS + DYNAMIC_COMPONENTS_SERVICE_USER + ")")
     private ServiceUserMapped serviceUserMapped;
@@ -113,27 +150,71 @@ public class DeclarativeDynamicResourceManagerService
     private BundleContext bundleContext;
     // Keep the Resource Resolver around otherwise the Event Listener will not work anymore
     private ResourceResolver resourceResolver;
+    // The Handlers read from the Resource Resolver above on render threads, so the event and reconcile work, which
+    // refreshes the resolver it reads from, has its own one that is only used while holding this service's monitor
+    private ResourceResolver workResourceResolver;
 
     private Map<String, List<String>> allowedFilter = new HashMap<>();
     private Map<String, List<String>> prohibitedFilter = new HashMap<>();
     private List<String> followedLinkNames = new ArrayList<>();
 
-    private Map<String, ReferenceEventListener> referenceListeners = new HashMap<>();
+    // Reference Event Listeners by the path they are listening to. They have their own lock so that render threads
+    // adding references are not blocked by a reconcile or an event batch holding this service's monitor
+    private final Map<String, ReferenceEventListener> referenceListeners = new ConcurrentHashMap<>();
+    private final Object referenceLock = new Object();
+
+    private long eventDebounceDelay;
+    private ScheduledExecutorService executor;
+    private final Object eventLock = new Object();
+    private TreeSet<String> pendingRemovedPaths = new TreeSet<>();
+    private TreeSet<String> pendingChangedPaths = new TreeSet<>();
+    private long pendingSince = Long.MAX_VALUE;
+    private boolean eventsScheduled;
+    // Set once deactivation started, after which background tasks must not register DDRs anymore
+    private volatile boolean deactivated;
+
+    // Time from the oldest event of a batch until the batch is applied, the time to apply it and to reconcile the DDRs
+    private Timer eventLag;
+    private Timer applyEventsTime;
+    private Timer reconcileTime;
 
     @Activate
     void activate(BundleContext bundleContext, Configuration configuration) {
         this.bundleContext = bundleContext;
         log.info("Activate Started, bundle context: '{}'", bundleContext);
+        if(metricsService == null) {
+            metricsService = MetricsService.NOOP;
+        }
+        eventLag = metricsService.timer(METRICS_PREFIX + "eventLag");
+        applyEventsTime = metricsService.timer(METRICS_PREFIX + "applyEventsTime");
+        reconcileTime = metricsService.timer(METRICS_PREFIX + "reconcileTime");
         // Parsing the Allowed / Prohibited DDR Filters
         parseDDRFilter(configuration.allowed_ddr_filter(), allowedFilter);
         parseDDRFilter(configuration.prohibited_ddr_filter(), prohibitedFilter);
         followedLinkNames.addAll(Arrays.asList(configuration.followed_link_names()));
+        eventDebounceDelay = configuration.event_debounce_delay();
+        boolean lazyStartup = configuration.lazy_startup();
+        if(eventDebounceDelay > 0 || lazyStartup) {
+            executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "DDR Background Tasks");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }
+            );
+        }
         try {
             // The Resource Resolver needs to be kept alive until this Service is deactivated due to the Event Listeners
             resourceResolver = resourceResolverFactory.getServiceResourceResolver(
                 new HashMap<String, Object>() {{ put(ResourceResolverFactory.SUBSERVICE, DYNAMIC_COMPONENTS_SERVICE_USER); }}
             );
             log.info("Service Resource Resolver: '{}'", resourceResolver);
+            workResourceResolver = resourceResolverFactory.getServiceResourceResolver(
+                new HashMap<String, Object>() {{ put(ResourceResolverFactory.SUBSERVICE, DYNAMIC_COMPONENTS_SERVICE_USER); }}
+            );
             // Register an Event Listener to get informed when
             Session session = resourceResolver.adaptTo(Session.class);
             if (session != null) {
@@ -145,20 +226,24 @@ public class DeclarativeDynamicResourceManagerService
             } else {
                 log.warn("Resource Resolver could not be adapted to Session");
             }
-            // To make sure we get all we will query all existing nodes
-            Resource root = resourceResolver.getResource(CONFIGURATION_ROOT_PATH);
-            log.info("Manual Check for Existing Nodes in: '{}', root-res: '{}'", CONFIGURATION_ROOT_PATH, root);
-            if(root != null) {
-                Iterator<Resource> i = resourceResolver.findResources(
-                    "SELECT * FROM [" + DDR_NODE_TYPE + "]",
-                    Query.JCR_SQL2
+            if(lazyStartup) {
+                // Register the DDRs of the last run right away and look them all up in the background
+                registerFromSnapshot();
+                executor.execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                reconcile();
+                            } catch (RuntimeException e) {
+                                log.error("Failed to Reconcile the DDRs", e);
+                            }
+                        }
+                    }
                 );
-                log.info("DDR Nodes by Type: '{}', has next: '{}'", i, i.hasNext());
-                while(i.hasNext()) {
-                    Resource item = i.next();
-                    log.info("Handle Found DDR Resource: '{}'", item);
-                    handleDDRSource(item);
-                }
+            } else {
+                registerAll();
+                writeSnapshot();
             }
         } catch (LoginException e) {
             log.error("Unable to obtain our Service Resource Resolver --> DDR disabled", e);
@@ -167,6 +252,106 @@ public class DeclarativeDynamicResourceManagerService
         }
     }
 
+    /** Queries all existing DDR nodes and handles them **/
+    private synchronized void registerAll() {
+        // To make sure we get all we will query all existing nodes
+        Resource root = workResourceResolver.getResource(CONFIGURATION_ROOT_PATH);
+        log.info("Manual Check for Existing Nodes in: '{}', root-res: '{}'", CONFIGURATION_ROOT_PATH, root);
+        if(root != null) {
+            Iterator<Resource> i = workResourceResolver.findResources(
+                "SELECT * FROM [" + DDR_NODE_TYPE + "]",
+                Query.JCR_SQL2
+            );
+            log.info("DDR Nodes by Type: '{}', has next: '{}'", i, i.hasNext());
+            while(i.hasNext()) {
+                Resource item = i.next();
+                log.info("Handle Found DDR Resource: '{}'", item);
+                // Already registered DDRs are up to date and must not be updated again
+                Resource ddrProvider = findDDRSource(item);
+                if(ddrProvider == null || !registeredServicesByProvider.containsKey(ddrProvider.getPath())) {
+                    handleDDRSource(item);
+                }
+            }
+        }
+    }
+
+    /** Registers the DDRs from the snapshot of the last run by their path without querying the repository **/
+    private synchronized void registerFromSnapshot() {
+        Properties snapshot = readSnapshot();
+        for(String providerPath: snapshot.stringPropertyNames()) {
+            Resource ddrProvider = workResourceResolver.getResource(providerPath);
+            log.info("Handle DDR Resource: '{}' from Snapshot", providerPath);
+            if(ddrProvider != null) {
+                handleDDRSource(ddrProvider);
+            }
+        }
+    }
+
+    /**
+     * Drops the registered DDRs whose source is gone or points to another target, handles all existing DDR nodes
+     * and then keeps the registered DDRs for the next run
+     */
+    private synchronized void reconcile() {
+        if(deactivated) {
+            return;
+        }
+        Timer.Context timer = reconcileTime.time();
+        try {
+            reconcileRegistrations();
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void reconcileRegistrations() {
+        workResourceResolver.refresh();
+        for(DeclarativeDynamicResourceProvider provider: new ArrayList<>(registeredServicesByProvider.values())) {
+            Resource ddrProvider = findDDRSource(workResourceResolver.getResource(provider.getProviderRootPath()));
+            if(
+                ddrProvider == null || !ddrProvider.getPath().equals(provider.getProviderRootPath()) ||
+                    !provider.getTargetRootPath().equals(ddrProvider.getValueMap().get(DDR_TARGET_PROPERTY_NAME, String.class))
+            ) {
+                log.info("Unregister outdated DDR: '{}'", provider.getProviderRootPath());
+                registeredServicesByProvider.remove(provider.getProviderRootPath());
+                registeredServicesByTarget.remove(provider.getTargetRootPath());
+                provider.unregisterService();
+                if(dynamicComponentFilterNotifier != null) {
+                    dynamicComponentFilterNotifier.removeDynamicDeclarativeResource(provider.getTargetRootPath());
+                }
+            }
+        }
+        registerAll();
+        writeSnapshot();
+    }
+
+    private Properties readSnapshot() {
+        Properties answer = new Properties();
+        File file = bundleContext.getDataFile(SNAPSHOT_FILE_NAME);
+        if(file != null && file.isFile()) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                answer.load(inputStream);
+            } catch (IOException e) {
+                log.warn("Failed to read the DDR Snapshot: '{}'", file, e);
+            }
+        }
+        return answer;
+    }
+
+    private synchronized void writeSnapshot() {
+        File file = bundleContext.getDataFile(SNAPSHOT_FILE_NAME);
+        if(file != null) {
+            Properties snapshot = new Properties();
+            for(Entry<String, DeclarativeDynamicResourceProvider> entry: registeredServicesByProvider.entrySet()) {
+                snapshot.setProperty(entry.getKey(), entry.getValue().getTargetRootPath());
+            }
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                snapshot.store(outputStream, "Registered Declarative Dynamic Resources");
+            } catch (IOException e) {
+                log.warn("Failed to write the DDR Snapshot: '{}'", file, e);
+            }
+        }
+    }
+
     private void parseDDRFilter(String[] filters, Map<String, List<String>> filterMap) {
         if(filters != null && filters.length > 0) {
             for(String filter: filters) {
@@ -201,6 +386,7 @@ public class DeclarativeDynamicResourceManagerService
                     DeclarativeDynamicResourceProvider resourceProvider = registeredServicesByTarget.get(ddrTargetPath);
                     if (resourceProvider == null) {
                         DeclarativeDynamicResourceProviderHandler service = new DeclarativeDynamicResourceProviderHandler();
+                        service.setMetrics(new DeclarativeDynamicResourceMetrics(metricsService, ddrTargetPath));
                         log.info("Dynamic Target: '{}', Dynamic Provider: '{}'", ddrTargetResource, ddrProvider);
                         long id = service.registerService(
                             bundleContext.getBundle(), ddrTargetPath, ddrProvider.getPath(), resourceResolver,
@@ -257,7 +443,10 @@ public class DeclarativeDynamicResourceManagerService
     }
 
     @Override
-    public void update(String dynamicProviderPath) {
+    public synchronized void update(String dynamicProviderPath) {
+        if(deactivated) {
+            return;
+        }
         try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(
             new HashMap<String, Object>() {{ put(ResourceResolverFactory.SUBSERVICE, DYNAMIC_COMPONENTS_SERVICE_USER); }}
         )) {
@@ -270,30 +459,72 @@ public class DeclarativeDynamicResourceManagerService
 
     @Override
     public void addReference(String sourcePath, String targetPath) {
-        ReferenceEventListener referenceEventListener = null;
-        for(Entry<String, ReferenceEventListener> entry: referenceListeners.entrySet()) {
-            // If there is already a registered Event Listener for the given target or one of its parents when we ignore it
-            if(targetPath.startsWith(entry.getValue().getReferencedPath())) {
-                referenceEventListener = entry.getValue();
-                break;
+        synchronized (referenceLock) {
+            // If there is already a registered Event Listener for the given target or one of its parents then we reuse it
+            ReferenceEventListener referenceEventListener = findReferenceListener(targetPath);
+            if(referenceEventListener == null) {
+                referenceEventListener = new ReferenceEventListener();
+                referenceEventListener.registerListener(sourcePath, targetPath, resourceResolver);
+                referenceListeners.put(targetPath, referenceEventListener);
+            } else {
+                referenceEventListener.addSourcePath(sourcePath);
             }
-            //AS TODO: this should be handled by the caller (Resource Provider) as he knows the Provider Root
-//            //AS TODO: Should we only limit this to /conf/.../settings/dynamic ?
-//            if(sourcePath.startsWith(CONFIGURATION_ROOT_PATH)) {
-//                // A reference is pointing inside the Dynamic Folder which is already handled so we ignore it
-//                referenceEventListener = entry.getValue();
-//                break;
-//            }
-        }
-        if(referenceEventListener == null) {
-            referenceEventListener = new ReferenceEventListener();
-            referenceEventListener.registerListener(sourcePath, targetPath, resourceResolver);
-            referenceListeners.put(sourcePath, referenceEventListener);
         }
     }
 
+    private ReferenceEventListener findReferenceListener(String path) {
+        for(String current = path; current != null; current = getParentPath(current)) {
+            ReferenceEventListener answer = referenceListeners.get(current);
+            if(answer != null) {
+                return answer;
+            }
+        }
+        return null;
+    }
+
+    private DeclarativeDynamicResourceProvider findProvider(String path) {
+        for(String current = path; current != null; current = getParentPath(current)) {
+            DeclarativeDynamicResourceProvider answer = registeredServicesByProvider.get(current);
+            if(answer != null) {
+                return answer;
+            }
+        }
+        return null;
+    }
+
+    private static String getParentPath(String path) {
+        int index = path.lastIndexOf('/');
+        return index > 0 ? path.substring(0, index) : null;
+    }
+
     @Deactivate
     private void deactivate() {
+        deactivated = true;
+        if(executor != null) {
+            executor.shutdownNow();
+            try {
+                if(!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.warn("DDR Background Tasks did not terminate in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        synchronized (eventLock) {
+            pendingRemovedPaths.clear();
+            pendingChangedPaths.clear();
+        }
+        // A reconcile or an event batch still running holds the monitor, so the DDRs it registers are unregistered here
+        synchronized (this) {
+            tearDown();
+        }
+    }
+
+    private void tearDown() {
+        if(resourceResolver != null) {
+            writeSnapshot();
+        }
         for(Entry<String, DeclarativeDynamicResourceProvider> entry: registeredServicesByTarget.entrySet()) {
             log.info("Before UnRegistering Tenant RP, service: '{}'", entry.getValue());
             entry.getValue().unregisterService();
@@ -319,88 +550,236 @@ public class DeclarativeDynamicResourceManagerService
         if(resourceResolver != null) {
             resourceResolver.close();
         }
+        if(workResourceResolver != null) {
+            workResourceResolver.close();
+        }
     }
 
     @Override
     public void onEvent(EventIterator events) {
         log.info("Handle Events: '{}'", events);
-        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(
-            new HashMap<String, Object>() {{ put(ResourceResolverFactory.SUBSERVICE, DYNAMIC_COMPONENTS_SERVICE_USER); }}
-        )) {
-            while (events.hasNext()) {
-                Event event = events.nextEvent();
+        Set<String> removedPaths = new HashSet<>();
+        Set<String> changedPaths = new HashSet<>();
+        long since = collectEvents(events, removedPaths, changedPaths);
+        queueEvents(removedPaths, changedPaths, since);
+    }
+
+    /**
+     * Collects the paths of the removed and changed nodes of the given events. Property events are reported
+     * as a change of their node.
+     *
+     * @return The date of the oldest event
+     */
+    private long collectEvents(EventIterator events, Set<String> removedPaths, Set<String> changedPaths) {
+        long answer = Long.MAX_VALUE;
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            try {
+                answer = Math.min(answer, event.getDate());
                 String path = event.getPath();
-                log.info("Handle Event: '{}', path: '{}', type: '{}'", event, path, event.getType());
+                log.debug("Handle Event: '{}', path: '{}', type: '{}'", event, path, event.getType());
                 switch (event.getType()) {
                     case Event.PROPERTY_ADDED:
                     case Event.PROPERTY_CHANGED:
+                    case Event.PROPERTY_REMOVED:
                         int index = path.lastIndexOf('/');
                         if(index > 0) {
-                            path = path.substring(0, index);
+                            changedPaths.add(path.substring(0, index));
                         }
-                        log.info("Property Added or Changed, path: '{}'", path);
-                        handleNodeChange(path, true);
                         break;
                     case Event.NODE_ADDED:
-                        handleNodeChange(path, true);
+                        changedPaths.add(path);
                         break;
                     case Event.NODE_REMOVED:
-                        handleNodeRemoved(path);
+                        removedPaths.add(path);
                         break;
                     case Event.NODE_MOVED:
                         // The only thing to handle here is when the location changed
                         Map info = event.getInfo();
                         Object temp = info.get("srcAbsPath");
                         if(temp instanceof String) {
-                            // Source found -> get target and remove it
-                            String sourcePath = temp.toString();
-                            handleNodeRemoved(sourcePath);
+                            removedPaths.add(temp.toString());
                         }
                         temp = info.get("destAbsPath");
                         if(temp instanceof String) {
-                            // Destination found -> get target and add it
-                            String destPath = temp.toString();
-                            handleNodeChange(destPath, true);
+                            changedPaths.add(temp.toString());
                         }
                         break;
-                    case Event.PROPERTY_REMOVED:
-                        index = path.lastIndexOf('/');
-                        if(index > 0) {
-                            String resourcePath = path.substring(0, index);
-                            handleNodeChange(resourcePath, false);
-                        }
                 }
+            } catch (RepositoryException e) {
+                log.error("Failed to Handle Event: '{}'", event, e);
             }
-        } catch (LoginException | RepositoryException e) {
+        }
+        return answer;
+    }
+
+    /**
+     * Applies the given paths right away if there is no debounce delay. Otherwise they are added to the pending
+     * paths which are applied together once the delay has passed.
+     */
+    private void queueEvents(Collection<String> removedPaths, Collection<String> changedPaths, long since) {
+        if(removedPaths.isEmpty() && changedPaths.isEmpty()) {
+            return;
+        }
+        ScheduledExecutorService executor = this.executor;
+        if(executor == null || eventDebounceDelay <= 0) {
+            applyEvents(collapse(removedPaths), collapse(changedPaths), since);
+            return;
+        }
+        synchronized (eventLock) {
+            pendingRemovedPaths.addAll(removedPaths);
+            pendingChangedPaths.addAll(changedPaths);
+            pendingSince = Math.min(pendingSince, since);
+            if(!eventsScheduled) {
+                try {
+                    executor.schedule(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                applyPendingEvents();
+                            }
+                        },
+                        eventDebounceDelay, TimeUnit.MILLISECONDS
+                    );
+                    eventsScheduled = true;
+                } catch (RejectedExecutionException e) {
+                    log.debug("Event Handler is shut down, ignore events");
+                }
+            }
+        }
+    }
+
+    private void applyPendingEvents() {
+        TreeSet<String> removedPaths;
+        TreeSet<String> changedPaths;
+        long since;
+        synchronized (eventLock) {
+            removedPaths = pendingRemovedPaths;
+            changedPaths = pendingChangedPaths;
+            since = pendingSince;
+            pendingRemovedPaths = new TreeSet<>();
+            pendingChangedPaths = new TreeSet<>();
+            pendingSince = Long.MAX_VALUE;
+            eventsScheduled = false;
+        }
+        try {
+            applyEvents(collapse(removedPaths), collapse(changedPaths), since);
+        } catch (RuntimeException e) {
             log.error("Failed to Handle Events", e);
         }
     }
 
-    private void handleNodeChange(String path, boolean added) {
-        Resource source = resourceResolver.getResource(path);
-        log.info("Source Resource found: '{}'", source);
-        if(source != null) {
-            handleDDRSource(source);
+    /**
+     * @return The given paths in order without the ones that have one of their ancestors in the given paths
+     */
+    private static List<String> collapse(Collection<String> paths) {
+        List<String> answer = new ArrayList<>();
+        String last = null;
+        for(String path: new TreeSet<>(paths)) {
+            if(last == null || !(path.equals(last) || path.startsWith(last.endsWith("/") ? last : last + "/"))) {
+                answer.add(path);
+                last = path;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Applies the removed and changed paths and then updates each affected DDR once with all its changed paths
+     */
+    private synchronized void applyEvents(List<String> removedPaths, List<String> changedPaths, long since) {
+        if(deactivated) {
+            log.debug("Service is deactivated, ignore events");
+            return;
+        }
+        if(since != Long.MAX_VALUE) {
+            eventLag.update(Math.max(0, System.currentTimeMillis() - since), TimeUnit.MILLISECONDS);
+        }
+        Timer.Context timer = applyEventsTime.time();
+        try {
+            applyPaths(removedPaths, changedPaths);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void applyPaths(List<String> removedPaths, List<String> changedPaths) {
+        log.info("Apply Events, removed: '{}', changed: '{}'", removedPaths, changedPaths);
+        workResourceResolver.refresh();
+        Map<DeclarativeDynamicResourceProvider, List<String>> updates = new LinkedHashMap<>();
+        for(String path: removedPaths) {
+            handleNodeRemoved(path, updates);
+        }
+        for(String path: changedPaths) {
+            handleNodeChange(path, updates);
+        }
+        for(Entry<DeclarativeDynamicResourceProvider, List<String>> entry: updates.entrySet()) {
+            if(entry.getKey().isActive()) {
+                entry.getKey().update(entry.getValue());
+            }
+        }
+    }
+
+    private void handleNodeChange(String path, Map<DeclarativeDynamicResourceProvider, List<String>> updates) {
+        DeclarativeDynamicResourceProvider provider = findProvider(path);
+        if(provider != null && !provider.getProviderRootPath().equals(path)) {
+            // A change inside a Provider Folder only affects the resources from that path
+            addUpdate(updates, provider, path);
+        } else if(provider == null && addReferenceUpdates(path, updates)) {
+            log.debug("Referenced Resource changed: '{}'", path);
+        } else {
+            // DDR Source itself changed or a new DDR was added
+            Resource source = workResourceResolver.getResource(path);
+            log.info("Source Resource found: '{}'", source);
+            if(source != null) {
+                handleDDRSource(source);
+            }
+        }
+    }
+
+    private void handleNodeRemoved(String path, Map<DeclarativeDynamicResourceProvider, List<String>> updates) {
+        DeclarativeDynamicResourceProvider provider = findProvider(path);
+        if(provider == null) {
+            addReferenceUpdates(path, updates);
+        } else if(provider.getProviderRootPath().equals(path)) {
+            // Provider to be removed found
+            registeredServicesByProvider.remove(provider.getProviderRootPath());
+            registeredServicesByTarget.remove(provider.getTargetRootPath());
+            updates.remove(provider);
+            provider.unregisterService();
+        } else {
+            // Sub Provider Node removed -> update Resource Provider
+            addUpdate(updates, provider, path);
         }
     }
 
-    private void handleNodeRemoved(String path) {
-        DeclarativeDynamicResourceProvider toBeRemoved = null;
-        for(Entry<String, DeclarativeDynamicResourceProvider> entry: registeredServicesByProvider.entrySet()) {
-            if(entry.getKey().equals(path)) {
-                // Provider to be removed found
-                toBeRemoved = entry.getValue();
-                break;
-            } else if(path.startsWith(entry.getKey())) {
-                // Sub Provider Node removed -> update Resource Provider
-                entry.getValue().update(path);
-                break;
+    /**
+     * Adds the given path as update to all the providers that reference it
+     * @return True if the path is referenced
+     */
+    private boolean addReferenceUpdates(String path, Map<DeclarativeDynamicResourceProvider, List<String>> updates) {
+        ReferenceEventListener referenceEventListener = findReferenceListener(path);
+        if(referenceEventListener != null) {
+            for(String sourcePath: referenceEventListener.getSourcePaths()) {
+                DeclarativeDynamicResourceProvider provider = findProvider(sourcePath);
+                if(provider != null) {
+                    addUpdate(updates, provider, path);
+                }
             }
         }
-        if(toBeRemoved != null) {
-            registeredServicesByProvider.remove(toBeRemoved.getProviderRootPath());
-            registeredServicesByTarget.remove(toBeRemoved.getTargetRootPath());
-            toBeRemoved.unregisterService();
+        return referenceEventListener != null;
+    }
+
+    private static void addUpdate(
+        Map<DeclarativeDynamicResourceProvider, List<String>> updates, DeclarativeDynamicResourceProvider provider, String path
+    ) {
+        List<String> paths = updates.get(provider);
+        if(paths == null) {
+            paths = new ArrayList<>();
+            updates.put(provider, paths);
+        }
+        if(!paths.contains(path)) {
+            paths.add(path);
         }
     }
 
@@ -410,12 +789,16 @@ public class DeclarativeDynamicResourceManagerService
 
     class ReferenceEventListener implements EventListener {
 
-        private String sourcePath;
+        private final Set<String> sourcePaths = new HashSet<>();
         private String referencedPath;
 
-        /** @return The path of where the reference is found **/
-        public String getSourcePath() {
-            return sourcePath;
+        /** @return The paths of where the references are found **/
+        public synchronized List<String> getSourcePaths() {
+            return new ArrayList<>(sourcePaths);
+        }
+
+        synchronized void addSourcePath(String sourcePath) {
+            sourcePaths.add(sourcePath);
         }
 
         /** @return The path to where the reference points to **/
@@ -424,11 +807,11 @@ public class DeclarativeDynamicResourceManagerService
         }
 
         void registerListener(String sourcePath, String referencedPath, ResourceResolver resourceResolver) {
-            this.sourcePath = sourcePath;
+            addSourcePath(sourcePath);
             this.referencedPath = referencedPath;
             Session session = resourceResolver.adaptTo(Session.class);
             if (session != null) {
-                log.info("Register Event Listener on Path: '{}'", sourcePath);
+                log.info("Register Event Listener on Path: '{}'", referencedPath);
                 try {
                     session.getWorkspace().getObservationManager().addEventListener(
                         this, EVENT_TYPES, referencedPath,
@@ -445,7 +828,7 @@ public class DeclarativeDynamicResourceManagerService
         void unregisterListener(ResourceResolver resourceResolver) {
             Session session = resourceResolver.adaptTo(Session.class);
             if (session != null) {
-                log.info("Unregister Event Listener on Path: '{}'", sourcePath);
+                log.info("Unregister Event Listener on Path: '{}'", referencedPath);
                 try {
                     session.getWorkspace().getObservationManager().removeEventListener(this);
                 } catch (RepositoryException e) {
@@ -458,7 +841,10 @@ public class DeclarativeDynamicResourceManagerService
 
         @Override
         public void onEvent(EventIterator events) {
-            handleNodeChange(sourcePath, false);
+            Set<String> removedPaths = new HashSet<>();
+            Set<String> changedPaths = new HashSet<>();
+            long since = collectEvents(events, removedPaths, changedPaths);
+            queueEvents(removedPaths, changedPaths, since);
         }
     }
 }
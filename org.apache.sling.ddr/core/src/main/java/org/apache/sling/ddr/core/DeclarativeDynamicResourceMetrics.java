@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.ddr.core;
+
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
+
+/**
+ * Metrics of a single Declarative Dynamic Resource Provider which are reported to the Metrics Service
+ * prefixed with 'DeclarativeDynamicResource-<target root path>-':
+ *
+ * - mappingHits / mappingMisses: Resource lookups found or not found in the mappings
+ * - childrenIndexHits / childrenIndexMisses: Children listings found or not found in the children index
+ * - filteredSources: Source resources removed by the allowed / prohibited DDR filters
+ * - getResourceTime / listChildrenTime: Time to look up a resource or to start listing the children
+ * - obtainChildrenTime: Time to rebuild the mappings and children index of a dynamic parent from its source
+ * - updateTime: Time to drop the mappings affected by changed paths
+ */
+class DeclarativeDynamicResourceMetrics {
+
+    private static final String PREFIX = "DeclarativeDynamicResource-";
+
+    static final DeclarativeDynamicResourceMetrics NOOP = new DeclarativeDynamicResourceMetrics(MetricsService.NOOP, "");
+
+    private final Counter mappingHits;
+    private final Counter mappingMisses;
+    private final Counter childrenIndexHits;
+    private final Counter childrenIndexMisses;
+    private final Counter filteredSources;
+    private final Timer getResourceTime;
+    private final Timer listChildrenTime;
+    private final Timer obtainChildrenTime;
+    private final Timer updateTime;
+
+    /**
+     * @param metricsService Metrics Service to report to
+     * @param targetRootPath Target Root Path of the Declarative Dynamic Resource Provider
+     */
+    DeclarativeDynamicResourceMetrics(MetricsService metricsService, String targetRootPath) {
+        String prefix = PREFIX + targetRootPath + '-';
+        mappingHits = metricsService.counter(prefix + "mappingHits");
+        mappingMisses = metricsService.counter(prefix + "mappingMisses");
+        childrenIndexHits = metricsService.counter(prefix + "childrenIndexHits");
+        childrenIndexMisses = metricsService.counter(prefix + "childrenIndexMisses");
+        filteredSources = metricsService.counter(prefix + "filteredSources");
+        getResourceTime = metricsService.timer(prefix + "getResourceTime");
+        listChildrenTime = metricsService.timer(prefix + "listChildrenTime");
+        obtainChildrenTime = metricsService.timer(prefix + "obtainChildrenTime");
+        updateTime = metricsService.timer(prefix + "updateTime");
+    }
+
+    void mappingHit() {
+        mappingHits.increment();
+    }
+
+    void mappingMiss() {
+        mappingMisses.increment();
+    }
+
+    void childrenIndexHit() {
+        childrenIndexHits.increment();
+    }
+
+    void childrenIndexMiss() {
+        childrenIndexMisses.increment();
+    }
+
+    void sourceFiltered() {
+        filteredSources.increment();
+    }
+
+    Timer.Context timeGetResource() {
+        return getResourceTime.time();
+    }
+
+    Timer.Context timeListChildren() {
+        return listChildrenTime.time();
+    }
+
+    Timer.Context timeObtainChildren() {
+        return obtainChildrenTime.time();
+    }
+
+    Timer.Context timeUpdate() {
+        return updateTime.time();
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.sling.ddr.core;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.metrics.Timer;
 import org.apache.sling.ddr.api.DeclarativeDynamicResourceManager;
 import org.apache.sling.ddr.api.DeclarativeDynamicResourceProvider;
 import org.apache.sling.spi.resource.provider.ProviderContext;
@@ -32,13 +33,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.apache.sling.api.resource.Resource.RESOURCE_TYPE_NON_EXISTING;
 import static org.apache.sling.ddr.api.Constants.LABEL;
@@ -70,13 +78,22 @@ public class DeclarativeDynamicResourceProviderHandler
     private Map<String, List<String>> allowedDDRFilter;
     private Map<String, List<String>> prohibitedDDRFilter;
     private List<String> followedLinkNames;
+    private DeclarativeDynamicResourceMetrics metrics = DeclarativeDynamicResourceMetrics.NOOP;
 
-    private Object lock = new Object();
-    private Map<String,Reference> mappings = new HashMap<>();
-    private Map<String,List<Reference>> childrenMappings = new HashMap<>();
+    // Lookups read the concurrent maps without locking. The update lock only serializes the publication of obtained
+    // children with updates so that children obtained before an update are not published after it
+    private final Object updateLock = new Object();
+    private volatile long generation;
+    private final ConcurrentMap<String,Reference> mappings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,List<Reference>> childrenMappings = new ConcurrentHashMap<>();
 
     //---------- Service Registration
 
+    /** Sets the Metrics to report to, which must be done before this service is registered **/
+    void setMetrics(DeclarativeDynamicResourceMetrics metrics) {
+        this.metrics = metrics == null ? DeclarativeDynamicResourceMetrics.NOOP : metrics;
+    }
+
     public long registerService(
         Bundle bundle, String targetRootPath, String providerRootPath, ResourceResolver resourceResolver,
         DeclarativeDynamicResourceManager declarativeDynamicResourceManager,
@@ -135,14 +152,101 @@ public class DeclarativeDynamicResourceProviderHandler
     }
 
     public void update(String path) {
-        synchronized (lock) {
-            mappings.clear();
-            childrenMappings.clear();
+        update(Collections.singleton(path));
+    }
+
+    /**
+     * Drops the mappings affected by a change of the given paths, which can be paths in the provider folder, in the
+     * target folder or referenced paths. The mappings at or below a path, the mappings that point to it and the
+     * children list of its parent are obtained again on the next access, as are the children of the
+     * dynamic resources that point to its parent. A change of either root path drops all mappings.
+     *
+     * @param paths Paths of the changed resources
+     */
+    public void update(Collection<String> paths) {
+        Set<String> changed = new HashSet<>();
+        Set<String> invalidated = new HashSet<>();
+        boolean all = false;
+        for(String path: paths) {
+            if(path == null) {
+                all = true;
+                break;
+            }
+            changed.add(path);
+            String targetPath = null;
+            if (isSameOrDescendant(path, providerRootPath)) {
+                targetPath = targetRootPath + path.substring(providerRootPath.length());
+            } else if (isSameOrDescendant(path, targetRootPath)) {
+                targetPath = path;
+            }
+            if(targetRootPath.equals(targetPath)) {
+                all = true;
+                break;
+            } else if(targetPath != null) {
+                invalidated.add(targetPath);
+            }
+        }
+        Timer.Context timer = metrics.timeUpdate();
+        try {
+            dropMappings(changed, invalidated, all);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void dropMappings(Set<String> changed, Set<String> invalidated, boolean all) {
+        synchronized (updateLock) {
+            generation++;
+            if(all) {
+                mappings.clear();
+                childrenMappings.clear();
+                return;
+            }
+            // A resource added below a referenced folder has no mapping yet, so the children of the dynamic resources
+            // whose reference is its parent are obtained again
+            Set<String> changedParents = new HashSet<>();
+            for(String changedPath: changed) {
+                changedParents.add(getParentPath(changedPath));
+            }
+            Set<String> changedChildren = new HashSet<>();
+            for(Entry<String, Reference> entry: mappings.entrySet()) {
+                Reference reference = entry.getValue();
+                if(hasSameOrAncestor(reference.getSource(), changed) || hasSameOrAncestor(reference.getReference(), changed)) {
+                    invalidated.add(entry.getKey());
+                } else if(changedParents.contains(reference.getReference())) {
+                    changedChildren.add(entry.getKey());
+                }
+            }
+            Set<String> invalidatedParents = new HashSet<>();
+            for(String invalidatedPath: invalidated) {
+                invalidatedParents.add(getParentPath(invalidatedPath));
+            }
+            for(Iterator<String> i = mappings.keySet().iterator(); i.hasNext(); ) {
+                if(hasSameOrAncestor(i.next(), invalidated)) {
+                    i.remove();
+                }
+            }
+            for(Iterator<String> i = childrenMappings.keySet().iterator(); i.hasNext(); ) {
+                String key = i.next();
+                if(invalidatedParents.contains(key) || changedChildren.contains(key) || hasSameOrAncestor(key, invalidated)) {
+                    i.remove();
+                }
+            }
+            log.debug("Update of: '{}' invalidated: '{}'", changed, invalidated);
         }
     }
 
     @Override
     public Resource getResource(ResolveContext ctx, String path, ResourceContext resourceContext, Resource parent) {
+        Timer.Context timer = metrics.timeGetResource();
+        try {
+            return findResource(ctx, path, resourceContext, parent);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private Resource findResource(ResolveContext ctx, String path, ResourceContext resourceContext, Resource parent) {
         ResourceResolver contextResourceResolver = ctx.getResourceResolver();
         log.info("Get Resource, path: '{}', parent: '{}', provider root: '{}'", path, parent, providerRootPath);
         String resourcePath;
@@ -165,32 +269,32 @@ public class DeclarativeDynamicResourceProviderHandler
             }
             log.info("After Getting Resource from Parent, path: '{}', resource: '{}'", resourcePath, answer);
             if(answer == null) {
-                synchronized (lock) {
-                    Reference mappedPath = mappings.get(resourcePath);
-                    if (mappedPath == null) {
-                        // Obtain parent path and list children then try to re-obtain the mapping, if not found then there is no mapping
-                        int index = resourcePath.lastIndexOf('/');
-                        if (index > 0 && index < resourcePath.length() - 1) {
-                            String parentPath = resourcePath.substring(0, index);
-                            obtainChildren(contextResourceResolver, parentPath, false);
-                            mappedPath = mappings.get(resourcePath);
-                        }
+                Reference mappedPath = mappings.get(resourcePath);
+                if (mappedPath != null) {
+                    metrics.mappingHit();
+                } else {
+                    metrics.mappingMiss();
+                    // Obtain parent path and list children then try to re-obtain the mapping, if not found then there is no mapping
+                    int index = resourcePath.lastIndexOf('/');
+                    if (index > 0 && index < resourcePath.length() - 1) {
+                        String parentPath = resourcePath.substring(0, index);
+                        mappedPath = obtainChildren(contextResourceResolver, parentPath).mappings.get(resourcePath);
                     }
-                    if (mappedPath != null) {
-                        Resource source = getResource(
-                            contextResourceResolver, mappedPath.isRef() ?
-                                mappedPath.getReference():
-                                mappedPath.getSource()
-                        );
-                        int index = resourcePath.lastIndexOf('/');
-                        String parentPath = "";
-                        if (index > 0 && index < resourcePath.length() - 1) {
-                            parentPath = resourcePath.substring(0, index);
-                        }
-                        answer = createSyntheticFromResource(
-                            source, resourcePath, parentPath.equals(targetRootPath)
-                        );
+                }
+                if (mappedPath != null) {
+                    Resource source = getResource(
+                        contextResourceResolver, mappedPath.isRef() ?
+                            mappedPath.getReference():
+                            mappedPath.getSource()
+                    );
+                    int index = resourcePath.lastIndexOf('/');
+                    String parentPath = "";
+                    if (index > 0 && index < resourcePath.length() - 1) {
+                        parentPath = resourcePath.substring(0, index);
                     }
+                    answer = createSyntheticFromResource(
+                        source, resourcePath, parentPath.equals(targetRootPath)
+                    );
                 }
             }
         } else {
@@ -202,6 +306,15 @@ public class DeclarativeDynamicResourceProviderHandler
 
     @Override
     public Iterator<Resource> listChildren(ResolveContext ctx, Resource parent) {
+        Timer.Context timer = metrics.timeListChildren();
+        try {
+            return findChildren(ctx, parent);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private Iterator<Resource> findChildren(ResolveContext ctx, Resource parent) {
         Iterator<Resource> answer = null;
         log.info("List Children, resolve-context: '{}', parent: '{}'", ctx, parent);
         String resourcePath = parent.getPath();
@@ -213,38 +326,15 @@ public class DeclarativeDynamicResourceProviderHandler
             // Handle the dynamic path
             ResourceProvider parentResourceProvider = ctx.getParentResourceProvider();
             ResolveContext parentResolveContext = ctx.getParentResolveContext();
-            List<Resource> items = new ArrayList<>();
-            Iterator<Resource> i;
+            Iterator<Resource> parentChildren = null;
             if (parentResourceProvider != null && parentResolveContext != null) {
-                // First obtain the Children from the Parent Resource Provider (JCR)
-                i = parentResourceProvider.listChildren(parentResolveContext, parent);
-                if (i != null) {
-                    while (i.hasNext()) {
-                        items.add(i.next());
-                    }
-                }
-            }
-            synchronized (lock) {
-                // Obtain the matching resource from the provider
-                List<Reference> childrenList = childrenMappings.get(resourcePath);
-                log.info("Resource Path: '{}', Children List: '{}'", resourcePath, childrenList);
-                if (childrenList != null) {
-                    for (Reference childPath : childrenList) {
-                        Resource child = getResource(contextResourceResolver, childPath.getReference());
-                        int index = childPath.getSource().lastIndexOf('/');
-                        String childName = childPath.getSource().substring(index);
-                        items.add(
-                            createSyntheticFromResource(
-                                child, resourcePath + childName,
-                                resourcePath.equals(targetRootPath)
-                            )
-                        );
-                    }
-                } else {
-                    items = obtainChildren(contextResourceResolver, resourcePath, true);
-                }
+                // First the Children from the Parent Resource Provider (JCR)
+                parentChildren = parentResourceProvider.listChildren(parentResolveContext, parent);
             }
-            answer = items.iterator();
+            // Then the Dynamic Children from the Children Index
+            answer = new ChildrenIterator(
+                parentChildren, contextResourceResolver, resourcePath, getChildren(contextResourceResolver, resourcePath), 0
+            );
         } else {
             ResourceProvider parentResourceProvider = ctx.getParentResourceProvider();
             ResolveContext parentResolveContext = ctx.getParentResolveContext();
@@ -299,16 +389,64 @@ public class DeclarativeDynamicResourceProviderHandler
         return true;
     }
 
-    private List<Resource> obtainChildren(ResourceResolver contextResourceResolver, String resourcePath, boolean returnChildren) {
-        List<Resource> answer = new ArrayList<>();
+    /**
+     * Lists the Dynamic Children of the given dynamic resource starting at the given position in its Children Index.
+     * The skipped children are not resolved.
+     *
+     * @param contextResourceResolver Resource Resolver of the request
+     * @param resourcePath Path of the dynamic parent resource
+     * @param offset Number of children to skip
+     * @return Iterator over the Dynamic Children, which are created when they are reached
+     */
+    Iterator<Resource> listChildren(ResourceResolver contextResourceResolver, String resourcePath, int offset) {
+        return new ChildrenIterator(
+            null, contextResourceResolver, resourcePath, getChildren(contextResourceResolver, resourcePath), offset
+        );
+    }
+
+    /** @return The ordered Children Index of the given dynamic resource **/
+    private List<Reference> getChildren(ResourceResolver contextResourceResolver, String resourcePath) {
+        List<Reference> answer = childrenMappings.get(resourcePath);
+        log.debug("Resource Path: '{}', Children List: '{}'", resourcePath, answer);
+        if(answer != null) {
+            metrics.childrenIndexHit();
+        } else {
+            metrics.childrenIndexMiss();
+            answer = obtainChildren(contextResourceResolver, resourcePath).children;
+        }
+        return answer;
+    }
+
+    /**
+     * Obtains the children of the given dynamic resource from the provider folder and publishes their mappings
+     * unless an update happened in the meantime.
+     *
+     * @return The obtained children, which are valid for the current request even if they were not published
+     */
+    private Children obtainChildren(ResourceResolver contextResourceResolver, String resourcePath) {
+        Timer.Context timer = metrics.timeObtainChildren();
+        try {
+            return buildChildren(contextResourceResolver, resourcePath);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private Children buildChildren(ResourceResolver contextResourceResolver, String resourcePath) {
+        long startGeneration = generation;
+        Children answer = new Children();
         String postfix = resourcePath.substring(targetRootPath.length());
         if (!postfix.isEmpty() && postfix.charAt(0) == '/') {
             postfix = postfix.substring(1);
         }
         List<Reference> childrenList = new ArrayList<>();
-        childrenMappings.put(resourcePath, childrenList);
         String targetPath = providerRootPath + SLASH + postfix;
         Reference ref = mappings.get(resourcePath);
+        String resourceParentPath = getParentPath(resourcePath);
+        if(ref == null && !postfix.isEmpty() && !childrenMappings.containsKey(resourceParentPath)) {
+            // The mapping of a dynamic resource is dropped together with the children of its parent
+            ref = obtainChildren(contextResourceResolver, resourceParentPath).mappings.get(resourcePath);
+        }
         Resource provider =
             getResource(
                 contextResourceResolver,
@@ -325,7 +463,9 @@ public class DeclarativeDynamicResourceProviderHandler
                 if (child.getName().equals(REP_POLICY)) {
                     continue;
                 }
-                if (filterSource(child)) {
+                if (!filterSource(child)) {
+                    metrics.sourceFiltered();
+                } else {
                     // Check if this entry is a reference and if so get that one instead
                     ValueMap properties = child.getValueMap();
                     String referencePath = null;
@@ -338,17 +478,8 @@ public class DeclarativeDynamicResourceProviderHandler
                                 log.info("Add Path: '{}' to children list", resourcePath);
                                 childrenList.add(new Reference(child.getPath(), referencePath));
                                 String parentPath = targetRootPath + (postfix.isEmpty() ? "" : SLASH + postfix);
-                                mappings.put(parentPath + SLASH + child.getName(), new Reference(child.getPath(), referencePath));
+                                answer.mappings.put(parentPath + SLASH + child.getName(), new Reference(child.getPath(), referencePath));
                                 declarativeDynamicResourceManager.addReference(child.getPath(), referencePath);
-                                if(returnChildren) {
-                                    answer.add(
-                                        createSyntheticFromResource(
-                                            reference,
-                                            parentPath + SLASH + child.getName(),
-                                            parentPath.equals(targetRootPath)
-                                        )
-                                    );
-                                }
                                 handled = true;
                             } else {
                                 log.warn("Reference: '{}' provided by does not resolve to a resource", referencePath);
@@ -366,22 +497,39 @@ public class DeclarativeDynamicResourceProviderHandler
                         }
                         childrenList.add(newRef);
                         String parentPath = targetRootPath + (postfix.isEmpty() ? "" : SLASH + postfix);
-                        mappings.put(parentPath + SLASH + child.getName(), newRef);
-                        if(returnChildren) {
-                            answer.add(
-                                createSyntheticFromResource(
-                                    child, parentPath + SLASH + child.getName(),
-                                    parentPath.equals(targetRootPath)
-                                )
-                            );
-                        }
+                        answer.mappings.put(parentPath + SLASH + child.getName(), newRef);
                     }
                 }
             }
         }
+        answer.children = Collections.unmodifiableList(childrenList);
+        synchronized (updateLock) {
+            if(generation == startGeneration) {
+                mappings.putAll(answer.mappings);
+                childrenMappings.put(resourcePath, answer.children);
+            }
+        }
         return answer;
     }
 
+    private static boolean isSameOrDescendant(String path, String ancestorPath) {
+        return path.equals(ancestorPath) || path.startsWith(ancestorPath.endsWith(SLASH) ? ancestorPath : ancestorPath + SLASH);
+    }
+
+    private static boolean hasSameOrAncestor(String path, Set<String> paths) {
+        for(String current = path; !current.isEmpty(); current = getParentPath(current)) {
+            if(paths.contains(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getParentPath(String path) {
+        int index = path.lastIndexOf('/');
+        return index > 0 ? path.substring(0, index) : "";
+    }
+
     private Resource getResource(ResourceResolver contextResourceResolver, String path) {
         Resource answer = null;
         if(contextResourceResolver != null) {
@@ -393,10 +541,79 @@ public class DeclarativeDynamicResourceProviderHandler
         return answer;
     }
 
-    private class Reference {
-        private String source;
-        private String reference;
-        private boolean ref;
+    private static class Children {
+        private List<Reference> children;
+        private final Map<String,Reference> mappings = new HashMap<>();
+    }
+
+    /**
+     * Iterates over the children of the Parent Resource Provider followed by the Dynamic Children of a Children
+     * Index. A Dynamic Child is only created when it is reached and skipped if its source is gone.
+     */
+    private class ChildrenIterator implements Iterator<Resource> {
+        private final Iterator<Resource> parentChildren;
+        private final ResourceResolver contextResourceResolver;
+        private final String parentPath;
+        private final List<Reference> children;
+        private int index;
+        private Resource next;
+
+        ChildrenIterator(
+            Iterator<Resource> parentChildren, ResourceResolver contextResourceResolver, String parentPath,
+            List<Reference> children, int offset
+        ) {
+            this.parentChildren = parentChildren;
+            this.contextResourceResolver = contextResourceResolver;
+            this.parentPath = parentPath;
+            this.children = children;
+            this.index = Math.max(0, offset);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(next == null) {
+                next = seek();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Resource next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Resource answer = next;
+            next = null;
+            return answer;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private Resource seek() {
+            if(parentChildren != null && parentChildren.hasNext()) {
+                return parentChildren.next();
+            }
+            while(index < children.size()) {
+                Reference child = children.get(index++);
+                Resource source = getResource(contextResourceResolver, child.getReference());
+                if(source != null) {
+                    return createSyntheticFromResource(
+                        source, parentPath + SLASH + child.getName(), parentPath.equals(targetRootPath)
+                    );
+                }
+                log.debug("Source: '{}' of Dynamic Child: '{}' is gone", child.getReference(), child.getName());
+            }
+            return null;
+        }
+    }
+
+    private static final class Reference {
+        private final String source;
+        private final String reference;
+        private final boolean ref;
 
         public Reference(String source) {
             this(source, null);
@@ -412,6 +629,10 @@ public class DeclarativeDynamicResourceProviderHandler
             return source;
         }
 
+        public String getName() {
+            return source.substring(source.lastIndexOf('/') + 1);
+        }
+
         public String getReference() {
             return reference == null ? source : reference;
         }
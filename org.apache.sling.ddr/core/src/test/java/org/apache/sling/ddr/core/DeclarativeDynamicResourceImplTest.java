@@ -27,10 +27,14 @@ import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Calendar;
 import java.util.HashMap;
 
+import static org.apache.sling.ddr.api.Constants.DDR_INDICATOR;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 public class DeclarativeDynamicResourceImplTest {
 
@@ -74,4 +78,28 @@ public class DeclarativeDynamicResourceImplTest {
         assertNotNull("Missing Title Property", properties.get(testPropertyKey, String.class));
         assertEquals("Wrong Title Property", testPropertyValue, properties.get(testPropertyKey, String.class));
     }
+
+    @Test
+    public void testTypedValueMap() throws Exception {
+        final Calendar created = Calendar.getInstance();
+        Resource source = new MockResource(
+            "/conf/test/settings/dynamic/test1",
+            new HashMap<String, Object>() {{
+                put("sling:resourceType", "test/conf");
+                put("jcr:created", created);
+                put("count", 42L);
+                put("enabled", true);
+            }},
+            resourceResolver
+        );
+        DeclarativeDynamicResource declarativeDynamicResource = DeclarativeDynamicResourceImpl.createSyntheticFromResource(
+            source, "/apps/dynamic/test1", true
+        );
+        ValueMap properties = declarativeDynamicResource.getValueMap();
+        assertEquals("Long Property was converted", 42L, properties.get("count"));
+        assertEquals("Boolean Property was converted", Boolean.TRUE, properties.get("enabled"));
+        assertFalse("Ignored Property was returned", properties.containsKey("jcr:created"));
+        assertEquals("DDR not marked", "true", properties.get(DDR_INDICATOR, String.class));
+        assertSame("Value Map was not cached", properties, declarativeDynamicResource.getValueMap());
+    }
 }
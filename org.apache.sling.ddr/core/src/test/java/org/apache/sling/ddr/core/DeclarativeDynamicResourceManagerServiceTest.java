@@ -46,6 +46,7 @@ import javax.jcr.observation.EventIterator;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -230,6 +231,85 @@ public class DeclarativeDynamicResourceManagerServiceTest {
         assertTrue("Mappings were not cleared", ((Map) mappingsField.get(provider)).isEmpty());
     }
 
+    @Test
+    public void testDebouncedResourceUpdates() throws Exception {
+        String confResourceRoot = "/conf/test/settings/dynamic";
+        String dynamicResourceRoot = "/apps/dynamic";
+
+        context.load().json("/ddr-installation/ddr-conf-settings.json", "/conf");
+        context.load().json("/ddr-installation/ddr-apps-settings.json", "/apps");
+        Resource sourceRoot = resourceResolver.getResource(confResourceRoot);
+        Resource targetRoot = resourceResolver.getResource(dynamicResourceRoot);
+        when(resourceResolver.findResources(anyString(), anyString())).thenReturn(
+            Arrays.asList(sourceRoot).iterator()
+        );
+
+        DeclarativeDynamicResourceManagerService.Configuration configuration = createConfiguration(null, null);
+        when(configuration.event_debounce_delay()).thenReturn(200L);
+        declarativeDynamicResourceManagerService.activate(context.bundleContext(), configuration);
+
+        Map<String, DeclarativeDynamicResourceProvider> providerMap = declarativeDynamicResourceManagerService.getRegisteredServicesByTarget();
+        assertEquals("Expected only one DDR Provider", 1, providerMap.size());
+        DeclarativeDynamicResourceProvider provider = providerMap.values().iterator().next();
+        List<Resource> resources = getResourcesFromProvider((ResourceProvider) provider, resolveContext, targetRoot);
+        assertEquals("Did not get 'test1' resource", 1, filterResourceByName(resources, true, "test1").size());
+
+        Field mappingsField = provider.getClass().getDeclaredField("mappings");
+        mappingsField.setAccessible(true);
+        assertFalse("Mappings should not be empty", ((Map) mappingsField.get(provider)).isEmpty());
+
+        // Events within the debounce delay are collected and applied together afterwards
+        declarativeDynamicResourceManagerService.onEvent(createEventIterator(Event.PROPERTY_CHANGED, confResourceRoot + "/test1/jcr:title"));
+        declarativeDynamicResourceManagerService.onEvent(createEventIterator(Event.PROPERTY_ADDED, confResourceRoot + "/test1/jcr:description"));
+        assertFalse("Mappings were cleared before the debounce delay", ((Map) mappingsField.get(provider)).isEmpty());
+
+        Thread.sleep(1000);
+        assertTrue("Mappings were not cleared", ((Map) mappingsField.get(provider)).isEmpty());
+    }
+
+    @Test
+    public void testLazyStartup() throws Exception {
+        String confResourceRoot = "/conf/test/settings/dynamic";
+        String dynamicResourceRoot = "/apps/dynamic";
+
+        context.load().json("/ddr-installation/ddr-conf-settings.json", "/conf");
+        context.load().json("/ddr-installation/ddr-apps-settings.json", "/apps");
+        Resource sourceRoot = resourceResolver.getResource(confResourceRoot);
+        when(resourceResolver.findResources(anyString(), anyString())).thenReturn(
+            Arrays.asList(sourceRoot).iterator()
+        );
+
+        // The first run looks up the DDRs and keeps them in the snapshot
+        declarativeDynamicResourceManagerService.activate(context.bundleContext(), createConfiguration(null, null));
+        assertEquals("Expected only one DDR Provider", 1, declarativeDynamicResourceManagerService.getRegisteredServicesByTarget().size());
+
+        // The next run registers the DDRs from the snapshot even if the query does not find them yet
+        when(resourceResolver.findResources(anyString(), anyString())).thenReturn(
+            Collections.<Resource>emptyIterator()
+        );
+        DeclarativeDynamicResourceManagerService lazyService = new DeclarativeDynamicResourceManagerService();
+        lazyService.resourceResolverFactory = resourceResolverFactory;
+        DeclarativeDynamicResourceManagerService.Configuration configuration = createConfiguration(null, null);
+        when(configuration.lazy_startup()).thenReturn(true);
+        lazyService.activate(context.bundleContext(), configuration);
+
+        Map<String, DeclarativeDynamicResourceProvider> providerMap = lazyService.getRegisteredServicesByTarget();
+        assertEquals("Expected only one DDR Provider", 1, providerMap.size());
+        DeclarativeDynamicResourceProvider provider = providerMap.get(dynamicResourceRoot);
+        assertNotNull("DDR Provider must be registered from the Snapshot", provider);
+        assertEquals("Wrong DDR Source Path", confResourceRoot, provider.getProviderRootPath());
+    }
+
+    private EventIterator createEventIterator(int type, String path) throws RepositoryException {
+        Event event = mock(Event.class);
+        when(event.getPath()).thenReturn(path);
+        when(event.getType()).thenReturn(type);
+        EventIterator eventIterator = mock(EventIterator.class);
+        when(eventIterator.hasNext()).thenReturn(true, false);
+        when(eventIterator.nextEvent()).thenReturn(event);
+        return eventIterator;
+    }
+
     private DeclarativeDynamicResourceManagerService.Configuration createConfiguration(
         String[] allowed, String[] prohibited, String ... followedLinkNames
     ) {
@@ -58,7 +58,9 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.Silent.class)
@@ -190,6 +192,49 @@ public class DeclarativeDynamicResourceProviderHandlerTest {
         assertEquals("Title Property wrong", testPropertyValue, title);
     }
 
+    @Test
+    public void testListChildrenFromOffset() throws Exception {
+        String confResourceRoot = "/conf/testFilter/settings/dynamic";
+        String dynamicResourceRoot = "/apps/dynamicFilter";
+        int offset = 2;
+
+        context.load().json("/ddr-filter/ddr-conf-settings.json", "/conf");
+        context.load().json("/ddr-filter/ddr-apps-settings.json", "/apps");
+
+        declarativeDynamicResourceProviderHandler.registerService(
+            context.bundleContext().getBundle(), dynamicResourceRoot, confResourceRoot,
+            resourceResolver, null, null, null, null
+        );
+
+        // List all the children first to build the Children Index
+        List<String> names = new ArrayList<>();
+        Iterator<Resource> i = declarativeDynamicResourceProviderHandler.listChildren(
+            resourceResolver, dynamicResourceRoot, 0
+        );
+        while(i.hasNext()) {
+            names.add(i.next().getName());
+        }
+        assertTrue("Not enough DDRs to skip some", names.size() > offset);
+
+        // The Context Resource Resolver does not find anything so the Handler falls back to its own
+        ResourceResolver contextResourceResolver = mock(ResourceResolver.class);
+        List<String> namesFromOffset = new ArrayList<>();
+        i = declarativeDynamicResourceProviderHandler.listChildren(
+            contextResourceResolver, dynamicResourceRoot, offset
+        );
+        while(i.hasNext()) {
+            namesFromOffset.add(i.next().getName());
+        }
+
+        assertEquals("Wrong Children from Offset", names.subList(offset, names.size()), namesFromOffset);
+        for(String skipped: names.subList(0, offset)) {
+            verify(contextResourceResolver, never()).getResource(confResourceRoot + SLASH + skipped);
+        }
+        for(String listed: namesFromOffset) {
+            verify(contextResourceResolver).getResource(confResourceRoot + SLASH + listed);
+        }
+    }
+
     @Test
     public void testListReferences() throws Exception {
         String confResourceRoot = "/conf/testReference/settings/dynamic";
@@ -221,6 +266,45 @@ public class DeclarativeDynamicResourceProviderHandlerTest {
         log.info("Ref Grandchild: '{}'", refGrandchild);
     }
 
+    @Test
+    public void testChildAddedToReference() throws Exception {
+        String confResourceRoot = "/conf/testReference/settings/dynamic";
+        String dynamicResourceRoot = "/apps/dynamicReference";
+        String referencePath = "/apps/references/withChild";
+
+        context.load().json("/ddr-reference/ddr-conf-settings.json", "/conf");
+        context.load().json("/ddr-reference/ddr-apps-settings.json", "/apps");
+
+        Resource dynamicParent = resourceResolver.getResource(dynamicResourceRoot);
+
+        doNothing().when(declarativeDynamicResourceManager).addReference(anyString(), anyString());
+
+        declarativeDynamicResourceProviderHandler.registerService(
+            context.bundleContext().getBundle(), dynamicResourceRoot, confResourceRoot,
+            resourceResolver, declarativeDynamicResourceManager,null, null,
+            Arrays.asList("sling:ddrRef")
+        );
+
+        Resource refWithChild = checkAndGetResource(dynamicParent, "refWithChild");
+        checkAndGetResource(refWithChild, "child");
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("jcr:primaryType", "nt:unstructured");
+        properties.put("jcr:title", "Added-1");
+        resourceResolver.create(resourceResolver.getResource(referencePath), "added", properties);
+        resourceResolver.commit();
+
+        List<Resource> resources = getResourcesFromProvider(declarativeDynamicResourceProviderHandler, resolveContext, refWithChild);
+        assertTrue("Added child must not be listed before the update", filterResourceByName(resources, true, "added").isEmpty());
+
+        // The observation reports the added node only
+        declarativeDynamicResourceProviderHandler.update(referencePath + SLASH + "added");
+
+        checkAndGetResource(refWithChild, "child");
+        Resource added = checkAndGetResource(refWithChild, "added");
+        assertEquals("Wrong Title of the added child", "Added-1", added.getValueMap().get("jcr:title", String.class));
+    }
+
     @Test
     public void testListChildrenWithFailingContextResourceResolver() throws Exception {
         String confResourceRoot = "/conf/testReference/settings/dynamic";
@@ -249,7 +333,6 @@ public class DeclarativeDynamicResourceProviderHandlerTest {
     @Test
     public void testUpdates() throws Exception {
         String resourceName1 = "test1";
-        String newResourceName1 = "test1a";
         String confResourceRoot = "/conf/testFilter/settings/dynamic";
         String dynamicResourceRoot = "/apps/dynamicFilter";
 
@@ -291,7 +374,9 @@ public class DeclarativeDynamicResourceProviderHandlerTest {
         resources = filterResourceByName(resources, true, resourceName1);
         assertTrue("Moved resource should not have been found here", resources.isEmpty());
 
-        declarativeDynamicResourceProviderHandler.update(confResourceRoot + SLASH + newResourceName1);
+        // Updates are incremental so both paths of the move are reported like the observation does
+        declarativeDynamicResourceProviderHandler.update(confResourceRoot + SLASH + resourceName1);
+        declarativeDynamicResourceProviderHandler.update(confResourceRoot + SLASH + "container" + SLASH + resourceName1);
 
         resources = getResourcesFromProvider(declarativeDynamicResourceProviderHandler, resolveContext, container);
         resources = filterResourceByName(resources, true, resourceName1);
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.benchmarks;
+
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+
+/**
+ * A {@link SlingContextImpl} that can be set up and torn down outside of a test framework. It provides the in-memory
+ * {@link org.apache.sling.api.resource.ResourceResolverFactory} and the OSGi service registry the benchmarks run
+ * against.
+ */
+public class BenchmarkContext extends SlingContextImpl {
+
+    public BenchmarkContext() {
+        this(ResourceResolverType.RESOURCERESOLVER_MOCK);
+    }
+
+    public BenchmarkContext(ResourceResolverType resourceResolverType) {
+        setResourceResolverType(resourceResolverType);
+    }
+
+    public BenchmarkContext start() {
+        setUp();
+        return this;
+    }
+
+    public void stop() {
+        tearDown();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.benchmarks;
+
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Proxy;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Minimal stand-ins for the job API, implementing only the methods used by the sitemap background generation.
+ */
+public final class Jobs {
+
+    private Jobs() {
+        super();
+    }
+
+    @NotNull
+    public static Job newJob(@NotNull String topic, @NotNull Map<String, Object> properties) {
+        Calendar created = Calendar.getInstance();
+        return (Job) Proxy.newProxyInstance(Jobs.class.getClassLoader(), new Class[]{Job.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getTopic":
+                            return topic;
+                        case "getId":
+                            return topic + '/' + System.identityHashCode(proxy);
+                        case "getCreated":
+                            return created;
+                        case "getProcessingStarted":
+                            return Calendar.getInstance();
+                        case "getPropertyNames":
+                            return properties.keySet();
+                        case "getProperty":
+                            Object value = properties.get((String) args[0]);
+                            if (args.length == 1) {
+                                return value;
+                            } else if (args[1] instanceof Class) {
+                                return ((Class<?>) args[1]).isInstance(value) ? value : null;
+                            } else {
+                                return value != null ? value : args[1];
+                            }
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @NotNull
+    public static JobExecutionContext newExecutionContext() {
+        JobExecutionContext.ResultBuilder resultBuilder = (JobExecutionContext.ResultBuilder) Proxy.newProxyInstance(
+                Jobs.class.getClassLoader(), new Class[]{JobExecutionContext.ResultBuilder.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "message":
+                            return proxy;
+                        case "succeeded":
+                        case "failed":
+                        case "cancelled":
+                            return newResult(method.getName());
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        return (JobExecutionContext) Proxy.newProxyInstance(Jobs.class.getClassLoader(),
+                new Class[]{JobExecutionContext.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isStopped":
+                            return false;
+                        case "result":
+                            return resultBuilder;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static JobExecutionResult newResult(String state) {
+        return (JobExecutionResult) Proxy.newProxyInstance(Jobs.class.getClassLoader(),
+                new Class[]{JobExecutionResult.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "succeeded":
+                        case "failed":
+                        case "cancelled":
+                            return state.equals(method.getName());
+                        case "toString":
+                            return state;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
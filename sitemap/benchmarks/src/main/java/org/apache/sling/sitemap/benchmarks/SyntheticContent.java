@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.benchmarks;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.sitemap.SitemapService;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+
+/**
+ * Creates synthetic content trees of a given number of pages. Each page consists of a resource with a jcr:content
+ * child, as expected by the {@link org.apache.sling.sitemap.generator.ResourceTreeSitemapGenerator}.
+ */
+public final class SyntheticContent {
+
+    private static final int FANOUT = 10;
+    private static final int BATCH_SIZE = 1000;
+
+    private SyntheticContent() {
+        super();
+    }
+
+    /**
+     * Creates a sitemap root at the given path with the given number of pages, including the sitemap root itself.
+     * The pages are created breadth first with {@link SyntheticContent#FANOUT} children each.
+     *
+     * @param resolver
+     * @param path
+     * @param pages
+     * @return the sitemap root
+     * @throws PersistenceException
+     */
+    @NotNull
+    public static Resource createSitemapRoot(@NotNull ResourceResolver resolver, @NotNull String path, int pages)
+            throws PersistenceException {
+        Resource parent = ResourceUtil.getOrCreateResource(resolver, ResourceUtil.getParent(path),
+                (String) null, null, false);
+        Resource sitemapRoot = createPage(resolver, parent, ResourceUtil.getName(path));
+        sitemapRoot.adaptTo(ModifiableValueMap.class).put(SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE);
+
+        Deque<String> parents = new ArrayDeque<>();
+        parents.add(sitemapRoot.getPath());
+        int created = 1;
+
+        while (created < pages) {
+            Resource current = resolver.getResource(parents.poll());
+            for (int i = 0; i < FANOUT && created < pages; i++, created++) {
+                parents.add(createPage(resolver, current, "page-" + i).getPath());
+                if (created % BATCH_SIZE == 0) {
+                    resolver.commit();
+                }
+            }
+        }
+
+        resolver.commit();
+        return resolver.getResource(path);
+    }
+
+    private static Resource createPage(ResourceResolver resolver, Resource parent, String name)
+            throws PersistenceException {
+        Resource page = resolver.create(parent, name, Collections.singletonMap(
+                JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED));
+        resolver.create(page, JcrConstants.JCR_CONTENT, Collections.singletonMap(
+                JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED));
+        return page;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.serviceusermapping.ServiceUserMapped;
+import org.apache.sling.sitemap.SitemapException;
+import org.apache.sling.sitemap.benchmarks.BenchmarkContext;
+import org.apache.sling.sitemap.benchmarks.Jobs;
+import org.apache.sling.sitemap.benchmarks.SyntheticContent;
+import org.apache.sling.sitemap.builder.Sitemap;
+import org.apache.sling.sitemap.generator.ResourceTreeSitemapGenerator;
+import org.apache.sling.sitemap.generator.SitemapGenerator;
+import org.apache.sling.sitemap.impl.builder.extensions.ExtensionProviderManager;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the background generation of a sitemap by the {@link SitemapGeneratorExecutor} for synthetic content trees
+ * of different sizes, including the checkpoints written for the given chunk size and the final write to the
+ * {@link SitemapStorage}. Besides the generations per second the number of urls per second is reported.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 30)
+public class SitemapGenerationBenchmark {
+
+    private static final String SITEMAP_ROOT = "/content/site/en";
+
+    @Param({"10000", "100000", "1000000"})
+    public int pages;
+
+    @Param({"2147483647", "10000", "1000"})
+    public int chunkSize;
+
+    @Param({"false", "true"})
+    public boolean appendOnlyCheckpoints;
+
+    private BenchmarkContext context;
+    private SitemapGeneratorExecutor subject;
+    private Job job;
+    private JobExecutionContext executionContext;
+
+    @Setup(Level.Trial)
+    public void setup() throws PersistenceException {
+        context = new BenchmarkContext().start();
+        SyntheticContent.createSitemapRoot(context.resourceResolver(), SITEMAP_ROOT, pages);
+
+        ServiceUserMapped serviceUserMapped = new ServiceUserMapped() {};
+        context.registerService(ServiceUserMapped.class, serviceUserMapped, "subServiceName", "sitemap-reader");
+        context.registerService(ServiceUserMapped.class, serviceUserMapped, "subServiceName", "sitemap-writer");
+        context.registerService(SitemapGenerator.class, new PathSitemapGenerator());
+        context.registerInjectActivateService(new SitemapServiceConfiguration());
+        context.registerInjectActivateService(new SitemapGeneratorManagerImpl());
+        context.registerInjectActivateService(new ExtensionProviderManager());
+        context.registerInjectActivateService(new SitemapStorage());
+        context.registerInjectActivateService(new SitemapGenerationMetrics());
+        subject = context.registerInjectActivateService(new SitemapGeneratorExecutor(),
+                "chunkSize", chunkSize,
+                "appendOnlyCheckpoints", appendOnlyCheckpoints);
+
+        Map<String, Object> jobProperties = new HashMap<>();
+        jobProperties.put(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_ROOT, SITEMAP_ROOT);
+        jobProperties.put(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_NAME, SitemapGenerator.DEFAULT_SITEMAP);
+        job = Jobs.newJob(SitemapGeneratorExecutor.JOB_TOPIC, jobProperties);
+        executionContext = Jobs.newExecutionContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public JobExecutionResult generate(UrlCounter counter) {
+        JobExecutionResult result = subject.process(job, executionContext);
+        if (!result.succeeded()) {
+            throw new IllegalStateException("Generation failed: " + result.getMessage());
+        }
+        counter.urls += pages;
+        return result;
+    }
+
+    /**
+     * Counts the urls written, so that JMH reports them per second next to the generations.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class UrlCounter {
+
+        public long urls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            urls = 0;
+        }
+    }
+
+    private static class PathSitemapGenerator extends ResourceTreeSitemapGenerator {
+
+        @Override
+        public @NotNull Set<String> getNames(@NotNull Resource sitemapRoot) {
+            return Collections.singleton(SitemapGenerator.DEFAULT_SITEMAP);
+        }
+
+        @Override
+        protected void addResource(@NotNull String name, @NotNull Sitemap sitemap, @NotNull Resource resource)
+                throws SitemapException {
+            sitemap.addUrl("https://www.example.com" + resource.getPath() + ".html");
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.serviceusermapping.ServiceUserMapped;
+import org.apache.sling.sitemap.SitemapException;
+import org.apache.sling.sitemap.benchmarks.BenchmarkContext;
+import org.apache.sling.sitemap.benchmarks.SyntheticContent;
+import org.apache.sling.sitemap.builder.Sitemap;
+import org.apache.sling.sitemap.generator.SitemapGenerator;
+import org.apache.sling.sitemap.impl.builder.SitemapImpl;
+import org.apache.sling.sitemap.impl.builder.extensions.ExtensionProviderManager;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SitemapStorage#copySitemap(Resource, String, java.io.OutputStream)}, which serves sitemaps generated
+ * in the background, for sitemaps of different sizes stored with and without compression. Besides the copies per
+ * second the number of uncompressed bytes per second is reported.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SitemapStorageBenchmark {
+
+    private static final String SITEMAP_ROOT = "/content/site/en";
+
+    @Param({"10000", "50000"})
+    public int urls;
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private BenchmarkContext context;
+    private SitemapStorage subject;
+    private Resource sitemapRoot;
+    private int size;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SitemapException {
+        context = new BenchmarkContext().start();
+        sitemapRoot = SyntheticContent.createSitemapRoot(context.resourceResolver(), SITEMAP_ROOT, 1);
+
+        ServiceUserMapped serviceUserMapped = new ServiceUserMapped() {};
+        context.registerService(ServiceUserMapped.class, serviceUserMapped, "subServiceName", "sitemap-writer");
+        context.registerService(SitemapGenerator.class, new DefaultSitemapGenerator());
+        context.registerInjectActivateService(new SitemapServiceConfiguration());
+        context.registerInjectActivateService(new SitemapGeneratorManagerImpl());
+        ExtensionProviderManager extensionProviderManager =
+                context.registerInjectActivateService(new ExtensionProviderManager());
+        subject = context.registerInjectActivateService(new SitemapStorage(), "compress", compress);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+        SitemapImpl sitemap = new SitemapImpl(writer, extensionProviderManager);
+        for (int i = 0; i < urls; i++) {
+            sitemap.addUrl("https://www.example.com" + SITEMAP_ROOT + "/page-" + i + ".html");
+        }
+        sitemap.close();
+        size = buffer.size();
+        subject.writeSitemap(sitemapRoot, SitemapGenerator.DEFAULT_SITEMAP,
+                new ByteArrayInputStream(buffer.toByteArray()), size, urls);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    public boolean copySitemap(ByteCounter counter) throws IOException {
+        boolean copied = subject.copySitemap(sitemapRoot, "sitemap", NullOutputStream.NULL_OUTPUT_STREAM);
+        if (!copied) {
+            throw new IllegalStateException("Sitemap not found");
+        }
+        counter.bytes += size;
+        return copied;
+    }
+
+    /**
+     * Counts the uncompressed bytes copied, so that JMH reports them per second next to the copies.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ByteCounter {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    /**
+     * The storage only keeps sitemaps of names a generator is registered for.
+     */
+    private static class DefaultSitemapGenerator implements SitemapGenerator {
+
+        @Override
+        public @NotNull Set<String> getNames(@NotNull Resource sitemapRoot) {
+            return Collections.singleton(SitemapGenerator.DEFAULT_SITEMAP);
+        }
+
+        @Override
+        public void generate(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull Sitemap sitemap,
+                             @NotNull GenerationContext context) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl.builder;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.sling.sitemap.SitemapException;
+import org.apache.sling.sitemap.benchmarks.BenchmarkContext;
+import org.apache.sling.sitemap.builder.Url;
+import org.apache.sling.sitemap.builder.extensions.AlternateLanguageExtension;
+import org.apache.sling.sitemap.impl.builder.extensions.AlternateLanguageExtensionProvider;
+import org.apache.sling.sitemap.impl.builder.extensions.ExtensionProviderManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serialization of urls with the {@link SitemapImpl}, with and without
+ * {@link AlternateLanguageExtension}s. As each invocation writes {@link SitemapSerializationBenchmark#URLS} urls, the
+ * reported throughput is in urls per second and the normalized allocation rate reported by the gc profiler is in
+ * bytes per url.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SitemapSerializationBenchmark {
+
+    private static final int URLS = 10_000;
+    private static final Locale[] LOCALES = new Locale[]{Locale.GERMAN, Locale.FRENCH, Locale.ITALIAN, Locale.ENGLISH};
+
+    @Param({"0", "1", "4"})
+    public int alternateLanguages;
+
+    @Param({"false", "true"})
+    public boolean lastModified;
+
+    private BenchmarkContext context;
+    private ExtensionProviderManager extensionProviderManager;
+    private String[] locations;
+    private String[][] alternateLocations;
+    private Instant pointInTime;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new BenchmarkContext().start();
+        context.registerInjectActivateService(new AlternateLanguageExtensionProvider());
+        extensionProviderManager = context.registerInjectActivateService(new ExtensionProviderManager());
+
+        // create all strings upfront to not count them as allocation of the serialization
+        locations = new String[URLS];
+        alternateLocations = new String[LOCALES.length][URLS];
+        for (int i = 0; i < URLS; i++) {
+            locations[i] = "https://www.example.com/content/site/en/page-" + i + ".html";
+            for (int j = 0; j < LOCALES.length; j++) {
+                alternateLocations[j][i] = "https://www.example.com/content/site/" + LOCALES[j].getLanguage()
+                        + "/page-" + i + ".html";
+            }
+        }
+        pointInTime = Instant.now();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public int writeUrls() throws SitemapException, IOException {
+        // encode to bytes as the background generation does, but discard them
+        Writer writer = new OutputStreamWriter(NullOutputStream.NULL_OUTPUT_STREAM, StandardCharsets.UTF_8);
+        SitemapImpl sitemap = new SitemapImpl(writer, extensionProviderManager);
+
+        for (int i = 0; i < URLS; i++) {
+            Url url = sitemap.addUrl(locations[i]).setChangeFrequency(Url.ChangeFrequency.DAILY);
+            if (lastModified) {
+                url.setLastModified(pointInTime);
+            }
+            for (int j = 0; j < alternateLanguages; j++) {
+                url.addExtension(AlternateLanguageExtension.class)
+                        .setLocale(LOCALES[j])
+                        .setHref(alternateLocations[j][i]);
+            }
+        }
+
+        sitemap.close();
+        return sitemap.getUrlCount();
+    }
+}
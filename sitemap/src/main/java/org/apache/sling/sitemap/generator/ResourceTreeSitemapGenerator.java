@@ -26,7 +26,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.osgi.annotation.versioning.ConsumerType;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -44,6 +46,14 @@ import static org.apache.sling.sitemap.common.SitemapUtil.isSitemapRoot;
  * This implementation keeps track of the traversal's state in the
  * {@link SitemapGenerator.GenerationContext}. It is capable to continue from a previous
  * persisted state, when the generation got aborted.
+ * <p>
+ * This implementation is also capable to generate a sitemap in shards. The children of the sitemap root, that are
+ * followed through, are split in contiguous ranges of (about) the same size, one for each shard. The first shard
+ * additionally contains the sitemap root itself. As the shards may be generated in parallel, implementations have to
+ * opt-in by overriding {@link SitemapGenerator#isShardable(Resource, String)}, which returns false by default, when
+ * their {@link ResourceTreeSitemapGenerator#addResource(String, Sitemap, Resource)},
+ * {@link ResourceTreeSitemapGenerator#shouldInclude(Resource)} and
+ * {@link ResourceTreeSitemapGenerator#shouldFollow(Resource)} do not depend on state shared between invocations.
  */
 @ConsumerType
 public abstract class ResourceTreeSitemapGenerator implements SitemapGenerator {
@@ -54,7 +64,11 @@ public abstract class ResourceTreeSitemapGenerator implements SitemapGenerator {
     public final void generate(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull Sitemap sitemap,
                                @NotNull GenerationContext context) throws SitemapException {
         String lastPath = context.getProperty(PROPERTY_LAST_PATH, String.class);
-        for (Resource descendant : (Iterable<? extends Resource>) traverse(sitemapRoot, lastPath)::iterator) {
+        int shardCount = context.getShardCount();
+        Stream<Resource> descendants = shardCount > 1
+                ? traverseShard(sitemapRoot, lastPath, context.getShardIndex(), shardCount)
+                : traverse(sitemapRoot, lastPath);
+        for (Resource descendant : (Iterable<? extends Resource>) descendants::iterator) {
             addResource(name, sitemap, descendant);
             context.setProperty(PROPERTY_LAST_PATH, descendant.getPath());
         }
@@ -93,10 +107,25 @@ public abstract class ResourceTreeSitemapGenerator implements SitemapGenerator {
         return !JcrConstants.JCR_CONTENT.equals(resource.getName()) && !isSitemapRoot(resource);
     }
 
+    private Stream<Resource> traverseShard(@NotNull Resource sitemapRoot, @Nullable String skipTo, int shardIndex,
+                                          int shardCount) {
+        List<Resource> children = StreamSupport.stream(sitemapRoot.getChildren().spliterator(), false)
+                .filter(this::shouldFollow)
+                .collect(Collectors.toList());
+        // use long arithmetic to not overflow with many children
+        int from = (int) ((long) children.size() * shardIndex / shardCount);
+        int to = (int) ((long) children.size() * (shardIndex + 1) / shardCount);
+        return traverse(sitemapRoot, children.subList(from, to).stream(), skipTo, shardIndex == 0);
+    }
+
     private Stream<Resource> traverse(@NotNull Resource sitemapRoot, @Nullable String skipTo) {
         Stream<Resource> children = StreamSupport.stream(sitemapRoot.getChildren().spliterator(), false)
                 .filter(this::shouldFollow);
+        return traverse(sitemapRoot, children, skipTo, true);
+    }
 
+    private Stream<Resource> traverse(@NotNull Resource sitemapRoot, @NotNull Stream<Resource> children,
+                                      @Nullable String skipTo, boolean includeRoot) {
         if (skipTo != null) {
             AtomicBoolean found = new AtomicBoolean(false);
             // advance children until skipTo starts either with the child's path or it is equal to it
@@ -115,7 +144,7 @@ public abstract class ResourceTreeSitemapGenerator implements SitemapGenerator {
             });
         } else {
             return Stream.concat(
-                    shouldInclude(sitemapRoot) ? Stream.of(sitemapRoot) : Stream.empty(),
+                    includeRoot && shouldInclude(sitemapRoot) ? Stream.of(sitemapRoot) : Stream.empty(),
                     children.flatMap(child -> traverse(child, null))
             );
         }
@@ -103,6 +103,23 @@ public interface SitemapGenerator {
     void generate(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull Sitemap sitemap,
                   @NotNull GenerationContext context) throws SitemapException;
 
+    /**
+     * Returns true when the {@link SitemapGenerator} is capable to generate the sitemap with the given name for the
+     * given sitemap root {@link Resource} in multiple, independent shards. In that case
+     * {@link SitemapGenerator#generate(Resource, String, Sitemap, GenerationContext)} may be called once for each
+     * shard, possibly in parallel, and must add only the locations belonging to the shard returned by
+     * {@link GenerationContext#getShardIndex()}. The shards get concatenated in the order of their index afterwards.
+     * <p>
+     * The default implementation returns false.
+     *
+     * @param sitemapRoot the root at which the sitemap should be created
+     * @param name        the name of the sitemap
+     * @return true if the sitemap can be generated in shards, false otherwise
+     */
+    default boolean isShardable(@NotNull Resource sitemapRoot, @NotNull String name) {
+        return false;
+    }
+
     /**
      * A context object that gives the {@link SitemapGenerator} access to additional configurations and methods to
      * track state.
@@ -115,5 +132,27 @@ public interface SitemapGenerator {
 
         void setProperty(@NotNull String name, @Nullable Object data);
 
+        /**
+         * Returns the index of the shard to generate, starting at 0, when the sitemap gets generated in multiple
+         * shards.
+         *
+         * @return the index of the shard
+         * @see SitemapGenerator#isShardable(Resource, String)
+         */
+        default int getShardIndex() {
+            return 0;
+        }
+
+        /**
+         * Returns the total number of shards, the sitemap gets generated in. If the sitemap is not generated in
+         * shards, 1 is returned.
+         *
+         * @return the number of shards
+         * @see SitemapGenerator#isShardable(Resource, String)
+         */
+        default int getShardCount() {
+            return 1;
+        }
+
     }
 }
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.serviceusermapping.ServiceUserMapped;
+import org.apache.sling.sitemap.SitemapService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.sling.sitemap.common.SitemapUtil.isSitemapRoot;
+import static org.apache.sling.sitemap.common.SitemapUtil.normalizeSitemapRoot;
+
+/**
+ * This implementation of a {@link ResourceChangeListener} tracks the sitemap roots for which content changed. A change
+ * marks the sitemap root closest to the changed resource as dirty. Once no further change happened for the
+ * configured debounce time, the sitemaps of a dirty sitemap root get scheduled for regeneration using
+ * {@link SitemapService#scheduleGeneration(Resource)}, which considers only the names of the {@link SitemapScheduler}s
+ * configured for the sitemap root.
+ */
+@Component(
+        service = {ResourceChangeListener.class, Runnable.class},
+        configurationPolicy = ConfigurationPolicy.REQUIRE,
+        property = {
+                Scheduler.PROPERTY_SCHEDULER_NAME + "=sitemap-change-tracker",
+                Scheduler.PROPERTY_SCHEDULER_CONCURRENT + ":Boolean=false",
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=CHANGED",
+                ResourceChangeListener.CHANGES + "=REMOVED"
+        }
+)
+@Designate(ocd = SitemapChangeTracker.Configuration.class)
+public class SitemapChangeTracker implements ResourceChangeListener, Runnable {
+
+    @ObjectClassDefinition(name = "Apache Sling Sitemap - Change Tracker")
+    @interface Configuration {
+
+        @AttributeDefinition(name = "Paths", description = "The paths under which changes cause the sitemaps of the " +
+                "closest sitemap root to be regenerated.")
+        String[] resource_paths() default {"/content"};
+
+        @AttributeDefinition(name = "Debounce Time", description = "The number of milliseconds without any further " +
+                "change after which the sitemaps of a changed sitemap root get scheduled for regeneration.")
+        long debounceTime() default 60 * 1000;
+
+        @AttributeDefinition(name = "Max Delay", description = "The maximum number of milliseconds the regeneration " +
+                "of a changed sitemap root is delayed, even if it is changed continuously.")
+        long maxDelay() default 15 * 60 * 1000;
+
+        @AttributeDefinition(name = "Period", description = "The number of seconds in between the checks for " +
+                "changed sitemap roots to schedule.")
+        long scheduler_period() default 10;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SitemapChangeTracker.class);
+    private static final Map<String, Object> AUTH = Collections.singletonMap(ResourceResolverFactory.SUBSERVICE,
+            "sitemap-reader");
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+    @Reference(target = "(subServiceName=sitemap-reader)")
+    private ServiceUserMapped serviceUserMapped;
+    @Reference
+    private SitemapService sitemapService;
+
+    private final Map<String, DirtyRoot> dirtyRoots = new ConcurrentHashMap<>();
+    private long debounceTime;
+    private long maxDelay;
+
+    @Activate
+    protected void activate(Configuration configuration) {
+        debounceTime = configuration.debounceTime();
+        maxDelay = configuration.maxDelay();
+    }
+
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
+            // many changes usually share the same parents, so remember the sitemap root for each visited path
+            Map<String, String> visited = new HashMap<>();
+            long now = System.currentTimeMillis();
+            for (ResourceChange change : changes) {
+                String sitemapRootPath = findClosestSitemapRoot(resolver, change.getPath(), visited);
+                if (sitemapRootPath != null) {
+                    dirtyRoots.merge(sitemapRootPath, new DirtyRoot(now, now),
+                            (existing, update) -> new DirtyRoot(existing.firstChange, update.lastChange));
+                }
+            }
+        } catch (LoginException ex) {
+            LOG.warn("Failed to track changed sitemap roots: {}", ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void run() {
+        long now = System.currentTimeMillis();
+        Map<String, DirtyRoot> due = new HashMap<>();
+
+        for (Map.Entry<String, DirtyRoot> entry : dirtyRoots.entrySet()) {
+            DirtyRoot dirtyRoot = entry.getValue();
+            if (now - dirtyRoot.lastChange >= debounceTime || now - dirtyRoot.firstChange >= maxDelay) {
+                due.put(entry.getKey(), dirtyRoot);
+            }
+        }
+
+        if (due.isEmpty()) {
+            return;
+        }
+
+        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
+            for (Map.Entry<String, DirtyRoot> entry : due.entrySet()) {
+                // only remove if not changed in the meantime, otherwise it will be scheduled with the next run
+                if (!dirtyRoots.remove(entry.getKey(), entry.getValue())) {
+                    continue;
+                }
+                Resource sitemapRoot = normalizeSitemapRoot(resolver.getResource(entry.getKey()));
+                if (sitemapRoot != null) {
+                    LOG.debug("Scheduling generation of changed sitemap root: {}", sitemapRoot.getPath());
+                    sitemapService.scheduleGeneration(sitemapRoot);
+                } else {
+                    LOG.debug("Changed sitemap root does not exist anymore: {}", entry.getKey());
+                }
+            }
+        } catch (LoginException ex) {
+            LOG.warn("Failed to schedule generation of changed sitemap roots: {}", ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns the path of the sitemap root closest to the given path. As the resource at the given path may have been
+     * removed, the search starts at the closest existing ancestor.
+     *
+     * @param resolver
+     * @param path
+     * @param visited
+     * @return
+     */
+    @Nullable
+    private static String findClosestSitemapRoot(@NotNull ResourceResolver resolver, @NotNull String path,
+                                                 @NotNull Map<String, String> visited) {
+        List<String> traversed = new ArrayList<>();
+        String sitemapRootPath = null;
+
+        for (String current = path; current != null; current = ResourceUtil.getParent(current)) {
+            if (visited.containsKey(current)) {
+                sitemapRootPath = visited.get(current);
+                break;
+            }
+            traversed.add(current);
+            Resource resource = resolver.getResource(current);
+            if (isSitemapRoot(resource)) {
+                sitemapRootPath = normalizeSitemapRoot(resource).getPath();
+                break;
+            }
+        }
+
+        for (String traversedPath : traversed) {
+            visited.put(traversedPath, sitemapRootPath);
+        }
+
+        return sitemapRootPath;
+    }
+
+    private static class DirtyRoot {
+        private final long firstChange;
+        private final long lastChange;
+
+        private DirtyRoot(long firstChange, long lastChange) {
+            this.firstChange = firstChange;
+            this.lastChange = lastChange;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl;
+
+import org.apache.sling.commons.metrics.MetricsService;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This service collects the metrics of the background generation per sitemap root and name, and per generator.
+ * <p>
+ * All metrics are reported to the {@link MetricsService} prefixed with {@code SitemapRoot-<root>-<name>-} and
+ * {@code SitemapGenerator-<generator class>-}. The root and name are reduced to letters, digits, dots, dashes and
+ * underscores and the metrics of only the first {@value #MAX_ROOT_METRICS} sitemap roots and names are reported, so
+ * that the number of metrics stays bounded. Additionally the statistics of each sitemap root and name are kept in
+ * memory, so that they can be listed by the {@link org.apache.sling.sitemap.impl.console.SitemapInventoryPlugin}.
+ */
+@Component(service = SitemapGenerationMetrics.class)
+public class SitemapGenerationMetrics {
+
+    private static final String ROOT_PREFIX = "SitemapRoot-";
+    private static final String GENERATOR_PREFIX = "SitemapGenerator-";
+    static final int MAX_ROOT_METRICS = 100;
+
+    @Reference(policyOption = ReferencePolicyOption.GREEDY, cardinality = ReferenceCardinality.OPTIONAL)
+    private MetricsService metricsService;
+
+    private final Map<String, Map<String, Statistics>> statistics = new ConcurrentHashMap<>();
+    private final Set<String> rootPrefixes = new HashSet<>();
+
+    @Activate
+    protected void activate() {
+        if (metricsService == null) {
+            metricsService = MetricsService.NOOP;
+        }
+    }
+
+    /**
+     * Records the time a job for the given sitemap root and name waited in the queue before it got processed.
+     *
+     * @param sitemapRoot
+     * @param name
+     * @param generator
+     * @param waitMillis
+     */
+    public void queued(@NotNull String sitemapRoot, @NotNull String name, @NotNull String generator,
+                       long waitMillis) {
+        getStatistics(sitemapRoot, name, generator).queued(waitMillis);
+        for (String prefix : prefixes(sitemapRoot, name, generator)) {
+            metricsService.timer(prefix + "queueWaitTime").update(waitMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records the time it took to write a checkpoint for the given sitemap root and name.
+     *
+     * @param sitemapRoot
+     * @param name
+     * @param generator
+     * @param nanos
+     */
+    public void checkpointWritten(@NotNull String sitemapRoot, @NotNull String name, @NotNull String generator,
+                                  long nanos) {
+        getStatistics(sitemapRoot, name, generator).checkpointWritten(nanos);
+        for (String prefix : prefixes(sitemapRoot, name, generator)) {
+            metricsService.timer(prefix + "checkpointWriteTime").update(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records a finished generation of the sitemap for the given sitemap root and name.
+     *
+     * @param sitemapRoot
+     * @param name
+     * @param generator
+     * @param urls           the number of urls generated
+     * @param bytes          the number of bytes written
+     * @param nanos          the time the generation took
+     * @param extensionNanos the time spent writing extensions
+     */
+    public void generated(@NotNull String sitemapRoot, @NotNull String name, @NotNull String generator, int urls,
+                          long bytes, long nanos, long extensionNanos) {
+        getStatistics(sitemapRoot, name, generator).generated(urls, bytes, nanos, extensionNanos);
+        report(sitemapRoot, name, generator, urls, bytes, nanos, extensionNanos);
+    }
+
+    /**
+     * Records a generated shard of the sitemap for the given sitemap root and name. The time the shards of a
+     * generation took gets summed up and recorded in the statistics, when they get merged with
+     * {@link SitemapGenerationMetrics#shardsMerged(String, String, String, long, int, long)}.
+     *
+     * @param sitemapRoot
+     * @param name
+     * @param generator
+     * @param generation     the generation, the shard belongs to
+     * @param urls           the number of urls generated
+     * @param bytes          the number of bytes written
+     * @param nanos          the time the generation of the shard took
+     * @param extensionNanos the time spent writing extensions
+     */
+    public void shardGenerated(@NotNull String sitemapRoot, @NotNull String name, @NotNull String generator,
+                               long generation, int urls, long bytes, long nanos, long extensionNanos) {
+        getStatistics(sitemapRoot, name, generator).shardGenerated(generation, nanos, extensionNanos);
+        report(sitemapRoot, name, generator, urls, bytes, nanos, extensionNanos);
+    }
+
+    /**
+     * Records a finished generation of the sitemap for the given sitemap root and name, that got merged from shards.
+     *
+     * @param sitemapRoot
+     * @param name
+     * @param generator
+     * @param generation the generation, the merged shards belong to
+     * @param urls       the number of urls of the merged sitemap
+     * @param bytes      the number of bytes of the merged sitemap
+     */
+    public void shardsMerged(@NotNull String sitemapRoot, @NotNull String name, @NotNull String generator,
+                             long generation, int urls, long bytes) {
+        getStatistics(sitemapRoot, name, generator).shardsMerged(generation, urls, bytes);
+    }
+
+    private void report(@NotNull String sitemapRoot, @NotNull String name, @NotNull String generator, int urls,
+                        long bytes, long nanos, long extensionNanos) {
+        long urlsPerSecond = nanos > 0 ? urls * TimeUnit.SECONDS.toNanos(1) / nanos : urls;
+        for (String prefix : prefixes(sitemapRoot, name, generator)) {
+            metricsService.timer(prefix + "generationTime").update(nanos, TimeUnit.NANOSECONDS);
+            metricsService.timer(prefix + "extensionTime").update(extensionNanos, TimeUnit.NANOSECONDS);
+            metricsService.histogram(prefix + "urlsPerSecond").update(urlsPerSecond);
+            metricsService.meter(prefix + "bytesWritten").mark(bytes);
+        }
+    }
+
+    /**
+     * Returns the statistics by sitemap root path and sitemap name.
+     *
+     * @return
+     */
+    @NotNull
+    public Map<String, Map<String, Statistics>> getStatistics() {
+        Map<String, Map<String, Statistics>> copy = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Statistics>> entry : statistics.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableMap(new TreeMap<>(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    @NotNull
+    private Statistics getStatistics(@NotNull String sitemapRoot, @NotNull String name, @NotNull String generator) {
+        return statistics.computeIfAbsent(sitemapRoot, k -> new ConcurrentHashMap<>())
+                .compute(name, (k, existing) -> existing != null && existing.generator.equals(generator)
+                        ? existing
+                        : new Statistics(generator));
+    }
+
+    private String[] prefixes(@NotNull String sitemapRoot, @NotNull String name, @NotNull String generator) {
+        String rootPrefix = ROOT_PREFIX + sanitize(sitemapRoot) + '-' + sanitize(name) + '-';
+        String generatorPrefix = GENERATOR_PREFIX + generator + '-';
+        synchronized (rootPrefixes) {
+            if (rootPrefixes.contains(rootPrefix)
+                    || (rootPrefixes.size() < MAX_ROOT_METRICS && rootPrefixes.add(rootPrefix))) {
+                return new String[]{rootPrefix, generatorPrefix};
+            }
+        }
+        return new String[]{generatorPrefix};
+    }
+
+    private static String sanitize(@NotNull String text) {
+        String sanitized = text.replaceAll("[^A-Za-z0-9_.-]+", "_");
+        int start = sanitized.startsWith("_") ? 1 : 0;
+        int end = sanitized.length() > start && sanitized.endsWith("_") ? sanitized.length() - 1 : sanitized.length();
+        return sanitized.substring(start, end);
+    }
+
+    /**
+     * The statistics of the generation of a single sitemap.
+     */
+    public static class Statistics {
+
+        private final String generator;
+        private int generations;
+        private int urls;
+        private long bytes;
+        private long generationNanos;
+        private long extensionNanos;
+        private int checkpoints;
+        private long checkpointNanos;
+        private long lastQueueWait;
+        private long maxQueueWait;
+        private long shardsGeneration = -1;
+        private long shardsNanos;
+        private long shardsExtensionNanos;
+
+        private Statistics(String generator) {
+            this.generator = generator;
+        }
+
+        private synchronized void queued(long waitMillis) {
+            lastQueueWait = waitMillis;
+            maxQueueWait = Math.max(maxQueueWait, waitMillis);
+        }
+
+        private synchronized void checkpointWritten(long nanos) {
+            checkpoints++;
+            checkpointNanos += nanos;
+        }
+
+        private synchronized void generated(int urls, long bytes, long nanos, long extensionNanos) {
+            this.generations++;
+            this.urls = urls;
+            this.bytes = bytes;
+            this.generationNanos = nanos;
+            this.extensionNanos = extensionNanos;
+        }
+
+        private synchronized void shardGenerated(long generation, long nanos, long extensionNanos) {
+            if (shardsGeneration != generation) {
+                // discard the shards of a previous generation, that got merged elsewhere or never
+                shardsGeneration = generation;
+                shardsNanos = 0;
+                shardsExtensionNanos = 0;
+            }
+            shardsNanos += nanos;
+            shardsExtensionNanos += extensionNanos;
+        }
+
+        private synchronized void shardsMerged(long generation, int urls, long bytes) {
+            boolean recorded = shardsGeneration == generation;
+            generated(urls, bytes, recorded ? shardsNanos : 0, recorded ? shardsExtensionNanos : 0);
+            shardsGeneration = -1;
+            shardsNanos = 0;
+            shardsExtensionNanos = 0;
+        }
+
+        /**
+         * @return the class name of the generator
+         */
+        @NotNull
+        public String getGenerator() {
+            return generator;
+        }
+
+        /**
+         * @return the number of finished generations
+         */
+        public synchronized int getGenerations() {
+            return generations;
+        }
+
+        /**
+         * @return the number of urls of the last generation
+         */
+        public synchronized int getUrls() {
+            return urls;
+        }
+
+        /**
+         * @return the number of bytes written by the last generation
+         */
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the number of milliseconds the last generation took, for a sitemap generated in shards the sum of
+         * the shards generated on this instance
+         */
+        public synchronized long getGenerationTime() {
+            return TimeUnit.NANOSECONDS.toMillis(generationNanos);
+        }
+
+        /**
+         * @return the number of urls per second of the last generation
+         */
+        public synchronized long getUrlsPerSecond() {
+            return generationNanos > 0 ? urls * TimeUnit.SECONDS.toNanos(1) / generationNanos : urls;
+        }
+
+        /**
+         * @return the number of milliseconds the last generation spent writing extensions
+         */
+        public synchronized long getExtensionTime() {
+            return TimeUnit.NANOSECONDS.toMillis(extensionNanos);
+        }
+
+        /**
+         * @return the number of checkpoints written
+         */
+        public synchronized int getCheckpoints() {
+            return checkpoints;
+        }
+
+        /**
+         * @return the average number of milliseconds it took to write a checkpoint
+         */
+        public synchronized long getAverageCheckpointTime() {
+            return checkpoints > 0 ? TimeUnit.NANOSECONDS.toMillis(checkpointNanos / checkpoints) : 0;
+        }
+
+        /**
+         * @return the number of milliseconds the last job waited in the queue
+         */
+        public synchronized long getQueueWaitTime() {
+            return lastQueueWait;
+        }
+
+        /**
+         * @return the maximum number of milliseconds a job waited in the queue
+         */
+        public synchronized long getMaxQueueWaitTime() {
+            return maxQueueWait;
+        }
+    }
+}
@@ -50,6 +50,7 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -72,11 +73,20 @@ public class SitemapGeneratorExecutor implements JobExecutor {
                 "writes incomplete sitemaps after the given number of urls to the repository and persists progress. " +
                 "This allows the job to be interrupted and resumed.")
         int chunkSize() default Integer.MAX_VALUE;
+
+        @AttributeDefinition(name = "Append-only checkpoints", description = "If enabled, each checkpoint persists " +
+                "only the urls written since the previous checkpoint as a new segment of the intermediate state, " +
+                "instead of rewriting the incomplete sitemap as a whole. The segments are streamed back together " +
+                "when the sitemap gets finished.")
+        boolean appendOnlyCheckpoints() default false;
     }
 
     static final String JOB_TOPIC = "org/apache/sling/sitemap/build";
     static final String JOB_PROPERTY_SITEMAP_ROOT = "sitemap.root";
     static final String JOB_PROPERTY_SITEMAP_NAME = "sitemap.name";
+    static final String JOB_PROPERTY_SITEMAP_SHARD = "sitemap.shard";
+    static final String JOB_PROPERTY_SITEMAP_SHARDS = "sitemap.shards";
+    static final String JOB_PROPERTY_SITEMAP_GENERATION = "sitemap.generation";
 
     private static final Logger LOG = LoggerFactory.getLogger(SitemapGeneratorExecutor.class);
     private static final Map<String, Object> AUTH = Collections.singletonMap(ResourceResolverFactory.SUBSERVICE,
@@ -96,12 +106,16 @@ public class SitemapGeneratorExecutor implements JobExecutor {
     private EventAdmin eventAdmin;
     @Reference
     private SitemapServiceConfiguration sitemapServiceConfiguration;
+    @Reference
+    private SitemapGenerationMetrics metrics;
 
     private int chunkSize = 10;
+    private boolean appendOnlyCheckpoints = false;
 
     @Activate
     protected void activate(Configuration configuration) {
         chunkSize = configuration.chunkSize();
+        appendOnlyCheckpoints = configuration.appendOnlyCheckpoints();
     }
 
     @Override
@@ -110,7 +124,8 @@ public class SitemapGeneratorExecutor implements JobExecutor {
         String sitemapName = job.getProperty(JOB_PROPERTY_SITEMAP_NAME, SitemapGenerator.DEFAULT_SITEMAP);
         JobExecutionContext.ResultBuilder result = context.result();
 
-        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(AUTH);
+             SitemapStorage.Session session = storage.openSession()) {
             Resource sitemapRoot = normalizeSitemapRoot(resourceResolver.getResource(sitemapRootPath));
 
             if (sitemapRoot == null) {
@@ -123,7 +138,20 @@ public class SitemapGeneratorExecutor implements JobExecutor {
                 return result.message("Generator of '" + sitemapName + "' unavailable at: " + sitemapRootPath).failed();
             }
 
-            generate(sitemapRoot, sitemapName, generator, context);
+            recordQueueWait(job, sitemapRoot, sitemapName, generator);
+
+            Integer shards = job.getProperty(JOB_PROPERTY_SITEMAP_SHARDS, Integer.class);
+            if (shards != null && shards > 1) {
+                Integer shard = job.getProperty(JOB_PROPERTY_SITEMAP_SHARD, Integer.class);
+                Long generation = job.getProperty(JOB_PROPERTY_SITEMAP_GENERATION, Long.class);
+                if (shard == null || shard < 0 || shard >= shards || generation == null) {
+                    return result.message("Invalid shard " + shard + " of " + shards + " at: " + sitemapRootPath)
+                            .cancelled();
+                }
+                generateShard(session, sitemapRoot, sitemapName, generator, context, shard, shards, generation);
+            } else {
+                generate(session, sitemapRoot, sitemapName, generator, context);
+            }
 
             return result.succeeded();
         } catch (LoginException ex) {
@@ -135,14 +163,23 @@ public class SitemapGeneratorExecutor implements JobExecutor {
         }
     }
 
-    private void generate(Resource sitemapRoot, String name, SitemapGenerator generator,
-                          JobExecutionContext executionContext) throws SitemapException, IOException {
+    private void generate(SitemapStorage.Session session, Resource sitemapRoot, String name,
+                          SitemapGenerator generator, JobExecutionContext executionContext) throws SitemapException, IOException {
         try {
             CopyableByteArrayOutputStream buffer = new CopyableByteArrayOutputStream();
             GenerationContextImpl context = new GenerationContextImpl();
-            // prefill the buffer with existing data
-            ValueMap state = storage.getState(sitemapRoot, name);
+            ValueMap state = session.getState(sitemapRoot, name);
             InputStream existingData = state.get(JcrConstants.JCR_DATA, InputStream.class);
+            int existingSegments = state.get(SitemapStorage.PN_STATE_SEGMENTS, 0);
+            if (appendOnlyCheckpoints ? existingData != null : existingSegments > 0) {
+                // the state was written with the other checkpoint mode and cannot be resumed
+                LOG.debug("Discarding state written with a different checkpoint mode");
+                session.removeState(sitemapRoot, name);
+                state = ValueMap.EMPTY;
+                existingData = null;
+                existingSegments = 0;
+            }
+            // prefill the buffer with existing data, append-only checkpoints keep it in the storage
             if (existingData != null) {
                 IOUtils.copy(existingData, buffer);
             }
@@ -154,8 +191,9 @@ public class SitemapGeneratorExecutor implements JobExecutor {
             }
 
             Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
-            SitemapImpl sitemap = new ChunkedSitemap(writer, extensionProviderManager, existingData == null,
-                    sitemapRoot, name, buffer, context) {
+            ChunkedSitemap sitemap = new ChunkedSitemap(writer, extensionProviderManager,
+                    existingData == null && existingSegments == 0, session, sitemapRoot, name,
+                    generator.getClass().getName(), buffer, context, state.get(SitemapStorage.PN_STATE_SIZE, 0)) {
                 @Override
                 public @NotNull Url addUrl(@NotNull String location) throws SitemapException {
                     if (executionContext.isStopped()) {
@@ -165,28 +203,25 @@ public class SitemapGeneratorExecutor implements JobExecutor {
                 }
             };
 
+            long start = System.nanoTime();
             generator.generate(sitemapRoot, name, sitemap, context);
             sitemap.close();
 
-            String storagePath = storage.writeSitemap(sitemapRoot, name, buffer.copy(), buffer.size(), sitemap.getUrlCount());
+            int size = sitemap.persistedSize + buffer.size();
+            String storagePath = appendOnlyCheckpoints
+                    ? session.writeSegmentedSitemap(sitemapRoot, name, buffer.copy(), size, sitemap.getUrlCount())
+                    : session.writeSitemap(sitemapRoot, name, buffer.copy(), size, sitemap.getUrlCount());
+            metrics.generated(sitemapRoot.getPath(), name, generator.getClass().getName(), sitemap.getUrlCount(),
+                    size, System.nanoTime() - start, sitemap.getExtensionTime());
 
-            Map<String, Object> eventProperties = new HashMap<>(3);
-            eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_NAME, name);
-            eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_ROOT, sitemapRoot.getPath());
-            eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_URLS, sitemap.getUrlCount());
-            eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_STORAGE_PATH, storagePath);
-            eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_STORAGE_SIZE, buffer.size());
-            eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_EXCEEDS_LIMITS,
-                    !sitemapServiceConfiguration.isWithinLimits(buffer.size(), sitemap.getUrlCount()));
-
-            eventAdmin.sendEvent(new Event(SitemapGenerator.EVENT_TOPIC_SITEMAP_UPDATED, new EventProperties(eventProperties)));
+            sendUpdatedEvent(sitemapRoot, name, storagePath, size, sitemap.getUrlCount());
         } catch (JobAbandonedException ex) {
             throw ex;
         } catch (JobStoppedException ex) {
             LOG.debug("Job stopped, removing state", ex);
-            storage.removeState(sitemapRoot, name);
+            session.removeState(sitemapRoot, name);
         } catch (RuntimeException | SitemapException | IOException ex) {
-            storage.removeState(sitemapRoot, name);
+            session.removeState(sitemapRoot, name);
             if (ex instanceof IOException) {
                 throw (IOException) ex;
             } else if (ex.getCause() instanceof IOException) {
@@ -199,6 +234,98 @@ public class SitemapGeneratorExecutor implements JobExecutor {
         }
     }
 
+    /**
+     * Generates a single shard of a sitemap. Shards are written without the sitemap's header and footer and without
+     * intermediate checkpoints. The job that claims the shards of a generation, once all of them got written, merges
+     * them into the final sitemap.
+     */
+    private void generateShard(SitemapStorage.Session session, Resource sitemapRoot, String name,
+                               SitemapGenerator generator, JobExecutionContext executionContext, int shard,
+                               int shards, long generation)
+            throws SitemapException, IOException {
+        try {
+            CopyableByteArrayOutputStream buffer = new CopyableByteArrayOutputStream();
+            GenerationContextImpl context = new GenerationContextImpl(shard, shards);
+            Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+            SitemapImpl sitemap = new SitemapImpl(writer, extensionProviderManager, false) {
+                @Override
+                public @NotNull Url addUrl(@NotNull String location) throws SitemapException {
+                    if (executionContext.isStopped()) {
+                        throw new JobStoppedException();
+                    }
+                    return super.addUrl(location);
+                }
+            };
+
+            long start = System.nanoTime();
+            generator.generate(sitemapRoot, name, sitemap, context);
+            // flush only, the footer gets added when the shards are merged
+            sitemap.flush();
+            metrics.shardGenerated(sitemapRoot.getPath(), name, generator.getClass().getName(), generation,
+                    sitemap.getUrlCount(), buffer.size(), System.nanoTime() - start, sitemap.getExtensionTime());
+
+            if (!session.writeShard(sitemapRoot, name, generation, shard, shards, buffer.copy(), buffer.size(),
+                    sitemap.getUrlCount())) {
+                LOG.debug("Shard {} of {} written, waiting for the others", shard, shards);
+                return;
+            }
+            if (!session.claimShards(sitemapRoot, name, generation, shard)) {
+                LOG.debug("Shard {} of {} written, another shard merges them", shard, shards);
+                return;
+            }
+
+            // render an empty sitemap to get the header and the footer the shards get enclosed with
+            buffer.reset();
+            SitemapImpl frame = new SitemapImpl(writer, extensionProviderManager);
+            frame.flush();
+            byte[] header = buffer.toByteArray();
+            buffer.reset();
+            frame.close();
+            byte[] footer = buffer.toByteArray();
+
+            SitemapStorageInfo info = session.writeShardedSitemap(sitemapRoot, name, generation, header, footer);
+            if (info != null) {
+                metrics.shardsMerged(sitemapRoot.getPath(), name, generator.getClass().getName(), generation,
+                        info.getEntries(), info.getSize());
+                sendUpdatedEvent(sitemapRoot, name, info.getPath(), info.getSize(), info.getEntries());
+            }
+        } catch (JobAbandonedException ex) {
+            throw ex;
+        } catch (JobStoppedException ex) {
+            LOG.debug("Job stopped, discarding shard {} of {}", shard, shards, ex);
+        } catch (RuntimeException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else {
+                throw new SitemapException(ex);
+            }
+        }
+    }
+
+    private void recordQueueWait(Job job, Resource sitemapRoot, String name, SitemapGenerator generator) {
+        Calendar created = job.getCreated();
+        if (created == null) {
+            return;
+        }
+        Calendar started = job.getProcessingStarted();
+        long startedMillis = started != null ? started.getTimeInMillis() : System.currentTimeMillis();
+        metrics.queued(sitemapRoot.getPath(), name, generator.getClass().getName(),
+                Math.max(0, startedMillis - created.getTimeInMillis()));
+    }
+
+    private void sendUpdatedEvent(Resource sitemapRoot, String name, String storagePath, int size, int urls) {
+        Map<String, Object> eventProperties = new HashMap<>(6);
+        eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_NAME, name);
+        eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_ROOT, sitemapRoot.getPath());
+        eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_URLS, urls);
+        eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_STORAGE_PATH, storagePath);
+        eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_STORAGE_SIZE, size);
+        eventProperties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_EXCEEDS_LIMITS,
+                !sitemapServiceConfiguration.isWithinLimits(size, urls));
+
+        eventAdmin.sendEvent(new Event(SitemapGenerator.EVENT_TOPIC_SITEMAP_UPDATED, new EventProperties(eventProperties)));
+    }
+
     private static class ByteBufferInputStream extends InputStream {
 
         private final ByteBuffer buf;
@@ -245,21 +372,28 @@ public class SitemapGeneratorExecutor implements JobExecutor {
 
     private class ChunkedSitemap extends SitemapImpl {
 
+        private final SitemapStorage.Session session;
         private final Resource sitemapRoot;
         private final String name;
+        private final String generatorName;
         private final GenerationContextImpl context;
         private final CopyableByteArrayOutputStream buffer;
 
         private int writtenUrls = 0;
+        private int persistedSize;
 
         public ChunkedSitemap(Writer writer, ExtensionProviderManager extensionProviderManager, boolean writeHeader,
-                              Resource sitemapRoot, String name, CopyableByteArrayOutputStream buffer,
-                              GenerationContextImpl context) throws IOException {
+                              SitemapStorage.Session session, Resource sitemapRoot, String name,
+                              String generatorName, CopyableByteArrayOutputStream buffer, GenerationContextImpl context, int persistedSize)
+                throws IOException {
             super(writer, extensionProviderManager, writeHeader);
+            this.session = session;
             this.sitemapRoot = sitemapRoot;
             this.name = name;
+            this.generatorName = generatorName;
             this.context = context;
             this.buffer = buffer;
+            this.persistedSize = persistedSize;
         }
 
         @Override
@@ -272,9 +406,18 @@ public class SitemapGeneratorExecutor implements JobExecutor {
                     // copy the state and add the buffer's data
                     Map<String, Object> copy = new HashMap<>(context.state.size() + 1);
                     copy.putAll(context.state);
-                    copy.put(JcrConstants.JCR_DATA, buffer.copy());
-                    // write the state and reset the counter for the next iteration
-                    storage.writeState(sitemapRoot, name, copy);
+                    long start = System.nanoTime();
+                    if (appendOnlyCheckpoints) {
+                        // persist only the buffer's data written since the last checkpoint and start over
+                        session.appendState(sitemapRoot, name, copy, buffer.copy(), buffer.size());
+                        persistedSize += buffer.size();
+                        buffer.reset();
+                    } else {
+                        copy.put(JcrConstants.JCR_DATA, buffer.copy());
+                        session.writeState(sitemapRoot, name, copy);
+                    }
+                    metrics.checkpointWritten(sitemapRoot.getPath(), name, generatorName, System.nanoTime() - start);
+                    // reset the counter for the next iteration
                     writtenUrls = 0;
                 } catch (IOException ex) {
                     throw new SitemapException(ex);
@@ -287,6 +430,17 @@ public class SitemapGeneratorExecutor implements JobExecutor {
     private class GenerationContextImpl implements SitemapGenerator.GenerationContext {
 
         private final ValueMap state = new ValueMapDecorator(new HashMap<>());
+        private final int shardIndex;
+        private final int shardCount;
+
+        GenerationContextImpl() {
+            this(0, 1);
+        }
+
+        GenerationContextImpl(int shardIndex, int shardCount) {
+            this.shardIndex = shardIndex;
+            this.shardCount = shardCount;
+        }
 
         @Nullable
         @Override
@@ -303,5 +457,15 @@ public class SitemapGeneratorExecutor implements JobExecutor {
         public void setProperty(@NotNull String name, @Nullable Object data) {
             state.put(name, data);
         }
+
+        @Override
+        public int getShardIndex() {
+            return shardIndex;
+        }
+
+        @Override
+        public int getShardCount() {
+            return shardCount;
+        }
     }
 }
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.serviceusermapping.ServiceUserMapped;
+import org.apache.sling.sitemap.SitemapService;
+import org.apache.sling.sitemap.common.SitemapUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+import static org.apache.sling.sitemap.common.SitemapUtil.normalizeSitemapRoot;
+
+/**
+ * This service keeps the paths of all sitemap roots, top level and nested ones, within the configured paths in memory.
+ * The index gets loaded with a single query on first use and is maintained from then on by observing the changes
+ * within the configured paths.
+ * <p>
+ * Paths outside of the configured paths are not indexed. For them the methods fall back to the implementations in
+ * {@link SitemapUtil}.
+ */
+@Component(
+        service = {SitemapRootIndex.class, ResourceChangeListener.class},
+        property = {
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=CHANGED",
+                ResourceChangeListener.CHANGES + "=REMOVED",
+                ResourceChangeListener.PROPERTY_NAMES_HINT + "=" + SitemapService.PROPERTY_SITEMAP_ROOT
+        }
+)
+@Designate(ocd = SitemapRootIndex.Configuration.class)
+public class SitemapRootIndex implements ResourceChangeListener {
+
+    @ObjectClassDefinition(name = "Apache Sling Sitemap - Sitemap Root Index")
+    @interface Configuration {
+
+        @AttributeDefinition(name = "Paths", description = "The paths under which sitemap roots are kept in memory. " +
+                "Should include the search paths of all configured schedulers.")
+        String[] resource_paths() default {"/content"};
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SitemapRootIndex.class);
+    private static final Map<String, Object> AUTH = Collections.singletonMap(ResourceResolverFactory.SUBSERVICE,
+            "sitemap-reader");
+    private static final String JCR_CONTENT_SUFFIX = '/' + JcrConstants.JCR_CONTENT;
+    private static final String JCR_SYSTEM_PATH = "/" + JcrConstants.JCR_SYSTEM;
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+    @Reference(target = "(subServiceName=sitemap-reader)")
+    private ServiceUserMapped serviceUserMapped;
+
+    private List<String> paths;
+    private volatile NavigableSet<String> roots;
+
+    @Activate
+    protected void activate(Configuration configuration) {
+        paths = Arrays.stream(configuration.resource_paths())
+                .map(path -> path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path)
+                .collect(Collectors.toList());
+        roots = null;
+    }
+
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        synchronized (this) {
+            if (roots == null) {
+                // not loaded yet, the changes will be reflected by the initial query
+                return;
+            }
+
+            // the index already answers for the changed paths, a change of other properties cannot change that
+            List<ResourceChange> relevantChanges = changes.stream()
+                    .filter(change -> change.getType() != ResourceChange.ChangeType.CHANGED
+                            || changesSitemapRoot(change))
+                    .collect(Collectors.toList());
+            if (relevantChanges.isEmpty()) {
+                return;
+            }
+
+            try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
+                Set<String> scannedPaths = new HashSet<>();
+                for (ResourceChange change : relevantChanges) {
+                    String path = change.getPath();
+                    if (path.endsWith(JCR_CONTENT_SUFFIX)) {
+                        // the property may be set on the jcr:content of the sitemap root
+                        update(resolver, ResourceUtil.getParent(path));
+                    } else if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+                        roots.remove(path);
+                        descendants(roots, path).clear();
+                    } else if (change.getType() == ResourceChange.ChangeType.ADDED) {
+                        update(resolver, path);
+                        addDescendants(resolver, path, scannedPaths);
+                    } else {
+                        update(resolver, path);
+                    }
+                }
+            } catch (LoginException ex) {
+                LOG.warn("Failed to update sitemap root index, reloading it on next use: {}", ex.getMessage(), ex);
+                roots = null;
+            }
+        }
+    }
+
+    /**
+     * Returns all sitemap root {@link Resource}s within the given search path, excluding the search path itself. The
+     * {@link Resource}s are resolved using the given {@link ResourceResolver}, so sitemap roots not readable by it
+     * are omitted.
+     *
+     * @param resolver
+     * @param searchPath
+     * @return
+     * @see SitemapUtil#findSitemapRoots(ResourceResolver, String)
+     */
+    @NotNull
+    public Iterator<Resource> findSitemapRoots(@NotNull ResourceResolver resolver, @Nullable String searchPath) {
+        NavigableSet<String> roots = searchPath != null && isIndexed(searchPath) ? getRoots() : null;
+        if (roots == null) {
+            return SitemapUtil.findSitemapRoots(resolver, searchPath);
+        }
+
+        return descendants(roots, searchPath).stream()
+                .map(resolver::getResource)
+                .filter(Objects::nonNull)
+                .iterator();
+    }
+
+    /**
+     * Returns true when the given {@link Resource} is a sitemap root. Within the configured paths this is answered
+     * from the index, without reading the {@link Resource}'s properties.
+     *
+     * @param resource
+     * @return
+     * @see SitemapUtil#isSitemapRoot(Resource)
+     */
+    public boolean isSitemapRoot(@Nullable Resource resource) {
+        if (resource == null) {
+            return false;
+        }
+        String path = resource.getPath();
+        // a jcr:content is a sitemap root only if it has the property on its own, the index does not tell that
+        NavigableSet<String> roots = isIndexed(path) && !path.endsWith(JCR_CONTENT_SUFFIX) ? getRoots() : null;
+        return roots != null ? roots.contains(path) : SitemapUtil.isSitemapRoot(resource);
+    }
+
+    /**
+     * Returns the {@link Resource} marked as sitemap root that is closest to the repository root starting with the
+     * given sitemap root {@link Resource}.
+     *
+     * @param sitemapRoot
+     * @return
+     * @see SitemapUtil#getTopLevelSitemapRoot(Resource)
+     */
+    @NotNull
+    public Resource getTopLevelSitemapRoot(@NotNull Resource sitemapRoot) {
+        NavigableSet<String> roots = isIndexed(sitemapRoot.getPath()) ? getRoots() : null;
+        if (roots == null) {
+            return SitemapUtil.getTopLevelSitemapRoot(sitemapRoot);
+        }
+
+        ResourceResolver resolver = sitemapRoot.getResourceResolver();
+        String topLevelSitemapRootPath = null;
+
+        for (String parent = ResourceUtil.getParent(sitemapRoot.getPath()); parent != null;
+             parent = ResourceUtil.getParent(parent)) {
+            if (isIndexed(parent)
+                    ? roots.contains(parent)
+                    : SitemapUtil.isSitemapRoot(resolver.getResource(parent))) {
+                topLevelSitemapRootPath = parent;
+            }
+        }
+
+        Resource topLevelSitemapRoot = topLevelSitemapRootPath != null
+                ? resolver.getResource(topLevelSitemapRootPath)
+                : null;
+        return topLevelSitemapRoot != null ? topLevelSitemapRoot : sitemapRoot;
+    }
+
+    /**
+     * Returns true when the given sitemap root {@link Resource} is a top level sitemap root.
+     *
+     * @param sitemapRoot
+     * @return
+     * @see SitemapUtil#isTopLevelSitemapRoot(Resource)
+     */
+    public boolean isTopLevelSitemapRoot(@NotNull Resource sitemapRoot) {
+        return getTopLevelSitemapRoot(sitemapRoot).getPath().equals(sitemapRoot.getPath());
+    }
+
+    private boolean isIndexed(@NotNull String path) {
+        for (String indexedPath : paths) {
+            if (path.equals(indexedPath)
+                    || indexedPath.equals("/")
+                    || (path.startsWith(indexedPath) && path.charAt(indexedPath.length()) == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void update(@NotNull ResourceResolver resolver, @Nullable String path) {
+        if (path == null || path.equals(JCR_SYSTEM_PATH) || path.startsWith(JCR_SYSTEM_PATH + '/')) {
+            return;
+        }
+        if (SitemapUtil.isSitemapRoot(resolver.getResource(path))) {
+            roots.add(path);
+        } else {
+            roots.remove(path);
+        }
+    }
+
+    /**
+     * Returns false when the given change is known to not add, change or remove the sitemap root property. The
+     * changed properties are not known for external changes, in that case true is returned.
+     *
+     * @param change
+     * @return
+     */
+    private static boolean changesSitemapRoot(@NotNull ResourceChange change) {
+        Set<String> added = change.getAddedPropertyNames();
+        Set<String> changed = change.getChangedPropertyNames();
+        Set<String> removed = change.getRemovedPropertyNames();
+        if (added == null || changed == null || removed == null) {
+            return true;
+        }
+        return added.contains(SitemapService.PROPERTY_SITEMAP_ROOT)
+                || changed.contains(SitemapService.PROPERTY_SITEMAP_ROOT)
+                || removed.contains(SitemapService.PROPERTY_SITEMAP_ROOT);
+    }
+
+    /**
+     * Adds the sitemap roots below an added path. A move is observed as the removal of the source and the addition of
+     * the destination only, so the sitemap roots nested in the destination are not reported as changes on their own.
+     * Paths below a path that was already scanned for the same changes are skipped.
+     *
+     * @param resolver
+     * @param path
+     * @param scannedPaths
+     */
+    private void addDescendants(@NotNull ResourceResolver resolver, @NotNull String path,
+                                @NotNull Set<String> scannedPaths) {
+        if (!isIndexed(path) || path.equals(JCR_SYSTEM_PATH) || path.startsWith(JCR_SYSTEM_PATH + '/')) {
+            return;
+        }
+        for (String ancestor = path; ancestor != null; ancestor = ResourceUtil.getParent(ancestor)) {
+            if (scannedPaths.contains(ancestor)) {
+                return;
+            }
+        }
+        scannedPaths.add(path);
+        Resource resource = resolver.getResource(path);
+        if (resource == null || !resource.hasChildren()) {
+            return;
+        }
+        for (Iterator<Resource> it = SitemapUtil.findSitemapRoots(resolver, path); it.hasNext(); ) {
+            roots.add(it.next().getPath());
+        }
+    }
+
+    @Nullable
+    private NavigableSet<String> getRoots() {
+        NavigableSet<String> loadedRoots = roots;
+        if (loadedRoots != null) {
+            return loadedRoots;
+        }
+
+        synchronized (this) {
+            if (roots == null) {
+                NavigableSet<String> newRoots = new ConcurrentSkipListSet<>();
+                try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
+                    for (String path : paths) {
+                        Resource resource = normalizeSitemapRoot(resolver.getResource(path));
+                        if (resource != null) {
+                            newRoots.add(resource.getPath());
+                        }
+                        for (Iterator<Resource> it = SitemapUtil.findSitemapRoots(resolver, path); it.hasNext(); ) {
+                            newRoots.add(it.next().getPath());
+                        }
+                    }
+                    LOG.debug("Loaded {} sitemap roots within {}", newRoots.size(), paths);
+                    roots = newRoots;
+                } catch (LoginException ex) {
+                    LOG.warn("Failed to load sitemap root index: {}", ex.getMessage(), ex);
+                    // callers fall back to query, the next call tries to load the index again
+                    return null;
+                }
+            }
+            return roots;
+        }
+    }
+
+    /**
+     * Returns a view on the paths in the given set that are descendants of the given path. As '0' follows '/' in the
+     * order of characters, these are all paths in between "path/" (inclusive) and "path0" (exclusive).
+     *
+     * @param roots
+     * @param path
+     * @return
+     */
+    @NotNull
+    private static NavigableSet<String> descendants(@NotNull NavigableSet<String> roots, @NotNull String path) {
+        String prefix = path.endsWith("/") ? path : path + '/';
+        return roots.subSet(prefix, true, prefix.substring(0, prefix.length() - 1) + '0', false);
+    }
+}
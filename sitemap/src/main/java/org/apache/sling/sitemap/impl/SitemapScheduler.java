@@ -26,12 +26,15 @@ import org.apache.sling.commons.scheduler.Scheduler;
 import org.apache.sling.event.jobs.Job;
 import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.serviceusermapping.ServiceUserMapped;
+import org.apache.sling.sitemap.generator.SitemapGenerator;
 import org.apache.sling.sitemap.generator.SitemapGeneratorManager;
 import org.jetbrains.annotations.Nullable;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
@@ -72,6 +75,11 @@ public class SitemapScheduler implements Runnable {
         @AttributeDefinition(name = "Search Path", description = "The path under which sitemap roots should be " +
                 "searched for")
         String searchPath() default "/content";
+
+        @AttributeDefinition(name = "Shards", description = "If set to a number greater than 1, the generation of " +
+                "each sitemap, which's generator supports it, gets split into the given number of jobs that may run " +
+                "in parallel. The shards get merged into the final sitemap when the last of them finished.")
+        int shards() default 1;
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(SitemapScheduler.class);
@@ -86,9 +94,12 @@ public class SitemapScheduler implements Runnable {
     private SitemapGeneratorManager generatorManager;
     @Reference(target = "(subServiceName=sitemap-reader)")
     private ServiceUserMapped serviceUserMapped;
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private SitemapRootIndex sitemapRootIndex;
 
     private Set<String> generators;
     private String searchPath;
+    private int shards;
 
     @Activate
     protected void activate(Configuration configuration) {
@@ -105,6 +116,7 @@ public class SitemapScheduler implements Runnable {
             generators = null;
         }
         searchPath = configuration.searchPath();
+        shards = configuration.shards();
     }
 
     @Override
@@ -114,7 +126,9 @@ public class SitemapScheduler implements Runnable {
 
     public void schedule(@Nullable Collection<String> includeNames) {
         try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
-            Iterator<Resource> sitemapRoots = findSitemapRoots(resolver, searchPath);
+            Iterator<Resource> sitemapRoots = sitemapRootIndex != null
+                    ? sitemapRootIndex.findSitemapRoots(resolver, searchPath)
+                    : findSitemapRoots(resolver, searchPath);
             while (sitemapRoots.hasNext()) {
                 schedule(sitemapRoots.next(), includeNames);
             }
@@ -131,7 +145,19 @@ public class SitemapScheduler implements Runnable {
         }
 
         for (String applicableName : configuredNames) {
-            addJob(sitemapRoot.getPath(), applicableName);
+            SitemapGenerator generator = shards > 1
+                    ? generatorManager.getGenerator(sitemapRoot, applicableName)
+                    : null;
+            if (generator != null && generator.isShardable(sitemapRoot, applicableName)) {
+                // all shards of the same generation share a timestamp, so that late shards of a previous one
+                // are not merged with them
+                long generation = System.currentTimeMillis();
+                for (int shard = 0; shard < shards; shard++) {
+                    addJob(sitemapRoot.getPath(), applicableName, shard, generation);
+                }
+            } else {
+                addJob(sitemapRoot.getPath(), applicableName);
+            }
         }
     }
 
@@ -143,6 +169,17 @@ public class SitemapScheduler implements Runnable {
         LOG.debug("Added job {}", job.getId());
     }
 
+    protected void addJob(String sitemapRoot, String applicableName, int shard, long generation) {
+        Map<String, Object> jobProperties = new HashMap<>();
+        jobProperties.put(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_NAME, applicableName);
+        jobProperties.put(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_ROOT, sitemapRoot);
+        jobProperties.put(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_SHARD, shard);
+        jobProperties.put(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_SHARDS, shards);
+        jobProperties.put(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_GENERATION, generation);
+        Job job = jobManager.addJob(SitemapGeneratorExecutor.JOB_TOPIC, jobProperties);
+        LOG.debug("Added job {} for shard {} of {}", job.getId(), shard, shards);
+    }
+
     /**
      * Returns the names for the given sitemap root. This depends on the configured generators. If no generators were
      * configured the names of all are returned. If some where configured the names provided only by those where the
@@ -19,6 +19,7 @@
 package org.apache.sling.sitemap.impl;
 
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.event.jobs.Job;
 import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.sitemap.SitemapInfo;
@@ -55,6 +56,8 @@ public class SitemapServiceImpl implements SitemapService {
     private SitemapStorage storage;
     @Reference
     private SitemapServiceConfiguration sitemapServiceConfiguration;
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private SitemapRootIndex sitemapRootIndex;
 
     private ServiceTracker<SitemapScheduler, SitemapScheduler> schedulers;
 
@@ -89,7 +92,7 @@ public class SitemapServiceImpl implements SitemapService {
 
     @Override
     public void scheduleGeneration(Resource sitemapRoot) {
-        if (schedulers.getServiceReferences() == null || !SitemapUtil.isSitemapRoot(sitemapRoot)) {
+        if (schedulers.getServiceReferences() == null || !isSitemapRoot(sitemapRoot)) {
             return;
         }
         for (ServiceReference<SitemapScheduler> scheduler : schedulers.getServiceReferences()) {
@@ -102,7 +105,7 @@ public class SitemapServiceImpl implements SitemapService {
 
     @Override
     public void scheduleGeneration(Resource sitemapRoot, String name) {
-        if (schedulers.getServiceReferences() == null || !SitemapUtil.isSitemapRoot(sitemapRoot)) {
+        if (schedulers.getServiceReferences() == null || !isSitemapRoot(sitemapRoot)) {
             return;
         }
 
@@ -124,7 +127,7 @@ public class SitemapServiceImpl implements SitemapService {
             return Collections.emptySet();
         }
 
-        if (!isTopLevelSitemapRoot(sitemapRoot)) {
+        if (!getTopLevelSitemapRoot(sitemapRoot).getPath().equals(sitemapRoot.getPath())) {
             return getSitemapUrlsForNestedSitemapRoot(sitemapRoot);
         }
 
@@ -217,6 +220,24 @@ public class SitemapServiceImpl implements SitemapService {
                 || findSitemapRoots(sitemapRoot.getResourceResolver(), sitemapRoot.getPath()).hasNext());
     }
 
+    private Iterator<Resource> findSitemapRoots(ResourceResolver resolver, String searchPath) {
+        return sitemapRootIndex != null
+                ? sitemapRootIndex.findSitemapRoots(resolver, searchPath)
+                : SitemapUtil.findSitemapRoots(resolver, searchPath);
+    }
+
+    private boolean isSitemapRoot(Resource sitemapRoot) {
+        return sitemapRootIndex != null
+                ? sitemapRootIndex.isSitemapRoot(sitemapRoot)
+                : SitemapUtil.isSitemapRoot(sitemapRoot);
+    }
+
+    private Resource getTopLevelSitemapRoot(Resource sitemapRoot) {
+        return sitemapRootIndex != null
+                ? sitemapRootIndex.getTopLevelSitemapRoot(sitemapRoot)
+                : SitemapUtil.getTopLevelSitemapRoot(sitemapRoot);
+    }
+
     /**
      * Returns a collection of sitemap infos with urls as they are listed in the top level sitemap root's index.
      *
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.sitemap.impl;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.Resource;
@@ -40,7 +41,9 @@ import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
 
 import static org.apache.sling.sitemap.common.SitemapUtil.*;
 import static org.apache.sling.sitemap.impl.SitemapServlet.*;
@@ -60,6 +63,17 @@ public class SitemapServlet extends SlingSafeMethodsServlet {
     static final String SITEMAP_INDEX_SELECTOR = "sitemap-index";
     static final String SITEMAP_EXTENSION = "xml";
 
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_RANGE = "If-Range";
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_VARY = "Vary";
+
     private static final Logger LOG = LoggerFactory.getLogger(SitemapServlet.class);
     private static SitemapGenerator.GenerationContext NOOP_CONTEXT = new SitemapGenerator.GenerationContext() {
         @Nullable
@@ -89,6 +103,8 @@ public class SitemapServlet extends SlingSafeMethodsServlet {
     private SitemapStorage storage;
     @Reference
     private SitemapServiceConfiguration sitemapServiceConfiguration;
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private SitemapRootIndex sitemapRootIndex;
 
     @Override
     protected void doGet(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response)
@@ -172,11 +188,78 @@ public class SitemapServlet extends SlingSafeMethodsServlet {
             }
         }
 
-        if (!storage.copySitemap(topLevelSitemapRoot, sitemapSelector, response.getOutputStream())) {
+        if (!storage.readSitemap(topLevelSitemapRoot, sitemapSelector,
+                (info, data) -> doGetStoredSitemap(request, response, info, data))) {
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
     }
 
+    /**
+     * Serves a sitemap from the storage. Compressed sitemaps are sent as they are to clients accepting gzip and
+     * decompressed for all others. Sitemaps with a digest are served with a strong ETag, which enables conditional
+     * requests, and when the length of the response is known, single byte ranges are supported.
+     *
+     * @param request
+     * @param response
+     * @param info
+     * @param data
+     * @throws IOException
+     */
+    private void doGetStoredSitemap(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response,
+                                    @NotNull SitemapStorageInfo info, @NotNull InputStream data) throws IOException {
+        boolean compressed = SitemapStorage.ENCODING_GZIP.equals(info.getEncoding());
+        boolean sendCompressed = compressed && acceptsGzip(request);
+        long length = info.getStoredSize();
+        String etag = info.getDigest() != null
+                ? '"' + info.getDigest() + (sendCompressed ? "-gzip" : "") + '"'
+                : null;
+
+        if (compressed) {
+            response.setHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        }
+
+        if (etag != null) {
+            response.setHeader(HEADER_ETAG, etag);
+            if (matchesEtag(request.getHeader(HEADER_IF_NONE_MATCH), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+
+        if (sendCompressed) {
+            response.setHeader(HEADER_CONTENT_ENCODING, SitemapStorage.ENCODING_GZIP);
+        } else if (compressed) {
+            // the length of the decompressed data is not known upfront
+            data = new GZIPInputStream(data);
+            length = -1;
+        }
+
+        if (length < 0) {
+            IOUtils.copyLarge(data, response.getOutputStream());
+            return;
+        }
+
+        response.setHeader(HEADER_ACCEPT_RANGES, "bytes");
+        String ifRange = request.getHeader(HEADER_IF_RANGE);
+        long[] range = ifRange == null || ifRange.equals(etag)
+                ? parseRange(request.getHeader(HEADER_RANGE), length)
+                : null;
+
+        if (range == null) {
+            response.setHeader(HEADER_CONTENT_LENGTH, String.valueOf(length));
+            IOUtils.copyLarge(data, response.getOutputStream());
+        } else if (range.length == 0) {
+            response.setHeader(HEADER_CONTENT_RANGE, "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        } else {
+            long rangeLength = range[1] - range[0] + 1;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HEADER_CONTENT_RANGE, "bytes " + range[0] + '-' + range[1] + '/' + length);
+            response.setHeader(HEADER_CONTENT_LENGTH, String.valueOf(rangeLength));
+            IOUtils.copyLarge(data, response.getOutputStream(), range[0], rangeLength);
+        }
+    }
+
     /**
      * Adds all on-demand sitemaps to the index within the given sitemap root.
      *
@@ -195,7 +278,9 @@ public class SitemapServlet extends SlingSafeMethodsServlet {
         }
 
         Set<String> addedSitemapSelectors = new HashSet<>();
-        Iterator<Resource> sitemapRoots = findSitemapRoots(request.getResourceResolver(), parentSitemapRoot.getPath());
+        Iterator<Resource> sitemapRoots = sitemapRootIndex != null
+                ? sitemapRootIndex.findSitemapRoots(request.getResourceResolver(), parentSitemapRoot.getPath())
+                : findSitemapRoots(request.getResourceResolver(), parentSitemapRoot.getPath());
         if (!sitemapRoots.hasNext()) {
             // serve at least the top level sitemap
             sitemapRoots = Collections.singleton(parentSitemapRoot).iterator();
@@ -219,6 +304,105 @@ public class SitemapServlet extends SlingSafeMethodsServlet {
         return addedSitemapSelectors;
     }
 
+    /**
+     * Returns true when the given request accepts gzip as content encoding.
+     *
+     * @param request
+     * @return
+     */
+    private static boolean acceptsGzip(SlingHttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HEADER_ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (SitemapStorage.ENCODING_GZIP.equalsIgnoreCase(name) || "*".equals(name)) {
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=") && param.substring(2).matches("0(\\.0{0,3})?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true when the given value of an If-None-Match header matches the given strong etag.
+     *
+     * @param ifNoneMatch
+     * @param etag
+     * @return
+     */
+    private static boolean matchesEtag(@Nullable String ifNoneMatch, @NotNull String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the given value of a Range header for a representation of the given length. Only a single byte range is
+     * supported, for any other value null is returned so that the full representation will be sent. If the range
+     * cannot be satisfied an empty array will be returned.
+     *
+     * @param rangeHeader
+     * @param length
+     * @return the first and the last byte position of the range, both inclusive
+     */
+    @Nullable
+    static long[] parseRange(@Nullable String rangeHeader, long length) {
+        if (rangeHeader == null || !rangeHeader.startsWith("bytes=") || rangeHeader.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = rangeHeader.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String firstPos = spec.substring(0, dash).trim();
+            String lastPos = spec.substring(dash + 1).trim();
+            long first;
+            long last;
+            if (firstPos.isEmpty()) {
+                // suffix range, the last n bytes
+                long suffixLength = Long.parseLong(lastPos);
+                if (suffixLength <= 0) {
+                    return new long[0];
+                }
+                first = Math.max(0, length - suffixLength);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(firstPos);
+                last = lastPos.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastPos);
+                if (last < first) {
+                    return null;
+                }
+                if (first >= length) {
+                    return new long[0];
+                }
+                last = Math.min(last, length - 1);
+            }
+            return new long[]{first, last};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
     private String externalize(SlingHttpServletRequest request, String uri) {
         return (externalizer == null ? SitemapLinkExternalizer.DEFAULT : externalizer).externalize(request, uri);
     }
@@ -25,6 +25,7 @@ import org.apache.sling.api.resource.*;
 import org.apache.sling.api.wrappers.ValueMapDecorator;
 import org.apache.sling.commons.metrics.Counter;
 import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
 import org.apache.sling.commons.scheduler.Scheduler;
 import org.apache.sling.serviceusermapping.ServiceUserMapped;
 import org.apache.sling.sitemap.common.SitemapUtil;
@@ -42,14 +43,24 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.apache.sling.sitemap.common.SitemapUtil.*;
 
@@ -78,17 +89,51 @@ public class SitemapStorage implements Runnable {
         @AttributeDefinition(name = "Cleanup Schedule", description = "A cron expression defining the schedule at " +
                 "which stale intermediate states and old sitemaps will be removed.")
         String scheduler_expression() default "0 0 1 * * ?";
+
+        @AttributeDefinition(name = "Compress", description = "If enabled, sitemaps are stored gzip compressed and " +
+                "served as such to clients accepting it.")
+        boolean compress() default true;
+
+        @AttributeDefinition(name = "Checkpoint Commit Interval", description = "The number of checkpoints a " +
+                "generation job writes before they get committed. Higher values reduce the commit overhead, but up " +
+                "to as many checkpoints may get lost when a job gets interrupted.")
+        int checkpointCommitInterval() default 1;
+
+        @AttributeDefinition(name = "Cleanup Batch Size", description = "The number of stale intermediate states " +
+                "and old sitemaps the cleanup removes per commit.")
+        int cleanupBatchSize() default 100;
+
+        @AttributeDefinition(name = "Cleanup Max Time", description = "The number of milliseconds a single cleanup " +
+                "run may take. When exceeded, the next run resumes where the previous one stopped.")
+        long cleanupMaxTime() default 10 * 60 * 1000;
+
+        @AttributeDefinition(name = "Cleanup Max Nodes", description = "The number of resources a single cleanup run " +
+                "may visit. When exceeded, the next run resumes where the previous one stopped.")
+        int cleanupMaxNodes() default Integer.MAX_VALUE;
     }
 
     static final String PN_SITEMAP_ENTRIES = "entries";
     static final String PN_SITEMAP_SIZE = "size";
     static final String PN_SITEMAP_NAME = "name";
+    static final String PN_SITEMAP_DIGEST = "digest";
+    static final String PN_SITEMAP_ENCODING = "encoding";
+    static final String PN_SITEMAP_STORED_SIZE = "storedSize";
+    static final String ENCODING_GZIP = "gzip";
+    static final String PN_STATE_SEGMENTS = "sling:sitemapSegments";
+    static final String PN_STATE_SIZE = "sling:sitemapSize";
+    static final String PN_SHARDS_GENERATION = "sling:sitemapGeneration";
+    static final String PN_SHARDS_COUNT = "sling:sitemapShards";
+    static final String PN_SHARDS_MERGED_BY = "sling:sitemapMergedBy";
 
     private static final Logger LOG = LoggerFactory.getLogger(SitemapStorage.class);
     private static final Map<String, Object> AUTH = Collections.singletonMap(ResourceResolverFactory.SUBSERVICE,
             "sitemap-writer");
     private static final String STATE_EXTENSION = ".part";
+    private static final String SHARDS_EXTENSION = ".shards";
     private static final String XML_EXTENSION = ".xml";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SHARD_PREFIX = "shard-";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
     private static final String RT_SITEMAP_PART = "sling/sitemap/part";
     private static final String RT_SITEMAP_FILE = "sling/sitemap/file";
     private static final String PN_RESOURCE_TYPE = SlingConstants.NAMESPACE_PREFIX + ':' + SlingConstants.PROPERTY_RESOURCE_TYPE;
@@ -106,16 +151,30 @@ public class SitemapStorage implements Runnable {
 
     private String rootPath = "/var/sitemaps";
     private int maxStateAge = Integer.MAX_VALUE;
+    private boolean compress = true;
+    private int checkpointCommitInterval = 1;
+    private int cleanupBatchSize = 100;
+    private long cleanupMaxTime = Long.MAX_VALUE;
+    private int cleanupMaxNodes = Integer.MAX_VALUE;
 
     private Counter checkpointReadsExpired;
     private Counter checkpointReads;
     private Counter checkpointMisses;
     private Counter checkpointWrites;
+    private Timer checkpointReadTime;
+    private Timer checkpointWriteTime;
+    private Timer sitemapWriteTime;
+    private Timer commitTime;
 
     @Activate
     protected void activate(Configuration configuration) {
         rootPath = configuration.storagePath();
         maxStateAge = configuration.stateMaxAge();
+        compress = configuration.compress();
+        checkpointCommitInterval = Math.max(1, configuration.checkpointCommitInterval());
+        cleanupBatchSize = configuration.cleanupBatchSize();
+        cleanupMaxTime = configuration.cleanupMaxTime();
+        cleanupMaxNodes = configuration.cleanupMaxNodes();
 
         if (metricsService == null) {
             metricsService = MetricsService.NOOP;
@@ -126,147 +185,626 @@ public class SitemapStorage implements Runnable {
         checkpointMisses = metricsService.counter("SitemapStorage-checkpointMisses");
         checkpointReads = metricsService.counter("SitemapStorage-checkpointReads");
         checkpointWrites = metricsService.counter("SitemapStorage-checkpointWrites");
+        // metrics to measure the time spent in the storage
+        checkpointReadTime = metricsService.timer("SitemapStorage-checkpointReadTime");
+        checkpointWriteTime = metricsService.timer("SitemapStorage-checkpointWriteTime");
+        sitemapWriteTime = metricsService.timer("SitemapStorage-sitemapWriteTime");
+        commitTime = metricsService.timer("SitemapStorage-commitTime");
     }
 
     @Override
     public void run() {
         try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
-            Iterator<Resource> descendants = traverse(resolver.getResource(rootPath)).iterator();
-            List<Resource> toDelete = new LinkedList<>();
-            while (descendants.hasNext()) {
-                Resource descendant = descendants.next();
-                if (descendant.isResourceType(RT_SITEMAP_PART) && isExpired(descendant)) {
-                    toDelete.add(descendant);
-                } else if (descendant.isResourceType(RT_SITEMAP_FILE) && !doesSitemapRootExist(descendant)) {
-                    toDelete.add(descendant);
-                }
-            }
-            for (Resource resource : toDelete) {
-                Map<String, Object> properties = new HashMap<>();
-                properties.put(SitemapGenerator.EVENT_PROPERTY_SITEMAP_STORAGE_PATH, resource.getPath());
-                eventAdmin.postEvent(new Event(
-                        SitemapGenerator.EVENT_TOPIC_SITEMAP_PURGED,
-                        new EventProperties(properties)
-                ));
-                resolver.delete(resource);
-            }
-            resolver.commit();
+            SitemapStorageCleanup cleanup = new SitemapStorageCleanup(resolver, rootPath, cleanupBatchSize,
+                    cleanupMaxTime, cleanupMaxNodes);
+            cleanup.run(
+                    resource -> resource.isResourceType(RT_SITEMAP_PART)
+                            ? isExpired(resource)
+                            : resource.isResourceType(RT_SITEMAP_FILE) && !doesSitemapRootExist(resource),
+                    // intermediate states and files have no obsolete descendants on their own
+                    resource -> !resource.isResourceType(RT_SITEMAP_PART) && !resource.isResourceType(RT_SITEMAP_FILE),
+                    path -> eventAdmin.postEvent(new Event(
+                            SitemapGenerator.EVENT_TOPIC_SITEMAP_PURGED,
+                            new EventProperties(Collections.singletonMap(
+                                    SitemapGenerator.EVENT_PROPERTY_SITEMAP_STORAGE_PATH, path))
+                    )));
         } catch (LoginException | PersistenceException ex) {
             LOG.warn("Failed to cleanup storage: {}", ex.getMessage(), ex);
         }
     }
 
+    /**
+     * Opens a {@link Session} on the storage, that uses a single service {@link ResourceResolver} for all operations
+     * until it gets closed.
+     *
+     * @return
+     * @throws IOException
+     */
+    @NotNull
+    public Session openSession() throws IOException {
+        try {
+            return new Session(resourceResolverFactory.getServiceResourceResolver(AUTH));
+        } catch (LoginException ex) {
+            throw new IOException("Cannot open storage session", ex);
+        }
+    }
+
     @NotNull
     public ValueMap getState(@NotNull Resource sitemapRoot, @NotNull String name) throws IOException {
-        String statePath = getSitemapFilePath(sitemapRoot, name) + STATE_EXTENSION;
-        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
-            Resource state = resolver.getResource(statePath);
+        try (Session session = openSession()) {
+            return session.getState(sitemapRoot, name);
+        }
+    }
 
-            if (state == null) {
-                checkpointMisses.increment();
-                return ValueMap.EMPTY;
-            }
+    public void writeState(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull Map<String, Object> state)
+            throws IOException {
+        try (Session session = openSession()) {
+            session.writeState(sitemapRoot, name, state);
+        }
+    }
 
-            if (isExpired(state)) {
-                checkpointReadsExpired.increment();
-                return ValueMap.EMPTY;
-            }
+    /**
+     * @see Session#appendState(Resource, String, Map, InputStream, int)
+     */
+    public void appendState(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull Map<String, Object> state,
+                            @NotNull InputStream segment, int segmentSize) throws IOException {
+        try (Session session = openSession()) {
+            session.appendState(sitemapRoot, name, state, segment, segmentSize);
+        }
+    }
 
-            // make a copy to read properties fully
-            checkpointReads.increment();
-            return new ValueMapDecorator(new HashMap<>(state.getValueMap()));
-        } catch (LoginException ex) {
-            throw new IOException("Cannot read state at " + statePath, ex);
+    public void removeState(@NotNull Resource sitemapRoot, @NotNull String name) throws IOException {
+        try (Session session = openSession()) {
+            session.removeState(sitemapRoot, name);
         }
     }
 
-    public void writeState(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull Map<String, Object> state)
+    public String writeSitemap(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull InputStream data, int size,
+                               int entries) throws IOException {
+        try (Session session = openSession()) {
+            return session.writeSitemap(sitemapRoot, name, data, size, entries);
+        }
+    }
+
+    /**
+     * @see Session#writeSegmentedSitemap(Resource, String, InputStream, int, int)
+     */
+    public String writeSegmentedSitemap(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull InputStream tail,
+                                        int size, int entries) throws IOException {
+        try (Session session = openSession()) {
+            return session.writeSegmentedSitemap(sitemapRoot, name, tail, size, entries);
+        }
+    }
+
+    /**
+     * @see Session#writeShard(Resource, String, long, int, int, InputStream, int, int)
+     */
+    public boolean writeShard(@NotNull Resource sitemapRoot, @NotNull String name, long generation, int shard,
+                              int shards, @NotNull InputStream data, int size, int entries) throws IOException {
+        try (Session session = openSession()) {
+            return session.writeShard(sitemapRoot, name, generation, shard, shards, data, size, entries);
+        }
+    }
+
+    /**
+     * @see Session#writeShardedSitemap(Resource, String, long, byte[], byte[])
+     */
+    @Nullable
+    public SitemapStorageInfo writeShardedSitemap(@NotNull Resource sitemapRoot, @NotNull String name,
+                                                  long generation, byte @NotNull [] header, byte @NotNull [] footer)
             throws IOException {
-        String statePath = getSitemapFilePath(sitemapRoot, name) + STATE_EXTENSION;
-        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
-            Resource folder = getOrCreateFolder(resolver, ResourceUtil.getParent(statePath));
-            String stateName = ResourceUtil.getName(statePath);
-            Resource stateResource = folder.getChild(stateName);
-
-            if (stateResource == null) {
-                Map<String, Object> properties = new HashMap<>(state.size() + 1);
-                properties.putAll(state);
-                properties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+        try (Session session = openSession()) {
+            return session.writeShardedSitemap(sitemapRoot, name, generation, header, footer);
+        }
+    }
+
+    /**
+     * A session on the storage that uses a single service {@link ResourceResolver} for all its operations, for example
+     * for the lifetime of a generation job.
+     * <p>
+     * Sitemaps and shards are committed immediately. Checkpoints are committed in batches of the configured
+     * {@code checkpointCommitInterval}, together with the sitemap or when the session gets closed. Removed states are
+     * committed with the next commit or when the session gets closed.
+     */
+    public class Session implements Closeable {
+
+        private final ResourceResolver resolver;
+        private int pendingCheckpoints = 0;
+
+        private Session(@NotNull ResourceResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        /**
+         * Returns the intermediate state of the given sitemap root and name. An expired state gets removed, so that
+         * the generation starting over does not append to its segments. The removal gets committed with the next
+         * commit of the session.
+         *
+         * @param sitemapRoot
+         * @param name
+         * @return the state or an empty {@link ValueMap}, if there is none or it expired
+         * @throws IOException
+         */
+        @NotNull
+        public ValueMap getState(@NotNull Resource sitemapRoot, @NotNull String name) throws IOException {
+            String statePath = getSitemapFilePath(sitemapRoot, name) + STATE_EXTENSION;
+            Timer.Context timer = checkpointReadTime.time();
+            try {
+                Resource state = resolver.getResource(statePath);
+
+                if (state == null) {
+                    checkpointMisses.increment();
+                    return ValueMap.EMPTY;
+                }
+
+                if (isExpired(state)) {
+                    checkpointReadsExpired.increment();
+                    resolver.delete(state);
+                    return ValueMap.EMPTY;
+                }
+
+                // make a copy to read properties fully
+                checkpointReads.increment();
+                return new ValueMapDecorator(new HashMap<>(state.getValueMap()));
+            } catch (PersistenceException ex) {
+                throw new IOException("Cannot remove expired state at " + statePath, ex);
+            } finally {
+                timer.stop();
+            }
+        }
+
+        public void writeState(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull Map<String, Object> state)
+                throws IOException {
+            String statePath = getSitemapFilePath(sitemapRoot, name) + STATE_EXTENSION;
+            Timer.Context timer = checkpointWriteTime.time();
+            try {
+                Resource folder = getOrCreateFolder(resolver, ResourceUtil.getParent(statePath));
+                String stateName = ResourceUtil.getName(statePath);
+                Resource stateResource = folder.getChild(stateName);
+
+                if (stateResource == null) {
+                    Map<String, Object> properties = new HashMap<>(state.size() + 1);
+                    properties.putAll(state);
+                    properties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+                    properties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+                    properties.put(PN_RESOURCE_TYPE, RT_SITEMAP_PART);
+                    resolver.create(folder, stateName, properties);
+                } else {
+                    ModifiableValueMap properties = stateResource.adaptTo(ModifiableValueMap.class);
+                    if (properties == null) {
+                        throw new IOException("Cannot modify properties of existing state: " + statePath);
+                    }
+                    properties.putAll(state);
+                    properties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+                }
+
+                checkpointWrites.increment();
+                commitCheckpoint();
+            } catch (PersistenceException ex) {
+                throw new IOException("Cannot create state at " + statePath, ex);
+            } finally {
+                timer.stop();
+            }
+        }
+
+        /**
+         * Appends the given segment to the intermediate state of the given sitemap root and name. Other than
+         * {@link Session#writeState(Resource, String, Map)} this does not rewrite the data persisted with previous
+         * checkpoints, but adds the segment as a new child of the state. The segments are put together again, when
+         * the sitemap gets written with {@link Session#writeSegmentedSitemap(Resource, String, InputStream, int, int)}.
+         *
+         * @param sitemapRoot
+         * @param name
+         * @param state
+         * @param segment
+         * @param segmentSize
+         * @throws IOException
+         */
+        public void appendState(@NotNull Resource sitemapRoot, @NotNull String name,
+                                @NotNull Map<String, Object> state, @NotNull InputStream segment, int segmentSize)
+                throws IOException {
+            String statePath = getSitemapFilePath(sitemapRoot, name) + STATE_EXTENSION;
+            Timer.Context timer = checkpointWriteTime.time();
+            try {
+                Resource folder = getOrCreateFolder(resolver, ResourceUtil.getParent(statePath));
+                String stateName = ResourceUtil.getName(statePath);
+                Resource stateResource = folder.getChild(stateName);
+                int segments;
+
+                if (stateResource == null) {
+                    Map<String, Object> properties = new HashMap<>(state.size() + 5);
+                    properties.putAll(state);
+                    properties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+                    properties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+                    properties.put(PN_RESOURCE_TYPE, RT_SITEMAP_PART);
+                    properties.put(PN_STATE_SEGMENTS, 1);
+                    properties.put(PN_STATE_SIZE, segmentSize);
+                    stateResource = resolver.create(folder, stateName, properties);
+                    segments = 0;
+                } else {
+                    ModifiableValueMap properties = stateResource.adaptTo(ModifiableValueMap.class);
+                    if (properties == null) {
+                        throw new IOException("Cannot modify properties of existing state: " + statePath);
+                    }
+                    segments = properties.get(PN_STATE_SEGMENTS, 0);
+                    int size = properties.get(PN_STATE_SIZE, 0);
+                    properties.putAll(state);
+                    properties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+                    properties.put(PN_STATE_SEGMENTS, segments + 1);
+                    properties.put(PN_STATE_SIZE, size + segmentSize);
+                }
+
+                Map<String, Object> segmentProperties = new HashMap<>(2);
+                segmentProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+                segmentProperties.put(JcrConstants.JCR_DATA, segment);
+                resolver.create(stateResource, SEGMENT_PREFIX + segments, segmentProperties);
+
+                checkpointWrites.increment();
+                commitCheckpoint();
+            } catch (PersistenceException ex) {
+                throw new IOException("Cannot append state at " + statePath, ex);
+            } finally {
+                timer.stop();
+            }
+        }
+
+        /**
+         * Removes the intermediate state of the given sitemap root and name. The removal gets committed with the next
+         * commit of the session, at the latest when the session gets closed.
+         *
+         * @param sitemapRoot
+         * @param name
+         * @throws IOException
+         */
+        public void removeState(@NotNull Resource sitemapRoot, @NotNull String name) throws IOException {
+            String statePath = getSitemapFilePath(sitemapRoot, name) + STATE_EXTENSION;
+            try {
+                Resource stateResource = resolver.getResource(statePath);
+                if (stateResource != null) {
+                    resolver.delete(stateResource);
+                }
+            } catch (PersistenceException ex) {
+                throw new IOException("Cannot remove state at " + statePath, ex);
+            }
+        }
+
+        public String writeSitemap(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull InputStream data,
+                                   int size, int entries) throws IOException {
+            return writeSitemap(sitemapRoot, name, () -> data, size, entries);
+        }
+
+        /**
+         * Writes the sitemap for the given sitemap root and name by streaming all segments previously added to the
+         * intermediate state with {@link Session#appendState(Resource, String, Map, InputStream, int)}, followed
+         * by the given tail.
+         *
+         * @param sitemapRoot
+         * @param name
+         * @param tail
+         * @param size
+         * @param entries
+         * @return
+         * @throws IOException
+         */
+        public String writeSegmentedSitemap(@NotNull Resource sitemapRoot, @NotNull String name,
+                                            @NotNull InputStream tail, int size, int entries) throws IOException {
+            String statePath = getSitemapFilePath(sitemapRoot, name) + STATE_EXTENSION;
+            return writeSitemap(sitemapRoot, name, () -> {
+                Resource stateResource = resolver.getResource(statePath);
+                return stateResource != null
+                        ? new SequenceInputStream(new ChildDataEnumeration(stateResource, SEGMENT_PREFIX,
+                        stateResource.getValueMap().get(PN_STATE_SEGMENTS, 0), null, tail))
+                        : tail;
+            }, size, entries);
+        }
+
+        /**
+         * Writes a shard of the sitemap for the given sitemap root and name. The shards of a sitemap are generated
+         * independently from each other and are put together with
+         * {@link Session#writeShardedSitemap(Resource, String, long, byte[], byte[])} as soon as all of them got
+         * written.
+         * <p>
+         * Shards of a previous generation get discarded, when the first shard of a newer generation gets written.
+         * Shards of a generation older than the one currently being written get ignored.
+         * <p>
+         * The shards are written concurrently. Each of them only adds its own child to the unordered container of the
+         * generation, which itself does not get modified, so that the commits of the shards do not conflict.
+         *
+         * @param sitemapRoot
+         * @param name
+         * @param generation  the generation, the shard belongs to
+         * @param shard       the index of the shard
+         * @param shards      the total number of shards
+         * @param data        the urls of the shard, without the sitemap's header and footer
+         * @param size
+         * @param entries
+         * @return true when all shards of the generation are written, false otherwise
+         * @throws IOException
+         */
+        public boolean writeShard(@NotNull Resource sitemapRoot, @NotNull String name, long generation, int shard,
+                                  int shards, @NotNull InputStream data, int size, int entries) throws IOException {
+            String shardsPath = getSitemapFilePath(sitemapRoot, name) + SHARDS_EXTENSION;
+            try {
+                // shards are written concurrently, refresh to see the ones committed in the meantime, but do not
+                // discard any pending changes of this session
+                if (resolver.hasChanges()) {
+                    commit();
+                }
+                Resource shardsResource = getOrCreateShards(shardsPath, generation, shards);
+                if (shardsResource == null) {
+                    LOG.debug("Ignoring shard {} of outdated generation {} at {}", shard, generation, shardsPath);
+                    return false;
+                }
+
+                Resource existingShard = shardsResource.getChild(SHARD_PREFIX + shard);
+                if (existingShard != null) {
+                    resolver.delete(existingShard);
+                }
+
+                Map<String, Object> shardProperties = new HashMap<>(5);
+                shardProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+                shardProperties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+                shardProperties.put(JcrConstants.JCR_DATA, data);
+                shardProperties.put(PN_SITEMAP_SIZE, size);
+                shardProperties.put(PN_SITEMAP_ENTRIES, entries);
+                resolver.create(shardsResource, SHARD_PREFIX + shard, shardProperties);
+                commit();
+
+                resolver.refresh();
+                return isComplete(resolver.getResource(shardsPath), generation);
+            } catch (PersistenceException ex) {
+                throw new IOException("Cannot write shard at " + shardsPath, ex);
+            }
+        }
+
+        /**
+         * Returns the container of the shards of the given generation, creating it or replacing the one of a previous
+         * generation. The first shards of a generation race for the container, so it gets committed on its own and a
+         * conflict on that commit is resolved by reading the container created by the concurrent shard.
+         *
+         * @return the container or null, if it already belongs to a newer generation
+         */
+        @Nullable
+        private Resource getOrCreateShards(@NotNull String shardsPath, long generation, int shards)
+                throws PersistenceException {
+            String shardsName = ResourceUtil.getName(shardsPath);
+            for (int attempt = 0; ; attempt++) {
+                resolver.refresh();
+                Resource folder = getOrCreateFolder(resolver, ResourceUtil.getParent(shardsPath));
+                Resource shardsResource = folder.getChild(shardsName);
+
+                if (shardsResource != null) {
+                    long existingGeneration = shardsResource.getValueMap().get(PN_SHARDS_GENERATION, 0L);
+                    if (existingGeneration > generation) {
+                        return null;
+                    } else if (existingGeneration == generation) {
+                        return shardsResource;
+                    }
+                    resolver.delete(shardsResource);
+                }
+
+                Map<String, Object> properties = new HashMap<>(5);
+                // not orderable, so that concurrently added shards do not conflict on the order of the children
+                properties.put(JcrConstants.JCR_PRIMARYTYPE, "sling:Folder");
                 properties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
                 properties.put(PN_RESOURCE_TYPE, RT_SITEMAP_PART);
-                resolver.create(folder, stateName, properties);
-            } else {
-                ModifiableValueMap properties = stateResource.adaptTo(ModifiableValueMap.class);
+                properties.put(PN_SHARDS_GENERATION, generation);
+                properties.put(PN_SHARDS_COUNT, shards);
+                resolver.create(folder, shardsName, properties);
+                try {
+                    commit();
+                    return resolver.getResource(shardsPath);
+                } catch (PersistenceException ex) {
+                    if (attempt > 0) {
+                        throw ex;
+                    }
+                    LOG.debug("Concurrent write of shards at {}, reading them again", shardsPath, ex);
+                }
+            }
+        }
+
+        /**
+         * Claims the merge of the complete shards of the given generation for the given shard. More than one shard
+         * may see the shards complete, but only the one that claimed them should merge them with
+         * {@link Session#writeShardedSitemap(Resource, String, long, byte[], byte[])}. A shard may claim them again,
+         * for example when its job gets retried.
+         *
+         * @param sitemapRoot
+         * @param name
+         * @param generation
+         * @param shard
+         * @return true if the given shard claimed the merge, false if the shards are not complete (anymore) or another
+         * shard claimed them
+         * @throws IOException
+         */
+        public boolean claimShards(@NotNull Resource sitemapRoot, @NotNull String name, long generation, int shard)
+                throws IOException {
+            String shardsPath = getSitemapFilePath(sitemapRoot, name) + SHARDS_EXTENSION;
+            try {
+                if (resolver.hasChanges()) {
+                    commit();
+                }
+                resolver.refresh();
+                Resource shardsResource = resolver.getResource(shardsPath);
+                if (!isComplete(shardsResource, generation)) {
+                    return false;
+                }
+                Integer mergedBy = shardsResource.getValueMap().get(PN_SHARDS_MERGED_BY, Integer.class);
+                if (mergedBy != null) {
+                    return mergedBy == shard;
+                }
+                ModifiableValueMap properties = shardsResource.adaptTo(ModifiableValueMap.class);
                 if (properties == null) {
-                    throw new IOException("Cannot modify properties of existing state: " + statePath);
+                    throw new IOException("Cannot claim shards: " + shardsPath);
                 }
-                properties.putAll(state);
-                properties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+                // concurrent claims add the same property with different values, only one of them gets committed
+                properties.put(PN_SHARDS_MERGED_BY, shard);
+                try {
+                    commit();
+                    return true;
+                } catch (PersistenceException ex) {
+                    LOG.debug("Shards at {} got claimed concurrently", shardsPath, ex);
+                    return false;
+                }
+            } catch (PersistenceException ex) {
+                throw new IOException("Cannot claim shards at " + shardsPath, ex);
             }
+        }
 
-            checkpointWrites.increment();
-            resolver.commit();
-        } catch (LoginException | PersistenceException ex) {
-            throw new IOException("Cannot create state at " + statePath, ex);
+        /**
+         * Writes the sitemap for the given sitemap root and name by streaming the given header, all shards of the
+         * given generation in the order of their index and the given footer. The shards get removed afterwards.
+         *
+         * @param sitemapRoot
+         * @param name
+         * @param generation
+         * @param header
+         * @param footer
+         * @return the {@link SitemapStorageInfo} of the written sitemap or null, if the shards of the given generation
+         * are not complete (anymore)
+         * @throws IOException
+         */
+        @Nullable
+        public SitemapStorageInfo writeShardedSitemap(@NotNull Resource sitemapRoot, @NotNull String name,
+                                                      long generation, byte @NotNull [] header,
+                                                      byte @NotNull [] footer) throws IOException {
+            String shardsPath = getSitemapFilePath(sitemapRoot, name) + SHARDS_EXTENSION;
+            Resource shardsResource = resolver.getResource(shardsPath);
+            if (!isComplete(shardsResource, generation)) {
+                return null;
+            }
+
+            int shards = shardsResource.getValueMap().get(PN_SHARDS_COUNT, 0);
+            int size = header.length + footer.length;
+            int entries = 0;
+            for (int i = 0; i < shards; i++) {
+                ValueMap shardProperties = shardsResource.getChild(SHARD_PREFIX + i).getValueMap();
+                size += shardProperties.get(PN_SITEMAP_SIZE, 0);
+                entries += shardProperties.get(PN_SITEMAP_ENTRIES, 0);
+            }
+
+            String storagePath = writeSitemap(sitemapRoot, name, () -> new SequenceInputStream(
+                    new ChildDataEnumeration(shardsResource, SHARD_PREFIX, shards, new ByteArrayInputStream(header),
+                            new ByteArrayInputStream(footer))), size, entries);
+
+            String selector = ResourceUtil.getName(storagePath);
+            selector = selector.substring(0, selector.length() - XML_EXTENSION.length());
+            return new SitemapStorageInfo(storagePath, selector, name, Calendar.getInstance(), size, entries);
         }
-    }
 
-    public void removeState(@NotNull Resource sitemapRoot, @NotNull String name) throws IOException {
-        String statePath = getSitemapFilePath(sitemapRoot, name) + STATE_EXTENSION;
-        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
-            Resource stateResource = resolver.getResource(statePath);
-            if (stateResource != null) {
-                resolver.delete(stateResource);
-                resolver.commit();
+        /**
+         * Commits all pending changes, if any, and closes the session's {@link ResourceResolver}.
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (resolver.hasChanges()) {
+                    commit();
+                }
+            } catch (PersistenceException ex) {
+                throw new IOException("Cannot commit pending changes", ex);
+            } finally {
+                resolver.close();
             }
-        } catch (LoginException | PersistenceException ex) {
-            throw new IOException("Cannot create state at " + statePath, ex);
         }
-    }
 
-    public String writeSitemap(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull InputStream data, int size,
-                               int entries) throws IOException {
-        String sitemapFilePath = getSitemapFilePath(sitemapRoot, name);
-        String statePath = sitemapFilePath + STATE_EXTENSION;
-        sitemapFilePath = sitemapFilePath + XML_EXTENSION;
-        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
-            String sitemapFileName = ResourceUtil.getName(sitemapFilePath);
-            Resource folder = getOrCreateFolder(resolver, ResourceUtil.getParent(sitemapFilePath));
+        private String writeSitemap(@NotNull Resource sitemapRoot, @NotNull String name,
+                                    @NotNull Supplier<InputStream> dataProvider, int size, int entries)
+                throws IOException {
+            String sitemapFilePath = getSitemapFilePath(sitemapRoot, name);
+            String statePath = sitemapFilePath + STATE_EXTENSION;
+            String shardsPath = sitemapFilePath + SHARDS_EXTENSION;
+            sitemapFilePath = sitemapFilePath + XML_EXTENSION;
+            Timer.Context timer = sitemapWriteTime.time();
+            Path spool = null;
+            InputStream spoolData = null;
+            try {
+                InputStream data = dataProvider.get();
+                String sitemapFileName = ResourceUtil.getName(sitemapFilePath);
+                Resource folder = getOrCreateFolder(resolver, ResourceUtil.getParent(sitemapFilePath));
 
-            Resource sitemapResource = folder.getChild(sitemapFileName);
+                Resource sitemapResource = folder.getChild(sitemapFileName);
+
+                if (sitemapResource == null) {
+                    Map<String, Object> properties = new HashMap<>(3);
+                    properties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+                    properties.put(PN_SITEMAP_NAME, name);
+                    properties.put(PN_RESOURCE_TYPE, RT_SITEMAP_FILE);
+                    sitemapResource = resolver.create(folder, sitemapFileName, properties);
+                }
 
-            if (sitemapResource == null) {
-                Map<String, Object> properties = new HashMap<>(3);
-                properties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
-                properties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
-                properties.put(JcrConstants.JCR_DATA, data);
-                properties.put(PN_SITEMAP_NAME, name);
-                properties.put(PN_SITEMAP_ENTRIES, entries);
-                properties.put(PN_SITEMAP_SIZE, size);
-                properties.put(PN_RESOURCE_TYPE, RT_SITEMAP_FILE);
-                resolver.create(folder, sitemapFileName, properties);
-            } else {
                 ModifiableValueMap properties = sitemapResource.adaptTo(ModifiableValueMap.class);
                 if (properties == null) {
                     throw new IOException("Cannot overwrite existing sitemap at: " + sitemapFilePath);
                 }
+
+                // the digest and the stored size are known only after the data got consumed, so spool it to a file
+                // before storing it instead of keeping the whole sitemap in memory
+                spool = Files.createTempFile("sitemap", compress ? ".xml.gz" : ".xml");
+                MessageDigest digest = newDigest();
+                try (InputStream in = new DigestInputStream(data, digest);
+                     OutputStream file = Files.newOutputStream(spool);
+                     OutputStream out = compress ? new GZIPOutputStream(file) : file) {
+                    IOUtils.copy(in, out);
+                }
+                spoolData = Files.newInputStream(spool);
                 properties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
-                properties.put(JcrConstants.JCR_DATA, data);
+                properties.put(JcrConstants.JCR_DATA, spoolData);
                 properties.put(PN_SITEMAP_ENTRIES, entries);
                 properties.put(PN_SITEMAP_SIZE, size);
-            }
+                properties.put(PN_SITEMAP_DIGEST, toHex(digest.digest()));
+                properties.put(PN_SITEMAP_STORED_SIZE, Files.size(spool));
+                if (compress) {
+                    properties.put(PN_SITEMAP_ENCODING, ENCODING_GZIP);
+                } else {
+                    properties.remove(PN_SITEMAP_ENCODING);
+                }
+
+                // any intermediate data is obsolete, once the sitemap got written
+                for (String intermediatePath : new String[]{statePath, shardsPath}) {
+                    Resource intermediate = resolver.getResource(intermediatePath);
+                    if (intermediate != null) {
+                        resolver.delete(intermediate);
+                    }
+                }
 
-            Resource stateResource = resolver.getResource(statePath);
-            if (stateResource != null) {
-                resolver.delete(stateResource);
+                commit();
+            } catch (PersistenceException ex) {
+                throw new IOException("Cannot create sitemap at " + sitemapFilePath, ex);
+            } finally {
+                if (spoolData != null) {
+                    spoolData.close();
+                }
+                if (spool != null) {
+                    Files.deleteIfExists(spool);
+                }
+                timer.stop();
             }
 
-            resolver.commit();
-        } catch (LoginException | PersistenceException ex) {
-            throw new IOException("Cannot create sitemap at " + sitemapFilePath, ex);
+            return sitemapFilePath;
+        }
+
+        private void commitCheckpoint() throws PersistenceException {
+            if (++pendingCheckpoints >= checkpointCommitInterval) {
+                commit();
+            }
         }
 
-        return sitemapFilePath;
+        private void commit() throws PersistenceException {
+            Timer.Context timer = commitTime.time();
+            try {
+                resolver.commit();
+            } catch (PersistenceException ex) {
+                // do not keep the failed changes for the next commit
+                resolver.revert();
+                throw ex;
+            } finally {
+                pendingCheckpoints = 0;
+                timer.stop();
+            }
+        }
     }
 
     public Set<SitemapStorageInfo> getSitemaps(Resource sitemapRoot) {
@@ -307,13 +845,7 @@ public class SitemapStorage implements Runnable {
             return StreamSupport.stream(storageResource.getChildren().spliterator(), false)
                     .filter(child -> child.getName().endsWith(XML_EXTENSION))
                     .filter(child -> child.isResourceType(RT_SITEMAP_FILE))
-                    .map(child -> new SitemapStorageInfo(
-                            child.getPath(),
-                            child.getName().substring(0, child.getName().lastIndexOf('.')),
-                            child.getValueMap().get(PN_SITEMAP_NAME, String.class),
-                            child.getValueMap().get(JcrConstants.JCR_LASTMODIFIED, Calendar.class),
-                            child.getValueMap().get(PN_SITEMAP_SIZE, 0),
-                            child.getValueMap().get(PN_SITEMAP_ENTRIES, 0)))
+                    .map(SitemapStorage::newStorageInfo)
                     .filter(filter)
                     .collect(Collectors.toCollection(LinkedHashSet::new));
         } catch (LoginException ex) {
@@ -323,19 +855,44 @@ public class SitemapStorage implements Runnable {
     }
 
     public boolean copySitemap(Resource sitemapRoot, String sitemapSelector, OutputStream output) throws IOException {
+        return readSitemap(sitemapRoot, sitemapSelector, (info, data) -> {
+            if (ENCODING_GZIP.equals(info.getEncoding())) {
+                data = new GZIPInputStream(data);
+            }
+            IOUtils.copyLarge(data, output);
+        });
+    }
+
+    /**
+     * Passes the {@link SitemapStorageInfo} and the data of the sitemap with the given selector as it is stored, so
+     * possibly compressed according to {@link SitemapStorageInfo#getEncoding()}, to the given {@link SitemapReader}.
+     *
+     * @param sitemapRoot
+     * @param sitemapSelector
+     * @param reader
+     * @return false when the sitemap does not exist
+     * @throws IOException
+     */
+    public boolean readSitemap(Resource sitemapRoot, String sitemapSelector, SitemapReader reader) throws IOException {
         if (!isTopLevelSitemapRoot(sitemapRoot)) {
             return false;
         }
         String sitemapFilePath = rootPath + sitemapRoot.getPath() + '/' + sitemapSelector + XML_EXTENSION;
         try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(AUTH)) {
-            InputStream data = Optional.ofNullable(resolver.getResource(sitemapFilePath))
+            Resource sitemapFile = Optional.ofNullable(resolver.getResource(sitemapFilePath))
                     .filter(r -> r.getName().endsWith(XML_EXTENSION))
                     .filter(r -> r.isResourceType(RT_SITEMAP_FILE))
-                    .map(r -> r.getValueMap().get(JcrConstants.JCR_DATA, InputStream.class))
                     .orElse(null);
+            InputStream data = sitemapFile != null
+                    ? sitemapFile.getValueMap().get(JcrConstants.JCR_DATA, InputStream.class)
+                    : null;
 
             if (data != null) {
-                IOUtils.copyLarge(data, output);
+                try {
+                    reader.read(newStorageInfo(sitemapFile), data);
+                } finally {
+                    data.close();
+                }
                 return true;
             } else {
                 LOG.debug("Could not copy data from resource: {}", sitemapFilePath);
@@ -384,6 +941,37 @@ public class SitemapStorage implements Runnable {
                 });
     }
 
+    private static SitemapStorageInfo newStorageInfo(Resource sitemapFile) {
+        ValueMap properties = sitemapFile.getValueMap();
+        return new SitemapStorageInfo(
+                sitemapFile.getPath(),
+                sitemapFile.getName().substring(0, sitemapFile.getName().lastIndexOf('.')),
+                properties.get(PN_SITEMAP_NAME, String.class),
+                properties.get(JcrConstants.JCR_LASTMODIFIED, Calendar.class),
+                properties.get(PN_SITEMAP_SIZE, 0),
+                properties.get(PN_SITEMAP_ENTRIES, 0),
+                properties.get(PN_SITEMAP_DIGEST, String.class),
+                properties.get(PN_SITEMAP_ENCODING, String.class),
+                properties.get(PN_SITEMAP_STORED_SIZE, -1L));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            // every implementation of the Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
     /**
      * Returns true when the state expired according to the configured maximum age.
      *
@@ -393,6 +981,15 @@ public class SitemapStorage implements Runnable {
     private boolean isExpired(@NotNull Resource state) {
         ValueMap stateProperties = state.getValueMap();
         Calendar lastModified = stateProperties.get(JcrConstants.JCR_LASTMODIFIED, Calendar.class);
+        if (stateProperties.containsKey(PN_SHARDS_GENERATION)) {
+            // the shards do not modify their container, a generation is alive as long as shards get written
+            for (Resource shard : state.getChildren()) {
+                Calendar shardLastModified = shard.getValueMap().get(JcrConstants.JCR_LASTMODIFIED, Calendar.class);
+                if (shardLastModified != null && (lastModified == null || shardLastModified.after(lastModified))) {
+                    lastModified = shardLastModified;
+                }
+            }
+        }
         if (lastModified != null) {
             // advance lastModified by maxStateAge to get the point in time the state would expire
             lastModified.add(Calendar.MILLISECOND, maxStateAge);
@@ -406,6 +1003,30 @@ public class SitemapStorage implements Runnable {
         return true;
     }
 
+    /**
+     * Returns true when the given shards resource belongs to the given generation and contains all of its shards.
+     *
+     * @param shardsResource
+     * @param generation
+     * @return
+     */
+    private static boolean isComplete(@Nullable Resource shardsResource, long generation) {
+        if (shardsResource == null) {
+            return false;
+        }
+        ValueMap properties = shardsResource.getValueMap();
+        if (properties.get(PN_SHARDS_GENERATION, 0L) != generation) {
+            return false;
+        }
+        int shards = properties.get(PN_SHARDS_COUNT, 0);
+        for (int i = 0; i < shards; i++) {
+            if (shardsResource.getChild(SHARD_PREFIX + i) == null) {
+                return false;
+            }
+        }
+        return shards > 0;
+    }
+
     @NotNull
     private String getSitemapFilePath(@NotNull Resource sitemapRoot, @NotNull String name) {
         Resource topLevelSitemapRoot = getTopLevelSitemapRoot(sitemapRoot);
@@ -438,14 +1059,64 @@ public class SitemapStorage implements Runnable {
         return folder;
     }
 
-    private static Stream<Resource> traverse(@Nullable Resource resource) {
-        if (resource == null) {
-            return Stream.empty();
+    /**
+     * A callback to read a sitemap from the storage.
+     */
+    @FunctionalInterface
+    interface SitemapReader {
+        void read(@NotNull SitemapStorageInfo info, @NotNull InputStream data) throws IOException;
+    }
+
+    /**
+     * An {@link Enumeration} over the data of numbered children of a given parent, like the segments of an
+     * intermediate state or the shards of a sitemap, optionally enclosed by a head and a tail. The children are
+     * opened one by one, only when they get consumed.
+     */
+    private static class ChildDataEnumeration implements Enumeration<InputStream> {
+
+        private final Resource parent;
+        private final String prefix;
+        private final int children;
+        private InputStream head;
+        private InputStream tail;
+        private int next = 0;
+
+        ChildDataEnumeration(@NotNull Resource parent, @NotNull String prefix, int children,
+                             @Nullable InputStream head, @Nullable InputStream tail) {
+            this.parent = parent;
+            this.prefix = prefix;
+            this.children = children;
+            this.head = head;
+            this.tail = tail;
         }
 
-        return Stream.concat(
-                Stream.of(resource),
-                StreamSupport.stream(resource.getChildren().spliterator(), false).flatMap(SitemapStorage::traverse)
-        );
+        @Override
+        public boolean hasMoreElements() {
+            return head != null || next < children || tail != null;
+        }
+
+        @Override
+        public InputStream nextElement() {
+            if (head != null) {
+                InputStream ret = head;
+                head = null;
+                return ret;
+            } else if (next < children) {
+                String childName = prefix + next++;
+                InputStream data = Optional.ofNullable(parent.getChild(childName))
+                        .map(child -> child.getValueMap().get(JcrConstants.JCR_DATA, InputStream.class))
+                        .orElse(null);
+                if (data == null) {
+                    throw new IllegalStateException("Missing " + childName + " of " + parent.getPath());
+                }
+                return data;
+            } else if (tail != null) {
+                InputStream ret = tail;
+                tail = null;
+                return ret;
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
     }
 }
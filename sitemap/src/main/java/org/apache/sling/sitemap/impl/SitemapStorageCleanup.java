@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * This class traverses the tree below the storage root in document order and deletes the obsolete resources in
+ * batches, committing after each of them. Only the iterators along the currently traversed path are kept in memory.
+ * <p>
+ * The traversal stops when the given time or node budget is exhausted. In that case the path of the next resource to
+ * visit is persisted on the storage root, so that the next run resumes there. When a run completes the traversal,
+ * the next one starts from the beginning again.
+ */
+class SitemapStorageCleanup {
+
+    static final String PN_CLEANUP_CURSOR = "sling:sitemapCleanupCursor";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SitemapStorageCleanup.class);
+
+    private final ResourceResolver resolver;
+    private final String storagePath;
+    private final int batchSize;
+    private final long deadline;
+    private final int maxNodes;
+    private final List<String> batch;
+
+    private int visited = 0;
+    private int deleted = 0;
+
+    /**
+     * @param resolver    the resolver used to read and delete
+     * @param storagePath the path of the storage root
+     * @param batchSize   the number of deletions per commit
+     * @param maxTime     the number of milliseconds a run may take
+     * @param maxNodes    the number of resources a run may visit
+     */
+    SitemapStorageCleanup(@NotNull ResourceResolver resolver, @NotNull String storagePath, int batchSize,
+                          long maxTime, int maxNodes) {
+        this.resolver = resolver;
+        this.storagePath = storagePath;
+        this.batchSize = Math.max(1, batchSize);
+        long now = System.currentTimeMillis();
+        this.deadline = maxTime > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + maxTime;
+        this.maxNodes = maxNodes;
+        this.batch = new ArrayList<>(this.batchSize);
+    }
+
+    /**
+     * Runs the cleanup.
+     *
+     * @param obsolete a {@link Predicate} returning true for resources to delete
+     * @param descend  a {@link Predicate} returning true for resources that may have obsolete descendants
+     * @param purged   a {@link Consumer} called with the path of each resource, after its deletion was committed
+     * @return true when the traversal completed, false when it stopped because the budget was exhausted
+     * @throws PersistenceException
+     */
+    boolean run(@NotNull Predicate<Resource> obsolete, @NotNull Predicate<Resource> descend,
+                @NotNull Consumer<String> purged) throws PersistenceException {
+        Resource storageRoot = resolver.getResource(storagePath);
+        if (storageRoot == null) {
+            return true;
+        }
+
+        Deque<Iterator<Resource>> stack = new ArrayDeque<>();
+        stack.push(storageRoot.listChildren());
+        Resource next = seek(stack, storageRoot.getValueMap().get(PN_CLEANUP_CURSOR, String.class));
+        String cursor = null;
+
+        while (true) {
+            if (next == null) {
+                while (!stack.isEmpty() && !stack.peek().hasNext()) {
+                    stack.pop();
+                }
+                if (stack.isEmpty()) {
+                    break;
+                }
+                next = stack.peek().next();
+            }
+
+            if (visited >= maxNodes || System.currentTimeMillis() >= deadline) {
+                cursor = next.getPath();
+                break;
+            }
+
+            Resource current = next;
+            next = null;
+            visited++;
+
+            if (obsolete.test(current)) {
+                batch.add(current.getPath());
+                if (batch.size() >= batchSize) {
+                    flush(purged);
+                }
+            } else if (descend.test(current)) {
+                stack.push(current.listChildren());
+            }
+        }
+
+        writeCursor(cursor);
+        flush(purged);
+
+        if (cursor != null) {
+            LOG.debug("Cleanup stopped after visiting {} and deleting {} resources, resuming at {}", visited, deleted,
+                    cursor);
+        } else {
+            LOG.debug("Cleanup completed after visiting {} and deleting {} resources", visited, deleted);
+        }
+
+        return cursor == null;
+    }
+
+    /**
+     * Positions the iterators on the given stack so that the resource at the given cursor gets visited next. The
+     * ancestors of the cursor were visited by a previous run already. If the resource or one of its ancestors does
+     * not exist anymore, the traversal continues after its closest existing ancestor. Anything skipped that way gets
+     * visited by the next complete traversal.
+     *
+     * @param stack
+     * @param cursor
+     * @return the resource to visit next, if any
+     */
+    @Nullable
+    private Resource seek(@NotNull Deque<Iterator<Resource>> stack, @Nullable String cursor) {
+        if (cursor == null || !cursor.startsWith(storagePath + '/')) {
+            return null;
+        }
+
+        String[] names = cursor.substring(storagePath.length() + 1).split("/");
+        for (int i = 0; i < names.length; i++) {
+            Iterator<Resource> children = stack.peek();
+            Resource match = null;
+            while (children.hasNext()) {
+                Resource child = children.next();
+                if (child.getName().equals(names[i])) {
+                    match = child;
+                    break;
+                }
+            }
+            if (match == null) {
+                LOG.debug("Cleanup cursor does not exist anymore: {}", cursor);
+                return null;
+            } else if (i == names.length - 1) {
+                return match;
+            } else {
+                stack.push(match.listChildren());
+            }
+        }
+
+        return null;
+    }
+
+    private void writeCursor(@Nullable String cursor) {
+        Resource storageRoot = resolver.getResource(storagePath);
+        ModifiableValueMap properties = storageRoot != null ? storageRoot.adaptTo(ModifiableValueMap.class) : null;
+
+        if (properties == null) {
+            LOG.debug("Cannot persist cleanup cursor at: {}", storagePath);
+        } else if (cursor != null) {
+            properties.put(PN_CLEANUP_CURSOR, cursor);
+        } else if (properties.containsKey(PN_CLEANUP_CURSOR)) {
+            properties.remove(PN_CLEANUP_CURSOR);
+        }
+    }
+
+    private void flush(@NotNull Consumer<String> purged) throws PersistenceException {
+        for (String path : batch) {
+            Resource resource = resolver.getResource(path);
+            if (resource != null) {
+                resolver.delete(resource);
+            }
+        }
+
+        if (resolver.hasChanges()) {
+            resolver.commit();
+        }
+
+        deleted += batch.size();
+        batch.forEach(purged);
+        batch.clear();
+    }
+}
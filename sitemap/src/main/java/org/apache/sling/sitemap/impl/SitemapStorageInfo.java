@@ -31,16 +31,28 @@ class SitemapStorageInfo {
     private final Calendar lastModified;
     private final int size;
     private final int entries;
+    private final String digest;
+    private final String encoding;
+    private final long storedSize;
 
     SitemapStorageInfo(@NotNull String path, @NotNull String sitemapSelector, @NotNull String name,
                        @Nullable Calendar lastModified, int size,
                        int entries) {
+        this(path, sitemapSelector, name, lastModified, size, entries, null, null, -1);
+    }
+
+    SitemapStorageInfo(@NotNull String path, @NotNull String sitemapSelector, @NotNull String name,
+                       @Nullable Calendar lastModified, int size, int entries, @Nullable String digest,
+                       @Nullable String encoding, long storedSize) {
         this.path = path;
         this.sitemapSelector = sitemapSelector;
         this.name = name;
         this.lastModified = lastModified;
         this.size = size;
         this.entries = entries;
+        this.digest = digest;
+        this.encoding = encoding;
+        this.storedSize = storedSize;
     }
 
     @NotNull
@@ -70,4 +82,34 @@ class SitemapStorageInfo {
     public int getEntries() {
         return entries;
     }
+
+    /**
+     * Returns the hex encoded SHA-256 digest of the uncompressed sitemap, or null for sitemaps written before digests
+     * were stored.
+     *
+     * @return
+     */
+    @Nullable
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Returns the content encoding of the stored data, or null if the data is stored uncompressed.
+     *
+     * @return
+     */
+    @Nullable
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Returns the number of bytes of the stored, possibly compressed, data or -1 if unknown.
+     *
+     * @return
+     */
+    public long getStoredSize() {
+        return storedSize;
+    }
 }
@@ -28,16 +28,20 @@ import javax.xml.stream.XMLOutputFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.Writer;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Map;
 
 public class SitemapImpl implements Sitemap, Closeable {
 
     static final String SITEMAP_NAMESPACE = "http://www.sitemaps.org/schemas/sitemap/0.9";
+    static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+    static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(ZoneOffset.UTC);
 
     protected final Writer out;
 
     private final ExtensionProviderManager extensionProviderManager;
-    private final XMLOutputFactory xmlWriterFactory;
+    private final UrlSerializer serializer;
     private boolean closed = false;
     private UrlImpl pendingUrl;
 
@@ -50,8 +54,8 @@ public class SitemapImpl implements Sitemap, Closeable {
     public SitemapImpl(Writer writer, ExtensionProviderManager extensionProviderManager, boolean writeHeader)
             throws IOException {
         this.extensionProviderManager = extensionProviderManager;
-        this.xmlWriterFactory = XMLOutputFactory.newFactory();
         this.out = writer;
+        this.serializer = new UrlSerializer(writer);
 
         if (writeHeader) {
             out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
@@ -74,6 +78,15 @@ public class SitemapImpl implements Sitemap, Closeable {
         return urlCount;
     }
 
+    /**
+     * Returns the number of nanoseconds spent serializing the extensions of the urls written so far.
+     *
+     * @return
+     */
+    public long getExtensionTime() {
+        return serializer.getExtensionTime();
+    }
+
     @Override
     public void close() throws IOException {
         try {
@@ -101,7 +114,7 @@ public class SitemapImpl implements Sitemap, Closeable {
     public @NotNull Url addUrl(@NotNull String location) throws SitemapException {
         ensureNotClosed();
         writePendingUrl();
-        pendingUrl = new UrlImpl(location, out, xmlWriterFactory, extensionProviderManager);
+        pendingUrl = new UrlImpl(location, serializer, extensionProviderManager);
         urlCount++;
         return pendingUrl;
     }
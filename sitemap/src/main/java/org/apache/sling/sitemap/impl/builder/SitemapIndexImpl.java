@@ -22,15 +22,12 @@ import org.apache.sling.sitemap.SitemapException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.Writer;
 import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
 
 public class SitemapIndexImpl implements Closeable {
 
@@ -38,7 +35,7 @@ public class SitemapIndexImpl implements Closeable {
 
     public SitemapIndexImpl(Writer writer) throws IOException {
         try {
-            out = XMLOutputFactory.newFactory().createXMLStreamWriter(writer);
+            out = SitemapImpl.XML_OUTPUT_FACTORY.createXMLStreamWriter(writer);
 
             out.writeStartDocument("UTF-8", "1.0");
             out.writeStartElement("sitemapindex");
@@ -71,7 +68,7 @@ public class SitemapIndexImpl implements Closeable {
             out.writeEndElement();
             if (lastModified != null) {
                 out.writeStartElement("lastmod");
-                out.writeCharacters(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(lastModified.atOffset(ZoneOffset.UTC)));
+                out.writeCharacters(SitemapImpl.DATE_TIME_FORMAT.format(lastModified));
                 out.writeEndElement();
             }
             out.writeEndElement();
@@ -30,25 +30,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.XMLConstants;
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import java.io.IOException;
-import java.io.Writer;
 import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
 
 public class UrlImpl implements Url {
 
     private static final Logger LOG = LoggerFactory.getLogger(UrlImpl.class);
 
     private final String location;
-    private final Writer out;
-    private final XMLOutputFactory xmlWriterFactory;
+    private final UrlSerializer serializer;
     private final ExtensionProviderManager extensionProviderManager;
 
     private boolean written = false;
@@ -57,10 +51,9 @@ public class UrlImpl implements Url {
     private Double priority;
     private List<ExtensionMeta> extensions;
 
-    UrlImpl(String location, Writer out, XMLOutputFactory xmlWriterFactory, ExtensionProviderManager extensionProviderManager) {
+    UrlImpl(String location, UrlSerializer serializer, ExtensionProviderManager extensionProviderManager) {
         this.location = location;
-        this.out = out;
-        this.xmlWriterFactory = xmlWriterFactory;
+        this.serializer = serializer;
         this.extensionProviderManager = extensionProviderManager;
     }
 
@@ -117,9 +110,7 @@ public class UrlImpl implements Url {
         ensureNotWritten();
         written = true;
         try {
-            StringWriter urlChunk = new StringWriter();
-            XMLStreamWriter urlWriter = xmlWriterFactory.createXMLStreamWriter(urlChunk);
-            urlWriter.setPrefix(XMLConstants.DEFAULT_NS_PREFIX, SitemapImpl.SITEMAP_NAMESPACE);
+            XMLStreamWriter urlWriter = serializer.getUrlWriter();
             urlWriter.writeStartElement(XMLConstants.DEFAULT_NS_PREFIX, "url", SitemapImpl.SITEMAP_NAMESPACE);
             urlWriter.writeStartElement(XMLConstants.DEFAULT_NS_PREFIX, "loc", SitemapImpl.SITEMAP_NAMESPACE);
             urlWriter.writeCharacters(location);
@@ -127,12 +118,12 @@ public class UrlImpl implements Url {
 
             if (lastModified != null) {
                 urlWriter.writeStartElement(XMLConstants.DEFAULT_NS_PREFIX, "lastmod", SitemapImpl.SITEMAP_NAMESPACE);
-                urlWriter.writeCharacters(lastModified.atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+                urlWriter.writeCharacters(serializer.formatLastModified(lastModified));
                 urlWriter.writeEndElement();
             }
             if (changeFrequency != null) {
                 urlWriter.writeStartElement(XMLConstants.DEFAULT_NS_PREFIX, "changefreq", SitemapImpl.SITEMAP_NAMESPACE);
-                urlWriter.writeCharacters(changeFrequency.name().toLowerCase(Locale.ROOT));
+                urlWriter.writeCharacters(UrlSerializer.formatChangeFrequency(changeFrequency));
                 urlWriter.writeEndElement();
             }
             if (priority != null) {
@@ -140,25 +131,24 @@ public class UrlImpl implements Url {
                 urlWriter.writeCharacters(String.valueOf(Math.max(Math.min(priority, 1.0), 0.0)));
                 urlWriter.writeEndElement();
             }
-            urlWriter.flush();
 
             // write the extensions as separate chunks to the same output
             if (extensions != null) {
-                // use a single StringWriter and reset it for each extension to save memory
-                StringWriter extensionChunk = new StringWriter();
-                for (ExtensionMeta extension : extensions) {
-                    writeExtension(extensionChunk, extension);
-                    urlChunk.append(extensionChunk.asCharSequence());
-                    extensionChunk.reset();
+                long start = System.nanoTime();
+                try {
+                    for (ExtensionMeta extension : extensions) {
+                        writeExtension(extension);
+                    }
+                } finally {
+                    serializer.addExtensionTime(System.nanoTime() - start);
                 }
             }
 
             urlWriter.writeEndElement();
             urlWriter.flush();
-
-            out.append(urlChunk.asCharSequence());
         } catch (XMLStreamException ex) {
-            LOG.warn("Failed to serialize url", ex);
+            // the url was streamed to the output already, so it cannot be skipped anymore
+            throw new SitemapException(ex.getCause() instanceof IOException ? ex.getCause() : ex);
         } catch (IOException ex) {
             throw new SitemapException(ex);
         }
@@ -170,9 +160,9 @@ public class UrlImpl implements Url {
         }
     }
 
-    private void writeExtension(StringWriter out, ExtensionMeta extension) {
+    private void writeExtension(ExtensionMeta extension) throws XMLStreamException, IOException {
         try {
-            XMLStreamWriter extensionWriter = xmlWriterFactory.createXMLStreamWriter(out);
+            XMLStreamWriter extensionWriter = serializer.getExtensionWriter();
             extensionWriter.setPrefix(extension.prefix, extension.namespace);
             if (extension.emptyTag) {
                 extensionWriter.writeEmptyElement(extension.prefix, extension.localName, extension.namespace);
@@ -186,15 +176,20 @@ public class UrlImpl implements Url {
                 // in order to properly close the empty tag at the end of the xml-fragment
                 extensionWriter.writeCharacters("");
             }
-            extensionWriter.flush();
         } catch (XMLStreamException ex) {
             if (LOG.isDebugEnabled()) {
                 LOG.warn("Failed to serialize extension {}", extension.extension.getClass().getName(), ex);
             } else {
                 LOG.warn("Failed to serialize extension {}: {}", extension.extension.getClass().getName(), ex.getMessage());
             }
-            out.reset();
+            serializer.discardExtension();
+            return;
+        } catch (RuntimeException ex) {
+            serializer.discardExtension();
+            throw ex;
         }
+
+        serializer.commitExtension();
     }
 
     private static class ExtensionMeta {
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl.builder;
+
+import org.apache.sling.sitemap.builder.Url;
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * This class holds the {@link XMLStreamWriter}s and buffers used to serialize the urls of a single sitemap, so that
+ * they are created once per sitemap instead of once per url and extension.
+ * <p>
+ * The elements of an url are streamed directly to the sitemap's output. Extensions are written to a reusable buffer
+ * first and appended to the output only when they got serialized successfully. The {@link XMLStreamWriter} for
+ * extensions is replaced after a failure, as its state is undefined afterwards.
+ */
+class UrlSerializer {
+
+    private static final String[] CHANGE_FREQUENCIES = new String[Url.ChangeFrequency.values().length];
+
+    static {
+        for (Url.ChangeFrequency changeFrequency : Url.ChangeFrequency.values()) {
+            CHANGE_FREQUENCIES[changeFrequency.ordinal()] = changeFrequency.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Writer out;
+    private final StringWriter extensionChunk = new StringWriter();
+
+    private XMLStreamWriter urlWriter;
+    private XMLStreamWriter extensionWriter;
+    private Instant lastModified;
+    private String formattedLastModified;
+    private long extensionTime;
+
+    UrlSerializer(@NotNull Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Returns the {@link XMLStreamWriter} writing to the sitemap's output, with the sitemap namespace bound as default
+     * namespace.
+     *
+     * @return
+     * @throws XMLStreamException
+     */
+    @NotNull
+    XMLStreamWriter getUrlWriter() throws XMLStreamException {
+        if (urlWriter == null) {
+            // flushing the XMLStreamWriter after each url must not flush the sitemap's output, which may be a response
+            urlWriter = SitemapImpl.XML_OUTPUT_FACTORY.createXMLStreamWriter(new NonFlushingWriter(out));
+            urlWriter.setPrefix(XMLConstants.DEFAULT_NS_PREFIX, SitemapImpl.SITEMAP_NAMESPACE);
+        }
+        return urlWriter;
+    }
+
+    /**
+     * Returns the {@link XMLStreamWriter} writing to the extension buffer.
+     *
+     * @return
+     * @throws XMLStreamException
+     */
+    @NotNull
+    XMLStreamWriter getExtensionWriter() throws XMLStreamException {
+        if (extensionWriter == null) {
+            extensionWriter = SitemapImpl.XML_OUTPUT_FACTORY.createXMLStreamWriter(extensionChunk);
+        }
+        return extensionWriter;
+    }
+
+    /**
+     * Appends the buffered extension to the sitemap's output.
+     *
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    void commitExtension() throws XMLStreamException, IOException {
+        extensionWriter.flush();
+        // the url's elements must be written to the output before the extension
+        urlWriter.flush();
+        out.append(extensionChunk.asCharSequence());
+        extensionChunk.reset();
+    }
+
+    /**
+     * Discards the buffered extension and the {@link XMLStreamWriter} it was written with.
+     */
+    void discardExtension() {
+        extensionChunk.reset();
+        extensionWriter = null;
+    }
+
+    /**
+     * Adds the given number of nanoseconds to the time spent serializing extensions.
+     *
+     * @param nanos
+     */
+    void addExtensionTime(long nanos) {
+        extensionTime += nanos;
+    }
+
+    long getExtensionTime() {
+        return extensionTime;
+    }
+
+    @NotNull
+    String formatLastModified(@NotNull Instant pointInTime) {
+        // urls of a sitemap often share the same point in time, e.g. of a bulk import
+        if (!pointInTime.equals(lastModified)) {
+            lastModified = pointInTime;
+            formattedLastModified = SitemapImpl.DATE_TIME_FORMAT.format(pointInTime);
+        }
+        return formattedLastModified;
+    }
+
+    @NotNull
+    static String formatChangeFrequency(@NotNull Url.ChangeFrequency changeFrequency) {
+        return CHANGE_FREQUENCIES[changeFrequency.ordinal()];
+    }
+
+    private static class NonFlushingWriter extends FilterWriter {
+
+        NonFlushingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void flush() {
+            // only flushed by the owner of the output
+        }
+
+        @Override
+        public void close() {
+            // only closed by the owner of the output
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.apache.sling.commons.scheduler.Scheduler;
 import org.apache.sling.sitemap.SitemapInfo;
 import org.apache.sling.sitemap.SitemapService;
 import org.apache.sling.sitemap.common.SitemapUtil;
+import org.apache.sling.sitemap.impl.SitemapGenerationMetrics;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.component.annotations.Activate;
@@ -40,6 +41,7 @@ import java.io.PrintWriter;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.TreeMap;
 
 @Component(
         service = InventoryPrinter.class,
@@ -62,6 +64,8 @@ public class SitemapInventoryPlugin implements InventoryPrinter {
     private SitemapService sitemapService;
     @Reference
     private ResourceResolverFactory resourceResolverFactory;
+    @Reference
+    private SitemapGenerationMetrics generationMetrics;
 
     private BundleContext bundleContext;
 
@@ -139,6 +143,76 @@ public class SitemapInventoryPlugin implements InventoryPrinter {
             pw.println("Failed to list sitemaps: " + ex.getMessage());
             LOG.warn("Failed to get inventory of sitemaps: {}", ex.getMessage(), ex);
         }
+        pw.print("},");
+
+        pw.print("\"generation\":{");
+        Iterator<Map.Entry<String, Map<String, SitemapGenerationMetrics.Statistics>>> rootIt =
+                generationMetrics.getStatistics().entrySet().iterator();
+        while (rootIt.hasNext()) {
+            Map.Entry<String, Map<String, SitemapGenerationMetrics.Statistics>> root = rootIt.next();
+            pw.print('"');
+            pw.print(escapeDoubleQuotes(root.getKey()));
+            pw.print("\":{");
+            Iterator<Map.Entry<String, SitemapGenerationMetrics.Statistics>> nameIt =
+                    root.getValue().entrySet().iterator();
+            while (nameIt.hasNext()) {
+                Map.Entry<String, SitemapGenerationMetrics.Statistics> name = nameIt.next();
+                SitemapGenerationMetrics.Statistics stats = name.getValue();
+                pw.print('"');
+                pw.print(escapeDoubleQuotes(name.getKey()));
+                pw.print("\":{\"generator\":\"");
+                pw.print(escapeDoubleQuotes(stats.getGenerator()));
+                pw.print("\",\"generations\":");
+                pw.print(stats.getGenerations());
+                pw.print(",\"urls\":");
+                pw.print(stats.getUrls());
+                pw.print(",\"bytes\":");
+                pw.print(stats.getBytes());
+                pw.print(",\"generationTime\":");
+                pw.print(stats.getGenerationTime());
+                pw.print(",\"urlsPerSecond\":");
+                pw.print(stats.getUrlsPerSecond());
+                pw.print(",\"extensionTime\":");
+                pw.print(stats.getExtensionTime());
+                pw.print(",\"checkpoints\":");
+                pw.print(stats.getCheckpoints());
+                pw.print(",\"averageCheckpointTime\":");
+                pw.print(stats.getAverageCheckpointTime());
+                pw.print(",\"queueWaitTime\":");
+                pw.print(stats.getQueueWaitTime());
+                pw.print(",\"maxQueueWaitTime\":");
+                pw.print(stats.getMaxQueueWaitTime());
+                pw.print('}');
+                if (nameIt.hasNext()) {
+                    pw.print(',');
+                }
+            }
+            pw.print('}');
+            if (rootIt.hasNext()) {
+                pw.print(',');
+            }
+        }
+        pw.print("},");
+
+        pw.print("\"generators\":{");
+        Iterator<Map.Entry<String, long[]>> generatorIt = getGeneratorTotals().entrySet().iterator();
+        while (generatorIt.hasNext()) {
+            Map.Entry<String, long[]> generator = generatorIt.next();
+            pw.print('"');
+            pw.print(escapeDoubleQuotes(generator.getKey()));
+            pw.print("\":{\"sitemaps\":");
+            pw.print(generator.getValue()[0]);
+            pw.print(",\"urls\":");
+            pw.print(generator.getValue()[1]);
+            pw.print(",\"bytes\":");
+            pw.print(generator.getValue()[2]);
+            pw.print(",\"generationTime\":");
+            pw.print(generator.getValue()[3]);
+            pw.print('}');
+            if (generatorIt.hasNext()) {
+                pw.print(',');
+            }
+        }
         pw.print('}');
         pw.print('}');
     }
@@ -196,6 +270,100 @@ public class SitemapInventoryPlugin implements InventoryPrinter {
             pw.println("Failed to list sitemaps: " + ex.getMessage());
             LOG.warn("Failed to get inventory of sitemaps: {}", ex.getMessage(), ex);
         }
+
+        pw.println();
+        pw.println();
+        pw.println("Apache Sling Sitemap Generation");
+        pw.println("-------------------------------");
+
+        for (Map.Entry<String, Map<String, SitemapGenerationMetrics.Statistics>> root
+                : generationMetrics.getStatistics().entrySet()) {
+            pw.print(root.getKey());
+            pw.print(':');
+            pw.println();
+            for (Map.Entry<String, SitemapGenerationMetrics.Statistics> name : root.getValue().entrySet()) {
+                SitemapGenerationMetrics.Statistics stats = name.getValue();
+                pw.print(" - Name: ");
+                pw.print(name.getKey());
+                pw.println();
+                pw.print("   Generator: ");
+                pw.print(stats.getGenerator());
+                pw.println();
+                pw.print("   Generations: ");
+                pw.print(stats.getGenerations());
+                pw.println();
+                pw.print("   Urls: ");
+                pw.print(stats.getUrls());
+                pw.println();
+                pw.print("   Bytes: ");
+                pw.print(stats.getBytes());
+                pw.println();
+                pw.print("   Generation Time (ms): ");
+                pw.print(stats.getGenerationTime());
+                pw.println();
+                pw.print("   Urls per Second: ");
+                pw.print(stats.getUrlsPerSecond());
+                pw.println();
+                pw.print("   Extension Time (ms): ");
+                pw.print(stats.getExtensionTime());
+                pw.println();
+                pw.print("   Checkpoints: ");
+                pw.print(stats.getCheckpoints());
+                pw.println();
+                pw.print("   Average Checkpoint Time (ms): ");
+                pw.print(stats.getAverageCheckpointTime());
+                pw.println();
+                pw.print("   Queue Wait Time (ms): ");
+                pw.print(stats.getQueueWaitTime());
+                pw.print(" (max ");
+                pw.print(stats.getMaxQueueWaitTime());
+                pw.print(')');
+                pw.println();
+            }
+        }
+
+        pw.println();
+        pw.println();
+        pw.println("Apache Sling Sitemap Generators");
+        pw.println("-------------------------------");
+
+        for (Map.Entry<String, long[]> generator : getGeneratorTotals().entrySet()) {
+            pw.print(" - Generator: ");
+            pw.print(generator.getKey());
+            pw.println();
+            pw.print("   Sitemaps: ");
+            pw.print(generator.getValue()[0]);
+            pw.println();
+            pw.print("   Urls: ");
+            pw.print(generator.getValue()[1]);
+            pw.println();
+            pw.print("   Bytes: ");
+            pw.print(generator.getValue()[2]);
+            pw.println();
+            pw.print("   Generation Time (ms): ");
+            pw.print(generator.getValue()[3]);
+            pw.println();
+        }
+    }
+
+    /**
+     * Sums up the last generation of each sitemap by generator. The values are the number of sitemaps, urls, bytes
+     * and the generation time in milliseconds.
+     *
+     * @return
+     */
+    private Map<String, long[]> getGeneratorTotals() {
+        Map<String, long[]> totals = new TreeMap<>();
+        for (Map<String, SitemapGenerationMetrics.Statistics> names : generationMetrics.getStatistics().values()) {
+            for (SitemapGenerationMetrics.Statistics stats : names.values()) {
+                long[] total = totals.computeIfAbsent(stats.getGenerator(), k -> new long[4]);
+                total[0]++;
+                total[1] += stats.getUrls();
+                total[2] += stats.getBytes();
+                total[3] += stats.getGenerationTime();
+            }
+        }
+        return totals;
     }
 
     private static String escapeDoubleQuotes(String text) {
@@ -37,6 +37,7 @@ import java.io.StringWriter;
 
 import static org.apache.sling.sitemap.impl.builder.SitemapImplTest.XML_HEADER;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.Mockito.when;
 
 @ExtendWith({SlingContextExtension.class, MockitoExtension.class})
@@ -135,4 +136,39 @@ public class ResourceTreeSitemapGeneratorTest {
         );
     }
 
+    @Test
+    public void testNotShardableUnlessOptedIn() {
+        assertFalse(subject.isShardable(sitemapRoot, SitemapGenerator.DEFAULT_SITEMAP));
+    }
+
+    @Test
+    public void testShardsPartitionChildrenOfSitemapRoot() throws SitemapException, IOException {
+        // given
+        StringWriter shard0 = new StringWriter();
+        StringWriter shard1 = new StringWriter();
+        SitemapImpl sitemap0 = new SitemapImpl(shard0, extensionProviderManager, false);
+        SitemapImpl sitemap1 = new SitemapImpl(shard1, extensionProviderManager, false);
+        when(generationContext.getShardCount()).thenReturn(2);
+
+        // when
+        when(generationContext.getShardIndex()).thenReturn(0);
+        subject.generate(sitemapRoot, SitemapGenerator.DEFAULT_SITEMAP, sitemap0, generationContext);
+        sitemap0.flush();
+        when(generationContext.getShardIndex()).thenReturn(1);
+        subject.generate(sitemapRoot, SitemapGenerator.DEFAULT_SITEMAP, sitemap1, generationContext);
+        sitemap1.flush();
+
+        // then
+        assertEquals(
+                "<url><loc>/content/site/de</loc></url>"
+                        + "<url><loc>/content/site/de/child1</loc></url>"
+                        + "<url><loc>/content/site/de/child1/grandchild11</loc></url>",
+                shard0.toString()
+        );
+        assertEquals(
+                "<url><loc>/content/site/de/child2</loc></url>",
+                shard1.toString()
+        );
+    }
+
 }
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.serviceusermapping.ServiceUserMapped;
+import org.apache.sling.sitemap.SitemapService;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith({SlingContextExtension.class, MockitoExtension.class})
+public class SitemapChangeTrackerTest {
+
+    public final SlingContext context = new SlingContext();
+
+    private final SitemapChangeTracker subject = new SitemapChangeTracker();
+
+    @Mock
+    private ServiceUserMapped serviceUser;
+    @Mock
+    private SitemapService sitemapService;
+
+    @BeforeEach
+    public void setup() {
+        context.create().resource("/content/site/de", Collections.singletonMap(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE));
+        context.create().resource("/content/site/de/page/jcr:content");
+        context.create().resource("/content/site/de/news");
+        context.create().resource("/content/site/de/news/jcr:content", Collections.singletonMap(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE));
+        context.create().resource("/content/site/de/news/article/jcr:content");
+        context.create().resource("/content/site/en/page");
+
+        context.registerService(ServiceUserMapped.class, serviceUser, "subServiceName", "sitemap-reader");
+        context.registerService(SitemapService.class, sitemapService);
+    }
+
+    @Test
+    public void testChangesScheduleClosestSitemapRootOnce() {
+        // given
+        context.registerInjectActivateService(subject, "debounceTime", 0L);
+
+        // when
+        subject.onChange(ImmutableList.of(
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, "/content/site/de/page/jcr:content", false),
+                new ResourceChange(ResourceChange.ChangeType.REMOVED, "/content/site/de/page/removed", false),
+                new ResourceChange(ResourceChange.ChangeType.ADDED, "/content/site/de/news/article/jcr:content", false),
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, "/content/site/en/page", false)
+        ));
+        subject.run();
+
+        // then
+        verify(sitemapService, times(1)).scheduleGeneration(argThat(hasPath("/content/site/de")));
+        verify(sitemapService, times(1)).scheduleGeneration(argThat(hasPath("/content/site/de/news")));
+        verifyNoMoreInteractions(sitemapService);
+
+        // and when
+        subject.run();
+
+        // then
+        verifyNoMoreInteractions(sitemapService);
+    }
+
+    @Test
+    public void testChangesDebounced() {
+        // given
+        context.registerInjectActivateService(subject, "debounceTime", 60000L);
+
+        // when
+        subject.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, "/content/site/de/page/jcr:content", false)
+        ));
+        subject.run();
+
+        // then
+        verify(sitemapService, never()).scheduleGeneration(any(Resource.class));
+    }
+
+    @Test
+    public void testContinuousChangesScheduledAfterMaxDelay() {
+        // given
+        context.registerInjectActivateService(subject, "debounceTime", 60000L, "maxDelay", 0L);
+
+        // when
+        subject.onChange(Collections.singletonList(
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, "/content/site/de/page/jcr:content", false)
+        ));
+        subject.run();
+
+        // then
+        verify(sitemapService, times(1)).scheduleGeneration(argThat(hasPath("/content/site/de")));
+    }
+
+    private static ArgumentMatcher<Resource> hasPath(String path) {
+        return resource -> resource != null && path.equals(resource.getPath());
+    }
+}
@@ -18,7 +18,10 @@
  */
 package org.apache.sling.sitemap.impl;
 
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.metrics.MetricsService;
 import org.apache.sling.event.jobs.Job;
 import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
@@ -30,6 +33,7 @@ import org.apache.sling.sitemap.builder.Sitemap;
 import org.apache.sling.sitemap.impl.builder.extensions.ExtensionProviderManager;
 import org.apache.sling.sitemap.impl.builder.SitemapImpl;
 import org.apache.sling.sitemap.impl.builder.SitemapImplTest;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.junit5.SlingContext;
 import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
@@ -45,11 +49,16 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.sling.sitemap.impl.SitemapStorageTest.assertResourceDataEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.*;
 
@@ -63,6 +72,7 @@ public class SitemapGeneratorExecutorTest {
     private final ExtensionProviderManager extensionProviderManager = new ExtensionProviderManager();
     private final SitemapStorage storage = spy(new SitemapStorage());
     private final SitemapServiceConfiguration sitemapServiceConfiguration = new SitemapServiceConfiguration();
+    private final SitemapGenerationMetrics generationMetrics = new SitemapGenerationMetrics();
 
     @Mock
     private JobManager jobManager;
@@ -74,6 +84,8 @@ public class SitemapGeneratorExecutorTest {
     private JobExecutionContext executionContext;
     @Mock
     private SitemapGenerator generator;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private MetricsService metricsService;
 
     private Resource rootResource;
     private Resource storageRoot;
@@ -89,10 +101,12 @@ public class SitemapGeneratorExecutorTest {
         context.registerService(ServiceUserMapped.class, serviceUser, "subServiceName", "sitemap-writer");
         context.registerService(SitemapGenerator.class, generator);
         context.registerService(JobManager.class, jobManager);
+        context.registerService(MetricsService.class, metricsService);
         context.registerInjectActivateService(sitemapServiceConfiguration);
         context.registerInjectActivateService(generatorManager);
         context.registerInjectActivateService(storage);
         context.registerInjectActivateService(extensionProviderManager);
+        context.registerInjectActivateService(generationMetrics);
 
         when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_NAME, SitemapGenerator.DEFAULT_SITEMAP))
                 .thenReturn(SitemapGenerator.DEFAULT_SITEMAP);
@@ -110,6 +124,12 @@ public class SitemapGeneratorExecutorTest {
                 "http://example.com/page5.html"
         ));
         context.registerInjectActivateService(subject, "chunkSize", 10);
+        List<SitemapStorage.Session> sessions = new ArrayList<>();
+        doAnswer(inv -> {
+            SitemapStorage.Session session = spy((SitemapStorage.Session) inv.callRealMethod());
+            sessions.add(session);
+            return session;
+        }).when(storage).openSession();
 
         // when
         subject.process(job, executionContext);
@@ -125,7 +145,8 @@ public class SitemapGeneratorExecutorTest {
                         + "</urlset>",
                 storageRoot.getChild("content/site/de/sitemap.xml")
         );
-        verify(storage, never()).writeState(any(), any(), any());
+        assertEquals(1, sessions.size());
+        verify(sessions.get(0), never()).writeState(any(), any(), any());
     }
 
     @Test
@@ -173,6 +194,235 @@ public class SitemapGeneratorExecutorTest {
         );
     }
 
+    @Test
+    public void testCheckpointsCommittedInBatches() throws IOException {
+        // given
+        context.registerService(SitemapGenerator.class, new FailOnceGenerator(Integer.MAX_VALUE,
+                "http://example.com/page1.html",
+                "http://example.com/page2.html",
+                "http://example.com/page3.html",
+                "http://example.com/page4.html",
+                "http://example.com/page5.html"
+        ));
+        context.registerInjectActivateService(subject, "chunkSize", 1);
+        MockOsgi.deactivate(storage, context.bundleContext());
+        MockOsgi.activate(storage, context.bundleContext(), "checkpointCommitInterval", 2);
+
+        // when
+        subject.process(job, executionContext);
+
+        // then
+        assertNotNull(storageRoot.getChild("content/site/de/sitemap.xml"));
+        assertNull(storageRoot.getChild("content/site/de/sitemap.part"));
+        verify(storage, times(1)).openSession();
+        verify(metricsService.counter("SitemapStorage-checkpointWrites"), times(5)).increment();
+        // two batches of two checkpoints, the last one committed together with the sitemap
+        verify(metricsService.timer("SitemapStorage-commitTime"), times(3)).time();
+    }
+
+    @Test
+    public void testGenerationMetricsRecorded() {
+        // given
+        context.registerService(SitemapGenerator.class, new FailOnceGenerator(Integer.MAX_VALUE,
+                "http://example.com/page1.html",
+                "http://example.com/page2.html",
+                "http://example.com/page3.html",
+                "http://example.com/page4.html",
+                "http://example.com/page5.html"
+        ));
+        context.registerInjectActivateService(subject, "chunkSize", 2);
+        Calendar created = Calendar.getInstance();
+        Calendar started = (Calendar) created.clone();
+        started.add(Calendar.SECOND, 3);
+        when(job.getCreated()).thenReturn(created);
+        when(job.getProcessingStarted()).thenReturn(started);
+
+        // when
+        subject.process(job, executionContext);
+
+        // then
+        SitemapGenerationMetrics.Statistics stats = generationMetrics.getStatistics()
+                .get("/content/site/de").get(SitemapGenerator.DEFAULT_SITEMAP);
+        assertNotNull(stats);
+        assertEquals(FailOnceGenerator.class.getName(), stats.getGenerator());
+        assertEquals(1, stats.getGenerations());
+        assertEquals(5, stats.getUrls());
+        assertEquals(storageRoot.getChild("content/site/de/sitemap.xml").getValueMap()
+                .get(SitemapStorage.PN_SITEMAP_SIZE, Long.class), stats.getBytes());
+        assertEquals(2, stats.getCheckpoints());
+        assertEquals(3000, stats.getQueueWaitTime());
+        verify(metricsService.meter("SitemapRoot-content_site_de-default-bytesWritten"))
+                .mark(stats.getBytes());
+        verify(metricsService.meter("SitemapGenerator-" + FailOnceGenerator.class.getName() + "-bytesWritten"))
+                .mark(stats.getBytes());
+        verify(metricsService.timer("SitemapRoot-content_site_de-default-queueWaitTime"))
+                .update(3000, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testJobResumesAfterBeingAbortedWithAppendOnlyCheckpoints() throws IOException {
+        // given
+        context.registerService(SitemapGenerator.class, new FailOnceGenerator(5,
+                "http://example.com/page1.html",
+                "http://example.com/page2.html",
+                "http://example.com/page3.html",
+                "http://example.com/page4.html",
+                "http://example.com/page5.html",
+                "http://example.com/page6.html"
+        ));
+        context.registerInjectActivateService(subject, "chunkSize", 2, "appendOnlyCheckpoints", true);
+
+        // when
+        try {
+            subject.process(job, executionContext);
+        } catch (RuntimeException ex) {
+            // ignore exception from FailOnceGenerator
+        }
+
+        // then
+        Resource state = storageRoot.getChild("content/site/de/sitemap.part");
+        assertNotNull(state);
+        assertNull(state.getValueMap().get("jcr:data"));
+        assertEquals(2, state.getValueMap().get(SitemapStorage.PN_STATE_SEGMENTS, Integer.class));
+        assertResourceDataEquals(
+                SitemapImplTest.XML_HEADER + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                        + "<url><loc>http://example.com/page1.html</loc></url>"
+                        + "<url><loc>http://example.com/page2.html</loc></url>",
+                state.getChild("segment-0")
+        );
+        assertResourceDataEquals(
+                "<url><loc>http://example.com/page3.html</loc></url>"
+                        + "<url><loc>http://example.com/page4.html</loc></url>",
+                state.getChild("segment-1")
+        );
+
+        // and when (resume)
+        subject.process(job, executionContext);
+
+        // then
+        assertNull(storageRoot.getChild("content/site/de/sitemap.part"));
+        String expected = SitemapImplTest.XML_HEADER + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                + "<url><loc>http://example.com/page1.html</loc></url>"
+                + "<url><loc>http://example.com/page2.html</loc></url>"
+                + "<url><loc>http://example.com/page3.html</loc></url>"
+                + "<url><loc>http://example.com/page4.html</loc></url>"
+                + "<url><loc>http://example.com/page5.html</loc></url>"
+                + "<url><loc>http://example.com/page6.html</loc></url>"
+                + "</urlset>";
+        Resource sitemap = storageRoot.getChild("content/site/de/sitemap.xml");
+        assertResourceDataEquals(expected, sitemap);
+        assertEquals(expected.length(), sitemap.getValueMap().get(SitemapStorage.PN_SITEMAP_SIZE, Integer.class));
+    }
+
+    @Test
+    public void testExpiredAppendOnlyStateDiscarded() throws IOException {
+        // given
+        context.registerService(SitemapGenerator.class, new FailOnceGenerator(3,
+                "http://example.com/page1.html",
+                "http://example.com/page2.html",
+                "http://example.com/page3.html",
+                "http://example.com/page4.html"
+        ));
+        context.registerInjectActivateService(subject, "chunkSize", 2, "appendOnlyCheckpoints", true);
+        try {
+            subject.process(job, executionContext);
+        } catch (RuntimeException ex) {
+            // ignore exception from FailOnceGenerator
+        }
+        Resource state = storageRoot.getChild("content/site/de/sitemap.part");
+        assertNotNull(state);
+        assertNotNull(state.getChild("segment-0"));
+        Calendar expired = Calendar.getInstance();
+        expired.add(Calendar.DAY_OF_MONTH, -7);
+        state.adaptTo(ModifiableValueMap.class).put(JcrConstants.JCR_LASTMODIFIED, expired);
+        context.resourceResolver().commit();
+
+        // when (starts over)
+        subject.process(job, executionContext);
+
+        // then
+        assertNull(storageRoot.getChild("content/site/de/sitemap.part"));
+        String expected = SitemapImplTest.XML_HEADER + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                + "<url><loc>http://example.com/page1.html</loc></url>"
+                + "<url><loc>http://example.com/page2.html</loc></url>"
+                + "<url><loc>http://example.com/page3.html</loc></url>"
+                + "<url><loc>http://example.com/page4.html</loc></url>"
+                + "</urlset>";
+        Resource sitemap = storageRoot.getChild("content/site/de/sitemap.xml");
+        assertResourceDataEquals(expected, sitemap);
+        assertEquals(expected.length(), sitemap.getValueMap().get(SitemapStorage.PN_SITEMAP_SIZE, Integer.class));
+    }
+
+    @Test
+    public void testShardsMergedInOrderWhenComplete() throws IOException {
+        // given
+        context.registerService(SitemapGenerator.class, new ShardedGenerator(
+                "http://example.com/page1.html",
+                "http://example.com/page2.html",
+                "http://example.com/page3.html",
+                "http://example.com/page4.html",
+                "http://example.com/page5.html"
+        ));
+        context.registerInjectActivateService(subject);
+        when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_SHARDS, Integer.class)).thenReturn(2);
+        when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_GENERATION, Long.class)).thenReturn(1L);
+
+        // when
+        when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_SHARD, Integer.class)).thenReturn(1);
+        subject.process(job, executionContext);
+
+        // then
+        assertNull(storageRoot.getChild("content/site/de/sitemap.xml"));
+        assertNotNull(storageRoot.getChild("content/site/de/sitemap.shards/shard-1"));
+
+        // and when
+        when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_SHARD, Integer.class)).thenReturn(0);
+        subject.process(job, executionContext);
+
+        // then
+        String expected = SitemapImplTest.XML_HEADER + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                + "<url><loc>http://example.com/page1.html</loc></url>"
+                + "<url><loc>http://example.com/page2.html</loc></url>"
+                + "<url><loc>http://example.com/page3.html</loc></url>"
+                + "<url><loc>http://example.com/page4.html</loc></url>"
+                + "<url><loc>http://example.com/page5.html</loc></url>"
+                + "</urlset>";
+        Resource sitemap = storageRoot.getChild("content/site/de/sitemap.xml");
+        assertResourceDataEquals(expected, sitemap);
+        assertEquals(expected.length(), sitemap.getValueMap().get(SitemapStorage.PN_SITEMAP_SIZE, Integer.class));
+        assertEquals(5, sitemap.getValueMap().get(SitemapStorage.PN_SITEMAP_ENTRIES, Integer.class));
+        assertNull(storageRoot.getChild("content/site/de/sitemap.shards"));
+        SitemapGenerationMetrics.Statistics stats = generationMetrics.getStatistics()
+                .get("/content/site/de").get(SitemapGenerator.DEFAULT_SITEMAP);
+        assertEquals(1, stats.getGenerations());
+        assertEquals(5, stats.getUrls());
+        assertEquals(expected.length(), stats.getBytes());
+    }
+
+    @Test
+    public void testShardsOfOutdatedGenerationIgnored() throws IOException {
+        // given
+        context.registerService(SitemapGenerator.class, new ShardedGenerator(
+                "http://example.com/page1.html",
+                "http://example.com/page2.html"
+        ));
+        context.registerInjectActivateService(subject);
+        when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_SHARDS, Integer.class)).thenReturn(2);
+
+        // when
+        when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_SHARD, Integer.class)).thenReturn(1);
+        when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_GENERATION, Long.class)).thenReturn(2L);
+        subject.process(job, executionContext);
+        when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_SHARD, Integer.class)).thenReturn(0);
+        when(job.getProperty(SitemapGeneratorExecutor.JOB_PROPERTY_SITEMAP_GENERATION, Long.class)).thenReturn(1L);
+        subject.process(job, executionContext);
+
+        // then
+        assertNull(storageRoot.getChild("content/site/de/sitemap.xml"));
+        assertNull(storageRoot.getChild("content/site/de/sitemap.shards/shard-0"));
+        assertNotNull(storageRoot.getChild("content/site/de/sitemap.shards/shard-1"));
+    }
+
     @Test
     public void testGenerationContextDoesNotLeakRawJcrData() throws IOException {
         // given
@@ -214,6 +464,35 @@ public class SitemapGeneratorExecutorTest {
         );
     }
 
+    private static class ShardedGenerator implements SitemapGenerator {
+
+        private final String[] locations;
+
+        ShardedGenerator(String... locations) {
+            this.locations = locations;
+        }
+
+        @Override
+        public @NotNull Set<String> getNames(@NotNull Resource sitemapRoot) {
+            return Collections.singleton(SitemapGenerator.DEFAULT_SITEMAP);
+        }
+
+        @Override
+        public boolean isShardable(@NotNull Resource sitemapRoot, @NotNull String name) {
+            return true;
+        }
+
+        @Override
+        public void generate(@NotNull Resource sitemapRoot, @NotNull String name, @NotNull Sitemap sitemap,
+                             @NotNull GenerationContext context) throws SitemapException {
+            int from = locations.length * context.getShardIndex() / context.getShardCount();
+            int to = locations.length * (context.getShardIndex() + 1) / context.getShardCount();
+            for (int i = from; i < to; i++) {
+                sitemap.addUrl(locations[i]);
+            }
+        }
+    }
+
     private static class FailOnceGenerator implements SitemapGenerator {
 
         private final String[] locations;
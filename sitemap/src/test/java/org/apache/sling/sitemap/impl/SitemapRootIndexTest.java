@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.serviceusermapping.ServiceUserMapped;
+import org.apache.sling.sitemap.SitemapService;
+import org.apache.sling.testing.mock.jcr.MockJcr;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith({SlingContextExtension.class, MockitoExtension.class})
+public class SitemapRootIndexTest {
+
+    public final SlingContext context = new SlingContext(ResourceResolverType.JCR_MOCK);
+
+    private final SitemapRootIndex subject = new SitemapRootIndex();
+
+    @Mock
+    private ServiceUserMapped serviceUser;
+
+    private final AtomicInteger serviceResolvers = new AtomicInteger();
+
+    private Resource deRoot;
+    private Resource deNews;
+    private Resource enRoot;
+    private Resource enRootContent;
+
+    @BeforeEach
+    public void setup() {
+        deRoot = context.create().resource("/content/site/de", Collections.singletonMap(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE));
+        deNews = context.create().resource("/content/site/de/news", Collections.singletonMap(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE));
+        enRoot = context.create().resource("/content/site/en");
+        enRootContent = context.create().resource("/content/site/en/jcr:content", Collections.singletonMap(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE));
+
+        context.registerService(ServiceUserMapped.class, serviceUser, "subServiceName", "sitemap-reader");
+        context.registerInjectActivateService(subject);
+
+        SitemapSchedulerTest.initResourceResolver(context, subject, resolver -> {
+            serviceResolvers.incrementAndGet();
+            MockJcr.setQueryResult(
+                    resolver.adaptTo(Session.class),
+                    "/jcr:root/content//*[@" + SitemapService.PROPERTY_SITEMAP_ROOT + "=true]" +
+                            " option(index tag slingSitemaps)",
+                    Query.XPATH,
+                    ImmutableList.of(
+                            deRoot.adaptTo(Node.class),
+                            deNews.adaptTo(Node.class),
+                            enRootContent.adaptTo(Node.class)
+                    )
+            );
+        });
+    }
+
+    @Test
+    public void testSitemapRootsQueriedOnlyOnce() {
+        // when
+        List<String> contentRoots = findSitemapRoots("/content");
+        List<String> deRoots = findSitemapRoots("/content/site/de");
+        List<String> enRoots = findSitemapRoots("/content/site/en");
+
+        // then
+        assertThat(contentRoots, contains("/content/site/de", "/content/site/de/news", "/content/site/en"));
+        assertThat(deRoots, contains("/content/site/de/news"));
+        assertThat(enRoots, empty());
+        // one to load the index
+        assertEquals(1, serviceResolvers.get());
+    }
+
+    @Test
+    public void testIndexMaintainedByChanges() throws PersistenceException {
+        // given
+        assertThat(findSitemapRoots("/content"),
+                contains("/content/site/de", "/content/site/de/news", "/content/site/en"));
+
+        // when
+        context.create().resource("/content/site/fr/jcr:content", Collections.singletonMap(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE));
+        enRootContent.adaptTo(ModifiableValueMap.class).put(SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.FALSE);
+        context.resourceResolver().delete(deRoot);
+        context.resourceResolver().commit();
+        subject.onChange(ImmutableList.of(
+                new ResourceChange(ResourceChange.ChangeType.ADDED, "/content/site/fr", false),
+                new ResourceChange(ResourceChange.ChangeType.ADDED, "/content/site/fr/jcr:content", false),
+                new ResourceChange(ResourceChange.ChangeType.CHANGED, "/content/site/en/jcr:content", false),
+                new ResourceChange(ResourceChange.ChangeType.REMOVED, "/content/site/de", false)
+        ));
+
+        // then
+        assertThat(findSitemapRoots("/content"), contains("/content/site/fr"));
+        // one to load the index, one to process the changes
+        assertEquals(2, serviceResolvers.get());
+    }
+
+    @Test
+    public void testNestedSitemapRootsMoved() throws PersistenceException {
+        // given
+        assertThat(findSitemapRoots("/content"),
+                contains("/content/site/de", "/content/site/de/news", "/content/site/en"));
+        Resource chRoot = context.create().resource("/content/site/ch", Collections.singletonMap(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE));
+        Resource chNews = context.create().resource("/content/site/ch/news", Collections.singletonMap(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE));
+        context.resourceResolver().delete(deRoot);
+        context.resourceResolver().commit();
+        SitemapSchedulerTest.initResourceResolver(context, subject, resolver -> MockJcr.setQueryResult(
+                resolver.adaptTo(Session.class),
+                "/jcr:root/content/site/ch//*[@" + SitemapService.PROPERTY_SITEMAP_ROOT + "=true]" +
+                        " option(index tag slingSitemaps)",
+                Query.XPATH,
+                ImmutableList.of(chNews.adaptTo(Node.class))
+        ));
+
+        // when, a move is observed as the removal of the source and the addition of the destination only
+        subject.onChange(ImmutableList.of(
+                new ResourceChange(ResourceChange.ChangeType.REMOVED, "/content/site/de", false),
+                new ResourceChange(ResourceChange.ChangeType.ADDED, chRoot.getPath(), false)
+        ));
+
+        // then
+        assertThat(findSitemapRoots("/content"),
+                contains("/content/site/ch", "/content/site/ch/news", "/content/site/en"));
+    }
+
+    @Test
+    public void testSitemapRootFromIndex() {
+        // given, a change not yet observed after the index got loaded
+        assertTrue(subject.isSitemapRoot(deRoot));
+        deRoot.adaptTo(ModifiableValueMap.class).put(SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.FALSE);
+
+        // when, then
+        assertTrue(subject.isSitemapRoot(deRoot));
+        assertTrue(subject.isSitemapRoot(enRoot));
+        assertFalse(subject.isSitemapRoot(deRoot.getParent()));
+        // one to load the index
+        assertEquals(1, serviceResolvers.get());
+    }
+
+    @Test
+    public void testChangesOfOtherPropertiesIgnored() throws PersistenceException {
+        // given
+        assertTrue(subject.isSitemapRoot(enRoot));
+        enRootContent.adaptTo(ModifiableValueMap.class).put(SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.FALSE);
+        context.resourceResolver().commit();
+
+        // when
+        subject.onChange(ImmutableList.of(new ResourceChange(ResourceChange.ChangeType.CHANGED,
+                enRootContent.getPath(), false, Collections.emptySet(), Collections.singleton("jcr:title"),
+                Collections.emptySet())));
+
+        // then
+        assertTrue(subject.isSitemapRoot(enRoot));
+        // one to load the index, none to process the change
+        assertEquals(1, serviceResolvers.get());
+
+        // and when
+        subject.onChange(ImmutableList.of(new ResourceChange(ResourceChange.ChangeType.CHANGED,
+                enRootContent.getPath(), false, Collections.emptySet(),
+                Collections.singleton(SitemapService.PROPERTY_SITEMAP_ROOT), Collections.emptySet())));
+
+        // then
+        assertFalse(subject.isSitemapRoot(enRoot));
+    }
+
+    @Test
+    public void testTopLevelSitemapRootFromIndex() {
+        // when, then
+        assertEquals("/content/site/de", subject.getTopLevelSitemapRoot(deNews).getPath());
+        assertEquals("/content/site/de", subject.getTopLevelSitemapRoot(deRoot).getPath());
+        assertTrue(subject.isTopLevelSitemapRoot(deRoot));
+        assertTrue(subject.isTopLevelSitemapRoot(enRoot));
+        assertFalse(subject.isTopLevelSitemapRoot(deNews));
+    }
+
+    @Test
+    public void testPathsOutsideOfIndexQueried() {
+        // given
+        Resource appsRoot = context.create().resource("/apps/site/de", Collections.singletonMap(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE));
+        MockJcr.setQueryResult(
+                context.resourceResolver().adaptTo(Session.class),
+                "/jcr:root/apps//*[@" + SitemapService.PROPERTY_SITEMAP_ROOT + "=true]" +
+                        " option(index tag slingSitemaps)",
+                Query.XPATH,
+                Collections.singletonList(appsRoot.adaptTo(Node.class))
+        );
+
+        // when
+        List<String> appsRoots = findSitemapRoots("/apps");
+
+        // then
+        assertThat(appsRoots, contains("/apps/site/de"));
+        assertEquals(0, serviceResolvers.get());
+    }
+
+    private List<String> findSitemapRoots(String searchPath) {
+        List<String> paths = new ArrayList<>();
+        subject.findSitemapRoots(context.resourceResolver(), searchPath)
+                .forEachRemaining(resource -> paths.add(resource.getPath()));
+        return paths;
+    }
+}
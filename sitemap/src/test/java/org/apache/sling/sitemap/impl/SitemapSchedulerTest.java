@@ -33,6 +33,7 @@ import org.apache.sling.testing.mock.jcr.MockJcr;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.junit5.SlingContext;
 import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -193,16 +194,57 @@ public class SitemapSchedulerTest {
         );
     }
 
+    @Test
+    public void testOneJobStartedForEachShardOfShardableGenerator() {
+        // given
+        TestGenerator shardableGenerator = new TestGenerator() {
+            @Override
+            public boolean isShardable(@NotNull Resource sitemapRoot, @NotNull String name) {
+                return true;
+            }
+        };
+        context.registerService(SitemapGenerator.class, shardableGenerator, "service.ranking", 3);
+        context.registerInjectActivateService(subject, "shards", 3);
+        initResourceResolver(subject, resolver -> MockJcr.setQueryResult(
+                resolver.adaptTo(Session.class),
+                "/jcr:root/content//*[@" + SitemapService.PROPERTY_SITEMAP_ROOT + "=true]" +
+                        " option(index tag slingSitemaps)",
+                Query.XPATH,
+                Collections.singletonList(rootDe.adaptTo(Node.class))
+        ));
+        shardableGenerator.setNames(SitemapGenerator.DEFAULT_SITEMAP);
+        generator1.setNames("sitemap1");
+
+        // when
+        subject.run();
+
+        // then
+        for (int shard = 0; shard < 3; shard++) {
+            int expectedShard = shard;
+            verify(jobManager, times(1)).addJob(
+                    eq("org/apache/sling/sitemap/build"),
+                    argThat(map -> sitemapJobPropertiesMatch(SitemapGenerator.DEFAULT_SITEMAP, "/content/site/de")
+                            .matches(map) && Integer.valueOf(expectedShard).equals(map.get("sitemap.shard"))
+                            && Integer.valueOf(3).equals(map.get("sitemap.shards")))
+            );
+        }
+        verify(jobManager, times(1)).addJob(
+                eq("org/apache/sling/sitemap/build"),
+                argThat(map -> sitemapJobPropertiesMatch("sitemap1", "/content/site/de").matches(map)
+                        && !map.containsKey("sitemap.shard"))
+        );
+    }
+
     private void initResourceResolver(SitemapScheduler scheduler, Consumer<ResourceResolver> resolverConsumer) {
         initResourceResolver(context, scheduler, resolverConsumer);
     }
 
-    static void initResourceResolver(SlingContext context, SitemapScheduler scheduler,
+    static void initResourceResolver(SlingContext context, Object component,
                                      Consumer<ResourceResolver> resolverConsumer) {
         try {
             ResourceResolverFactory original = context.getService(ResourceResolverFactory.class);
             ResourceResolverFactory mock = mock(ResourceResolverFactory.class);
-            Fields.allDeclaredFieldsOf(scheduler).instanceFields().stream()
+            Fields.allDeclaredFieldsOf(component).instanceFields().stream()
                     .filter(instanceField -> "resourceResolverFactory".equals(instanceField.name()))
                     .forEach(instanceField -> instanceField.set(mock));
 
@@ -268,6 +268,35 @@ public class SitemapServiceImplTest {
         ));
     }
 
+    @Test
+    public void testSitemapIndexUrlReturnedFromSitemapRootIndex() {
+        // given
+        SitemapRootIndex sitemapRootIndex = new SitemapRootIndex();
+        SitemapServiceImpl subject = new SitemapServiceImpl();
+        context.registerService(ServiceUserMapped.class, serviceUser, "subServiceName", "sitemap-reader");
+        context.registerInjectActivateService(sitemapRootIndex);
+        context.registerInjectActivateService(subject);
+        SitemapSchedulerTest.initResourceResolver(context, sitemapRootIndex, resolver -> MockJcr.setQueryResult(
+                resolver.adaptTo(Session.class),
+                "/jcr:root/content//*[@" + SitemapService.PROPERTY_SITEMAP_ROOT + "=true]" +
+                        " option(index tag slingSitemaps)",
+                Query.XPATH,
+                Arrays.asList(deRoot.adaptTo(Node.class), enRoot.adaptTo(Node.class), enFaqs.adaptTo(Node.class),
+                        enNews.adaptTo(Node.class), frRoot.adaptTo(Node.class))
+        ));
+        generator.setNames(SitemapGenerator.DEFAULT_SITEMAP);
+
+        // when
+        // has descendants
+        Collection<SitemapInfo> enInfo = subject.getSitemapInfo(enRoot);
+        // has none
+        Collection<SitemapInfo> deInfo = subject.getSitemapInfo(deRoot);
+
+        // then
+        assertThat(enInfo, hasItems(eqSitemapInfo("/site/en.sitemap-index.xml", -1, -1)));
+        assertThat(deInfo, hasSize(0));
+    }
+
     private static Matcher<SitemapInfo> eqSitemapInfo(String url, int size, int entries) {
         return new CustomMatcher<SitemapInfo>("with url " + url + ", with size " + size + ", with entries " + entries) {
             @Override
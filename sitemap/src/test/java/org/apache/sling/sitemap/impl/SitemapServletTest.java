@@ -19,6 +19,7 @@
 package org.apache.sling.sitemap.impl;
 
 import com.google.common.collect.ImmutableSet;
+import org.apache.commons.io.IOUtils;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.serviceusermapping.ServiceUserMapped;
@@ -54,8 +55,9 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith({SlingContextExtension.class, MockitoExtension.class})
@@ -278,6 +280,109 @@ public class SitemapServletTest {
         );
     }
 
+    @Test
+    public void testCompressedSitemapServedWithEtag() throws ServletException, IOException {
+        // given
+        String expectedOutcome = SitemapImplTest.XML_HEADER + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                + "<url><loc>/content/site/en</loc></url>"
+                + "</urlset>";
+        byte[] expectedOutcomeBytes = expectedOutcome.getBytes(StandardCharsets.UTF_8);
+
+        context.registerInjectActivateService(sitemapServiceConfiguration);
+        context.registerInjectActivateService(generatorManager);
+        context.registerInjectActivateService(storage);
+        context.registerInjectActivateService(subject);
+
+        storage.writeSitemap(root, "foo", new ByteArrayInputStream(expectedOutcomeBytes),
+                expectedOutcomeBytes.length, 1);
+
+        MockSlingHttpServletRequest request = newSitemapReq("foo-sitemap", root);
+        request.setHeader("Accept-Encoding", "deflate, gzip;q=0.8");
+        MockSlingHttpServletResponse response = context.response();
+
+        // when
+        subject.doGet(request, response);
+
+        // then
+        assertEquals(200, response.getStatus());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertEquals(expectedOutcome, IOUtils.toString(
+                new GZIPInputStream(new ByteArrayInputStream(response.getOutput())), StandardCharsets.UTF_8));
+        String etag = response.getHeader("ETag");
+        assertNotNull(etag);
+        assertTrue(etag.endsWith("-gzip\""));
+
+        // and when
+        request = newSitemapReq("foo-sitemap", root);
+        request.setHeader("Accept-Encoding", "gzip");
+        request.setHeader("If-None-Match", etag);
+        response = new MockSlingHttpServletResponse();
+        subject.doGet(request, response);
+
+        // then
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getOutput().length);
+
+        // and when (without gzip, the etag does not match the decompressed representation)
+        request = newSitemapReq("foo-sitemap", root);
+        request.setHeader("If-None-Match", etag);
+        response = new MockSlingHttpServletResponse();
+        subject.doGet(request, response);
+
+        // then
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(expectedOutcome, response.getOutputAsString());
+    }
+
+    @Test
+    public void testSitemapServedWithRange() throws ServletException, IOException {
+        // given
+        byte[] data = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+        context.registerInjectActivateService(sitemapServiceConfiguration);
+        context.registerInjectActivateService(generatorManager);
+        context.registerInjectActivateService(storage, "compress", false);
+        context.registerInjectActivateService(subject);
+
+        storage.writeSitemap(root, "foo", new ByteArrayInputStream(data), data.length, 1);
+
+        MockSlingHttpServletRequest request = newSitemapReq("foo-sitemap", root);
+        request.setHeader("Range", "bytes=2-5");
+        MockSlingHttpServletResponse response = context.response();
+
+        // when
+        subject.doGet(request, response);
+
+        // then
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+        assertEquals("2345", response.getOutputAsString());
+
+        // and when
+        request = newSitemapReq("foo-sitemap", root);
+        request.setHeader("Range", "bytes=10-");
+        response = new MockSlingHttpServletResponse();
+        subject.doGet(request, response);
+
+        // then
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    public void testParseRange() {
+        assertArrayEquals(new long[]{0, 9}, SitemapServlet.parseRange("bytes=0-", 10));
+        assertArrayEquals(new long[]{5, 9}, SitemapServlet.parseRange("bytes=5-100", 10));
+        assertArrayEquals(new long[]{7, 9}, SitemapServlet.parseRange("bytes=-3", 10));
+        assertArrayEquals(new long[0], SitemapServlet.parseRange("bytes=10-12", 10));
+        assertNull(SitemapServlet.parseRange("bytes=0-1,3-4", 10));
+        assertNull(SitemapServlet.parseRange("bytes=5-2", 10));
+        assertNull(SitemapServlet.parseRange("items=0-1", 10));
+        assertNull(SitemapServlet.parseRange(null, 10));
+    }
+
     @Test
     public void testSitemapNotServed() throws ServletException, IOException {
         // given
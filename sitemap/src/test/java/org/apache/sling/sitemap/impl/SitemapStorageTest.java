@@ -20,12 +20,17 @@ package org.apache.sling.sitemap.impl;
 
 import com.google.common.collect.ImmutableMap;
 import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.JcrConstants;
 import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.serviceusermapping.ServiceUserMapped;
 import org.apache.sling.sitemap.SitemapService;
 import org.apache.sling.sitemap.generator.SitemapGenerator;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
 import org.apache.sling.testing.mock.sling.junit5.SlingContext;
 import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
 import org.hamcrest.CustomMatcher;
@@ -35,20 +40,28 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.osgi.framework.Constants;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
 @ExtendWith({SlingContextExtension.class, MockitoExtension.class})
@@ -112,6 +125,37 @@ public class SitemapStorageTest {
         );
     }
 
+    @Test
+    public void testSitemapStoredCompressedWithDigest() throws IOException {
+        // given
+        Resource root = context.create().resource("/content/site/de", ImmutableMap.of(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE
+        ));
+        byte[] data = "<urlset></urlset>".getBytes(StandardCharsets.UTF_8);
+
+        // when
+        subject.writeSitemap(root, SitemapGenerator.DEFAULT_SITEMAP, new ByteArrayInputStream(data), data.length, 0);
+
+        // then
+        Resource sitemap = context.resourceResolver().getResource("/var/sitemaps/content/site/de/sitemap.xml");
+        assertResourceDataEquals("<urlset></urlset>", sitemap);
+        ValueMap properties = sitemap.getValueMap();
+        assertEquals(SitemapStorage.ENCODING_GZIP, properties.get(SitemapStorage.PN_SITEMAP_ENCODING, String.class));
+        assertEquals(data.length, properties.get(SitemapStorage.PN_SITEMAP_SIZE, Integer.class));
+        assertEquals(IOUtils.toByteArray(properties.get("jcr:data", InputStream.class)).length,
+                properties.get(SitemapStorage.PN_SITEMAP_STORED_SIZE, Long.class));
+        // sha-256 of the uncompressed data
+        assertEquals("09989af4886dcdc9da817dbe875fb53bc0c6b62dbaf475f3cda6140505de367b",
+                properties.get(SitemapStorage.PN_SITEMAP_DIGEST, String.class));
+
+        // and when
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        subject.copySitemap(root, "sitemap", output);
+
+        // then
+        assertEquals("<urlset></urlset>", new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
     @Test
     public void testStateExpires() throws InterruptedException, IOException {
         // given
@@ -168,6 +212,125 @@ public class SitemapStorageTest {
         assertNull(context.resourceResolver().getResource("/var/sitemaps/content/site/de/sitemap.part"));
     }
 
+    @Test
+    public void testCleanupResumesAfterBudgetExhausted() throws Exception {
+        // given
+        MockOsgi.deactivate(subject, context.bundleContext());
+        MockOsgi.activate(subject, context.bundleContext(), "stateMaxAge", 100, "cleanupMaxNodes", 4,
+                "cleanupBatchSize", 1);
+        for (String site : new String[]{"de", "en", "fr"}) {
+            Resource root = context.create().resource("/content/site/" + site, ImmutableMap.of(
+                    SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE
+            ));
+            subject.writeState(root, SitemapGenerator.DEFAULT_SITEMAP, ImmutableMap.of("i", 1));
+        }
+        Thread.sleep(100);
+
+        // when
+        subject.run();
+
+        // then
+        // content, site, de, de/sitemap.part visited
+        assertNull(context.resourceResolver().getResource("/var/sitemaps/content/site/de/sitemap.part"));
+        assertNotNull(context.resourceResolver().getResource("/var/sitemaps/content/site/en/sitemap.part"));
+        assertNotNull(context.resourceResolver().getResource("/var/sitemaps/content/site/fr/sitemap.part"));
+        assertEquals("/var/sitemaps/content/site/en", context.resourceResolver().getResource("/var/sitemaps")
+                .getValueMap().get(SitemapStorageCleanup.PN_CLEANUP_CURSOR, String.class));
+
+        // and when
+        subject.run();
+
+        // then
+        // en, en/sitemap.part, fr, fr/sitemap.part visited
+        assertNull(context.resourceResolver().getResource("/var/sitemaps/content/site/en/sitemap.part"));
+        assertNull(context.resourceResolver().getResource("/var/sitemaps/content/site/fr/sitemap.part"));
+        assertNull(context.resourceResolver().getResource("/var/sitemaps")
+                .getValueMap().get(SitemapStorageCleanup.PN_CLEANUP_CURSOR, String.class));
+    }
+
+    @Test
+    public void testShardWrittenAfterConcurrentShardCreatedContainer() throws Exception {
+        // given
+        Resource root = context.create().resource("/content/site/de", ImmutableMap.of(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE
+        ));
+        ResourceResolverFactory factory = context.getService(ResourceResolverFactory.class);
+        ResourceResolverFactory racingFactory = mock(ResourceResolverFactory.class);
+        AtomicBoolean raced = new AtomicBoolean();
+        when(racingFactory.getServiceResourceResolver(any())).thenAnswer(invocation -> {
+            ResourceResolver resolver = spy(factory.getServiceResourceResolver(invocation.getArgument(0)));
+            doAnswer(commit -> {
+                if (raced.compareAndSet(false, true)) {
+                    // another shard of the same generation commits the container first
+                    context.create().resource("/var/sitemaps/content/site/de/sitemap.shards", ImmutableMap.of(
+                            SitemapStorage.PN_SHARDS_GENERATION, 1L,
+                            SitemapStorage.PN_SHARDS_COUNT, 2
+                    ));
+                    context.resourceResolver().commit();
+                    throw new PersistenceException("Conflicting change");
+                }
+                return commit.callRealMethod();
+            }).when(resolver).commit();
+            return resolver;
+        });
+        context.registerService(ResourceResolverFactory.class, racingFactory, Constants.SERVICE_RANKING,
+                Integer.MAX_VALUE);
+        SitemapStorage racingStorage = context.registerInjectActivateService(new SitemapStorage());
+
+        // when
+        boolean complete = racingStorage.writeShard(root, SitemapGenerator.DEFAULT_SITEMAP, 1L, 0, 2,
+                new ByteArrayInputStream(new byte[]{0x01}), 1, 1);
+
+        // then
+        assertTrue(raced.get());
+        assertFalse(complete);
+        Resource shards = context.resourceResolver().getResource("/var/sitemaps/content/site/de/sitemap.shards");
+        assertNotNull(shards);
+        assertEquals(1L, shards.getValueMap().get(SitemapStorage.PN_SHARDS_GENERATION, Long.class));
+        assertNotNull(shards.getChild("shard-0"));
+    }
+
+    @Test
+    public void testShardsWrittenFromSeparateSessions() throws Exception {
+        // given
+        Resource root = context.create().resource("/content/site/de", ImmutableMap.of(
+                SitemapService.PROPERTY_SITEMAP_ROOT, Boolean.TRUE
+        ));
+
+        try (SitemapStorage.Session first = subject.openSession();
+             SitemapStorage.Session second = subject.openSession()) {
+            // when
+            assertFalse(first.writeShard(root, SitemapGenerator.DEFAULT_SITEMAP, 1L, 0, 2,
+                    new ByteArrayInputStream(new byte[]{0x01}), 1, 1));
+            ValueMap container = context.resourceResolver()
+                    .getResource("/var/sitemaps/content/site/de/sitemap.shards").getValueMap();
+            Calendar created = container.get(JcrConstants.JCR_LASTMODIFIED, Calendar.class);
+            assertTrue(second.writeShard(root, SitemapGenerator.DEFAULT_SITEMAP, 1L, 1, 2,
+                    new ByteArrayInputStream(new byte[]{0x02}), 1, 1));
+
+            // then
+            context.resourceResolver().refresh();
+            Resource shards = context.resourceResolver().getResource("/var/sitemaps/content/site/de/sitemap.shards");
+            assertEquals("sling:Folder", shards.getValueMap().get(JcrConstants.JCR_PRIMARYTYPE, String.class));
+            assertEquals(created, shards.getValueMap().get(JcrConstants.JCR_LASTMODIFIED, Calendar.class));
+            assertNotNull(shards.getChild("shard-0"));
+            assertNotNull(shards.getChild("shard-1"));
+
+            // and when both see the shards complete, only one of them merges
+            assertTrue(second.claimShards(root, SitemapGenerator.DEFAULT_SITEMAP, 1L, 1));
+            assertFalse(first.claimShards(root, SitemapGenerator.DEFAULT_SITEMAP, 1L, 0));
+            assertTrue(second.claimShards(root, SitemapGenerator.DEFAULT_SITEMAP, 1L, 1));
+            assertNotNull(second.writeShardedSitemap(root, SitemapGenerator.DEFAULT_SITEMAP, 1L, new byte[0],
+                    new byte[0]));
+        }
+
+        // then
+        context.resourceResolver().refresh();
+        assertResourceDataEquals(new String(new byte[]{0x01, 0x02}, StandardCharsets.US_ASCII),
+                context.resourceResolver().getResource("/var/sitemaps/content/site/de/sitemap.xml"));
+        assertNull(context.resourceResolver().getResource("/var/sitemaps/content/site/de/sitemap.shards"));
+    }
+
     @Test
     public void testCleanupObsoleteSitemapsAfterTopLevelChanged() throws Exception {
         // given
@@ -230,6 +393,9 @@ public class SitemapStorageTest {
             }
         }
         assertNotNull(inputStream);
+        if (SitemapStorage.ENCODING_GZIP.equals(resource.getValueMap().get(SitemapStorage.PN_SITEMAP_ENCODING, String.class))) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
         StringWriter sitemap = new StringWriter();
         IOUtils.copy(inputStream, sitemap, StandardCharsets.UTF_8);
         assertEquals(expectedValue, sitemap.toString());
@@ -107,4 +107,36 @@ public class AlternateLanguageExtensionTest {
                 writer.toString()
         );
     }
+
+    @Test
+    public void testExtensionsOfFollowingUrlsWrittenAfterFailedExtension() throws SitemapException, IOException {
+        // given
+        StringWriter writer = new StringWriter();
+        SitemapImpl sitemap = new SitemapImpl(writer, extensionProviderManager);
+
+        // when
+        sitemap.addUrl("http://example.ch/de.html")
+                .addExtension(AlternateLanguageExtension.class)
+                .setLocale(Locale.forLanguageTag("fr-ch"));
+        sitemap.addUrl("http://example.ch/de/page.html")
+                .addExtension(AlternateLanguageExtension.class)
+                .setLocale(Locale.forLanguageTag("fr-ch"))
+                .setHref("http://example.ch/fr/page.html");
+        sitemap.close();
+
+        // then
+        assertEquals(
+                SitemapImplTest.XML_HEADER + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" " +
+                        "xmlns:xhtml=\"http://www.w3.org/1999/xhtml\">"
+                        + "<url>"
+                        + "<loc>http://example.ch/de.html</loc>"
+                        + "</url>"
+                        + "<url>"
+                        + "<loc>http://example.ch/de/page.html</loc>"
+                        + "<xhtml:link rel=\"alternate\" hreflang=\"fr-CH\" href=\"http://example.ch/fr/page.html\"/>"
+                        + "</url>"
+                        + "</urlset>",
+                writer.toString()
+        );
+    }
 }
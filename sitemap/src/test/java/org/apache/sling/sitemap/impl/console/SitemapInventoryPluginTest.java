@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.sitemap.impl.console;
+
+import org.apache.felix.inventory.Format;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.sitemap.SitemapService;
+import org.apache.sling.sitemap.generator.SitemapGenerator;
+import org.apache.sling.sitemap.impl.SitemapGenerationMetrics;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit5.SlingContext;
+import org.apache.sling.testing.mock.sling.junit5.SlingContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({SlingContextExtension.class, MockitoExtension.class})
+public class SitemapInventoryPluginTest {
+
+    private static final String GENERATOR = "org.example.TestGenerator";
+
+    public final SlingContext context = new SlingContext(ResourceResolverType.JCR_MOCK);
+
+    private final SitemapInventoryPlugin subject = new SitemapInventoryPlugin();
+    private final SitemapGenerationMetrics generationMetrics = new SitemapGenerationMetrics();
+
+    @Mock
+    private SitemapService sitemapService;
+    @Mock
+    private BundleContext bundleContext;
+    @Mock
+    private Bundle bundle;
+    @Mock
+    private ServiceReference<Object> scheduler;
+
+    @BeforeEach
+    public void setup() {
+        context.registerService(SitemapService.class, sitemapService);
+        context.registerInjectActivateService(generationMetrics);
+        context.registerInjectActivateService(subject);
+        subject.activate(bundleContext);
+
+        when(bundleContext.getBundle()).thenReturn(bundle);
+        when(bundle.getRegisteredServices()).thenReturn(new ServiceReference<?>[]{scheduler});
+        when(scheduler.getProperty(Scheduler.PROPERTY_SCHEDULER_EXPRESSION)).thenReturn("0 0 * * * ?");
+        when(scheduler.getProperty(Scheduler.PROPERTY_SCHEDULER_NAME)).thenReturn("sitemap-default");
+
+        // a shard of an outdated generation, that got merged elsewhere
+        generationMetrics.shardGenerated("/content/site/de", SitemapGenerator.DEFAULT_SITEMAP, GENERATOR, 1,
+                3, 300, 7_000_000, 0);
+        generationMetrics.queued("/content/site/de", SitemapGenerator.DEFAULT_SITEMAP, GENERATOR, 3000);
+        generationMetrics.shardGenerated("/content/site/de", SitemapGenerator.DEFAULT_SITEMAP, GENERATOR, 2,
+                3, 280, 2_000_000, 1_000_000);
+        generationMetrics.shardGenerated("/content/site/de", SitemapGenerator.DEFAULT_SITEMAP, GENERATOR, 2,
+                2, 120, 3_000_000, 0);
+        generationMetrics.shardsMerged("/content/site/de", SitemapGenerator.DEFAULT_SITEMAP, GENERATOR, 2, 5, 500);
+
+        generationMetrics.checkpointWritten("/content/site/en", SitemapGenerator.DEFAULT_SITEMAP, GENERATOR,
+                4_000_000);
+        generationMetrics.generated("/content/site/en", SitemapGenerator.DEFAULT_SITEMAP, GENERATOR, 2, 100,
+                1_000_000, 0);
+    }
+
+    @Test
+    public void testJsonContainsStatisticsOfEachGeneration() {
+        // when
+        StringWriter output = new StringWriter();
+        subject.print(new PrintWriter(output), Format.JSON, false);
+
+        // then
+        assertEquals("{"
+                + "\"schedulers\":[{\"name\":\"sitemap-default\",\"expression\":\"0 0 * * * ?\"}],"
+                + "\"roots\":{},"
+                + "\"generation\":{"
+                + "\"/content/site/de\":{\"<default>\":{\"generator\":\"" + GENERATOR + "\",\"generations\":1,"
+                + "\"urls\":5,\"bytes\":500,\"generationTime\":5,\"urlsPerSecond\":1000,\"extensionTime\":1,"
+                + "\"checkpoints\":0,\"averageCheckpointTime\":0,\"queueWaitTime\":3000,\"maxQueueWaitTime\":3000}},"
+                + "\"/content/site/en\":{\"<default>\":{\"generator\":\"" + GENERATOR + "\",\"generations\":1,"
+                + "\"urls\":2,\"bytes\":100,\"generationTime\":1,\"urlsPerSecond\":2000,\"extensionTime\":0,"
+                + "\"checkpoints\":1,\"averageCheckpointTime\":4,\"queueWaitTime\":0,\"maxQueueWaitTime\":0}}"
+                + "},"
+                + "\"generators\":{"
+                + "\"" + GENERATOR + "\":{\"sitemaps\":2,\"urls\":7,\"bytes\":600,\"generationTime\":6}"
+                + "}"
+                + "}", output.toString());
+    }
+
+    @Test
+    public void testTextContainsStatisticsOfEachGeneration() {
+        // when
+        StringWriter output = new StringWriter();
+        subject.print(new PrintWriter(output), Format.TEXT, false);
+
+        // then
+        assertEquals(Arrays.asList(
+                "Apache Sling Sitemap Schedulers",
+                "-------------------------------",
+                " - Name: sitemap-default",
+                "   Expression: 0 0 * * * ?",
+                "",
+                "",
+                "Apache Sling Sitemap Roots",
+                "--------------------------",
+                "",
+                "",
+                "Apache Sling Sitemap Generation",
+                "-------------------------------",
+                "/content/site/de:",
+                " - Name: <default>",
+                "   Generator: " + GENERATOR,
+                "   Generations: 1",
+                "   Urls: 5",
+                "   Bytes: 500",
+                "   Generation Time (ms): 5",
+                "   Urls per Second: 1000",
+                "   Extension Time (ms): 1",
+                "   Checkpoints: 0",
+                "   Average Checkpoint Time (ms): 0",
+                "   Queue Wait Time (ms): 3000 (max 3000)",
+                "/content/site/en:",
+                " - Name: <default>",
+                "   Generator: " + GENERATOR,
+                "   Generations: 1",
+                "   Urls: 2",
+                "   Bytes: 100",
+                "   Generation Time (ms): 1",
+                "   Urls per Second: 2000",
+                "   Extension Time (ms): 0",
+                "   Checkpoints: 1",
+                "   Average Checkpoint Time (ms): 4",
+                "   Queue Wait Time (ms): 0 (max 0)",
+                "",
+                "",
+                "Apache Sling Sitemap Generators",
+                "-------------------------------",
+                " - Generator: " + GENERATOR,
+                "   Sitemaps: 2",
+                "   Urls: 7",
+                "   Bytes: 600",
+                "   Generation Time (ms): 6"
+        ), Arrays.asList(output.toString().split("\\R")));
+    }
+}